@@ -0,0 +1,126 @@
+package org.flowutils;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Utilities for converting between floats and IEEE 754 half precision floats stored in shorts.
+ *
+ * Half floats have 1 sign bit, 5 exponent bits and 10 mantissa bits, which gives about three significant decimal digits,
+ * and a range of about +-65504.  Values too large for a half float become infinity, and NaN values stay NaN.
+ */
+public final class HalfFloatUtils {
+
+    private static final int HALF_VALUE_COUNT = 1 << 16;
+
+    // Table with the float value of every half float, 256 kB.
+    private static final float[] HALF_TO_FLOAT = createHalfToFloatTable();
+
+    /**
+     * @return the half float closest to the specified value, rounding ties to even.
+     */
+    public static short toHalfFloat(float value) {
+        final int bits = Float.floatToRawIntBits(value);
+        final int sign = (bits >>> 16) & 0x8000;
+        final int floatExponent = (bits >>> 23) & 0xff;
+        int mantissa = bits & 0x7fffff;
+
+        // NaN and infinity
+        if (floatExponent == 0xff) {
+            return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 | (mantissa >>> 13) : 0));
+        }
+
+        final int exponent = floatExponent - 127 + 15;
+
+        // Too large values become infinity
+        if (exponent >= 0x1f) return (short) (sign | 0x7c00);
+
+        // Small values become subnormal half floats, or zero
+        if (exponent <= 0) {
+            if (exponent < -10) return (short) sign;
+
+            mantissa |= 0x800000;
+            final int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            final int remainder = mantissa & ((1 << shift) - 1);
+            final int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) half++;
+            return (short) (sign | half);
+        }
+
+        // Normal values.  Rounding up may carry over to the exponent, which is correct, and can result in infinity.
+        int half = (exponent << 10) | (mantissa >> 13);
+        final int remainder = mantissa & 0x1fff;
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) half++;
+        return (short) (sign | half);
+    }
+
+    /**
+     * @return the float value of the specified half float.
+     */
+    public static float toFloat(short halfFloat) {
+        return HALF_TO_FLOAT[halfFloat & 0xffff];
+    }
+
+    /**
+     * Converts floats to half floats.
+     *
+     * @param source array with the float values.
+     * @param sourceOffset index of the first value to convert in the source.
+     * @param target array to write the half floats to.
+     * @param targetOffset index to write the first half float to in the target.
+     * @param count number of values to convert.
+     */
+    public static void toHalfFloats(float[] source, int sourceOffset, short[] target, int targetOffset, int count) {
+        notNull(source, "source");
+        notNull(target, "target");
+
+        for (int i = 0; i < count; i++) {
+            target[targetOffset + i] = toHalfFloat(source[sourceOffset + i]);
+        }
+    }
+
+    /**
+     * Converts half floats to floats.
+     *
+     * @param source array with the half floats.
+     * @param sourceOffset index of the first half float to convert in the source.
+     * @param target array to write the float values to.
+     * @param targetOffset index to write the first value to in the target.
+     * @param count number of values to convert.
+     */
+    public static void toFloats(short[] source, int sourceOffset, float[] target, int targetOffset, int count) {
+        notNull(source, "source");
+        notNull(target, "target");
+
+        final float[] table = HALF_TO_FLOAT;
+        for (int i = 0; i < count; i++) {
+            target[targetOffset + i] = table[source[sourceOffset + i] & 0xffff];
+        }
+    }
+
+    private static float[] createHalfToFloatTable() {
+        final float[] table = new float[HALF_VALUE_COUNT];
+        for (int half = 0; half < HALF_VALUE_COUNT; half++) {
+            final int sign = (half & 0x8000) << 16;
+            final int exponent = (half >>> 10) & 0x1f;
+            final int mantissa = half & 0x3ff;
+
+            if (exponent == 0x1f) {
+                // NaN and infinity
+                table[half] = Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+            }
+            else if (exponent == 0) {
+                // Zero and subnormal values
+                final float value = mantissa * (1f / (1 << 24));
+                table[half] = sign != 0 ? -value : value;
+            }
+            else {
+                table[half] = Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+            }
+        }
+        return table;
+    }
+
+    private HalfFloatUtils() {
+    }
+}
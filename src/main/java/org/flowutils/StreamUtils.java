@@ -80,14 +80,17 @@ public final class StreamUtils {
         if (length < 0) throw new IOException("Invalid byte array length provided: " + length);
         if (length > maxLength) throw new IOException("Too large byte array length provided: " + length + ", maximum length is " + maxLength);
 
-        // Read the array
+        // Read the array, the stream may return it in several parts
         byte[] data = new byte[length];
-        final int readLength = inputStream.read(data);
-
-        // Sanity check what we read
-        if (readLength < 0) throw new IOException("Could not read data for byte array, end of stream reached");
-        if (readLength != length) throw new IOException("Could not read all data for byte array, expected " + length + " " +
-                                                        "but only got " + readLength + " bytes");
+        int readLength = 0;
+        while (readLength < length) {
+            final int partLength = inputStream.read(data, readLength, length - readLength);
+
+            // Sanity check what we read
+            if (partLength < 0) throw new IOException("Could not read all data for byte array, expected " + length + " " +
+                                                      "but only got " + readLength + " bytes before the end of the stream");
+            readLength += partLength;
+        }
         return data;
     }
 
@@ -0,0 +1,43 @@
+package org.flowutils.raster.codec;
+
+/**
+ * Reads values written with a BitWriter.
+ * Throws IllegalArgumentException if the data ends unexpectedly.
+ *
+ * Not thread safe.
+ */
+final class BitReader {
+
+    private final byte[] data;
+    private final int end;
+    private int position;
+    private long buffer;
+    private int bufferedBits;
+
+    BitReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    boolean readBit() {
+        return readBits(1) != 0;
+    }
+
+    /**
+     * @param bitCount number of bits to read, 0..32.
+     * @return the read bits, in the lowest bits of the result.
+     */
+    int readBits(int bitCount) {
+        if (bitCount == 0) return 0;
+
+        while (bufferedBits < bitCount) {
+            if (position >= end) throw new IllegalArgumentException("Unexpected end of encoded data");
+            buffer = (buffer << 8) | (data[position++] & 0xFF);
+            bufferedBits += 8;
+        }
+
+        bufferedBits -= bitCount;
+        return (int) ((buffer >>> bufferedBits) & (0xFFFFFFFFL >>> (32 - bitCount)));
+    }
+}
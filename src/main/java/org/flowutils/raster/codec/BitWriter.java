@@ -0,0 +1,49 @@
+package org.flowutils.raster.codec;
+
+/**
+ * Writes values with arbitrary bit lengths to a ByteArrayWriter, most significant bit first.
+ *
+ * Not thread safe.
+ */
+final class BitWriter {
+
+    private final ByteArrayWriter writer;
+    private long buffer;
+    private int bufferedBits;
+
+    BitWriter(ByteArrayWriter writer) {
+        this.writer = writer;
+    }
+
+    void writeBit(boolean bit) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * Writes the lowest bitCount bits of the value.
+     *
+     * @param bitCount number of bits to write, 0..32.
+     */
+    void writeBits(int value, int bitCount) {
+        if (bitCount == 0) return;
+
+        buffer = (buffer << bitCount) | (value & (0xFFFFFFFFL >>> (32 - bitCount)));
+        bufferedBits += bitCount;
+
+        while (bufferedBits >= 8) {
+            bufferedBits -= 8;
+            writer.writeByte((int) (buffer >>> bufferedBits));
+        }
+    }
+
+    /**
+     * Writes any remaining bits, padded with zeroes to a whole byte.
+     */
+    void flush() {
+        if (bufferedBits > 0) {
+            writer.writeByte((int) (buffer << (8 - bufferedBits)));
+            bufferedBits = 0;
+        }
+        buffer = 0;
+    }
+}
@@ -0,0 +1,88 @@
+package org.flowutils.raster.codec;
+
+/**
+ * Reads data written with a ByteArrayWriter.
+ * Throws IllegalArgumentException if the data ends unexpectedly or contains invalid values.
+ *
+ * Not thread safe.
+ */
+final class ByteArrayReader {
+
+    private final byte[] data;
+    private final int end;
+    private int position;
+
+    ByteArrayReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    ByteArrayReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    /**
+     * @return current read position in the data array.
+     */
+    int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return true if all the data has been read.
+     */
+    boolean isAtEnd() {
+        return position >= end;
+    }
+
+    int readByte() {
+        if (position >= end) throw new IllegalArgumentException("Unexpected end of encoded data");
+        return data[position++] & 0xFF;
+    }
+
+    void readBytes(byte[] target, int offset, int length) {
+        if (length < 0 || position + length > end) throw new IllegalArgumentException("Unexpected end of encoded data");
+        System.arraycopy(data, position, target, offset, length);
+        position += length;
+    }
+
+    /**
+     * Skips the specified number of bytes.
+     */
+    void skip(int length) {
+        if (length < 0 || position + length > end) throw new IllegalArgumentException("Unexpected end of encoded data");
+        position += length;
+    }
+
+    int readVarInt() {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final int b = readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IllegalArgumentException("Invalid variable length integer in encoded data");
+    }
+
+    /**
+     * Reads a variable length integer that should be in the range 0..max.
+     *
+     * @param name name of the value, for the error message.
+     */
+    int readVarInt(String name, int max) {
+        final int value = readVarInt();
+        if (value < 0 || value > max) throw new IllegalArgumentException("Invalid " + name + " in encoded data: " + value + ", it should be in the range 0.." + max);
+        return value;
+    }
+
+    long readVarLong() {
+        long result = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            final int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IllegalArgumentException("Invalid variable length integer in encoded data");
+    }
+}
@@ -0,0 +1,81 @@
+package org.flowutils.raster.codec;
+
+import java.util.Arrays;
+
+/**
+ * Growable byte array for writing encoded data, with unsigned variable length integers.
+ *
+ * Not thread safe.
+ */
+final class ByteArrayWriter {
+
+    private byte[] data;
+    private int size;
+
+    ByteArrayWriter() {
+        this(256);
+    }
+
+    ByteArrayWriter(int initialCapacity) {
+        data = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * @return number of bytes written.
+     */
+    int size() {
+        return size;
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        data[size++] = (byte) value;
+    }
+
+    void writeBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, data, size, length);
+        size += length;
+    }
+
+    void writeBytes(ByteArrayWriter other) {
+        writeBytes(other.data, 0, other.size);
+    }
+
+    /**
+     * Writes the lowest 32 bits of the value as an unsigned variable length integer, seven bits per byte, least significant bits first.
+     */
+    void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            data[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[size++] = (byte) value;
+    }
+
+    /**
+     * Writes the value as an unsigned variable length integer, seven bits per byte, least significant bits first.
+     */
+    void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            data[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[size++] = (byte) value;
+    }
+
+    /**
+     * @return a copy of the written bytes.
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    private void ensureCapacity(int additionalBytes) {
+        if (size + additionalBytes > data.length) {
+            data = Arrays.copyOf(data, Math.max(size + additionalBytes, data.length * 2));
+        }
+    }
+}
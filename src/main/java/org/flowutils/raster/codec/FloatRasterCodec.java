@@ -0,0 +1,449 @@
+package org.flowutils.raster.codec;
+
+import org.flowutils.Check;
+import org.flowutils.StreamUtils;
+import org.flowutils.Symbol;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.parallel.RowBandTask;
+import org.flowutils.raster.raster.multi.MultiRaster;
+import org.flowutils.raster.raster.single.Raster;
+import org.flowutils.raster.raster.single.RasterImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * Compresses raster values for persistence, in a way that works well for smooth fields.
+ *
+ * Each value is predicted from its already encoded neighbours with a plane predictor (left + up - up left),
+ * and the bits of the prediction and the value are XORed.  For smooth data the XOR has many leading and trailing zero bits,
+ * and only the bits between them are stored, reusing the previous window when it fits, as in the Gorilla time series compression.
+ *
+ * By default the compression is lossless, including NaN payloads.  Optionally values can be rounded to fewer mantissa bits
+ * before encoding, so that the decoded values differ at most by a given maximum error from the originals, which compresses better.
+ *
+ * The raster is encoded in independent square tiles, so tiles are encoded and decoded in parallel by the RowBandExecutor.
+ * The encoded data is streamed a batch of tile rows at a time, so the whole encoded raster does not need to fit in memory.
+ *
+ * Immutable and thread safe.
+ */
+public final class FloatRasterCodec {
+
+    /**
+     * Default width and height of the independently encoded tiles.
+     */
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    /**
+     * Number of tile rows encoded or decoded together before they are written or read.
+     */
+    private static final int TILE_ROWS_PER_BATCH = 16;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final float maxError;
+    private final int maxErrorExponent;
+    private final int tileSize;
+    private final RowBandExecutor executor;
+
+    /**
+     * Creates a lossless codec with the default tile size, that runs on the calling thread.
+     */
+    public FloatRasterCodec() {
+        this(0, DEFAULT_TILE_SIZE, RowBandExecutor.SERIAL);
+    }
+
+    /**
+     * @param maxError maximum difference between the original and decoded values, or 0 for lossless compression.
+     *                 NaN and infinite values are always stored exactly.
+     * @param tileSize width and height of the independently encoded tiles.
+     * @param executor executor used to encode and decode bands of tile rows, possibly in parallel.
+     */
+    public FloatRasterCodec(float maxError, int tileSize, RowBandExecutor executor) {
+        Check.positiveOrZero(maxError, "maxError");
+        if (Float.isInfinite(maxError)) throw new IllegalArgumentException("The maxError should be finite");
+        Check.positive(tileSize, "tileSize");
+        Check.notNull(executor, "executor");
+
+        this.maxError = maxError;
+        this.tileSize = tileSize;
+
+        // Calculated as a double, so that it is correct for subnormal errors too
+        maxErrorExponent = Math.getExponent((double) maxError);
+        this.executor = executor;
+    }
+
+    /**
+     * @return maximum difference between the original and decoded values, or 0 for lossless compression.
+     */
+    public float getMaxError() {
+        return maxError;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public RowBandExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return the raster encoded to a byte array.
+     */
+    public byte[] encode(Raster raster) {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            encode(raster, outputStream);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected IO exception when writing to a byte array: " + e.getMessage(), e);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Decodes a raster encoded with encode into the target raster.
+     *
+     * @throws IllegalArgumentException if the data is invalid or is for a raster of a different size.
+     */
+    public void decode(byte[] data, Raster target) {
+        Check.notNull(data, "data");
+        try {
+            decode(new ByteArrayInputStream(data), target);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid encoded raster: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Encodes the raster to the output stream.
+     */
+    public void encode(final Raster raster, OutputStream outputStream) throws IOException {
+        Check.notNull(raster, "raster");
+        Check.notNull(outputStream, "outputStream");
+
+        final int sizeX = raster.getSizeX();
+        final int sizeY = raster.getSizeY();
+        outputStream.write(FORMAT_VERSION);
+        StreamUtils.writeInt(outputStream, sizeX);
+        StreamUtils.writeInt(outputStream, sizeY);
+        StreamUtils.writeInt(outputStream, tileSize);
+
+        final int tileRows = (sizeY + tileSize - 1) / tileSize;
+        final byte[][] tileRowData = new byte[Math.min(TILE_ROWS_PER_BATCH, tileRows)][];
+        for (int batchStart = 0; batchStart < tileRows; batchStart += TILE_ROWS_PER_BATCH) {
+            final int batchSize = Math.min(TILE_ROWS_PER_BATCH, tileRows - batchStart);
+            final int firstTileRow = batchStart;
+
+            executor.execute(cellsPerTileRow(sizeX, tileSize), batchSize, new RowBandTask() {
+                @Override public void processRows(int startY, int endY) {
+                    final float[] rows = new float[tileSize * raster.getSizeX()];
+                    for (int i = startY; i < endY; i++) {
+                        tileRowData[i] = encodeTileRow(raster, firstTileRow + i, rows);
+                    }
+                }
+            });
+
+            for (int i = 0; i < batchSize; i++) {
+                StreamUtils.writeByteArray(outputStream, tileRowData[i]);
+            }
+        }
+    }
+
+    /**
+     * Decodes a raster encoded with encode from the input stream into the target raster.
+     *
+     * @throws IOException if the stream could not be read, or the data is invalid or is for a raster of a different size.
+     */
+    public void decode(InputStream inputStream, Raster target) throws IOException {
+        Check.notNull(inputStream, "inputStream");
+        Check.notNull(target, "target");
+
+        final Header header = readHeader(inputStream);
+        if (header.sizeX != target.getSizeX() || header.sizeY != target.getSizeY()) {
+            throw new IOException("The encoded raster has the size " + header.sizeX + " x " + header.sizeY + ", " +
+                                  "but the target raster has the size " + target.getSizeX() + " x " + target.getSizeY());
+        }
+
+        decodeTiles(inputStream, header, target);
+    }
+
+    /**
+     * Decodes a raster encoded with encode from the input stream into a new raster.
+     *
+     * @throws IOException if the stream could not be read, or the data is invalid.
+     */
+    public RasterImpl decode(InputStream inputStream) throws IOException {
+        Check.notNull(inputStream, "inputStream");
+
+        final Header header = readHeader(inputStream);
+        final RasterImpl raster = new RasterImpl(header.sizeX, header.sizeY);
+        decodeTiles(inputStream, header, raster);
+        return raster;
+    }
+
+    /**
+     * Encodes all the channels of the raster to the output stream, channel by channel.
+     */
+    public void encode(MultiRaster raster, OutputStream outputStream) throws IOException {
+        Check.notNull(raster, "raster");
+        Check.notNull(outputStream, "outputStream");
+
+        StreamUtils.writeInt(outputStream, raster.getChannelIds().size());
+        for (Map.Entry<Symbol, Raster> entry : raster.getChannels().entrySet()) {
+            StreamUtils.writeByteArray(outputStream, entry.getKey().getString().getBytes(UTF_8));
+            encode(entry.getValue(), outputStream);
+        }
+    }
+
+    /**
+     * Decodes the channels of a raster encoded with encode from the input stream into the matching channels of the target raster.
+     *
+     * @throws IOException if the stream could not be read, or the data is invalid, is for a raster of a different size,
+     *                     or contains a channel that the target does not have.
+     */
+    public void decode(InputStream inputStream, MultiRaster target) throws IOException {
+        Check.notNull(inputStream, "inputStream");
+        Check.notNull(target, "target");
+
+        final int channelCount = StreamUtils.readInt(inputStream);
+        if (channelCount < 0) throw new IOException("Invalid channel count " + channelCount);
+
+        for (int i = 0; i < channelCount; i++) {
+            final Symbol channelId = Symbol.get(new String(StreamUtils.readByteArray(inputStream), UTF_8));
+            if (!target.hasChannel(channelId)) throw new IOException("The target raster does not have the channel " + channelId);
+
+            decode(inputStream, target.getChannel(channelId));
+        }
+    }
+
+    private byte[] encodeTileRow(Raster raster, int tileY, float[] rows) {
+        final int sizeX = raster.getSizeX();
+        final int startY = tileY * tileSize;
+        final int height = Math.min(tileSize, raster.getSizeY() - startY);
+        for (int y = 0; y < height; y++) {
+            raster.readRow(startY + y, 0, sizeX, rows, y * sizeX);
+        }
+
+        final int tileColumns = (sizeX + tileSize - 1) / tileSize;
+        final ByteArrayWriter[] tiles = new ByteArrayWriter[tileColumns];
+        int totalSize = 0;
+        for (int tileX = 0; tileX < tileColumns; tileX++) {
+            final int startX = tileX * tileSize;
+            tiles[tileX] = new ByteArrayWriter(tileSize * tileSize);
+            encodeTile(rows, sizeX, startX, Math.min(tileSize, sizeX - startX), height, tiles[tileX]);
+            totalSize += tiles[tileX].size();
+        }
+
+        // The lengths of the tiles first, then their data
+        final ByteArrayWriter writer = new ByteArrayWriter(totalSize + 5 * tileColumns);
+        for (ByteArrayWriter tile : tiles) {
+            writer.writeVarInt(tile.size());
+        }
+        for (ByteArrayWriter tile : tiles) {
+            writer.writeBytes(tile);
+        }
+        return writer.toByteArray();
+    }
+
+    private void encodeTile(float[] rows, int rowLength, int startX, int width, int height, ByteArrayWriter output) {
+        final BitWriter bits = new BitWriter(output);
+        int previousLeading = -1;
+        int previousTrailing = 0;
+
+        for (int y = 0; y < height; y++) {
+            int index = y * rowLength + startX;
+            for (int x = 0; x < width; x++) {
+                // Round the value in the buffer, so that later predictions use the same values as the decoder
+                final float value = quantize(rows[index]);
+                rows[index] = value;
+
+                final int xor = Float.floatToRawIntBits(value) ^ predictionBits(rows, index, rowLength, x, y);
+                if (xor == 0) {
+                    bits.writeBit(false);
+                }
+                else {
+                    bits.writeBit(true);
+                    final int leading = Integer.numberOfLeadingZeros(xor);
+                    final int trailing = Integer.numberOfTrailingZeros(xor);
+
+                    if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                        // Fits in the previous window
+                        bits.writeBit(false);
+                        bits.writeBits(xor >>> previousTrailing, 32 - previousLeading - previousTrailing);
+                    }
+                    else {
+                        final int length = 32 - leading - trailing;
+                        bits.writeBit(true);
+                        bits.writeBits(leading, 5);
+                        bits.writeBits(length - 1, 5);
+                        bits.writeBits(xor >>> trailing, length);
+                        previousLeading = leading;
+                        previousTrailing = trailing;
+                    }
+                }
+
+                index++;
+            }
+        }
+
+        bits.flush();
+    }
+
+    private static void decodeTile(byte[] data, int offset, int length, float[] rows, int rowLength, int startX, int width, int height) {
+        final BitReader bits = new BitReader(data, offset, length);
+        int previousLeading = -1;
+        int previousTrailing = 0;
+
+        for (int y = 0; y < height; y++) {
+            int index = y * rowLength + startX;
+            for (int x = 0; x < width; x++) {
+                int xor = 0;
+                if (bits.readBit()) {
+                    if (!bits.readBit()) {
+                        if (previousLeading < 0) throw new IllegalArgumentException("Invalid encoded tile, no previous window to reuse");
+                        xor = bits.readBits(32 - previousLeading - previousTrailing) << previousTrailing;
+                    }
+                    else {
+                        final int leading = bits.readBits(5);
+                        final int bitLength = bits.readBits(5) + 1;
+                        if (leading + bitLength > 32) throw new IllegalArgumentException("Invalid encoded tile, window outside the value");
+                        final int trailing = 32 - leading - bitLength;
+                        xor = bits.readBits(bitLength) << trailing;
+                        previousLeading = leading;
+                        previousTrailing = trailing;
+                    }
+                }
+
+                rows[index] = Float.intBitsToFloat(xor ^ predictionBits(rows, index, rowLength, x, y));
+                index++;
+            }
+        }
+    }
+
+    /**
+     * @return bits of the value predicted for the cell at the index from its left, upper and upper left neighbours in the tile.
+     *         NaN predictions are canonicalized, so that the encoder and decoder always agree on them.
+     */
+    private static int predictionBits(float[] rows, int index, int rowLength, int x, int y) {
+        final float prediction;
+        if (x == 0 && y == 0) prediction = 0f;
+        else if (y == 0) prediction = rows[index - 1];
+        else if (x == 0) prediction = rows[index - rowLength];
+        else prediction = rows[index - 1] + rows[index - rowLength] - rows[index - rowLength - 1];
+
+        return Float.floatToIntBits(prediction);
+    }
+
+    /**
+     * @return the value rounded to as few mantissa bits as possible while staying within maxError of the value.
+     */
+    private float quantize(float value) {
+        if (maxError == 0 || Float.isNaN(value) || Float.isInfinite(value)) return value;
+        if (Math.abs(value) <= maxError) return 0f;
+
+        // Rounding to a multiple of 2^k units in the last place gives an error of at most 2^(k-1) units in the last place
+        final int exponent = Math.max(Math.getExponent(value), Float.MIN_EXPONENT);
+        final int droppedBits = Math.min(23, maxErrorExponent - exponent + 24);
+        if (droppedBits <= 0) return value;
+
+        final int bits = Float.floatToRawIntBits(value);
+        final float rounded = Float.intBitsToFloat((bits + (1 << (droppedBits - 1))) & ~((1 << droppedBits) - 1));
+        return Float.isInfinite(rounded) ? value : rounded;
+    }
+
+    private Header readHeader(InputStream inputStream) throws IOException {
+        final int version = StreamUtils.readByte(inputStream);
+        if (version != FORMAT_VERSION) throw new IOException("Unsupported encoded raster format version " + version);
+
+        final Header header = new Header(StreamUtils.readInt(inputStream), StreamUtils.readInt(inputStream), StreamUtils.readInt(inputStream));
+        if (header.sizeX < 0 || header.sizeY < 0 || header.tileSize <= 0) {
+            throw new IOException("Invalid encoded raster size " + header.sizeX + " x " + header.sizeY + " or tile size " + header.tileSize);
+        }
+        return header;
+    }
+
+    private void decodeTiles(InputStream inputStream, final Header header, final Raster target) throws IOException {
+        final int sizeX = header.sizeX;
+        final int encodedTileSize = header.tileSize;
+        final int tileRows = (int) (((long) header.sizeY + encodedTileSize - 1) / encodedTileSize);
+        final int tileColumns = (int) (((long) sizeX + encodedTileSize - 1) / encodedTileSize);
+
+        // Each value takes at most 44 bits, plus the tile lengths
+        final long maxTileRowLength = (long) Math.min(encodedTileSize, header.sizeY) * sizeX * 6 + tileColumns * 5L + tileColumns;
+        final int maxLength = (int) Math.min(maxTileRowLength, Integer.MAX_VALUE);
+
+        final byte[][] tileRowData = new byte[Math.min(TILE_ROWS_PER_BATCH, tileRows)][];
+        for (int batchStart = 0; batchStart < tileRows; batchStart += TILE_ROWS_PER_BATCH) {
+            final int batchSize = Math.min(TILE_ROWS_PER_BATCH, tileRows - batchStart);
+            final int firstTileRow = batchStart;
+
+            for (int i = 0; i < batchSize; i++) {
+                tileRowData[i] = StreamUtils.readByteArray(inputStream, maxLength);
+            }
+
+            try {
+                executor.execute(cellsPerTileRow(sizeX, encodedTileSize), batchSize, new RowBandTask() {
+                    @Override public void processRows(int startY, int endY) {
+                        final float[] rows = new float[Math.min(encodedTileSize, header.sizeY) * sizeX];
+                        for (int i = startY; i < endY; i++) {
+                            decodeTileRow(tileRowData[i], header, firstTileRow + i, tileColumns, rows, target);
+                        }
+                    }
+                });
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid encoded raster: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static void decodeTileRow(byte[] data, Header header, int tileY, int tileColumns, float[] rows, Raster target) {
+        final int sizeX = header.sizeX;
+        final int encodedTileSize = header.tileSize;
+        final int startY = tileY * encodedTileSize;
+        final int height = Math.min(encodedTileSize, header.sizeY - startY);
+
+        final ByteArrayReader reader = new ByteArrayReader(data);
+        final int[] tileLengths = new int[tileColumns];
+        for (int tileX = 0; tileX < tileColumns; tileX++) {
+            tileLengths[tileX] = reader.readVarInt("tile length", data.length);
+        }
+
+        int offset = reader.getPosition();
+        for (int tileX = 0; tileX < tileColumns; tileX++) {
+            final int startX = tileX * encodedTileSize;
+            if (offset + tileLengths[tileX] > data.length) throw new IllegalArgumentException("Invalid tile length");
+            decodeTile(data, offset, tileLengths[tileX], rows, sizeX, startX, Math.min(encodedTileSize, sizeX - startX), height);
+            offset += tileLengths[tileX];
+        }
+
+        for (int y = 0; y < height; y++) {
+            target.writeRow(startY + y, 0, sizeX, rows, y * sizeX);
+        }
+    }
+
+    private static int cellsPerTileRow(int sizeX, int tileSize) {
+        return (int) Math.min((long) sizeX * tileSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Size information at the start of an encoded raster.
+     */
+    private static final class Header {
+        private final int sizeX;
+        private final int sizeY;
+        private final int tileSize;
+
+        private Header(int sizeX, int sizeY, int tileSize) {
+            this.sizeX = sizeX;
+            this.sizeY = sizeY;
+            this.tileSize = tileSize;
+        }
+    }
+}
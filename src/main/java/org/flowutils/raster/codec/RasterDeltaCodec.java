@@ -0,0 +1,359 @@
+package org.flowutils.raster.codec;
+
+import org.flowutils.Check;
+import org.flowutils.StreamUtils;
+import org.flowutils.Symbol;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.parallel.RowBandTask;
+import org.flowutils.raster.raster.multi.MultiRaster;
+import org.flowutils.raster.raster.single.Raster;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * Encodes the changes between two versions of a raster as a compact patch, that can be applied to the previous version to get the current one.
+ * Used e.g. to replicate simulation rasters between processes.
+ *
+ * The raster is split into square tiles, and only the tiles that changed are included in the patch.
+ * For each changed tile the bits of the previous and current values are XORed, so unchanged cells become zero
+ * and small changes become small numbers, and the XORed values are stored as runs of zeroes and variable length integers.
+ *
+ * The patches are plain byte arrays, so they can be framed with StreamUtils.writeByteArray (see writeDelta and readAndApplyDelta)
+ * or passed through a Serializer as byte[] objects.
+ *
+ * Tile rows are encoded in parallel by the RowBandExecutor.  Immutable and thread safe.
+ */
+public final class RasterDeltaCodec {
+
+    /**
+     * Default width and height of the tiles that are checked for changes.
+     */
+    public static final int DEFAULT_TILE_SIZE = 32;
+
+    private static final int RASTER_FORMAT_VERSION = 1;
+    private static final int MULTI_RASTER_FORMAT_VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int tileSize;
+    private final RowBandExecutor executor;
+
+    /**
+     * Creates a codec with the default tile size, that runs on the calling thread.
+     */
+    public RasterDeltaCodec() {
+        this(DEFAULT_TILE_SIZE, RowBandExecutor.SERIAL);
+    }
+
+    /**
+     * @param tileSize width and height of the tiles that are checked for changes.
+     *                 Smaller tiles can leave out more unchanged cells, but each changed tile has some overhead.
+     * @param executor executor used to encode bands of tile rows, possibly in parallel.
+     */
+    public RasterDeltaCodec(int tileSize, RowBandExecutor executor) {
+        Check.positive(tileSize, "tileSize");
+        Check.notNull(executor, "executor");
+
+        this.tileSize = tileSize;
+        this.executor = executor;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public RowBandExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @param previous the previous version of the raster.
+     * @param current the current version of the raster.  Must have the same size as the previous version.
+     * @return patch that changes the previous version to the current one when applied to it.
+     */
+    public byte[] encode(Raster previous, Raster current) {
+        return encodeRaster(previous, current).toByteArray();
+    }
+
+    /**
+     * Applies a patch created by encode to the previous version of a raster, changing it in place to the current version.
+     * Only the changed tiles are read and written.
+     *
+     * @param delta patch created by encode.
+     * @param target the previous version of the raster, that the patch was created from.
+     * @throws IllegalArgumentException if the patch is invalid or was created for a raster of a different size.
+     */
+    public void apply(byte[] delta, Raster target) {
+        Check.notNull(delta, "delta");
+        Check.notNull(target, "target");
+
+        final ByteArrayReader reader = new ByteArrayReader(delta);
+        applyRaster(reader, target);
+        if (!reader.isAtEnd()) throw new IllegalArgumentException("Unexpected data after the end of the raster delta");
+    }
+
+    /**
+     * Encodes the changes of all the channels of the current raster.
+     *
+     * @param previous the previous version of the raster.  Must contain all the channels of the current version.
+     * @param current the current version of the raster.  Must have the same size as the previous version.
+     * @return patch that changes the previous version to the current one when applied to it.
+     */
+    public byte[] encode(MultiRaster previous, MultiRaster current) {
+        Check.notNull(previous, "previous");
+        Check.notNull(current, "current");
+
+        final ByteArrayWriter writer = new ByteArrayWriter();
+        writer.writeByte(MULTI_RASTER_FORMAT_VERSION);
+        writer.writeVarInt(current.getChannelIds().size());
+
+        for (Map.Entry<Symbol, Raster> entry : current.getChannels().entrySet()) {
+            final Symbol channelId = entry.getKey();
+            if (!previous.hasChannel(channelId)) throw new IllegalArgumentException("The previous raster does not have the channel " + channelId);
+
+            final byte[] name = channelId.getString().getBytes(UTF_8);
+            writer.writeVarInt(name.length);
+            writer.writeBytes(name, 0, name.length);
+
+            final ByteArrayWriter channelDelta = encodeRaster(previous.getChannel(channelId), entry.getValue());
+            writer.writeVarInt(channelDelta.size());
+            writer.writeBytes(channelDelta);
+        }
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Applies a patch created by encode to the previous version of a raster, changing its channels in place to the current version.
+     *
+     * @param delta patch created by encode.
+     * @param target the previous version of the raster, that the patch was created from.
+     * @throws IllegalArgumentException if the patch is invalid, was created for a raster of a different size,
+     *                                  or contains a channel that the target does not have.
+     */
+    public void apply(byte[] delta, MultiRaster target) {
+        Check.notNull(delta, "delta");
+        Check.notNull(target, "target");
+
+        final ByteArrayReader reader = new ByteArrayReader(delta);
+        final int version = reader.readByte();
+        if (version != MULTI_RASTER_FORMAT_VERSION) throw new IllegalArgumentException("Unsupported multi raster delta format version " + version);
+
+        final int channelCount = reader.readVarInt("channel count", delta.length);
+        for (int i = 0; i < channelCount; i++) {
+            final byte[] name = new byte[reader.readVarInt("channel name length", delta.length)];
+            reader.readBytes(name, 0, name.length);
+            final Symbol channelId = Symbol.get(new String(name, UTF_8));
+            if (!target.hasChannel(channelId)) throw new IllegalArgumentException("The target raster does not have the channel " + channelId);
+
+            final int length = reader.readVarInt("channel delta length", delta.length);
+            final int end = reader.getPosition() + length;
+            applyRaster(reader, target.getChannel(channelId));
+            if (reader.getPosition() != end) throw new IllegalArgumentException("The delta for the channel " + channelId + " has an invalid length");
+        }
+
+        if (!reader.isAtEnd()) throw new IllegalArgumentException("Unexpected data after the end of the multi raster delta");
+    }
+
+    /**
+     * Encodes the changes between the rasters, and writes them to the stream with a length prefix, using StreamUtils.writeByteArray.
+     */
+    public void writeDelta(OutputStream outputStream, Raster previous, Raster current) throws IOException {
+        StreamUtils.writeByteArray(outputStream, encode(previous, current));
+    }
+
+    /**
+     * Encodes the changes between the rasters, and writes them to the stream with a length prefix, using StreamUtils.writeByteArray.
+     */
+    public void writeDelta(OutputStream outputStream, MultiRaster previous, MultiRaster current) throws IOException {
+        StreamUtils.writeByteArray(outputStream, encode(previous, current));
+    }
+
+    /**
+     * Reads a patch written with writeDelta from the stream, and applies it to the target.
+     *
+     * @param inputStream stream to read from.
+     * @param target the previous version of the raster, that the patch was created from.
+     * @param maxLength maximum length of the patch in bytes.  If longer, an IOException is thrown.
+     */
+    public void readAndApplyDelta(InputStream inputStream, Raster target, int maxLength) throws IOException {
+        apply(StreamUtils.readByteArray(inputStream, maxLength), target);
+    }
+
+    /**
+     * Reads a patch written with writeDelta from the stream, and applies it to the target.
+     *
+     * @param inputStream stream to read from.
+     * @param target the previous version of the raster, that the patch was created from.
+     * @param maxLength maximum length of the patch in bytes.  If longer, an IOException is thrown.
+     */
+    public void readAndApplyDelta(InputStream inputStream, MultiRaster target, int maxLength) throws IOException {
+        apply(StreamUtils.readByteArray(inputStream, maxLength), target);
+    }
+
+    private ByteArrayWriter encodeRaster(final Raster previous, final Raster current) {
+        Check.notNull(previous, "previous");
+        Check.notNull(current, "current");
+        Check.equal(current.getSizeX(), "current sizeX", previous.getSizeX(), "previous sizeX");
+        Check.equal(current.getSizeY(), "current sizeY", previous.getSizeY(), "previous sizeY");
+
+        final int sizeX = previous.getSizeX();
+        final int sizeY = previous.getSizeY();
+        final int tileRows = (sizeY + tileSize - 1) / tileSize;
+
+        // Each tile row is encoded separately, so that they can be encoded in parallel
+        final ByteArrayWriter[] tileRowWriters = new ByteArrayWriter[tileRows];
+        executor.execute((int) Math.min((long) sizeX * tileSize, Integer.MAX_VALUE), tileRows, new RowBandTask() {
+            @Override public void processRows(int startTileY, int endTileY) {
+                final float[] previousRows = new float[tileSize * sizeX];
+                final float[] currentRows = new float[tileSize * sizeX];
+                final int[] xors = new int[tileSize * tileSize];
+
+                for (int tileY = startTileY; tileY < endTileY; tileY++) {
+                    tileRowWriters[tileY] = encodeTileRow(previous, current, tileY, previousRows, currentRows, xors);
+                }
+            }
+        });
+
+        final ByteArrayWriter writer = new ByteArrayWriter();
+        writer.writeByte(RASTER_FORMAT_VERSION);
+        writer.writeVarInt(sizeX);
+        writer.writeVarInt(sizeY);
+        writer.writeVarInt(tileSize);
+        for (ByteArrayWriter tileRowWriter : tileRowWriters) {
+            writer.writeBytes(tileRowWriter);
+        }
+        return writer;
+    }
+
+    private ByteArrayWriter encodeTileRow(Raster previous, Raster current, int tileY, float[] previousRows, float[] currentRows, int[] xors) {
+        final int sizeX = previous.getSizeX();
+        final int startY = tileY * tileSize;
+        final int height = Math.min(tileSize, previous.getSizeY() - startY);
+
+        for (int i = 0; i < height; i++) {
+            previous.readRow(startY + i, 0, sizeX, previousRows, i * sizeX);
+            current.readRow(startY + i, 0, sizeX, currentRows, i * sizeX);
+        }
+
+        final ByteArrayWriter tiles = new ByteArrayWriter();
+        int changedTiles = 0;
+        int previousTileX = -1;
+
+        for (int tileX = 0; tileX * tileSize < sizeX; tileX++) {
+            final int startX = tileX * tileSize;
+            final int width = Math.min(tileSize, sizeX - startX);
+
+            // XOR the bits of the values in the tile
+            boolean changed = false;
+            int xorIndex = 0;
+            for (int y = 0; y < height; y++) {
+                int index = y * sizeX + startX;
+                for (int x = 0; x < width; x++) {
+                    final int xor = Float.floatToRawIntBits(previousRows[index]) ^ Float.floatToRawIntBits(currentRows[index]);
+                    xors[xorIndex++] = xor;
+                    if (xor != 0) changed = true;
+                    index++;
+                }
+            }
+
+            if (changed) {
+                tiles.writeVarInt(tileX - previousTileX - 1);
+                writeRuns(tiles, xors, width * height);
+                previousTileX = tileX;
+                changedTiles++;
+            }
+        }
+
+        final ByteArrayWriter writer = new ByteArrayWriter(tiles.size() + 5);
+        writer.writeVarInt(changedTiles);
+        writer.writeBytes(tiles);
+        return writer;
+    }
+
+    /**
+     * Writes the XORed values as pairs of a run of zeroes and a run of literal values.
+     * Single zeroes between non-zero values are included in the literal runs, as that is shorter than starting a new pair.
+     */
+    private static void writeRuns(ByteArrayWriter writer, int[] xors, int count) {
+        int i = 0;
+        while (i < count) {
+            final int zeroStart = i;
+            while (i < count && xors[i] == 0) i++;
+            final int zeroRun = i - zeroStart;
+
+            final int literalStart = i;
+            while (i < count && (xors[i] != 0 || (i + 1 < count && xors[i + 1] != 0))) i++;
+
+            writer.writeVarInt(zeroRun);
+            writer.writeVarInt(i - literalStart);
+            for (int j = literalStart; j < i; j++) {
+                writer.writeVarInt(xors[j]);
+            }
+        }
+    }
+
+    private static void applyRaster(ByteArrayReader reader, Raster target) {
+        final int version = reader.readByte();
+        if (version != RASTER_FORMAT_VERSION) throw new IllegalArgumentException("Unsupported raster delta format version " + version);
+
+        final int sizeX = reader.readVarInt();
+        final int sizeY = reader.readVarInt();
+        if (sizeX != target.getSizeX() || sizeY != target.getSizeY()) {
+            throw new IllegalArgumentException("The delta is for a raster of size " + sizeX + " x " + sizeY + ", " +
+                                               "but the target raster has the size " + target.getSizeX() + " x " + target.getSizeY());
+        }
+        final int tileSize = reader.readVarInt("tile size", Integer.MAX_VALUE);
+        if (tileSize == 0) throw new IllegalArgumentException("Invalid tile size 0 in the raster delta");
+
+        final int tileRows = (int) (((long) sizeY + tileSize - 1) / tileSize);
+        final int tileColumns = (int) (((long) sizeX + tileSize - 1) / tileSize);
+        final float[] row = new float[Math.min(tileSize, sizeX)];
+        final int[] xors = new int[Math.min(tileSize, sizeX) * Math.min(tileSize, sizeY)];
+
+        for (int tileY = 0; tileY < tileRows; tileY++) {
+            final int changedTiles = reader.readVarInt("changed tile count", tileColumns);
+            final int startY = tileY * tileSize;
+            final int height = Math.min(tileSize, sizeY - startY);
+
+            int tileX = -1;
+            for (int i = 0; i < changedTiles; i++) {
+                tileX += 1 + reader.readVarInt("tile skip", tileColumns);
+                if (tileX >= tileColumns) throw new IllegalArgumentException("Invalid tile position in the raster delta");
+
+                final int startX = tileX * tileSize;
+                final int width = Math.min(tileSize, sizeX - startX);
+                readRuns(reader, xors, width * height);
+
+                int xorIndex = 0;
+                for (int y = startY; y < startY + height; y++) {
+                    target.readRow(y, startX, width, row, 0);
+                    for (int x = 0; x < width; x++) {
+                        row[x] = Float.intBitsToFloat(Float.floatToRawIntBits(row[x]) ^ xors[xorIndex++]);
+                    }
+                    target.writeRow(y, startX, width, row, 0);
+                }
+            }
+        }
+    }
+
+    private static void readRuns(ByteArrayReader reader, int[] xors, int count) {
+        int i = 0;
+        while (i < count) {
+            final int zeroRun = reader.readVarInt("zero run", count - i);
+            for (int j = 0; j < zeroRun; j++) {
+                xors[i++] = 0;
+            }
+
+            final int literalRun = reader.readVarInt("literal run", count - i);
+            for (int j = 0; j < literalRun; j++) {
+                xors[i++] = reader.readVarInt();
+            }
+
+            if (zeroRun == 0 && literalRun == 0) throw new IllegalArgumentException("Empty run in the raster delta");
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package org.flowutils.raster.expression;
+
+import org.flowutils.Check;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.parallel.RowBandTask;
+import org.flowutils.raster.raster.single.Raster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A lazily evaluated expression over rasters.
+ *
+ * Operations on an expression do not touch any raster data, they just record the operation in a new expression node.
+ * Nodes can be shared between several expressions, so the operations form a directed acyclic graph.
+ * When evaluateTo is called, the whole graph is evaluated in a single pass over the target raster,
+ * a row segment at a time, so that intermediate values stay in the cache instead of being written to temporary rasters.
+ * Shared nodes are only evaluated once for each cell.
+ *
+ * All operations are point-wise, so the target raster may also be used as a source in the expression.
+ *
+ * Expressions are immutable and can be evaluated from several threads at the same time.
+ */
+public abstract class RasterExpression {
+
+    /**
+     * Number of cells along a row to evaluate at a time.  Keeps the row buffers of all nodes small enough to stay in the cache.
+     */
+    private static final int SEGMENT_LENGTH = 1024;
+
+    private final RasterExpression[] inputs;
+
+    /**
+     * @param inputs expressions that this expression uses as input.
+     */
+    protected RasterExpression(RasterExpression... inputs) {
+        for (int i = 0; i < inputs.length; i++) {
+            Check.notNull(inputs[i], "input " + i);
+        }
+
+        this.inputs = inputs;
+    }
+
+    /**
+     * @return an expression that reads the values of the specified raster.
+     */
+    public static RasterExpression of(Raster raster) {
+        return new SourceExpression(raster);
+    }
+
+    /**
+     * @return an expression with the same value for each cell.
+     */
+    public static RasterExpression constant(float value) {
+        return new ConstantExpression(value);
+    }
+
+    /**
+     * @return expression that adds the other expression to this one.
+     */
+    public final RasterExpression add(RasterExpression other) {
+        return add(other, 1, 0);
+    }
+
+    /**
+     * @return expression that adds the specified value to this one.
+     */
+    public final RasterExpression add(float offset) {
+        return multiplyAdd(1, offset);
+    }
+
+    /**
+     * @param other expression to add to this one.
+     * @param otherScale value to scale the other expression with before adding it.
+     * @param offset value to add to the result.
+     * @return expression that calculates: this + other * otherScale + offset
+     */
+    public final RasterExpression add(RasterExpression other, float otherScale, float offset) {
+        return new AddExpression(this, other, otherScale, offset);
+    }
+
+    /**
+     * @return expression that subtracts the other expression from this one.
+     */
+    public final RasterExpression subtract(RasterExpression other) {
+        return add(other, -1, 0);
+    }
+
+    /**
+     * @return expression that multiplies this expression with the other one.
+     */
+    public final RasterExpression multiply(RasterExpression other) {
+        return new MultiplyExpression(this, other);
+    }
+
+    /**
+     * @return expression that multiplies this expression with the specified scale.
+     */
+    public final RasterExpression multiply(float scale) {
+        return multiplyAdd(scale, 0);
+    }
+
+    /**
+     * @return expression that calculates: this * scale + offset
+     */
+    public final RasterExpression multiplyAdd(float scale, float offset) {
+        return new MultiplyAddExpression(this, scale, offset);
+    }
+
+    /**
+     * @return expression that picks the smaller value of this and the other expression.
+     */
+    public final RasterExpression min(RasterExpression other) {
+        return new MinExpression(this, other);
+    }
+
+    /**
+     * @return expression that picks the larger value of this and the other expression.
+     */
+    public final RasterExpression max(RasterExpression other) {
+        return new MaxExpression(this, other);
+    }
+
+    /**
+     * @return expression that clamps the values of this expression to the specified range.
+     */
+    public final RasterExpression clamp(float min, float max) {
+        return new ClampExpression(this, min, max);
+    }
+
+    /**
+     * Evaluates this expression for each cell of the target raster, on the calling thread.
+     *
+     * @param target raster to write the result to.  Must have the same size as the source rasters used in the expression.
+     */
+    public final void evaluateTo(Raster target) {
+        evaluateTo(target, RowBandExecutor.SERIAL);
+    }
+
+    /**
+     * Evaluates this expression for each cell of the target raster.
+     *
+     * @param target raster to write the result to.  Must have the same size as the source rasters used in the expression.
+     * @param executor executor to use to evaluate bands of rows, possibly in parallel.
+     */
+    public final void evaluateTo(final Raster target, RowBandExecutor executor) {
+        Check.notNull(target, "target");
+        Check.notNull(executor, "executor");
+
+        final int sizeX = target.getSizeX();
+        final int sizeY = target.getSizeY();
+
+        // Sort the nodes so that each node comes after its inputs
+        final List<RasterExpression> nodes = new ArrayList<RasterExpression>();
+        final Map<RasterExpression, Integer> slots = new IdentityHashMap<RasterExpression, Integer>();
+        addNodes(this, nodes, slots);
+
+        // Resolve the input slots of each node, and make sure the source rasters match the target
+        final int nodeCount = nodes.size();
+        final int[][] inputSlots = new int[nodeCount][];
+        for (int i = 0; i < nodeCount; i++) {
+            final RasterExpression node = nodes.get(i);
+            node.checkSize(sizeX, sizeY);
+
+            inputSlots[i] = new int[node.inputs.length];
+            for (int j = 0; j < node.inputs.length; j++) {
+                inputSlots[i][j] = slots.get(node.inputs[j]);
+            }
+        }
+
+        final RasterExpression[] steps = nodes.toArray(new RasterExpression[nodeCount]);
+        final boolean targetArrayBacked = target.isArrayBacked();
+        final float[] targetData = targetArrayBacked ? target.getData() : null;
+        final int targetOffset = target.getDataOffset();
+        final int targetXStep = target.getDataXStep();
+        final int targetRowStep = target.getDataRowStep();
+
+        executor.execute(sizeX, sizeY, new RowBandTask() {
+            @Override public void processRows(int startY, int endY) {
+                // Allocate row segment buffers for the band
+                final int bufferLength = Math.min(sizeX, SEGMENT_LENGTH);
+                final float[][] buffers = new float[nodeCount][bufferLength];
+                final float[][][] inputBuffers = new float[nodeCount][][];
+                for (int i = 0; i < nodeCount; i++) {
+                    inputBuffers[i] = new float[inputSlots[i].length][];
+                    for (int j = 0; j < inputSlots[i].length; j++) {
+                        inputBuffers[i][j] = buffers[inputSlots[i][j]];
+                    }
+                }
+                final float[] result = buffers[nodeCount - 1];
+
+                for (int y = startY; y < endY; y++) {
+                    for (int x = 0; x < sizeX; x += bufferLength) {
+                        final int length = Math.min(bufferLength, sizeX - x);
+
+                        // Evaluate all nodes for the segment, inputs first
+                        for (int i = 0; i < nodeCount; i++) {
+                            steps[i].evaluate(x, y, length, buffers[i], inputBuffers[i]);
+                        }
+
+                        // Write the result to the target
+                        if (targetArrayBacked) {
+                            int targetIndex = targetOffset + y * targetRowStep + x * targetXStep;
+                            for (int i = 0; i < length; i++) {
+                                targetData[targetIndex] = result[i];
+                                targetIndex += targetXStep;
+                            }
+                        }
+                        else {
+                            target.writeRow(y, x, length, result, 0);
+                        }
+                    }
+                }
+            }
+        });
+
+        // Values written directly to the data array are not seen by the target, so report the change
+        if (targetArrayBacked) target.markDirty(target.getExtent());
+    }
+
+    /**
+     * Evaluates this node for a segment of a row.
+     *
+     * @param x x coordinate of the first cell in the segment.
+     * @param y row of the segment.
+     * @param length number of cells in the segment.
+     * @param result buffer to write the values of the segment to, starting from index zero.
+     * @param inputs buffers with the values of the inputs of this node for the segment, in the order the inputs were given in the constructor.
+     */
+    protected abstract void evaluate(int x, int y, int length, float[] result, float[][] inputs);
+
+    /**
+     * Throws an exception if this node uses a raster with a different size than the specified size.
+     */
+    protected void checkSize(int sizeX, int sizeY) {
+    }
+
+    /**
+     * Adds the node and its inputs to the list of nodes in evaluation order, unless it has already been added.
+     */
+    private static void addNodes(RasterExpression node, List<RasterExpression> nodes, Map<RasterExpression, Integer> slots) {
+        if (!slots.containsKey(node)) {
+            for (RasterExpression input : node.inputs) {
+                addNodes(input, nodes, slots);
+            }
+
+            slots.put(node, nodes.size());
+            nodes.add(node);
+        }
+    }
+
+
+    private static final class SourceExpression extends RasterExpression {
+        private final Raster raster;
+
+        private SourceExpression(Raster raster) {
+            Check.notNull(raster, "raster");
+            this.raster = raster;
+        }
+
+        @Override protected void checkSize(int sizeX, int sizeY) {
+            Check.equal(raster.getSizeX(), "source sizeX", sizeX, "target sizeX");
+            Check.equal(raster.getSizeY(), "source sizeY", sizeY, "target sizeY");
+        }
+
+        @Override protected void evaluate(int x, int y, int length, float[] result, float[][] inputs) {
+            if (!raster.isArrayBacked()) {
+                raster.readRow(y, x, length, result, 0);
+                return;
+            }
+
+            final float[] data = raster.getData();
+            final int xStep = raster.getDataXStep();
+            int index = raster.getDataOffset() + y * raster.getDataRowStep() + x * xStep;
+
+            if (xStep == 1) {
+                System.arraycopy(data, index, result, 0, length);
+            }
+            else {
+                for (int i = 0; i < length; i++) {
+                    result[i] = data[index];
+                    index += xStep;
+                }
+            }
+        }
+    }
+
+    private static final class ConstantExpression extends RasterExpression {
+        private final float value;
+
+        private ConstantExpression(float value) {
+            this.value = value;
+        }
+
+        @Override protected void evaluate(int x, int y, int length, float[] result, float[][] inputs) {
+            Arrays.fill(result, 0, length, value);
+        }
+    }
+
+    private static final class AddExpression extends RasterExpression {
+        private final float otherScale;
+        private final float offset;
+
+        private AddExpression(RasterExpression a, RasterExpression b, float otherScale, float offset) {
+            super(a, b);
+            this.otherScale = otherScale;
+            this.offset = offset;
+        }
+
+        @Override protected void evaluate(int x, int y, int length, float[] result, float[][] inputs) {
+            final float[] a = inputs[0];
+            final float[] b = inputs[1];
+            for (int i = 0; i < length; i++) {
+                result[i] = a[i] + b[i] * otherScale + offset;
+            }
+        }
+    }
+
+    private static final class MultiplyExpression extends RasterExpression {
+        private MultiplyExpression(RasterExpression a, RasterExpression b) {
+            super(a, b);
+        }
+
+        @Override protected void evaluate(int x, int y, int length, float[] result, float[][] inputs) {
+            final float[] a = inputs[0];
+            final float[] b = inputs[1];
+            for (int i = 0; i < length; i++) {
+                result[i] = a[i] * b[i];
+            }
+        }
+    }
+
+    private static final class MultiplyAddExpression extends RasterExpression {
+        private final float scale;
+        private final float offset;
+
+        private MultiplyAddExpression(RasterExpression a, float scale, float offset) {
+            super(a);
+            this.scale = scale;
+            this.offset = offset;
+        }
+
+        @Override protected void evaluate(int x, int y, int length, float[] result, float[][] inputs) {
+            final float[] a = inputs[0];
+            for (int i = 0; i < length; i++) {
+                result[i] = a[i] * scale + offset;
+            }
+        }
+    }
+
+    private static final class MinExpression extends RasterExpression {
+        private MinExpression(RasterExpression a, RasterExpression b) {
+            super(a, b);
+        }
+
+        @Override protected void evaluate(int x, int y, int length, float[] result, float[][] inputs) {
+            final float[] a = inputs[0];
+            final float[] b = inputs[1];
+            for (int i = 0; i < length; i++) {
+                result[i] = Math.min(a[i], b[i]);
+            }
+        }
+    }
+
+    private static final class MaxExpression extends RasterExpression {
+        private MaxExpression(RasterExpression a, RasterExpression b) {
+            super(a, b);
+        }
+
+        @Override protected void evaluate(int x, int y, int length, float[] result, float[][] inputs) {
+            final float[] a = inputs[0];
+            final float[] b = inputs[1];
+            for (int i = 0; i < length; i++) {
+                result[i] = Math.max(a[i], b[i]);
+            }
+        }
+    }
+
+    private static final class ClampExpression extends RasterExpression {
+        private final float min;
+        private final float max;
+
+        private ClampExpression(RasterExpression a, float min, float max) {
+            super(a);
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override protected void evaluate(int x, int y, int length, float[] result, float[][] inputs) {
+            final float[] a = inputs[0];
+            for (int i = 0; i < length; i++) {
+                final float value = a[i];
+                result[i] = value < min ? min : (value > max ? max : value);
+            }
+        }
+    }
+
+}
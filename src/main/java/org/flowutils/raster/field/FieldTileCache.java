@@ -0,0 +1,275 @@
+package org.flowutils.raster.field;
+
+import org.flowutils.Check;
+import org.flowutils.raster.field.single.Field;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.flowutils.MathUtils.fastFloor;
+import static org.flowutils.MathUtils.mix;
+
+/**
+ * Caches sampled tiles of fields, so that rendering the same area again only needs to look up the cached values.
+ *
+ * The field is sampled on a grid, with a cell size that depends on the sample size: level 0 uses the base cell size,
+ * and each following level doubles it.  The coarsest level whose cell size is at most the sample size is used,
+ * so when rendering, the grid is at least as dense as the rendered samples.  The grid is split into square tiles,
+ * that are sampled when first needed, and kept until the maximum number of tiles is exceeded, at which point
+ * the least recently used tiles are evicted.
+ * Values between the grid points are interpolated bilinearly.
+ *
+ * Thread safe.  If two threads need the same missing tile at the same time, both may sample it, but only one copy is kept.
+ */
+public final class FieldTileCache {
+
+    /**
+     * Default number of grid cells along each side of a tile.
+     */
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    /**
+     * Default maximum number of tiles to keep.
+     */
+    public static final int DEFAULT_MAX_TILES = 1024;
+
+    private static final int MAX_LEVEL = 30;
+
+    private final double cellSize;
+    private final int tileSize;
+    private final int maxTiles;
+
+    private final LinkedHashMap<TileKey, float[]> tiles;
+
+    /**
+     * Creates a cache with the default tile size and maximum number of tiles.
+     *
+     * @param cellSize distance between the sampled grid points in the field at the most detailed level.
+     */
+    public FieldTileCache(double cellSize) {
+        this(cellSize, DEFAULT_TILE_SIZE, DEFAULT_MAX_TILES);
+    }
+
+    /**
+     * @param cellSize distance between the sampled grid points in the field at the most detailed level.
+     * @param tileSize number of grid cells along each side of a tile.
+     * @param maxTiles maximum number of tiles to keep.
+     */
+    public FieldTileCache(double cellSize, int tileSize, final int maxTiles) {
+        Check.positive(cellSize, "cellSize");
+        Check.positive(tileSize, "tileSize");
+        Check.positive(maxTiles, "maxTiles");
+
+        this.cellSize = cellSize;
+        this.tileSize = tileSize;
+        this.maxTiles = maxTiles;
+
+        tiles = new LinkedHashMap<TileKey, float[]>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<TileKey, float[]> eldest) {
+                return size() > maxTiles;
+            }
+        };
+    }
+
+    /**
+     * @return distance between the sampled grid points in the field at the most detailed level.
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * @return number of grid cells along each side of a tile.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @return maximum number of tiles to keep.
+     */
+    public int getMaxTiles() {
+        return maxTiles;
+    }
+
+    /**
+     * @return number of tiles currently cached.
+     */
+    public int getTileCount() {
+        synchronized (tiles) {
+            return tiles.size();
+        }
+    }
+
+    /**
+     * Removes all cached tiles.  Should be called when the cached fields change.
+     */
+    public void clear() {
+        synchronized (tiles) {
+            tiles.clear();
+        }
+    }
+
+    /**
+     * @param channel identifies the field among the fields cached in this cache.
+     * @param field field to sample if the needed tile is not cached.
+     * @return the interpolated value at the specified location.
+     */
+    public float getValue(Object channel, Field field, double x, double y, double sampleSize) {
+        final int level = getLevel(sampleSize);
+        final double levelCellSize = getLevelCellSize(level);
+        final double gridX = x / levelCellSize;
+        final double gridY = y / levelCellSize;
+        final int tileX = fastFloor(gridX / tileSize);
+        final int tileY = fastFloor(gridY / tileSize);
+
+        final float[] tile = getTile(channel, field, level, tileX, tileY);
+        return interpolate(tile, gridX - (double) tileX * tileSize, gridY - (double) tileY * tileSize);
+    }
+
+    /**
+     * Samples a span along a row, in the same way as Field.getValues.
+     * The tile is only looked up when the span moves to a new tile.
+     *
+     * @param channel identifies the field among the fields cached in this cache.
+     * @param field field to sample if a needed tile is not cached.
+     */
+    public void getValues(Object channel,
+                          Field field,
+                          double startX,
+                          double y,
+                          double stepX,
+                          int count,
+                          double sampleSize,
+                          float[] target,
+                          int targetOffset,
+                          int targetStride) {
+        final int level = getLevel(sampleSize);
+        final double levelCellSize = getLevelCellSize(level);
+        final double gridY = y / levelCellSize;
+        final int tileY = fastFloor(gridY / tileSize);
+        final double localY = gridY - (double) tileY * tileSize;
+
+        float[] tile = null;
+        int currentTileX = 0;
+
+        double x = startX;
+        int i = targetOffset;
+        for (int n = 0; n < count; n++) {
+            final double gridX = x / levelCellSize;
+            final int tileX = fastFloor(gridX / tileSize);
+            if (tile == null || tileX != currentTileX) {
+                tile = getTile(channel, field, level, tileX, tileY);
+                currentTileX = tileX;
+            }
+
+            target[i] = interpolate(tile, gridX - (double) tileX * tileSize, localY);
+
+            x += stepX;
+            i += targetStride;
+        }
+    }
+
+    private float[] getTile(Object channel, Field field, int level, int tileX, int tileY) {
+        final TileKey key = new TileKey(channel, level, tileX, tileY);
+
+        synchronized (tiles) {
+            final float[] tile = tiles.get(key);
+            if (tile != null) return tile;
+        }
+
+        // Sample the tile outside the lock, so that other threads can use the cache meanwhile
+        final float[] tile = sampleTile(field, level, tileX, tileY);
+
+        synchronized (tiles) {
+            final float[] addedMeanwhile = tiles.get(key);
+            if (addedMeanwhile != null) return addedMeanwhile;
+
+            tiles.put(key, tile);
+            return tile;
+        }
+    }
+
+    /**
+     * Samples the grid points of a tile, including the points on its far edges, so that values can be interpolated inside the tile alone.
+     */
+    private float[] sampleTile(Field field, int level, int tileX, int tileY) {
+        final int pointsPerSide = tileSize + 1;
+        final double levelCellSize = getLevelCellSize(level);
+        final float[] tile = new float[pointsPerSide * pointsPerSide];
+
+        final double startX = (double) tileX * tileSize * levelCellSize;
+        for (int row = 0; row < pointsPerSide; row++) {
+            final double y = ((double) tileY * tileSize + row) * levelCellSize;
+            field.getValues(startX, y, levelCellSize, pointsPerSide, levelCellSize, tile, row * pointsPerSide, 1);
+        }
+
+        return tile;
+    }
+
+    private float interpolate(float[] tile, double localX, double localY) {
+        final int pointsPerSide = tileSize + 1;
+
+        // Rounding may put a coordinate at the far edge of the tile
+        int x0 = fastFloor(localX);
+        int y0 = fastFloor(localY);
+        if (x0 >= tileSize) x0 = tileSize - 1;
+        if (y0 >= tileSize) y0 = tileSize - 1;
+        if (x0 < 0) x0 = 0;
+        if (y0 < 0) y0 = 0;
+        final float cx = (float) (localX - x0);
+        final float cy = (float) (localY - y0);
+
+        final int i = y0 * pointsPerSide + x0;
+        final float yr0 = mix(cx, tile[i], tile[i + 1]);
+        final float yr1 = mix(cx, tile[i + pointsPerSide], tile[i + pointsPerSide + 1]);
+        return mix(cy, yr0, yr1);
+    }
+
+    /**
+     * @return the coarsest level whose cell size is at most the sample size, or 0 for sample sizes up to the base cell size.
+     */
+    private int getLevel(double sampleSize) {
+        if (!(sampleSize > cellSize)) return 0;
+
+        final int level = (int) Math.floor(Math.log(sampleSize / cellSize) / Math.log(2));
+        return Math.min(level, MAX_LEVEL);
+    }
+
+    private double getLevelCellSize(int level) {
+        return cellSize * (1 << level);
+    }
+
+    private static final class TileKey {
+        private final Object channel;
+        private final int level;
+        private final int tileX;
+        private final int tileY;
+
+        private TileKey(Object channel, int level, int tileX, int tileY) {
+            this.channel = channel;
+            this.level = level;
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TileKey)) return false;
+
+            final TileKey other = (TileKey) o;
+            return level == other.level &&
+                   tileX == other.tileX &&
+                   tileY == other.tileY &&
+                   (channel == null ? other.channel == null : channel.equals(other.channel));
+        }
+
+        @Override public int hashCode() {
+            int result = channel != null ? channel.hashCode() : 0;
+            result = 31 * result + level;
+            result = 31 * result + tileX;
+            result = 31 * result + tileY;
+            return result;
+        }
+    }
+}
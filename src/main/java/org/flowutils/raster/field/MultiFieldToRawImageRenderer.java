@@ -2,21 +2,27 @@ package org.flowutils.raster.field;
 
 import org.flowutils.Symbol;
 import org.flowutils.raster.field.multi.MultiField;
+import org.flowutils.rawimage.ProgressiveRendering;
 import org.flowutils.rawimage.RawImage;
 import org.flowutils.rawimage.RawImageRenderer;
+import org.flowutils.rectangle.ImmutableRectangle;
 import org.flowutils.rectangle.Rectangle;
 import org.flowutils.rectangle.intrectangle.IntRectangle;
 
 /**
- *
+ * Renders channels of a MultiField as the color channels of a RawImage.
+ * Can optionally render progressively, see ProgressiveRendering.
  */
 public class MultiFieldToRawImageRenderer implements RawImageRenderer {
 
+    private static final Rectangle DEFAULT_RENDER_AREA = new ImmutableRectangle(0, 0, 1, 1);
+
     private MultiField multiField;
     private Symbol     redChannel;
     private Symbol     greenChannel;
     private Symbol     blueChannel;
     private Symbol     alphaChannel;
+    private boolean    progressive = false;
 
     public MultiFieldToRawImageRenderer(final MultiField multiField, final Symbol valueChannel) {
         this(multiField, valueChannel, valueChannel, valueChannel);
@@ -81,9 +87,30 @@ public class MultiFieldToRawImageRenderer implements RawImageRenderer {
         this.alphaChannel = alphaChannel;
     }
 
+    /**
+     * @return true if the image is rendered progressively, from a coarse first pass to the full resolution.
+     */
+    public boolean isProgressive() {
+        return progressive;
+    }
+
+    /**
+     * @param progressive if true, the image is rendered progressively, from a coarse first pass to the full resolution,
+     *                    and the target is flushed after each pass.  If the listener is a ProgressiveRenderListener,
+     *                    it is notified after each pass.  Each pixel is still sampled only once.  Defaults to false.
+     */
+    public void setProgressive(final boolean progressive) {
+        this.progressive = progressive;
+    }
+
     @Override
     public void renderImage(final RawImage target, final IntRectangle targetArea, final Rectangle sourceArea, final RenderListener listener) {
         if (multiField != null && !targetArea.isEmpty() && targetArea.getArea() > 0) {
+            if (progressive) {
+                renderProgressively(target, targetArea, sourceArea, listener);
+                return;
+            }
+
             multiField.renderToRawImage(redChannel,
                                         greenChannel,
                                         blueChannel,
@@ -97,4 +124,48 @@ public class MultiFieldToRawImageRenderer implements RawImageRenderer {
             target.clear();
         }
     }
+
+    /**
+     * Renders the image in passes, sampling each pass as grids of pixels with renderToImageArray.
+     * The source coordinates are calculated in the same way as in renderToRawImage.
+     */
+    private void renderProgressively(final RawImage target, final IntRectangle targetArea, Rectangle sourceArea, final RenderListener listener) {
+        if (sourceArea == null) sourceArea = DEFAULT_RENDER_AREA;
+        if (sourceArea.isEmpty()) throw new IllegalArgumentException("Source area can not be empty");
+
+        final MultiField field = multiField;
+        final int imageWidth = target.getWidth();
+        final int[] buffer = target.getBuffer();
+
+        final int targetSizeX = targetArea.getSizeX();
+        final int targetSizeY = targetArea.getSizeY();
+        final double sourceStartX = targetSizeX == 1 ? sourceArea.getCenterX() : sourceArea.getMinX();
+        final double sourceStartY = targetSizeY == 1 ? sourceArea.getCenterY() : sourceArea.getMinY();
+        final double sourceStepX = targetSizeX == 1 ? sourceArea.getSizeX() : (1.0 / (targetSizeX - 1)) * sourceArea.getSizeX();
+        final double sourceStepY = targetSizeY == 1 ? sourceArea.getSizeY() : (1.0 / (targetSizeY - 1)) * sourceArea.getSizeY();
+        final double sampleSize = (sourceStepX + sourceStepY) * 0.5;
+
+        ProgressiveRendering.render(target, targetArea, ProgressiveRendering.DEFAULT_INITIAL_STEP, listener, new ProgressiveRendering.LatticeRenderer() {
+            @Override
+            public void renderLattice(int startX, int startY, int step, int countX, int countY, RenderListener latticeListener) {
+                // All passes use the sample size of the full resolution, so that the pixels get their final colors in the pass that samples them
+                field.renderToImageArray(redChannel,
+                                         greenChannel,
+                                         blueChannel,
+                                         alphaChannel,
+                                         buffer,
+                                         countX,
+                                         countY,
+                                         startY * imageWidth + startX,
+                                         step,
+                                         step * imageWidth - countX * step,
+                                         sourceStartX + (startX - targetArea.getMinX()) * sourceStepX,
+                                         sourceStartY + (startY - targetArea.getMinY()) * sourceStepY,
+                                         sourceStepX * step,
+                                         sourceStepY * step,
+                                         sampleSize,
+                                         latticeListener);
+            }
+        });
+    }
 }
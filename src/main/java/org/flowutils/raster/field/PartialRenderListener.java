@@ -0,0 +1,55 @@
+package org.flowutils.raster.field;
+
+/**
+ * Forwards the progress of rendering one part of a larger rendering to a listener for the whole rendering,
+ * mapping the 0..1 progress of the part to the range of the whole rendering that the part covers.
+ *
+ * Remembers if the rendering was cancelled by the listener.
+ */
+public final class PartialRenderListener implements RenderListener {
+
+    private final RenderListener listener;
+    private double startProgress;
+    private double endProgress;
+    private boolean cancelled = false;
+
+    /**
+     * @param listener listener for the whole rendering, or null if none.
+     */
+    public PartialRenderListener(RenderListener listener) {
+        this(listener, 0, 1);
+    }
+
+    /**
+     * @param listener listener for the whole rendering, or null if none.
+     * @param startProgress progress of the whole rendering when the part starts.
+     * @param endProgress progress of the whole rendering when the part is done.
+     */
+    public PartialRenderListener(RenderListener listener, double startProgress, double endProgress) {
+        this.listener = listener;
+        setRange(startProgress, endProgress);
+    }
+
+    /**
+     * Sets the range of the whole rendering covered by the next part.
+     */
+    public void setRange(double startProgress, double endProgress) {
+        this.startProgress = startProgress;
+        this.endProgress = endProgress;
+    }
+
+    /**
+     * @return true if the listener requested the rendering to stop.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override public boolean onRenderProgress(double progress) {
+        if (listener != null && !cancelled) {
+            cancelled = !listener.onRenderProgress(startProgress + progress * (endProgress - startProgress));
+        }
+
+        return !cancelled;
+    }
+}
@@ -0,0 +1,16 @@
+package org.flowutils.raster.field;
+
+/**
+ * Listens to a progressive rendering, that first renders a coarse version of the image and then refines it in passes.
+ */
+public interface ProgressiveRenderListener extends RenderListener {
+
+    /**
+     * Called after each pass of a progressive rendering, when the whole target area has been rendered at the resolution of the pass.
+     *
+     * @param pixelStep distance in pixels between the pixels sampled so far.  1 when the rendering is complete.
+     * @return true if rendering should continue, false if rendering should be stopped.
+     */
+    boolean onPassRendered(int pixelStep);
+
+}
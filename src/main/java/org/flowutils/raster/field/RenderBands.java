@@ -0,0 +1,153 @@
+package org.flowutils.raster.field;
+
+import org.flowutils.Check;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.parallel.RowBandTask;
+
+/**
+ * Splits a rendering into bands with a fixed number of rows, that are rendered in parallel on a RowBandExecutor.
+ *
+ * The bands are the same regardless of the executor, so a field that calculates the source coordinates of each
+ * band from its first row gets exactly the same result when rendered serially and in parallel.
+ *
+ * The progress reported by the bands is combined into the progress of the whole rendering, and passed on to the
+ * render listener from one thread at a time.  When the listener cancels the rendering, the bands stop at their next
+ * progress report, and bands that have not yet started are skipped.
+ */
+public final class RenderBands {
+
+    /**
+     * Number of rows in each band.
+     */
+    public static final int BAND_ROWS = 16;
+
+    private static final int PROGRESS_REPORTS_PER_RENDERING = 20;
+
+    /**
+     * Renders the rows of one band.
+     */
+    public interface BandRenderer {
+
+        /**
+         * Renders the rows from startY (inclusive) to endY (exclusive).
+         * May be called concurrently from several threads for different bands.
+         *
+         * @param bandListener listener to report the progress of the band to, from 0 to 1, or null if the rendering has no listener.
+         *                     Returns false when the rendering has been cancelled.
+         */
+        void renderBand(int startY, int endY, RenderListener bandListener);
+    }
+
+    /**
+     * Renders all bands of the area.  Returns when all bands are rendered or the rendering was cancelled.
+     *
+     * @param executor executor used to render the bands, possibly in parallel.
+     * @param sizeX number of cells on each row.
+     * @param sizeY number of rows to render.
+     * @param renderListener listener for the whole rendering, or null if none.
+     * @param renderer renderer that renders each band.
+     */
+    public static void render(RowBandExecutor executor,
+                              int sizeX,
+                              final int sizeY,
+                              RenderListener renderListener,
+                              final BandRenderer renderer) {
+        Check.notNull(executor, "executor");
+        Check.notNull(renderer, "renderer");
+
+        final int bandCount = (sizeY + BAND_ROWS - 1) / BAND_ROWS;
+        final ProgressAggregator progress = renderListener != null ? new ProgressAggregator(renderListener, sizeY) : null;
+
+        // Each band is treated as a row of the executor
+        executor.execute(sizeX * BAND_ROWS, bandCount, new RowBandTask() {
+            @Override public void processRows(int startBand, int endBand) {
+                for (int band = startBand; band < endBand; band++) {
+                    final int startY = band * BAND_ROWS;
+                    final int endY = Math.min(sizeY, startY + BAND_ROWS);
+
+                    if (progress == null) {
+                        renderer.renderBand(startY, endY, null);
+                    }
+                    else {
+                        if (progress.isCancelled()) return;
+
+                        final BandListener bandListener = new BandListener(progress, endY - startY);
+                        renderer.renderBand(startY, endY, bandListener);
+                        bandListener.onRenderProgress(1);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Converts the 0..1 progress of a band to completed rows in the whole rendering.
+     */
+    private static final class BandListener implements RenderListener {
+        private final ProgressAggregator progress;
+        private final int rows;
+        private double reportedRows = 0;
+
+        private BandListener(ProgressAggregator progress, int rows) {
+            this.progress = progress;
+            this.rows = rows;
+        }
+
+        @Override public boolean onRenderProgress(double bandProgress) {
+            // Single row bands may report NaN progress
+            double addedRows = 0;
+            if (bandProgress >= 0) {
+                final double completedRows = Math.min(bandProgress, 1.0) * rows;
+                if (completedRows > reportedRows) {
+                    addedRows = completedRows - reportedRows;
+                    reportedRows = completedRows;
+                }
+            }
+
+            return progress.addCompletedRows(addedRows);
+        }
+    }
+
+    /**
+     * Keeps track of the progress of all bands, and notifies the listener of the whole rendering.
+     */
+    private static final class ProgressAggregator {
+        private final RenderListener listener;
+        private final int totalRows;
+        private double completedRows = 0;
+        private double lastReportedProgress = -1;
+        private volatile boolean cancelled = false;
+
+        private ProgressAggregator(RenderListener listener, int totalRows) {
+            this.listener = listener;
+            this.totalRows = totalRows;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return true if the rendering should continue.
+         */
+        synchronized boolean addCompletedRows(double rows) {
+            if (cancelled) return false;
+
+            completedRows += rows;
+            final double progress = Math.min(1.0, completedRows / totalRows);
+
+            // Report the first progress, then at intervals, and when done
+            if (lastReportedProgress < 0 ||
+                progress - lastReportedProgress >= 1.0 / PROGRESS_REPORTS_PER_RENDERING ||
+                (progress >= 1.0 && lastReportedProgress < 1.0)) {
+                lastReportedProgress = progress;
+                if (!listener.onRenderProgress(progress)) cancelled = true;
+            }
+
+            return !cancelled;
+        }
+    }
+
+    private RenderBands() {
+    }
+}
@@ -0,0 +1,109 @@
+package org.flowutils.raster.field.multi;
+
+import org.flowutils.Symbol;
+import org.flowutils.raster.field.FieldTileCache;
+import org.flowutils.raster.field.single.CachingField;
+import org.flowutils.raster.field.single.Field;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Caches the values of the channels of an expensive source MultiField in tiles, see CachingField.
+ * All channels share one cache, so the maximum number of tiles is shared between them.
+ *
+ * Call clearCache when the source field changes.
+ */
+public final class CachingMultiField extends MultiFieldBase {
+
+    private final MultiField source;
+    private final FieldTileCache cache;
+    private final ConcurrentMap<Symbol, CachingField> channelFields = new ConcurrentHashMap<Symbol, CachingField>();
+
+    /**
+     * Creates a caching field with its own cache, with the default tile size and maximum number of tiles.
+     *
+     * @param source field to cache.
+     * @param cellSize distance between the sampled grid points in the source field at the most detailed level.
+     */
+    public CachingMultiField(MultiField source, double cellSize) {
+        this(source, new FieldTileCache(cellSize));
+    }
+
+    /**
+     * @param source field to cache.
+     * @param cache cache to store the tiles in.  Should not be shared with other fields.
+     */
+    public CachingMultiField(MultiField source, FieldTileCache cache) {
+        notNull(source, "source");
+        notNull(cache, "cache");
+
+        this.source = source;
+        this.cache = cache;
+    }
+
+    /**
+     * @return the field whose values are cached.
+     */
+    public MultiField getSource() {
+        return source;
+    }
+
+    /**
+     * @return the cache used to store the tiles.
+     */
+    public FieldTileCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Removes all cached tiles of all channels, and resolves the channel fields of the source again when they are next needed.
+     */
+    public void clearCache() {
+        channelFields.clear();
+        cache.clear();
+    }
+
+    @Override public float getValue(double x, double y, Symbol channelId, double sampleSize) {
+        return getCachingField(channelId).getValue(x, y, sampleSize);
+    }
+
+    @Override public Collection<Symbol> getChannelIds() {
+        return source.getChannelIds();
+    }
+
+    @Override public boolean hasChannel(Symbol channelId) {
+        return source.hasChannel(channelId);
+    }
+
+    @Override public Field getChannel(Symbol channelId) {
+        return hasChannel(channelId) ? getCachingField(channelId) : null;
+    }
+
+    @Override public Field compileChannel(Symbol channelId) {
+        return getCachingField(channelId);
+    }
+
+    private CachingField getCachingField(Symbol channelId) {
+        CachingField field = channelFields.get(channelId);
+
+        // Create the caching field for the channel if we do not have one
+        if (field == null) {
+            // Sample the field that produces the channel values directly when filling the cache
+            final Field channelField = source instanceof MultiFieldBase ? ((MultiFieldBase) source).compileChannel(channelId)
+                                                                        : source.getChannel(channelId);
+            if (channelField == null) throw new IllegalArgumentException("No channel with id '" + channelId + "' found.");
+
+            field = new CachingField(channelField, cache, channelId);
+
+            // Use the field added by another thread meanwhile, if any
+            final CachingField meanwhileAddedField = channelFields.putIfAbsent(channelId, field);
+            if (meanwhileAddedField != null) field = meanwhileAddedField;
+        }
+
+        return field;
+    }
+}
@@ -0,0 +1,109 @@
+package org.flowutils.raster.field.multi;
+
+import org.flowutils.Check;
+import org.flowutils.Symbol;
+import org.flowutils.raster.field.single.Field;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A flattened MultiField, created with MultiFieldBase.compile, where each channel has been resolved to the field that produces its values,
+ * and assigned a slot index.
+ *
+ * Sampling by slot index avoids channel lookups and intermediate delegating fields,
+ * and rendering samples each channel a row at a time from its resolved field.
+ *
+ * Immutable, but the resolved fields are shared with the original field graph, so changes to them are visible in the compiled field.
+ */
+public final class CompiledMultiField extends MultiFieldBase {
+
+    private final Symbol[] channelIds;
+    private final Field[] fields;
+    private final Map<Symbol, Integer> slots;
+
+    /**
+     * @param channelIds ids of the channels, in slot order.
+     * @param fields resolved fields for the channels, in slot order.
+     */
+    CompiledMultiField(Symbol[] channelIds, Field[] fields) {
+        super(Collections.unmodifiableList(Arrays.asList(channelIds.clone())));
+        Check.equal(fields.length, "number of fields", channelIds.length, "number of channels");
+
+        this.channelIds = channelIds.clone();
+        this.fields = fields.clone();
+
+        slots = new HashMap<Symbol, Integer>(channelIds.length * 2);
+        for (int i = 0; i < channelIds.length; i++) {
+            slots.put(channelIds[i], i);
+        }
+    }
+
+    /**
+     * @return number of channel slots.
+     */
+    public int getSlotCount() {
+        return channelIds.length;
+    }
+
+    /**
+     * @return slot index of the specified channel, or -1 if the channel is not included.
+     */
+    public int getSlot(Symbol channelId) {
+        final Integer slot = slots.get(channelId);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * @return id of the channel in the specified slot.
+     */
+    public Symbol getSlotChannel(int slot) {
+        return channelIds[slot];
+    }
+
+    /**
+     * @return the resolved field for the specified slot.
+     */
+    public Field getSlotField(int slot) {
+        return fields[slot];
+    }
+
+    /**
+     * @return value of the channel in the specified slot at the specified location.
+     */
+    public float getValue(double x, double y, int slot, double sampleSize) {
+        return fields[slot].getValue(x, y, sampleSize);
+    }
+
+    /**
+     * Samples all channels at the specified location.
+     *
+     * @param valuesOut array to write the values to, in slot order.
+     * @param offset index in the array to write the value of the first slot to.
+     */
+    public void getValues(double x, double y, double sampleSize, float[] valuesOut, int offset) {
+        for (int slot = 0; slot < fields.length; slot++) {
+            valuesOut[offset + slot] = fields[slot].getValue(x, y, sampleSize);
+        }
+    }
+
+    @Override public float getValue(double x, double y, Symbol channelId, double sampleSize) {
+        return getChannel(channelId).getValue(x, y, sampleSize);
+    }
+
+    @Override public boolean hasChannel(Symbol channelId) {
+        return slots.containsKey(channelId);
+    }
+
+    @Override public Field getChannel(Symbol channelId) {
+        final int slot = getSlot(channelId);
+        if (slot < 0) throw new IllegalArgumentException("No channel with id '" + channelId + "' found.");
+        return fields[slot];
+    }
+
+    @Override public Field compileChannel(Symbol channelId) {
+        return getChannel(channelId);
+    }
+}
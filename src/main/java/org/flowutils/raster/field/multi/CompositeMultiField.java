@@ -3,6 +3,7 @@ package org.flowutils.raster.field.multi;
 import org.flowutils.Check;
 import org.flowutils.Symbol;
 import org.flowutils.raster.field.single.Field;
+import org.flowutils.raster.field.single.FieldBase;
 
 import java.util.Collection;
 import java.util.Map;
@@ -48,6 +49,13 @@ public final class CompositeMultiField extends MultiFieldBase {
         return fields.get(channelId);
     }
 
+    @Override public Field compileChannel(Symbol channelId) {
+        final Field field = fields.get(channelId);
+        if (field == null) throw new IllegalArgumentException("No channel with id '" + channelId + "' found.");
+
+        return field instanceof FieldBase ? ((FieldBase) field).compile() : field;
+    }
+
     /**
      * Register a field to use for a channel.  Replaces any previous field used for that channel.
      */
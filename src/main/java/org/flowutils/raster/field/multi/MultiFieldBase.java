@@ -3,9 +3,12 @@ package org.flowutils.raster.field.multi;
 import org.flowutils.Check;
 import org.flowutils.MathUtils;
 import org.flowutils.Symbol;
+import org.flowutils.raster.field.PartialRenderListener;
+import org.flowutils.raster.field.RenderBands;
 import org.flowutils.raster.field.RenderListener;
 import org.flowutils.raster.field.single.Field;
 import org.flowutils.raster.field.single.FieldDelegate;
+import org.flowutils.raster.parallel.RowBandExecutor;
 import org.flowutils.raster.raster.multi.MultiRaster;
 import org.flowutils.raster.raster.single.Raster;
 import org.flowutils.rawimage.RawImage;
@@ -36,8 +39,14 @@ public abstract class MultiFieldBase implements MultiField {
 
     private static final int PROGRESS_REPORTS_PER_RENDERING = 20;
 
+    /**
+     * Number of cells to render at a time when rendering to rasters that are not backed by float arrays.
+     */
+    private static final int ROW_BLOCK_CELLS = 64 * 1024;
+
     private final ConcurrentMap<Symbol, Field> fieldDelegates = new ConcurrentHashMap<Symbol, Field>(3);
     private final Collection<Symbol> availableChannels;
+    private RowBandExecutor executor = RowBandExecutor.SERIAL;
 
     protected MultiFieldBase() {
         this.availableChannels = null;
@@ -83,6 +92,53 @@ public abstract class MultiFieldBase implements MultiField {
         return getValue(x, y, channelId, 0);
     }
 
+    /**
+     * Flattens this field into an evaluator for all its channels, see compile(Collection).
+     */
+    public final CompiledMultiField compile() {
+        return compile(getChannelIds());
+    }
+
+    /**
+     * Flattens this field into an evaluator for the specified channels.
+     * The field of each channel is resolved once, through any FieldDelegates and composite fields,
+     * so that sampling the evaluator does not need to look up channels or go through intermediate fields for each sample.
+     * The evaluator reflects the field graph at the time of the call.
+     *
+     * @param channelIds channels to include, in the order of their slots in the evaluator.
+     */
+    public final CompiledMultiField compile(Collection<Symbol> channelIds) {
+        notNull(channelIds, "channelIds");
+
+        final Symbol[] channels = channelIds.toArray(new Symbol[channelIds.size()]);
+        return new CompiledMultiField(channels, compileChannels(channels));
+    }
+
+    /**
+     * @return the field that should be sampled for the specified channel, with any delegation resolved.
+     *         Override if the channel values come from fields that can be sampled directly.
+     *         By default returns the field returned by getChannel, or a FieldDelegate that samples getValue of this field
+     *         if the channel can not be resolved, e.g. because the field does not list its channels.
+     */
+    public Field compileChannel(Symbol channelId) {
+        Field field = null;
+        if (getChannelIds() != null) field = getChannel(channelId);
+
+        if (field == null) field = new FieldDelegate(this, channelId);
+        return field;
+    }
+
+    /**
+     * @return the compiled fields for the specified channels.
+     */
+    protected final Field[] compileChannels(Symbol[] channelIds) {
+        final Field[] fields = new Field[channelIds.length];
+        for (int i = 0; i < channelIds.length; i++) {
+            fields[i] = compileChannel(channelIds[i]);
+        }
+        return fields;
+    }
+
 
     @Override public final void renderToRaster(MultiRaster raster) {
         renderToRaster(raster, null);
@@ -125,13 +181,32 @@ public abstract class MultiFieldBase implements MultiField {
         final double sourceStartY = sourceArea.getMinY();
         final double sourceStepX = (1.0 / (targetSizeX - 1)) * sourceArea.getSizeX();
         final double sourceStepY = (1.0 / (targetSizeY - 1)) * sourceArea.getSizeY();
-        final double sampleSize = ((sourceStepX + sourceStepY) * 0.5) * sourceArea.getSizeAverage();
+        final double sampleSize = (sourceStepX + sourceStepY) * 0.5;
 
         // Determine channels to render
         final Collection<Symbol> channelIdsCollection = targetRaster.getChannelIds();
         final int channelCount = channelIdsCollection.size();
         Symbol[] channelIds = channelIdsCollection.toArray(new Symbol[channelCount]);
 
+        // Check if all channels can be rendered directly to their data arrays
+        boolean allChannelsArrayBacked = true;
+        for (Symbol channelId : channelIds) {
+            if (!targetRaster.getChannel(channelId).isArrayBacked()) allChannelsArrayBacked = false;
+        }
+        if (!allChannelsArrayBacked) {
+            // Render a block of rows at a time to temporary arrays, and write them to the channels
+            renderToRasterRows(targetRaster,
+                               channelIds,
+                               targetArea,
+                               sourceStartX,
+                               sourceStartY,
+                               sourceStepX,
+                               sourceStepY,
+                               sampleSize,
+                               renderListener);
+            return;
+        }
+
         // Calculate the skips to adjust to the specified target areas
         float [][] targetDatas = new float[channelCount][];
         final int[] targetOffsets = new int[channelCount];
@@ -162,21 +237,86 @@ public abstract class MultiFieldBase implements MultiField {
                        sourceStepY,
                        sampleSize,
                        renderListener);
+
+        // The values were written directly to the data arrays, so report the change to the channels
+        for (Symbol channelId : channelIds) {
+            targetRaster.getChannel(channelId).markDirty(targetArea);
+        }
     }
 
 
-    @Override public final void renderToArrays(Symbol[] targetChannelIds,
-                                               float[][] targetDatas,
-                                               int targetSizeX,
+    /**
+     * Renders to a raster with channels that are not all backed by float arrays,
+     * by rendering blocks of rows to temporary arrays and writing them to the channels.
+     */
+    private void renderToRasterRows(MultiRaster targetRaster,
+                                    Symbol[] channelIds,
+                                    IntRectangle targetArea,
+                                    double sourceStartX,
+                                    double sourceStartY,
+                                    double sourceStepX,
+                                    double sourceStepY,
+                                    double sampleSize,
+                                    RenderListener renderListener) {
+        final int channelCount = channelIds.length;
+        final int targetSizeX = targetArea.getSizeX();
+        final int targetSizeY = targetArea.getSizeY();
+        final int blockRows = Math.max(1, Math.min(targetSizeY, ROW_BLOCK_CELLS / targetSizeX));
+
+        final float[][] blocks = new float[channelCount][blockRows * targetSizeX];
+        final int[] blockOffsets = new int[channelCount];
+        final int[] blockXSteps = new int[channelCount];
+        final int[] blockYSkips = new int[channelCount];
+        Arrays.fill(blockXSteps, 1);
+
+        final PartialRenderListener blockListener = new PartialRenderListener(renderListener);
+
+        for (int blockStart = 0; blockStart < targetSizeY && !blockListener.isCancelled(); blockStart += blockRows) {
+            final int rows = Math.min(blockRows, targetSizeY - blockStart);
+            blockListener.setRange((double) blockStart / targetSizeY, (double) (blockStart + rows) / targetSizeY);
+
+            renderToArrays(channelIds,
+                           blocks,
+                           targetSizeX,
+                           rows,
+                           blockOffsets,
+                           blockXSteps,
+                           blockYSkips,
+                           sourceStartX,
+                           sourceStartY + blockStart * sourceStepY,
+                           sourceStepX,
+                           sourceStepY,
+                           sampleSize,
+                           renderListener != null ? blockListener : null);
+
+            // Rows of a cancelled block may be incomplete, so only write completed blocks
+            if (!blockListener.isCancelled()) {
+                for (int channel = 0; channel < channelCount; channel++) {
+                    final Raster channelRaster = targetRaster.getChannel(channelIds[channel]);
+                    for (int row = 0; row < rows; row++) {
+                        channelRaster.writeRow(targetArea.getMinY() + blockStart + row,
+                                               targetArea.getMinX(),
+                                               targetSizeX,
+                                               blocks[channel],
+                                               row * targetSizeX);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override public final void renderToArrays(final Symbol[] targetChannelIds,
+                                               final float[][] targetDatas,
+                                               final int targetSizeX,
                                                int targetSizeY,
-                                               int[] targetOffsets,
-                                               int[] targetXSteps,
-                                               int[] targetYSkips,
-                                               double sourceStartX,
-                                               double sourceStartY,
-                                               double sourceStepX,
-                                               double sourceStepY,
-                                               double sourceSampleSize,
+                                               final int[] targetOffsets,
+                                               final int[] targetXSteps,
+                                               final int[] targetYSkips,
+                                               final double sourceStartX,
+                                               final double sourceStartY,
+                                               final double sourceStepX,
+                                               final double sourceStepY,
+                                               final double sourceSampleSize,
                                                RenderListener renderListener) {
         Check.notNull(targetDatas, "targetDatas");
         Check.notNull(targetChannelIds, "targetChannelIds");
@@ -192,36 +332,66 @@ public abstract class MultiFieldBase implements MultiField {
         // Shortcut out if we have nothing to render
         if (targetSizeX == 0 || targetSizeY == 0 || channelCount == 0) return;
 
-        // Initialize progress reporting counter
-        final int listenerStep = Math.max(targetSizeY / PROGRESS_REPORTS_PER_RENDERING, 1);
-        int listenerCountdown = listenerStep;
+        // Render bands of rows, possibly in parallel.  Each band starts from its own first row, so the result does not depend on the executor.
+        RenderBands.render(executor, targetSizeX, targetSizeY, renderListener, new RenderBands.BandRenderer() {
+            @Override public void renderBand(int startY, int endY, RenderListener bandListener) {
+                final int bandSizeY = endY - startY;
+
+                // Initialize progress reporting counter
+                final int listenerStep = Math.max(bandSizeY / PROGRESS_REPORTS_PER_RENDERING, 1);
+
+                // Target raster indexes at the start of the band
+                final int[] indexes = new int[channelCount];
+                for (int channel = 0; channel < channelCount; channel++) {
+                    indexes[channel] = targetOffsets[channel] +
+                                       startY * (targetSizeX * targetXSteps[channel] + targetYSkips[channel]);
+                }
+
+                // Do actual iteration over the area.  This is split out into a separate function to make it easier to override.
+                doRenderToArrays(channelCount,
+                                 targetChannelIds,
+                                 targetDatas,
+                                 targetSizeX,
+                                 bandSizeY,
+                                 targetXSteps,
+                                 targetYSkips,
+                                 sourceStartX,
+                                 sourceStartY + startY * sourceStepY,
+                                 sourceStepX,
+                                 sourceStepY,
+                                 sourceSampleSize,
+                                 bandListener,
+                                 listenerStep,
+                                 listenerStep,
+                                 indexes);
+            }
+        });
+    }
+
+    /**
+     * @return executor used to render bands of rows in renderToArrays and renderToRaster.
+     */
+    public final RowBandExecutor getExecutor() {
+        return executor;
+    }
 
-        // Loop the target raster cells over the target area and sample the field to get a value for each.
-        int[] indexes = new int[channelCount];
-        System.arraycopy(targetOffsets, 0, indexes, 0, channelCount);
-
-        // Do actual iteration over the area.  This is split out into a separate function to make it easier to override.
-        doRenderToArrays(channelCount, targetChannelIds,
-                         targetDatas,
-                         targetSizeX,
-                         targetSizeY,
-                         targetXSteps,
-                         targetYSkips,
-                         sourceStartX,
-                         sourceStartY,
-                         sourceStepX,
-                         sourceStepY,
-                         sourceSampleSize,
-                         renderListener,
-                         listenerStep,
-                         listenerCountdown,
-                         indexes);
+    /**
+     * @param executor executor used to render bands of rows in renderToArrays and renderToRaster.
+     *                 Use RowBandExecutor.SERIAL to render on the calling thread (the default),
+     *                 or a parallel RowBandExecutor to render large areas in parallel.
+     *                 The results are identical in both cases.
+     *                 If a parallel executor is used, getValue and doRenderToArrays must be thread safe.
+     */
+    public final void setExecutor(RowBandExecutor executor) {
+        Check.notNull(executor, "executor");
+        this.executor = executor;
     }
 
     /**
      * The core part of the render to array function, with all inputs checked for validity by the caller.
-     * This can be overridden if there is a more efficient way to calculate the channel values than to call the
-     * getValue functions for each target position.
+     * Called for each band of rows of the rendering, possibly concurrently from several threads for different bands.
+     * By default samples a row of each channel at a time from the compiled channel fields.
+     * This can be overridden if there is a more efficient way to calculate the channel values.
      *
      * @param channelCount number of channels.
      * @param targetChannelIds channel ids for each channel
@@ -257,30 +427,26 @@ public abstract class MultiFieldBase implements MultiField {
                                     int listenerCountdown,
                                     int[] indexes) {
 
+        // Resolve the fields of the channels once, instead of looking them up for each sample
+        final Field[] channelFields = compileChannels(targetChannelIds);
+
         boolean continueRendering = true;
 
         // Y loop
         double sourceY = sourceStartY;
         for (int y = 0; y < targetSizeY && continueRendering; y++) {
 
-            // X loop
-            double sourceX = sourceStartX;
-            for (int x = 0; x < targetSizeX; x++) {
-
-                // Loop over the channels
-                for (int channel = 0; channel < channelCount; channel++) {
-                    // Sample value from the channel and assign it to the correct place in the correct raster data array
-                    targetDatas[channel][indexes[channel]] = getValue(sourceX,
-                                                                      sourceY,
-                                                                      targetChannelIds[channel],
-                                                                      sourceSampleSize);
-                }
-
-                // Step to next source and target location along x axis
-                sourceX += sourceStepX;
-                for (int channel = 0; channel < channelCount; channel++) {
-                    indexes[channel] += targetXSteps[channel];
-                }
+            // Sample a row of each channel to the correct place in the correct raster data array
+            for (int channel = 0; channel < channelCount; channel++) {
+                channelFields[channel].getValues(sourceStartX,
+                                                 sourceY,
+                                                 sourceStepX,
+                                                 targetSizeX,
+                                                 sourceSampleSize,
+                                                 targetDatas[channel],
+                                                 indexes[channel],
+                                                 targetXSteps[channel]);
+                indexes[channel] += targetSizeX * targetXSteps[channel];
             }
 
             // Step to next source and target location along y axis
@@ -331,7 +497,7 @@ public abstract class MultiFieldBase implements MultiField {
         final double sourceStartY = targetSizeY == 1 ? sourceArea.getCenterY() : sourceArea.getMinY();
         final double sourceStepX = targetSizeX == 1 ? sourceArea.getSizeX() : (1.0 / (targetSizeX - 1)) * sourceArea.getSizeX();
         final double sourceStepY = targetSizeY == 1 ? sourceArea.getSizeY() : (1.0 / (targetSizeY - 1)) * sourceArea.getSizeY();
-        final double sampleSize = ((sourceStepX + sourceStepY) * 0.5) * sourceArea.getSizeAverage();
+        final double sampleSize = (sourceStepX + sourceStepY) * 0.5;
 
         renderToImageArray(redChannelId,
                            greenChannelId,
@@ -1,6 +1,7 @@
 package org.flowutils.raster.field.multi;
 
 import org.flowutils.Symbol;
+import org.flowutils.raster.field.single.Field;
 import org.flowutils.raster.field.single.RasterField;
 import org.flowutils.raster.raster.multi.MultiRaster;
 
@@ -110,7 +111,14 @@ public final class MultiRasterField extends MultiFieldBase {
     }
 
     @Override public float getValue(double x, double y, Symbol channelId, double sampleSize) {
-        return RasterField.sampleRasterAt(raster.getChannel(channelId), x, y, wrapX, wrapY, extendBorder, defaultValue);
+        return RasterField.sampleRasterAt(raster.getChannel(channelId), x, y, sampleSize, wrapX, wrapY, extendBorder, defaultValue);
+    }
+
+    /**
+     * @return a RasterField that samples the channel raster directly, with the same edge handling as this field.
+     */
+    @Override public Field compileChannel(Symbol channelId) {
+        return new RasterField(raster.getChannel(channelId), wrapX, wrapY, extendBorder, defaultValue);
     }
 
 }
@@ -0,0 +1,89 @@
+package org.flowutils.raster.field.single;
+
+import org.flowutils.raster.field.FieldTileCache;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Caches the values of an expensive source field in tiles, so that rendering the same area again
+ * only needs to interpolate the cached values instead of sampling the source field.
+ *
+ * The values are sampled from the source on a grid and interpolated bilinearly, see FieldTileCache,
+ * so the cell size of the cache should be about as small as the smallest details that need to be rendered.
+ *
+ * Call clearCache when the source field changes.
+ */
+public final class CachingField extends FieldBase {
+
+    private final Field source;
+    private final FieldTileCache cache;
+    private final Object cacheKey;
+
+    /**
+     * Creates a caching field with its own cache, with the default tile size and maximum number of tiles.
+     *
+     * @param source field to cache.
+     * @param cellSize distance between the sampled grid points in the source field at the most detailed level.
+     */
+    public CachingField(Field source, double cellSize) {
+        this(source, new FieldTileCache(cellSize));
+    }
+
+    /**
+     * @param source field to cache.
+     * @param cache cache to store the tiles in.  Should not be shared with other fields.
+     */
+    public CachingField(Field source, FieldTileCache cache) {
+        this(source, cache, null);
+    }
+
+    /**
+     * @param source field to cache.
+     * @param cache cache to store the tiles in.  May be shared with other fields, if they use different cache keys.
+     * @param cacheKey identifies the tiles of this field in the cache.
+     */
+    public CachingField(Field source, FieldTileCache cache, Object cacheKey) {
+        notNull(source, "source");
+        notNull(cache, "cache");
+
+        this.source = source;
+        this.cache = cache;
+        this.cacheKey = cacheKey;
+    }
+
+    /**
+     * @return the field whose values are cached.
+     */
+    public Field getSource() {
+        return source;
+    }
+
+    /**
+     * @return the cache used to store the tiles.
+     */
+    public FieldTileCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Removes all cached tiles from the cache, including tiles of any other fields sharing the cache.
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    @Override public float getValue(double x, double y, double sampleSize) {
+        return cache.getValue(cacheKey, source, x, y, sampleSize);
+    }
+
+    @Override public void getValues(double startX,
+                                    double y,
+                                    double stepX,
+                                    int count,
+                                    double sampleSize,
+                                    float[] target,
+                                    int targetOffset,
+                                    int targetStride) {
+        cache.getValues(cacheKey, source, startX, y, stepX, count, sampleSize, target, targetOffset, targetStride);
+    }
+}
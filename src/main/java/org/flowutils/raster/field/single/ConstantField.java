@@ -1,5 +1,7 @@
 package org.flowutils.raster.field.single;
 
+import java.util.Arrays;
+
 /**
  *
  */
@@ -27,4 +29,25 @@ public final class ConstantField extends FieldBase {
     public float getValue(final double x, final double y, final double sampleSize) {
         return value;
     }
+
+    @Override public void getValues(double startX,
+                                    double y,
+                                    double stepX,
+                                    int count,
+                                    double sampleSize,
+                                    float[] target,
+                                    int targetOffset,
+                                    int targetStride) {
+        final float v = value;
+        if (targetStride == 1) {
+            Arrays.fill(target, targetOffset, targetOffset + count, v);
+        }
+        else {
+            int i = targetOffset;
+            for (int n = 0; n < count; n++) {
+                target[i] = v;
+                i += targetStride;
+            }
+        }
+    }
 }
@@ -18,11 +18,28 @@ public interface Field {
     float getValue(double x, double y);
 
     /**
-     * @param sampleSize size of the area to sample around the specified coordinate.  0 = use maximum available detail.
+     * @param sampleSize size of the area to sample around the specified coordinate, in the coordinates of the field.
+     *                   When rendering, this is the distance between neighbouring samples.  0 = use maximum available detail.
      * @return the value at the specified position, with the specified sample size.
      */
     float getValue(double x, double y, double sampleSize);
 
+    /**
+     * Samples a span of values along a row of the field.
+     * Gives the same values as calling getValue for each position, with the x coordinate advanced by adding stepX after each sample,
+     * but lets fields do per row work only once.
+     *
+     * @param startX x position of the first sample.
+     * @param y y position of the row.
+     * @param stepX x step to apply to the source after each sample.
+     * @param count number of values to sample.
+     * @param sampleSize size of the area to sample around each position, in the coordinates of the field.  0 = use maximum available detail.
+     * @param target array to write the values to.
+     * @param targetOffset index in the target array to write the first value to.
+     * @param targetStride step between the indexes that consecutive values are written to.
+     */
+    void getValues(double startX, double y, double stepX, int count, double sampleSize, float[] target, int targetOffset, int targetStride);
+
     /**
      * Writes the area 0,0 to 1,1 from this field to the specified raster.
      */
@@ -1,7 +1,10 @@
 package org.flowutils.raster.field.single;
 
 import org.flowutils.Check;
+import org.flowutils.raster.field.PartialRenderListener;
+import org.flowutils.raster.field.RenderBands;
 import org.flowutils.raster.field.RenderListener;
+import org.flowutils.raster.parallel.RowBandExecutor;
 import org.flowutils.raster.raster.single.Raster;
 import org.flowutils.rectangle.ImmutableRectangle;
 import org.flowutils.rectangle.Rectangle;
@@ -18,10 +21,43 @@ public abstract class FieldBase implements Field {
 
     private static final int PROGRESS_REPORTS_PER_RENDERING = 20;
 
+    /**
+     * Number of cells to render at a time when rendering to a raster that is not backed by a float array.
+     */
+    private static final int ROW_BLOCK_CELLS = 64 * 1024;
+
+    private RowBandExecutor executor = RowBandExecutor.SERIAL;
+
     @Override public float getValue(double x, double y) {
         return getValue(x, y, 0);
     }
 
+    /**
+     * @return the field that should be sampled in place of this field when rendering, with any delegation to other fields resolved,
+     *         so that sampling it does not need to go through this field.  This field itself if it does not delegate to other fields.
+     *         Reflects the field graph at the time of the call.
+     */
+    public Field compile() {
+        return this;
+    }
+
+    @Override public void getValues(double startX,
+                                    double y,
+                                    double stepX,
+                                    int count,
+                                    double sampleSize,
+                                    float[] target,
+                                    int targetOffset,
+                                    int targetStride) {
+        double x = startX;
+        int i = targetOffset;
+        for (int n = 0; n < count; n++) {
+            target[i] = getValue(x, y, sampleSize);
+            x += stepX;
+            i += targetStride;
+        }
+    }
+
     @Override public final void renderToRaster(Raster raster) {
         renderToRaster(raster, DEFAULT_RENDER_AREA);
     }
@@ -60,7 +96,20 @@ public abstract class FieldBase implements Field {
         final double sourceStartY = sourceArea.getMinY();
         final double sourceStepX = (1.0 / (targetSizeX - 1)) * sourceArea.getSizeX();
         final double sourceStepY = (1.0 / (targetSizeY - 1)) * sourceArea.getSizeY();
-        final double sampleSize = ((sourceStepX + sourceStepY) * 0.5) * sourceArea.getSizeAverage();
+        final double sampleSize = (sourceStepX + sourceStepY) * 0.5;
+
+        if (!targetRaster.isArrayBacked()) {
+            // Render a block of rows at a time to a temporary array, and write them to the raster
+            renderToRasterRows(targetRaster,
+                               targetArea,
+                               sourceStartX,
+                               sourceStartY,
+                               sourceStepX,
+                               sourceStepY,
+                               sampleSize,
+                               renderListener);
+            return;
+        }
 
         // Calculate the skips to adjust to the specified target area
         final int targetXStep = targetRaster.getDataXStep();
@@ -82,19 +131,66 @@ public abstract class FieldBase implements Field {
                       sourceStepY,
                       sampleSize,
                       renderListener);
+
+        // The values were written directly to the data array, so report the change to the raster
+        targetRaster.markDirty(targetArea);
+    }
+
+    /**
+     * Renders to a raster that is not backed by a float array, by rendering blocks of rows to a temporary array
+     * and writing them to the raster.
+     */
+    private void renderToRasterRows(Raster targetRaster,
+                                    IntRectangle targetArea,
+                                    double sourceStartX,
+                                    double sourceStartY,
+                                    double sourceStepX,
+                                    double sourceStepY,
+                                    double sampleSize,
+                                    RenderListener renderListener) {
+        final int targetSizeX = targetArea.getSizeX();
+        final int targetSizeY = targetArea.getSizeY();
+        final int blockRows = Math.max(1, Math.min(targetSizeY, ROW_BLOCK_CELLS / targetSizeX));
+        final float[] block = new float[blockRows * targetSizeX];
+        final PartialRenderListener blockListener = new PartialRenderListener(renderListener);
+
+        for (int blockStart = 0; blockStart < targetSizeY && !blockListener.isCancelled(); blockStart += blockRows) {
+            final int rows = Math.min(blockRows, targetSizeY - blockStart);
+            blockListener.setRange((double) blockStart / targetSizeY, (double) (blockStart + rows) / targetSizeY);
+
+            renderToArray(block,
+                          targetSizeX,
+                          rows,
+                          0,
+                          1,
+                          0,
+                          sourceStartX,
+                          sourceStartY + blockStart * sourceStepY,
+                          sourceStepX,
+                          sourceStepY,
+                          sampleSize,
+                          renderListener != null ? blockListener : null);
+
+            // Rows of a cancelled block may be incomplete, so only write completed blocks
+            if (!blockListener.isCancelled()) {
+                for (int row = 0; row < rows; row++) {
+                    targetRaster.writeRow(targetArea.getMinY() + blockStart + row, targetArea.getMinX(), targetSizeX, block, row * targetSizeX);
+                }
+            }
+        }
     }
 
-    @Override public void renderToArray(float[] target,
-                                        int targetSizeX,
+    @Override public void renderToArray(final float[] target,
+                                        final int targetSizeX,
                                         int targetSizeY,
-                                        int targetOffset,
-                                        int targetXStep,
-                                        int targetYSkip,
-                                        double sourceStartX,
-                                        double sourceStartY,
-                                        double sourceStepX,
-                                        double sourceStepY,
-                                        double sourceSampleSize,
+                                        final int targetOffset,
+                                        final int targetXStep,
+                                        final int targetYSkip,
+                                        final double sourceStartX,
+                                        final double sourceStartY,
+                                        final double sourceStepX,
+                                        final double sourceStepY,
+                                        final double sourceSampleSize,
                                         RenderListener listener) {
         Check.notNull(target, "target");
         Check.positiveOrZero(targetSizeX, "targetSizeX");
@@ -103,6 +199,45 @@ public abstract class FieldBase implements Field {
         Check.notZero(targetXStep, "targetXStep");
         Check.positiveOrZero(sourceSampleSize, "sourceSampleSize");
 
+        // Render bands of rows, possibly in parallel.  Each band starts from its own first row, so the result does not depend on the executor.
+        final int targetRowStep = targetSizeX * targetXStep + targetYSkip;
+        RenderBands.render(executor, targetSizeX, targetSizeY, listener, new RenderBands.BandRenderer() {
+            @Override public void renderBand(int startY, int endY, RenderListener bandListener) {
+                doRenderToArray(target,
+                                targetSizeX,
+                                endY - startY,
+                                targetOffset + startY * targetRowStep,
+                                targetXStep,
+                                targetYSkip,
+                                sourceStartX,
+                                sourceStartY + startY * sourceStepY,
+                                sourceStepX,
+                                sourceStepY,
+                                sourceSampleSize,
+                                bandListener);
+            }
+        });
+    }
+
+    /**
+     * Renders a band of rows of renderToArray, with all inputs checked for validity by the caller.
+     * Samples each row with getValues, so fields usually only need to override that.
+     * May be called concurrently from several threads for different bands.
+     *
+     * @param listener listener to report the progress of the band to, or null if none.  Rendering should stop when it returns false.
+     */
+    protected void doRenderToArray(float[] target,
+                                   int targetSizeX,
+                                   int targetSizeY,
+                                   int targetOffset,
+                                   int targetXStep,
+                                   int targetYSkip,
+                                   double sourceStartX,
+                                   double sourceStartY,
+                                   double sourceStepX,
+                                   double sourceStepY,
+                                   double sourceSampleSize,
+                                   RenderListener listener) {
         // Initialize progress reporting counter
         final int listenerStep = Math.max(targetSizeY / PROGRESS_REPORTS_PER_RENDERING, 1);
         int listenerCountdown = listenerStep;
@@ -114,17 +249,9 @@ public abstract class FieldBase implements Field {
         double sourceY = sourceStartY;
         for (int y = 0; y < targetSizeY && continueRendering; y++) {
 
-            // Reset source x position for each row
-            double sourceX = sourceStartX;
-
-            for (int x = 0; x < targetSizeX; x++) {
-                // Sample value from field and assign it to the correct place in the raster data array
-                target[i] = getValue(sourceX, sourceY, sourceSampleSize);
-
-                // Step to next source and target location along x axis
-                i += targetXStep;
-                sourceX += sourceStepX;
-            }
+            // Sample the row and write it to the correct place in the raster data array
+            getValues(sourceStartX, sourceY, sourceStepX, targetSizeX, sourceSampleSize, target, i, targetXStep);
+            i += targetSizeX * targetXStep;
 
             // Step to next source and target location along y axis
             i += targetYSkip;
@@ -134,10 +261,29 @@ public abstract class FieldBase implements Field {
             if (listener != null && (--listenerCountdown <= 0 || y >= targetSizeY-1)) {
                 listenerCountdown = listenerStep;
 
-                double progress = ((double)y) / targetSizeY;
+                double progress = ((double)(y + 1)) / targetSizeY;
                 continueRendering = listener.onRenderProgress(progress);
             }
         }
     }
 
+    /**
+     * @return executor used to render bands of rows in renderToArray and renderToRaster.
+     */
+    public final RowBandExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @param executor executor used to render bands of rows in renderToArray and renderToRaster.
+     *                 Use RowBandExecutor.SERIAL to render on the calling thread (the default),
+     *                 or a parallel RowBandExecutor to render large areas in parallel.
+     *                 The results are identical in both cases.
+     *                 If a parallel executor is used, getValue must be thread safe.
+     */
+    public final void setExecutor(RowBandExecutor executor) {
+        Check.notNull(executor, "executor");
+        this.executor = executor;
+    }
+
 }
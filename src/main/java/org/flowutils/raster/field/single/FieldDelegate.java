@@ -2,6 +2,7 @@ package org.flowutils.raster.field.single;
 
 import org.flowutils.Symbol;
 import org.flowutils.raster.field.multi.MultiField;
+import org.flowutils.raster.field.multi.MultiFieldBase;
 
 import static org.flowutils.Check.notNull;
 
@@ -21,6 +22,14 @@ public final class FieldDelegate extends FieldBase {
         this.channel = channel;
     }
 
+    /**
+     * @return the field that the source MultiField uses for the channel, if it can be resolved, otherwise this delegate.
+     */
+    @Override public Field compile() {
+        if (sourceField instanceof MultiFieldBase) return ((MultiFieldBase) sourceField).compileChannel(channel);
+        else return this;
+    }
+
     @Override public float getValue(double x, double y) {
         return sourceField.getValue(x, y, channel, 0);
     }
@@ -29,4 +38,25 @@ public final class FieldDelegate extends FieldBase {
         return sourceField.getValue(x, y, channel, sampleSize);
     }
 
+    @Override public void getValues(double startX,
+                                    double y,
+                                    double stepX,
+                                    int count,
+                                    double sampleSize,
+                                    float[] target,
+                                    int targetOffset,
+                                    int targetStride) {
+        // Query the source field directly, instead of going through getValue of this field for each value
+        final MultiField sourceField = this.sourceField;
+        final Symbol channel = this.channel;
+
+        double x = startX;
+        int i = targetOffset;
+        for (int n = 0; n < count; n++) {
+            target[i] = sourceField.getValue(x, y, channel, sampleSize);
+            x += stepX;
+            i += targetStride;
+        }
+    }
+
 }
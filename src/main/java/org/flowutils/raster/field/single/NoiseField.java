@@ -64,4 +64,26 @@ public final class NoiseField extends FieldBase {
         return (float) SimplexGradientNoise.sdnoise2(x * scaleX + offsetX,
                                                      y * scaleY + offsetY);
     }
+
+    @Override public void getValues(double startX,
+                                    double y,
+                                    double stepX,
+                                    int count,
+                                    double sampleSize,
+                                    float[] target,
+                                    int targetOffset,
+                                    int targetStride) {
+        // The noise y coordinate is the same for the whole row
+        final double scaleX = this.scaleX;
+        final double offsetX = this.offsetX;
+        final double noiseY = y * scaleY + offsetY;
+
+        double x = startX;
+        int i = targetOffset;
+        for (int n = 0; n < count; n++) {
+            target[i] = (float) SimplexGradientNoise.sdnoise2(x * scaleX + offsetX, noiseY);
+            x += stepX;
+            i += targetStride;
+        }
+    }
 }
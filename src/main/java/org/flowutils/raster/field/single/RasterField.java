@@ -1,6 +1,7 @@
 package org.flowutils.raster.field.single;
 
 import org.flowutils.raster.raster.single.Raster;
+import org.flowutils.raster.raster.single.RasterImpl;
 
 import static org.flowutils.MathUtils.fastFloor;
 import static org.flowutils.MathUtils.mix;
@@ -109,7 +110,55 @@ public final class RasterField extends FieldBase {
     }
 
     public float getValue(double x, double y, double sampleSize) {
-        return sampleRasterAt(raster, x, y, wrapX, wrapY, extendBorder, defaultValue);
+        return sampleRasterAt(raster, x, y, sampleSize, wrapX, wrapY, extendBorder, defaultValue);
+    }
+
+    @Override public void getValues(double startX,
+                                    double y,
+                                    double stepX,
+                                    int count,
+                                    double sampleSize,
+                                    float[] target,
+                                    int targetOffset,
+                                    int targetStride) {
+        final Raster raster = this.raster;
+
+        // A RasterImpl ignores the sample size, so rows inside it can be interpolated directly from its data array
+        if (!(raster instanceof RasterImpl) || !(y >= 0 && y <= raster.getSizeY() - 1)) {
+            super.getValues(startX, y, stepX, count, sampleSize, target, targetOffset, targetStride);
+            return;
+        }
+
+        final int sizeX = raster.getSizeX();
+        final int sizeY = raster.getSizeY();
+        final float[] data = raster.getData();
+        final int xStep = raster.getDataXStep();
+
+        // The rows to interpolate between are the same for the whole span
+        final int y0 = fastFloor(y);
+        final int y1 = y0 < sizeY - 1 ? y0 + 1 : y0;
+        final float cy = (float) (y - y0);
+        final int row0 = raster.getDataOffset() + y0 * raster.getDataRowStep();
+        final int row1 = raster.getDataOffset() + y1 * raster.getDataRowStep();
+
+        double x = startX;
+        int i = targetOffset;
+        for (int n = 0; n < count; n++) {
+            if (x >= 0 && x <= sizeX - 1) {
+                final int x0 = fastFloor(x);
+                final int x1 = x0 < sizeX - 1 ? x0 + 1 : x0;
+                final float cx = (float) (x - x0);
+                final float yr0 = mix(cx, data[row0 + x0 * xStep], data[row0 + x1 * xStep]);
+                final float yr1 = mix(cx, data[row1 + x0 * xStep], data[row1 + x1 * xStep]);
+                target[i] = mix(cy, yr0, yr1);
+            }
+            else {
+                target[i] = sampleRasterAt(raster, x, y, sampleSize, wrapX, wrapY, extendBorder, defaultValue);
+            }
+
+            x += stepX;
+            i += targetStride;
+        }
     }
 
     /**
@@ -122,11 +171,34 @@ public final class RasterField extends FieldBase {
                                        final boolean wrapY,
                                        final boolean extendBorder,
                                        final float defaultValue) {
+        return sampleRasterAt(raster, x, y, 0, wrapX, wrapY, extendBorder, defaultValue);
+    }
+
+    /**
+     * Used by RasterField and MultiRaster field to get a value from a raster with wrapping.
+     * Inside the raster the sample size is passed on to the raster, so that e.g. a MipmappedRaster can use a lower resolution level.
+     * The field coordinates are the cell coordinates of the raster, so the sample size is passed on as is.
+     * Outside the raster the full resolution values are used.
+     */
+    public static float sampleRasterAt(final Raster raster,
+                                       double x,
+                                       double y,
+                                       double sampleSize,
+                                       final boolean wrapX,
+                                       final boolean wrapY,
+                                       final boolean extendBorder,
+                                       final float defaultValue) {
 
         if (raster == null) return defaultValue;
         if (!wrapX && !extendBorder && (x < 0 || x > raster.getSizeX() - 1)) return defaultValue;
         if (!wrapY && !extendBorder && (y < 0 || y > raster.getSizeY() - 1)) return defaultValue;
 
+        // Inside the raster no wrapping is needed, so let the raster sample itself, which lets it use its own fast access paths
+        if (x >= 0 && x <= raster.getSizeX() - 1 &&
+            y >= 0 && y <= raster.getSizeY() - 1) {
+            return raster.sampleValue(x, y, sampleSize);
+        }
+
         int x0 = fastFloor(x);
         int y0 = fastFloor(y);
         int x1 = x0 + 1;
@@ -0,0 +1,50 @@
+package org.flowutils.raster.field.volume;
+
+import org.flowutils.raster.field.RenderListener;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.raster.volume.Raster3D;
+
+/**
+ * A three dimensional function that can be sampled at any location, and rendered to a Raster3D.
+ */
+public interface Field3D {
+
+    /**
+     * @return value of the field at the specified location.
+     */
+    float getValue(double x, double y, double z);
+
+    /**
+     * @param sampleSize approximate size of the volume that the sample covers, used to avoid aliasing.  Zero for a point sample.
+     * @return value of the field at the specified location.
+     */
+    float getValue(double x, double y, double z, double sampleSize);
+
+    /**
+     * Renders the volume from 0,0,0 to 1,1,1 of this field to the whole raster.
+     */
+    void renderToRaster3D(Raster3D raster);
+
+    /**
+     * Renders the specified volume of this field to the whole raster, on the calling thread.
+     * The corner cells of the raster get the values at the corners of the volume.
+     */
+    void renderToRaster3D(Raster3D raster,
+                          double sourceMinX, double sourceMinY, double sourceMinZ,
+                          double sourceMaxX, double sourceMaxY, double sourceMaxZ);
+
+    /**
+     * Renders the specified volume of this field to the whole raster, one chunk of the raster at a time.
+     * The corner cells of the raster get the values at the corners of the volume.
+     * Chunks where the field has the same value everywhere are stored as uniform chunks in the raster.
+     *
+     * @param executor executor used to render the chunks, possibly in parallel.
+     * @param renderListener listener that is notified about the progress, and can cancel the rendering, or null if none.
+     *                       Called from one thread at a time.
+     */
+    void renderToRaster3D(Raster3D raster,
+                          double sourceMinX, double sourceMinY, double sourceMinZ,
+                          double sourceMaxX, double sourceMaxY, double sourceMaxZ,
+                          RowBandExecutor executor,
+                          RenderListener renderListener);
+}
@@ -0,0 +1,138 @@
+package org.flowutils.raster.field.volume;
+
+import org.flowutils.Check;
+import org.flowutils.raster.field.RenderListener;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.parallel.RowBandTask;
+import org.flowutils.raster.raster.volume.Raster3D;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Common functionality for three dimensional fields.
+ */
+public abstract class Field3DBase implements Field3D {
+
+    @Override public float getValue(double x, double y, double z) {
+        return getValue(x, y, z, 0);
+    }
+
+    @Override public final void renderToRaster3D(Raster3D raster) {
+        renderToRaster3D(raster, 0, 0, 0, 1, 1, 1);
+    }
+
+    @Override public final void renderToRaster3D(Raster3D raster,
+                                                 double sourceMinX, double sourceMinY, double sourceMinZ,
+                                                 double sourceMaxX, double sourceMaxY, double sourceMaxZ) {
+        renderToRaster3D(raster, sourceMinX, sourceMinY, sourceMinZ, sourceMaxX, sourceMaxY, sourceMaxZ, RowBandExecutor.SERIAL, null);
+    }
+
+    @Override public void renderToRaster3D(final Raster3D raster,
+                                           final double sourceMinX, final double sourceMinY, final double sourceMinZ,
+                                           double sourceMaxX, double sourceMaxY, double sourceMaxZ,
+                                           RowBandExecutor executor,
+                                           final RenderListener renderListener) {
+        notNull(raster, "raster");
+        notNull(executor, "executor");
+
+        final double stepX = step(sourceMinX, sourceMaxX, raster.getSizeX());
+        final double stepY = step(sourceMinY, sourceMaxY, raster.getSizeY());
+        final double stepZ = step(sourceMinZ, sourceMaxZ, raster.getSizeZ());
+        final double sampleSize = (Math.abs(stepX) + Math.abs(stepY) + Math.abs(stepZ)) / 3.0;
+
+        final int chunkSize = raster.getChunkSize();
+        final int chunkCountX = raster.getChunkCountX();
+        final int chunkCountY = raster.getChunkCountY();
+        final int chunkCount = chunkCountX * chunkCountY * raster.getChunkCountZ();
+
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        final int[] completedChunks = {0};
+
+        // Each chunk is treated as a row of the executor, so that bands of chunks are rendered in parallel
+        executor.execute(chunkSize * chunkSize * chunkSize, chunkCount, new RowBandTask() {
+            @Override public void processRows(int startChunk, int endChunk) {
+                final float[] chunk = new float[chunkSize * chunkSize * chunkSize];
+                for (int i = startChunk; i < endChunk && !cancelled.get(); i++) {
+                    final int chunkX = i % chunkCountX;
+                    final int chunkY = (i / chunkCountX) % chunkCountY;
+                    final int chunkZ = i / (chunkCountX * chunkCountY);
+                    final int minX = chunkX * chunkSize;
+                    final int minY = chunkY * chunkSize;
+                    final int minZ = chunkZ * chunkSize;
+
+                    renderChunk(chunk,
+                                chunkSize,
+                                Math.min(chunkSize, raster.getSizeX() - minX),
+                                Math.min(chunkSize, raster.getSizeY() - minY),
+                                Math.min(chunkSize, raster.getSizeZ() - minZ),
+                                sourceMinX + minX * stepX,
+                                sourceMinY + minY * stepY,
+                                sourceMinZ + minZ * stepZ,
+                                stepX,
+                                stepY,
+                                stepZ,
+                                sampleSize);
+                    raster.writeChunk(chunkX, chunkY, chunkZ, chunk);
+
+                    if (renderListener != null) {
+                        synchronized (completedChunks) {
+                            completedChunks[0]++;
+                            if (!cancelled.get() && !renderListener.onRenderProgress((double) completedChunks[0] / chunkCount)) {
+                                cancelled.set(true);
+                            }
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Samples the field for the cells of one chunk.
+     * Override to render a chunk faster, e.g. if the field knows that it is uniform over the chunk.
+     *
+     * @param target array to write the values to, x first, then y, then z, with chunkSize cells along each side.
+     * @param chunkSize number of cells along each side of the chunk.
+     * @param countX number of cells to render along the x axis, the rest of the chunk is outside the raster.
+     * @param countY number of cells to render along the y axis, the rest of the chunk is outside the raster.
+     * @param countZ number of cells to render along the z axis, the rest of the chunk is outside the raster.
+     * @param startX field x coordinate of the first cell.
+     * @param startY field y coordinate of the first cell.
+     * @param startZ field z coordinate of the first cell.
+     * @param stepX field distance between cells along the x axis.
+     * @param stepY field distance between cells along the y axis.
+     * @param stepZ field distance between cells along the z axis.
+     * @param sampleSize size of the volume covered by each cell.
+     */
+    protected void renderChunk(float[] target,
+                               int chunkSize,
+                               int countX,
+                               int countY,
+                               int countZ,
+                               double startX,
+                               double startY,
+                               double startZ,
+                               double stepX,
+                               double stepY,
+                               double stepZ,
+                               double sampleSize) {
+        for (int z = 0; z < countZ; z++) {
+            final double sourceZ = startZ + z * stepZ;
+            for (int y = 0; y < countY; y++) {
+                final double sourceY = startY + y * stepY;
+                int i = (z * chunkSize + y) * chunkSize;
+                for (int x = 0; x < countX; x++) {
+                    target[i++] = getValue(startX + x * stepX, sourceY, sourceZ, sampleSize);
+                }
+            }
+        }
+    }
+
+    private static double step(double min, double max, int size) {
+        Check.normalNumber(min, "min");
+        Check.normalNumber(max, "max");
+        return size > 1 ? (max - min) / (size - 1) : 0;
+    }
+}
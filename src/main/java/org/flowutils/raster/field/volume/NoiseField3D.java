@@ -0,0 +1,63 @@
+package org.flowutils.raster.field.volume;
+
+import org.flowutils.SimplexGradientNoise;
+
+/**
+ * Three dimensional simplex noise, e.g. for caves or clouds.
+ */
+public final class NoiseField3D extends Field3DBase {
+
+    private final double scaleX;
+    private final double scaleY;
+    private final double scaleZ;
+    private final double offsetX;
+    private final double offsetY;
+    private final double offsetZ;
+
+    public NoiseField3D() {
+        this(1, 1, 1);
+    }
+
+    public NoiseField3D(double scaleX, double scaleY, double scaleZ) {
+        this(scaleX, scaleY, scaleZ, 0, 0, 0);
+    }
+
+    public NoiseField3D(double scaleX, double scaleY, double scaleZ, double offsetX, double offsetY, double offsetZ) {
+        this.scaleX = scaleX;
+        this.scaleY = scaleY;
+        this.scaleZ = scaleZ;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.offsetZ = offsetZ;
+    }
+
+    public double getScaleX() {
+        return scaleX;
+    }
+
+    public double getScaleY() {
+        return scaleY;
+    }
+
+    public double getScaleZ() {
+        return scaleZ;
+    }
+
+    public double getOffsetX() {
+        return offsetX;
+    }
+
+    public double getOffsetY() {
+        return offsetY;
+    }
+
+    public double getOffsetZ() {
+        return offsetZ;
+    }
+
+    @Override public float getValue(double x, double y, double z, double sampleSize) {
+        return (float) SimplexGradientNoise.sdnoise3(x * scaleX + offsetX,
+                                                     y * scaleY + offsetY,
+                                                     z * scaleZ + offsetZ);
+    }
+}
@@ -0,0 +1,103 @@
+package org.flowutils.raster.filter;
+
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.raster.single.Raster;
+
+/**
+ * Sets each cell to the average of the square of cells within the radius, using sliding window sums,
+ * so that the cost per cell is constant regardless of the radius.
+ *
+ * Repeating a box blur three times gives a close approximation of a gaussian blur.
+ *
+ * Immutable and thread safe.
+ */
+public final class BoxBlur extends SeparableFilterBase {
+
+    /**
+     * Creates a box blur with the border values extended past the edges, running on the calling thread.
+     *
+     * @param radius number of cells to average in each direction from the center cell.
+     */
+    public BoxBlur(int radius) {
+        this(radius, false, false, true, 0, RowBandExecutor.SERIAL);
+    }
+
+    /**
+     * @param radius number of cells to average in each direction from the center cell.
+     * @param wrapX if true, the values are wrapped in the x direction.
+     * @param wrapY if true, the values are wrapped in the y direction.
+     * @param extendBorder if true, values are clamped to the border value for non-wrapped directions.
+     * @param defaultValue the default value to use outside the raster for directions that are not wrapped if the border value is not extended.
+     * @param executor executor used to process bands of rows, possibly in parallel.
+     */
+    public BoxBlur(int radius, boolean wrapX, boolean wrapY, boolean extendBorder, float defaultValue, RowBandExecutor executor) {
+        super(radius, wrapX, wrapY, extendBorder, defaultValue, executor);
+    }
+
+    @Override protected void filterRow(float[] paddedRow, int sizeX, float[] target, int targetOffset) {
+        final int windowSize = 2 * getRadius() + 1;
+        final double scale = 1.0 / windowSize;
+
+        // Sums are kept in doubles, so that adding and removing values along long rows does not accumulate rounding errors
+        double sum = 0;
+        for (int i = 0; i < windowSize; i++) {
+            sum += paddedRow[i];
+        }
+
+        for (int x = 0; x < sizeX; x++) {
+            target[targetOffset + x] = (float) (sum * scale);
+            if (x + 1 < sizeX) {
+                sum += paddedRow[x + windowSize] - paddedRow[x];
+            }
+        }
+    }
+
+    @Override protected void filterColumns(float[] intermediate,
+                                           int sizeX,
+                                           int sizeY,
+                                           int blockStart,
+                                           int blockSize,
+                                           int startY,
+                                           int endY,
+                                           float[] result,
+                                           Raster target) {
+        final int radius = getRadius();
+        final double scale = 1.0 / (2 * radius + 1);
+        final double[] sums = new double[blockSize];
+
+        // Fill the window for the first row of the band
+        for (int y = startY - radius; y <= startY + radius; y++) {
+            addRow(intermediate, sizeX, sizeY, y, blockStart, blockSize, sums, 1);
+        }
+
+        for (int y = startY; y < endY; y++) {
+            for (int i = 0; i < blockSize; i++) {
+                result[i] = (float) (sums[i] * scale);
+            }
+            target.writeRow(y, blockStart, blockSize, result, 0);
+
+            // Slide the window down one row
+            if (y + 1 < endY) {
+                addRow(intermediate, sizeX, sizeY, y - radius, blockStart, blockSize, sums, -1);
+                addRow(intermediate, sizeX, sizeY, y + radius + 1, blockStart, blockSize, sums, 1);
+            }
+        }
+    }
+
+    private void addRow(float[] intermediate, int sizeX, int sizeY, int y, int blockStart, int blockSize, double[] sums, int sign) {
+        final int sourceRow = getSourceRow(y, sizeY);
+        if (sourceRow < 0) {
+            // The horizontal average of a row filled with the default value is the default value
+            final double value = sign * getDefaultValue();
+            for (int i = 0; i < blockSize; i++) {
+                sums[i] += value;
+            }
+        }
+        else {
+            final int rowStart = sourceRow * sizeX + blockStart;
+            for (int i = 0; i < blockSize; i++) {
+                sums[i] += sign * intermediate[rowStart + i];
+            }
+        }
+    }
+}
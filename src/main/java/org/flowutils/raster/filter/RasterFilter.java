@@ -0,0 +1,22 @@
+package org.flowutils.raster.filter;
+
+import org.flowutils.raster.raster.single.Raster;
+
+/**
+ * A filter that calculates the values of a raster from the neighbourhood of each cell in another raster, e.g. a blur.
+ */
+public interface RasterFilter {
+
+    /**
+     * Filters the source raster, writing the result to the target raster.
+     *
+     * @param source raster to read values from.
+     * @param target raster to write the result to.  Must have the same size as the source.  May be the same raster as the source.
+     */
+    void apply(Raster source, Raster target);
+
+    /**
+     * Filters the raster in place.
+     */
+    void apply(Raster raster);
+}
@@ -0,0 +1,146 @@
+package org.flowutils.raster.filter;
+
+import org.flowutils.Check;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.raster.single.Raster;
+
+import java.util.Arrays;
+
+/**
+ * Convolves a raster with a kernel that is the product of a one dimensional kernel in the x and y directions, e.g. a gaussian blur.
+ * Costs O(k) per cell for a kernel with k weights, instead of O(k²) for the equivalent two dimensional kernel.
+ *
+ * Immutable and thread safe.
+ */
+public final class SeparableConvolution extends SeparableFilterBase {
+
+    private final float[] weights;
+    private final float weightSum;
+
+    /**
+     * Creates a gaussian blur with the border values extended past the edges, running on the calling thread.
+     *
+     * @param sigma standard deviation of the gaussian, in cells.
+     */
+    public static SeparableConvolution gaussian(double sigma) {
+        return new SeparableConvolution(gaussianKernel(sigma));
+    }
+
+    /**
+     * @param sigma standard deviation of the gaussian, in cells.
+     * @return normalized weights of a gaussian kernel, reaching three standard deviations in each direction.
+     */
+    public static float[] gaussianKernel(double sigma) {
+        Check.positive(sigma, "sigma");
+
+        final int radius = (int) Math.ceil(3 * sigma);
+        final float[] weights = new float[2 * radius + 1];
+        double sum = 0;
+        for (int i = -radius; i <= radius; i++) {
+            final double weight = Math.exp(-(i * i) / (2 * sigma * sigma));
+            weights[i + radius] = (float) weight;
+            sum += weight;
+        }
+
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = (float) (weights[i] / sum);
+        }
+
+        return weights;
+    }
+
+    /**
+     * Creates a convolution with the border values extended past the edges, running on the calling thread.
+     *
+     * @param weights one dimensional kernel, applied in both the x and y directions.  Should have an odd number of weights, centered on the middle one.
+     */
+    public SeparableConvolution(float[] weights) {
+        this(weights, false, false, true, 0, RowBandExecutor.SERIAL);
+    }
+
+    /**
+     * @param weights one dimensional kernel, applied in both the x and y directions.  Should have an odd number of weights, centered on the middle one.
+     * @param wrapX if true, the values are wrapped in the x direction.
+     * @param wrapY if true, the values are wrapped in the y direction.
+     * @param extendBorder if true, values are clamped to the border value for non-wrapped directions.
+     * @param defaultValue the default value to use outside the raster for directions that are not wrapped if the border value is not extended.
+     * @param executor executor used to process bands of rows, possibly in parallel.
+     */
+    public SeparableConvolution(float[] weights, boolean wrapX, boolean wrapY, boolean extendBorder, float defaultValue, RowBandExecutor executor) {
+        super(getRadius(weights), wrapX, wrapY, extendBorder, defaultValue, executor);
+
+        this.weights = weights.clone();
+
+        float sum = 0;
+        for (float weight : weights) {
+            sum += weight;
+        }
+        weightSum = sum;
+    }
+
+    /**
+     * @return a copy of the weights of the one dimensional kernel.
+     */
+    public float[] getWeights() {
+        return weights.clone();
+    }
+
+    @Override protected void filterRow(float[] paddedRow, int sizeX, float[] target, int targetOffset) {
+        Arrays.fill(target, targetOffset, targetOffset + sizeX, 0f);
+
+        for (int k = 0; k < weights.length; k++) {
+            final float weight = weights[k];
+            if (weight != 0) {
+                for (int x = 0; x < sizeX; x++) {
+                    target[targetOffset + x] += weight * paddedRow[x + k];
+                }
+            }
+        }
+    }
+
+    @Override protected void filterColumns(float[] intermediate,
+                                           int sizeX,
+                                           int sizeY,
+                                           int blockStart,
+                                           int blockSize,
+                                           int startY,
+                                           int endY,
+                                           float[] result,
+                                           Raster target) {
+        final int radius = getRadius();
+
+        // Rows outside the raster filled with the default value have that value times the weight sum after the horizontal pass
+        final float outsideValue = getDefaultValue() * weightSum;
+
+        for (int y = startY; y < endY; y++) {
+            Arrays.fill(result, 0, blockSize, 0f);
+
+            for (int k = 0; k < weights.length; k++) {
+                final float weight = weights[k];
+                if (weight != 0) {
+                    final int sourceRow = getSourceRow(y + k - radius, sizeY);
+                    if (sourceRow < 0) {
+                        final float value = weight * outsideValue;
+                        for (int i = 0; i < blockSize; i++) {
+                            result[i] += value;
+                        }
+                    }
+                    else {
+                        final int rowStart = sourceRow * sizeX + blockStart;
+                        for (int i = 0; i < blockSize; i++) {
+                            result[i] += weight * intermediate[rowStart + i];
+                        }
+                    }
+                }
+            }
+
+            target.writeRow(y, blockStart, blockSize, result, 0);
+        }
+    }
+
+    private static int getRadius(float[] weights) {
+        Check.notNull(weights, "weights");
+        if (weights.length % 2 != 1) throw new IllegalArgumentException("The kernel should have an odd number of weights, but it had " + weights.length);
+        return weights.length / 2;
+    }
+}
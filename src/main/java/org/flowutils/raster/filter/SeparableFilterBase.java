@@ -0,0 +1,157 @@
+package org.flowutils.raster.filter;
+
+import org.flowutils.Check;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.parallel.RowBandTask;
+import org.flowutils.raster.raster.single.Raster;
+import org.flowutils.raster.raster.single.RasterEdges;
+
+/**
+ * Common functionality for filters that can be separated into a horizontal pass over each row, followed by a vertical pass over each column.
+ *
+ * The horizontal pass reads each source row into a buffer that extends radius cells past the raster edges,
+ * and writes the filtered rows to an intermediate array.  The vertical pass processes the intermediate array
+ * one block of columns at a time, so that the rows in the filter window stay in the cache while moving down the block.
+ * Both passes are split into bands of rows that are processed in parallel by the RowBandExecutor.
+ *
+ * Edges are handled in the same way as in a RasterField: wrapped, extended from the border values, or filled with a default value.
+ */
+public abstract class SeparableFilterBase implements RasterFilter {
+
+    /**
+     * Number of columns processed together in the vertical pass.
+     */
+    protected static final int COLUMN_BLOCK_SIZE = 512;
+
+    private final int radius;
+    private final boolean wrapX;
+    private final boolean wrapY;
+    private final boolean extendBorder;
+    private final float defaultValue;
+    private final RowBandExecutor executor;
+
+    /**
+     * @param radius number of cells the filter reaches in each direction.
+     * @param wrapX if true, the values are wrapped in the x direction.
+     * @param wrapY if true, the values are wrapped in the y direction.
+     * @param extendBorder if true, values are clamped to the border value for non-wrapped directions.
+     * @param defaultValue the default value to use outside the raster for directions that are not wrapped if the border value is not extended.
+     * @param executor executor used to process bands of rows, possibly in parallel.
+     */
+    protected SeparableFilterBase(int radius, boolean wrapX, boolean wrapY, boolean extendBorder, float defaultValue, RowBandExecutor executor) {
+        Check.positiveOrZero(radius, "radius");
+        Check.notNull(executor, "executor");
+
+        this.radius = radius;
+        this.wrapX = wrapX;
+        this.wrapY = wrapY;
+        this.extendBorder = extendBorder;
+        this.defaultValue = defaultValue;
+        this.executor = executor;
+    }
+
+    /**
+     * @return number of cells the filter reaches in each direction.
+     */
+    public final int getRadius() {
+        return radius;
+    }
+
+    public final boolean isWrapX() {
+        return wrapX;
+    }
+
+    public final boolean isWrapY() {
+        return wrapY;
+    }
+
+    public final boolean isExtendBorder() {
+        return extendBorder;
+    }
+
+    public final float getDefaultValue() {
+        return defaultValue;
+    }
+
+    public final RowBandExecutor getExecutor() {
+        return executor;
+    }
+
+    @Override public final void apply(Raster raster) {
+        apply(raster, raster);
+    }
+
+    @Override public final void apply(final Raster source, final Raster target) {
+        Check.notNull(source, "source");
+        Check.notNull(target, "target");
+        Check.equal(target.getSizeX(), "target sizeX", source.getSizeX(), "source sizeX");
+        Check.equal(target.getSizeY(), "target sizeY", source.getSizeY(), "source sizeY");
+
+        final int sizeX = source.getSizeX();
+        final int sizeY = source.getSizeY();
+        final float[] intermediate = new float[sizeX * sizeY];
+
+        // Horizontal pass
+        executor.execute(sizeX, sizeY, new RowBandTask() {
+            @Override public void processRows(int startY, int endY) {
+                final float[] paddedRow = new float[sizeX + 2 * radius];
+                for (int y = startY; y < endY; y++) {
+                    RasterEdges.readPaddedRow(source, y, radius, paddedRow, wrapX, wrapY, extendBorder, defaultValue);
+                    filterRow(paddedRow, sizeX, intermediate, y * sizeX);
+                }
+            }
+        });
+
+        // Vertical pass, only reads the intermediate array, so the target can be the same raster as the source
+        executor.execute(sizeX, sizeY, new RowBandTask() {
+            @Override public void processRows(int startY, int endY) {
+                final float[] result = new float[Math.min(COLUMN_BLOCK_SIZE, sizeX)];
+                for (int blockStart = 0; blockStart < sizeX; blockStart += COLUMN_BLOCK_SIZE) {
+                    final int blockSize = Math.min(COLUMN_BLOCK_SIZE, sizeX - blockStart);
+                    filterColumns(intermediate, sizeX, sizeY, blockStart, blockSize, startY, endY, result, target);
+                }
+            }
+        });
+    }
+
+    /**
+     * Filters one row in the horizontal direction.
+     *
+     * @param paddedRow source values of the row, with the value at x in paddedRow[radius + x], and radius values outside the raster at both ends.
+     * @param sizeX number of cells in the row.
+     * @param target array to write the result to.
+     * @param targetOffset index in the target array to write the result for x = 0 to.
+     */
+    protected abstract void filterRow(float[] paddedRow, int sizeX, float[] target, int targetOffset);
+
+    /**
+     * Filters a block of columns in the vertical direction, for a band of rows, and writes the result to the target raster.
+     * Use getSourceRow to find the intermediate row to use for rows outside the raster.
+     *
+     * @param intermediate horizontally filtered values, row by row.
+     * @param sizeX x size of the raster.
+     * @param sizeY y size of the raster.
+     * @param blockStart x coordinate of the first column in the block.
+     * @param blockSize number of columns in the block.
+     * @param startY first row to calculate.
+     * @param endY row after the last row to calculate.
+     * @param result buffer with room for blockSize values, to calculate a row of the block in before writing it to the target.
+     * @param target raster to write the result to.
+     */
+    protected abstract void filterColumns(float[] intermediate,
+                                          int sizeX,
+                                          int sizeY,
+                                          int blockStart,
+                                          int blockSize,
+                                          int startY,
+                                          int endY,
+                                          float[] result,
+                                          Raster target);
+
+    /**
+     * @return the row inside the raster to use for the specified row, or -1 if the default value should be used.
+     */
+    protected final int getSourceRow(int y, int sizeY) {
+        return RasterEdges.getSourceCoordinate(y, sizeY, wrapY, extendBorder);
+    }
+}
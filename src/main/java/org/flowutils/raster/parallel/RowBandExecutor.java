@@ -0,0 +1,250 @@
+package org.flowutils.raster.parallel;
+
+import org.flowutils.Check;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs row based raster operations, splitting them into bands of rows that are processed in parallel
+ * on a ForkJoinPool when the operation covers enough cells to be worth it.
+ *
+ * Smaller operations are run directly on the calling thread.
+ *
+ * Thread safe.
+ */
+public final class RowBandExecutor {
+
+    /**
+     * Default number of raster cells an operation should cover before it is split up and run in parallel.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 64 * 1024;
+
+    /**
+     * Number of bands to create for each thread in the pool, to even out the load if some bands are slower than others.
+     */
+    private static final int BANDS_PER_THREAD = 4;
+
+    /**
+     * Executor that runs all operations on the calling thread.
+     */
+    public static final RowBandExecutor SERIAL = new RowBandExecutor(null, Integer.MAX_VALUE);
+
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+
+    /**
+     * Creates an executor that uses a shared ForkJoinPool with one thread per available processor,
+     * and the default threshold for when to run operations in parallel.
+     */
+    public RowBandExecutor() {
+        this(DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Creates an executor that uses a shared ForkJoinPool with one thread per available processor.
+     *
+     * @param parallelThreshold number of raster cells an operation must cover to be run in parallel.
+     *                          Smaller operations are run on the calling thread.
+     */
+    public RowBandExecutor(int parallelThreshold) {
+        this(SharedPoolHolder.SHARED_POOL, parallelThreshold);
+    }
+
+    /**
+     * @param pool pool to run the parallel operations in, or null to run all operations on the calling thread.
+     * @param parallelThreshold number of raster cells an operation must cover to be run in parallel.
+     *                          Smaller operations are run on the calling thread.
+     */
+    public RowBandExecutor(ForkJoinPool pool, int parallelThreshold) {
+        Check.positive(parallelThreshold, "parallelThreshold");
+
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * @return the pool used to run parallel operations, or null if all operations are run on the calling thread.
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return number of raster cells an operation must cover to be run in parallel.
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * @return number of bands an operation over the specified area would be split into.  1 if it would be run serially.
+     */
+    public int getBandCount(int sizeX, int sizeY) {
+        if (pool == null ||
+            sizeY < 2 ||
+            (long) sizeX * sizeY < parallelThreshold) {
+            return 1;
+        }
+        else {
+            return Math.max(1, Math.min(sizeY, pool.getParallelism() * BANDS_PER_THREAD));
+        }
+    }
+
+    /**
+     * Runs the task over the rows 0 (inclusive) to sizeY (exclusive).
+     * If the area is large enough, the rows are split into bands that are processed in parallel.
+     * Returns when all rows have been processed.
+     *
+     * @param sizeX number of cells on each row, used to determine whether the operation should be run in parallel.
+     * @param sizeY number of rows to process.
+     * @param task task to run over the rows.
+     * @throws RuntimeException any exception thrown by the task is re-thrown in the calling thread.
+     */
+    public void execute(int sizeX, int sizeY, RowBandTask task) {
+        Check.notNull(task, "task");
+        Check.positiveOrZero(sizeX, "sizeX");
+        Check.positiveOrZero(sizeY, "sizeY");
+
+        if (sizeY == 0) return;
+
+        final int bandCount = getBandCount(sizeX, sizeY);
+        if (bandCount <= 1) {
+            // Not worth the overhead to run in parallel
+            task.processRows(0, sizeY);
+        }
+        else {
+            final BandAction action = new BandAction(task, sizeY, bandCount, 0, bandCount);
+
+            if (ForkJoinTask.getPool() == pool) {
+                // Already running inside our pool, so split the work up within the current task
+                action.invoke();
+            }
+            else {
+                pool.invoke(action);
+            }
+        }
+    }
+
+    /**
+     * Calculates a result over the rows 0 (inclusive) to sizeY (exclusive).
+     * If the area is large enough, the rows are split into bands whose results are calculated in parallel,
+     * and then combined pairwise in row order.
+     *
+     * @param sizeX number of cells on each row, used to determine whether the operation should be run in parallel.
+     * @param sizeY number of rows to process.  Must be at least one.
+     * @param reduction reduction to run over the rows.
+     * @return the combined result for all rows.
+     * @throws RuntimeException any exception thrown by the reduction is re-thrown in the calling thread.
+     */
+    public <T> T reduce(int sizeX, int sizeY, RowBandReduction<T> reduction) {
+        Check.notNull(reduction, "reduction");
+        Check.positiveOrZero(sizeX, "sizeX");
+        Check.positive(sizeY, "sizeY");
+
+        final int bandCount = getBandCount(sizeX, sizeY);
+        if (bandCount <= 1) {
+            // Not worth the overhead to run in parallel
+            return reduction.processRows(0, sizeY);
+        }
+        else {
+            final BandReduction<T> task = new BandReduction<T>(reduction, sizeY, bandCount, 0, bandCount);
+
+            if (ForkJoinTask.getPool() == pool) {
+                // Already running inside our pool, so split the work up within the current task
+                return task.invoke();
+            }
+            else {
+                return pool.invoke(task);
+            }
+        }
+    }
+
+    /**
+     * @return the first row of the specified band, when sizeY rows are split into bandCount bands.
+     */
+    private static int bandStart(int band, int bandCount, int sizeY) {
+        return (int) (((long) band * sizeY) / bandCount);
+    }
+
+    /**
+     * Recursively splits a range of bands in half until there is only one band left, and processes it.
+     */
+    private static final class BandAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RowBandTask task;
+        private final int sizeY;
+        private final int bandCount;
+        private final int firstBand;
+        private final int endBand;
+
+        private BandAction(RowBandTask task, int sizeY, int bandCount, int firstBand, int endBand) {
+            this.task = task;
+            this.sizeY = sizeY;
+            this.bandCount = bandCount;
+            this.firstBand = firstBand;
+            this.endBand = endBand;
+        }
+
+        @Override protected void compute() {
+            if (endBand - firstBand <= 1) {
+                final int startY = bandStart(firstBand, bandCount, sizeY);
+                final int endY = bandStart(endBand, bandCount, sizeY);
+                if (endY > startY) task.processRows(startY, endY);
+            }
+            else {
+                final int middleBand = (firstBand + endBand) >>> 1;
+                invokeAll(new BandAction(task, sizeY, bandCount, firstBand, middleBand),
+                          new BandAction(task, sizeY, bandCount, middleBand, endBand));
+            }
+        }
+    }
+
+    /**
+     * Recursively splits a range of bands in half until there is only one band left, calculates its result,
+     * and combines the results of the halves.
+     */
+    private static final class BandReduction<T> extends RecursiveTask<T> {
+        private static final long serialVersionUID = 1L;
+
+        private final RowBandReduction<T> reduction;
+        private final int sizeY;
+        private final int bandCount;
+        private final int firstBand;
+        private final int endBand;
+
+        private BandReduction(RowBandReduction<T> reduction, int sizeY, int bandCount, int firstBand, int endBand) {
+            this.reduction = reduction;
+            this.sizeY = sizeY;
+            this.bandCount = bandCount;
+            this.firstBand = firstBand;
+            this.endBand = endBand;
+        }
+
+        @Override protected T compute() {
+            if (endBand - firstBand <= 1) {
+                return reduction.processRows(bandStart(firstBand, bandCount, sizeY),
+                                             bandStart(endBand, bandCount, sizeY));
+            }
+            else {
+                final int middleBand = (firstBand + endBand) >>> 1;
+                final BandReduction<T> first = new BandReduction<T>(reduction, sizeY, bandCount, firstBand, middleBand);
+                final BandReduction<T> second = new BandReduction<T>(reduction, sizeY, bandCount, middleBand, endBand);
+                first.fork();
+                final T secondResult = second.compute();
+                return reduction.combine(first.join(), secondResult);
+            }
+        }
+    }
+
+    /**
+     * Lazily creates the shared pool when it is first needed.
+     */
+    private static final class SharedPoolHolder {
+        private static final ForkJoinPool SHARED_POOL = new ForkJoinPool();
+    }
+
+}
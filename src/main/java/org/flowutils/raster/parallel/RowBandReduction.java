@@ -0,0 +1,32 @@
+package org.flowutils.raster.parallel;
+
+/**
+ * An operation over the rows of a raster that calculates a result for each band of rows, and combines the results of the bands.
+ *
+ * @param <T> type of the result.
+ */
+public interface RowBandReduction<T> {
+
+    /**
+     * Calculates the result for the rows from startY (inclusive) to endY (exclusive).
+     *
+     * May be called concurrently from several threads for different, non-overlapping bands,
+     * so any state kept between rows should be local to the call.
+     *
+     * @param startY first row to process.
+     * @param endY row after the last row to process.
+     * @return the result for the band.
+     */
+    T processRows(int startY, int endY);
+
+    /**
+     * Combines the results of two adjacent bands.
+     * May modify and return one of the parameters, as the partial results are not used after they have been combined.
+     *
+     * @param first result of the band above.
+     * @param second result of the band below.
+     * @return the result for both bands.
+     */
+    T combine(T first, T second);
+
+}
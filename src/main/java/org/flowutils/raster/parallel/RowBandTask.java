@@ -0,0 +1,19 @@
+package org.flowutils.raster.parallel;
+
+/**
+ * An operation over the rows of a raster, that can be split into independent bands of rows.
+ */
+public interface RowBandTask {
+
+    /**
+     * Processes the rows from startY (inclusive) to endY (exclusive).
+     *
+     * May be called concurrently from several threads for different, non-overlapping bands,
+     * so any state kept between rows should be local to the call.
+     *
+     * @param startY first row to process.
+     * @param endY row after the last row to process.
+     */
+    void processRows(int startY, int endY);
+
+}
@@ -0,0 +1,66 @@
+package org.flowutils.raster.raster.multi;
+
+import org.flowutils.Symbol;
+import org.flowutils.raster.raster.single.BufferRaster;
+import org.flowutils.raster.raster.single.Raster;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * A MultiRaster that stores the data of each channel outside the java heap, in a separate BufferRaster.
+ *
+ * Useful for very large rasters that should not be kept on the heap.
+ * Use MultiRasterFile to create a BufferMultiRaster that is memory mapped from a file.
+ *
+ * Channels can not be added or removed after the BufferMultiRaster is created.
+ */
+public final class BufferMultiRaster extends MultiRasterBase {
+
+    /**
+     * Creates a new raster with each channel stored in direct buffers.
+     *
+     * @param sizeX x size of the raster (must be positive)
+     * @param sizeY y size of the raster (must be positive)
+     * @param channels the ids of the channels to have in the raster.
+     */
+    public BufferMultiRaster(int sizeX, int sizeY, Symbol ... channels) {
+        this(sizeX, sizeY, Arrays.asList(channels));
+    }
+
+    /**
+     * Creates a new raster with each channel stored in direct buffers.
+     *
+     * @param sizeX x size of the raster (must be positive)
+     * @param sizeY y size of the raster (must be positive)
+     * @param channels a collection with the ids of the channels to have in the raster.
+     */
+    public BufferMultiRaster(int sizeX, int sizeY, Collection<Symbol> channels) {
+        super(sizeX, sizeY);
+        notNull(channels, "channels");
+
+        for (Symbol channelId : channels) {
+            doAddChannel(channelId, new BufferRaster(sizeX, sizeY));
+        }
+    }
+
+    /**
+     * Creates a raster with the specified BufferRaster channels, e.g. memory mapped from a file.
+     */
+    BufferMultiRaster(int sizeX, int sizeY, Map<Symbol, Raster> channels) {
+        super(sizeX, sizeY, channels);
+    }
+
+    /**
+     * Writes any changes to READ_WRITE memory mapped channels to the storage device.  Does nothing for channels in direct buffers.
+     */
+    public void force() {
+        for (Raster channel : getChannels().values()) {
+            ((BufferRaster) channel).force();
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+package org.flowutils.raster.raster.multi;
+
+/**
+ * Describes how the channels of a MultiRaster are mostly accessed, so that a suitable memory layout can be picked for it.
+ */
+public enum ChannelAccessPattern {
+
+    /**
+     * All the channels of a cell are usually accessed together, e.g. when rendering or when sampling a location.
+     * Uses an interleaved layout, where the channel values of each cell are stored next to each other.
+     */
+    PER_PIXEL,
+
+    /**
+     * One channel is usually processed at a time over a large area, e.g. when filtering or calculating statistics.
+     * Uses a planar layout, where each channel is stored in its own array.
+     */
+    PER_CHANNEL
+
+}
@@ -1,11 +1,16 @@
 package org.flowutils.raster.raster.multi;
 
+import org.flowutils.Check;
 import org.flowutils.Symbol;
+import org.flowutils.raster.parallel.RowBandTask;
+import org.flowutils.raster.raster.single.DirtyRegionTracker;
 import org.flowutils.raster.raster.single.Raster;
 import org.flowutils.raster.raster.single.RasterImpl;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import static org.flowutils.Check.notNull;
 
@@ -18,6 +23,7 @@ import static org.flowutils.Check.notNull;
 public final class InterleavedMultiRaster extends MultiRasterBase {
 
     private final float data[];
+    private final int channelCount;
 
     /**
      * @param sizeX x size of the raster (must be positive)
@@ -35,12 +41,26 @@ public final class InterleavedMultiRaster extends MultiRasterBase {
      *                 in the order they should be interleaved at each pixel.
      */
     public InterleavedMultiRaster(int sizeX, int sizeY, Collection<Symbol> channels) {
+        this(sizeX, sizeY, new float[sizeX * sizeY * notNullSize(channels)], channels);
+    }
+
+    /**
+     * Creates an interleaved raster that uses an existing data array, e.g. one obtained from a RasterPool.
+     *
+     * @param sizeX x size of the raster (must be positive)
+     * @param sizeY y size of the raster (must be positive)
+     * @param data array to store the interleaved channel values in.  Must have room for sizeX * sizeY * number of channels values.
+     * @param channels a collection with the ids of the channels to have in the raster,
+     *                 in the order they should be interleaved at each pixel.
+     */
+    public InterleavedMultiRaster(int sizeX, int sizeY, float[] data, Collection<Symbol> channels) {
         super(sizeX, sizeY);
+        notNull(data, "data");
         notNull(channels, "channels");
+        Check.greaterOrEqual(data.length, "data length", sizeX * sizeY * channels.size(), "number of values in the raster");
 
-        // Create data array to hold the interleaved channel rasters in
-        int rasterSize = sizeX * sizeY;
-        data = new float[rasterSize * channels.size()];
+        this.data = data;
+        this.channelCount = channels.size();
 
         // Create the channel rasters
         int xStep = channels.size();
@@ -51,6 +71,11 @@ public final class InterleavedMultiRaster extends MultiRasterBase {
         }
     }
 
+    private static int notNullSize(Collection<Symbol> channels) {
+        notNull(channels, "channels");
+        return channels.size();
+    }
+
     /**
      * @return interleaved data array containing the channel elements for each pixel in sequence.
      *         E.g. if we have three channels, R, G, and B in that order, the data array will contain pixel 0,0 of channel R,
@@ -61,4 +86,76 @@ public final class InterleavedMultiRaster extends MultiRasterBase {
         return data;
     }
 
+    /**
+     * Creates a cursor that steps over the data array with a single index for all channels.
+     */
+    @Override public MultiRasterCursor createCursor(List<Symbol> channels) {
+        notNull(channels, "channels");
+
+        final Raster[] channelRasters = new Raster[channels.size()];
+        for (int i = 0; i < channelRasters.length; i++) {
+            channelRasters[i] = getChannel(channels.get(i));
+        }
+
+        return new MultiRasterCursor.InterleavedCursor(getSizeX(), getSizeY(), channelRasters, data, channelCount);
+    }
+
+    /**
+     * Fills the data array with a single sweep, instead of one strided pass for each channel.
+     */
+    @Override public void fill(final float value) {
+        markAllChannelsDirty();
+        final int rowLength = getSizeX() * channelCount;
+        getExecutor().execute(getSizeX(), getSizeY(), new RowBandTask() {
+            @Override public void processRows(int startY, int endY) {
+                Arrays.fill(data, startY * rowLength, endY * rowLength, value);
+            }
+        });
+    }
+
+    /**
+     * Updates the data array with a single sweep, instead of one strided pass for each channel.
+     */
+    @Override public void multiplyAdd(final float scale, final float offset) {
+        markAllChannelsDirty();
+        final int rowLength = getSizeX() * channelCount;
+        getExecutor().execute(getSizeX(), getSizeY(), new RowBandTask() {
+            @Override public void processRows(int startY, int endY) {
+                final int end = endY * rowLength;
+                for (int i = startY * rowLength; i < end; i++) {
+                    data[i] = data[i] * scale + offset;
+                }
+            }
+        });
+    }
+
+    /**
+     * Copies the data array directly if the source is an InterleavedMultiRaster with the same channels in the same order,
+     * otherwise transposes blocks of cells from the source layout.
+     */
+    @Override public void copyFrom(MultiRaster source) {
+        if (source instanceof InterleavedMultiRaster &&
+            source != this &&
+            new ArrayList<Symbol>(source.getChannelIds()).equals(new ArrayList<Symbol>(getChannelIds()))) {
+            checkCopySource(source);
+
+            markAllChannelsDirty();
+            final float[] sourceData = ((InterleavedMultiRaster) source).data;
+            final int rowLength = getSizeX() * channelCount;
+            getExecutor().execute(getSizeX(), getSizeY(), new RowBandTask() {
+                @Override public void processRows(int startY, int endY) {
+                    System.arraycopy(sourceData, startY * rowLength, data, startY * rowLength, (endY - startY) * rowLength);
+                }
+            });
+        }
+        else {
+            super.copyFrom(source);
+        }
+    }
+
+    private void markAllChannelsDirty() {
+        final DirtyRegionTracker tracker = getDirtyRegionTracker();
+        if (tracker != null) tracker.markDirty(0, 0, getSizeX() - 1, getSizeY() - 1);
+    }
+
 }
@@ -1,10 +1,12 @@
 package org.flowutils.raster.raster.multi;
 
 import org.flowutils.Symbol;
+import org.flowutils.raster.raster.single.DirtyRegionTracker;
 import org.flowutils.raster.raster.single.Raster;
 import org.flowutils.rectangle.intrectangle.IntRectangle;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -90,6 +92,40 @@ public interface MultiRaster {
      */
     void setValues(int gridX, int gridY, Map<Symbol, Float> data);
 
+    /**
+     * @param channels ids of the channels to access with the cursor, in the order of their channel indexes in the cursor.
+     * @return a new cursor positioned at 0,0, that reads and writes the values of the specified channels one cell at a time
+     *         without allocating objects or looking up the channels for each cell.
+     */
+    MultiRasterCursor createCursor(Symbol... channels);
+
+    /**
+     * @param channels ids of the channels to access with the cursor, in the order of their channel indexes in the cursor.
+     * @return a new cursor positioned at 0,0, that reads and writes the values of the specified channels one cell at a time
+     *         without allocating objects or looking up the channels for each cell.
+     */
+    MultiRasterCursor createCursor(List<Symbol> channels);
 
+    /**
+     * Creates a view to a rectangular area of this raster.
+     * The channels of the view share their values with the channels of this raster, see Raster.view.
+     *
+     * @param area area of this raster to create a view for, must be inside the extent of this raster.
+     *             The cell at the minimum corner of the area will be at 0,0 in the view.
+     * @return a raster with the size of the area and the same channels as this raster, that accesses the values in this raster.
+     */
+    MultiRaster view(IntRectangle area);
+
+    /**
+     * @return the tracker that changes to the channels of this raster are recorded in, or null if changes are not tracked.
+     */
+    DirtyRegionTracker getDirtyRegionTracker();
+
+    /**
+     * Starts or stops tracking changes to this raster.  The tracker is shared by all channels, see Raster.setDirtyRegionTracker.
+     *
+     * @param dirtyRegionTracker tracker to record changes in, or null to not track changes.
+     */
+    void setDirtyRegionTracker(DirtyRegionTracker dirtyRegionTracker);
 
 }
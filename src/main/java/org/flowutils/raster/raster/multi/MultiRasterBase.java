@@ -2,13 +2,21 @@ package org.flowutils.raster.raster.multi;
 
 import org.flowutils.Check;
 import org.flowutils.Symbol;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.parallel.RowBandTask;
+import org.flowutils.raster.raster.single.DirtyRegionTracker;
 import org.flowutils.raster.raster.single.Raster;
+import org.flowutils.raster.statistics.RasterStatistics;
+import org.flowutils.raster.statistics.RasterStatisticsCalculator;
 import org.flowutils.rectangle.intrectangle.ImmutableIntRectangle;
 import org.flowutils.rectangle.intrectangle.IntRectangle;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.flowutils.Check.notNull;
@@ -19,10 +27,20 @@ import static org.flowutils.Check.positive;
  */
 public abstract class MultiRasterBase implements MultiRaster {
 
+    /**
+     * Number of cells of each channel copied together in copyFrom.
+     * The values of a block from all channels stay in the cache while it is transposed between the layouts of the rasters.
+     */
+    protected static final int COPY_BLOCK_SIZE = 256;
+
     private final int sizeX;
     private final int sizeY;
     private transient IntRectangle extent = null;
     private final Map<Symbol, Raster> channels = new LinkedHashMap<Symbol, Raster>();
+    // Runtime listener, not part of the serialized state
+    private transient DirtyRegionTracker dirtyRegionTracker = null;
+    // Runtime setting, not part of the serialized state
+    private transient RowBandExecutor executor = RowBandExecutor.SERIAL;
 
     /**
      * @param sizeX x size of the raster.  Should not be zero.
@@ -119,6 +137,189 @@ public abstract class MultiRasterBase implements MultiRaster {
         }
     }
 
+    @Override public final DirtyRegionTracker getDirtyRegionTracker() {
+        return dirtyRegionTracker;
+    }
+
+    @Override public final void setDirtyRegionTracker(DirtyRegionTracker dirtyRegionTracker) {
+        this.dirtyRegionTracker = dirtyRegionTracker;
+
+        for (Raster channelRaster : channels.values()) {
+            channelRaster.setDirtyRegionTracker(dirtyRegionTracker);
+        }
+    }
+
+    @Override public final MultiRasterCursor createCursor(Symbol... channels) {
+        return createCursor(Arrays.asList(channels));
+    }
+
+    @Override public MultiRasterCursor createCursor(List<Symbol> channels) {
+        return MultiRasterCursor.create(this, channels);
+    }
+
+    @Override public MultiRaster view(IntRectangle area) {
+        notNull(area, "area");
+        if (area.isEmpty() || !getExtent().contains(area)) throw new IllegalArgumentException("The area ("+area+") is empty or outside the raster (which has the extent "+getExtent()+").");
+
+        final Map<Symbol, Raster> channelViews = new LinkedHashMap<Symbol, Raster>();
+        for (Map.Entry<Symbol, Raster> entry : channels.entrySet()) {
+            channelViews.put(entry.getKey(), entry.getValue().view(area));
+        }
+
+        final CompositeMultiRaster view = new CompositeMultiRaster(area.getSizeX(), area.getSizeY(), channelViews);
+        view.setExecutor(getExecutor());
+        return view;
+    }
+
+    /**
+     * @return executor used to run the bulk operations of this raster.
+     *         RowBandExecutor.SERIAL for deserialized rasters, as the executor is not serialized.
+     */
+    public final RowBandExecutor getExecutor() {
+        return executor != null ? executor : RowBandExecutor.SERIAL;
+    }
+
+    /**
+     * @param executor executor used to run the bulk operations of this raster.
+     *                 Use RowBandExecutor.SERIAL to run them on the calling thread (the default),
+     *                 or a parallel RowBandExecutor to split large operations into row bands that are processed in parallel.
+     *                 The results are identical in both cases.
+     */
+    public final void setExecutor(RowBandExecutor executor) {
+        Check.notNull(executor, "executor");
+        this.executor = executor;
+    }
+
+    /**
+     * Sets all cells of all channels to the specified value.
+     */
+    public void fill(final float value) {
+        final List<Raster> channelRasters = new ArrayList<Raster>(channels.values());
+        getExecutor().execute(sizeX, sizeY, new RowBandTask() {
+            @Override public void processRows(int startY, int endY) {
+                final float[] row = new float[sizeX];
+                Arrays.fill(row, value);
+
+                // One channel at a time, so that each channel is traversed in its own memory order
+                for (Raster channelRaster : channelRasters) {
+                    for (int y = startY; y < endY; y++) {
+                        channelRaster.writeRow(y, 0, sizeX, row, 0);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Multiplies all the values of all channels with the specified scale, and adds the offset.
+     */
+    public void multiplyAdd(final float scale, final float offset) {
+        final List<Raster> channelRasters = new ArrayList<Raster>(channels.values());
+        getExecutor().execute(sizeX, sizeY, new RowBandTask() {
+            @Override public void processRows(int startY, int endY) {
+                final float[] row = new float[sizeX];
+                for (Raster channelRaster : channelRasters) {
+                    for (int y = startY; y < endY; y++) {
+                        channelRaster.readRow(y, 0, sizeX, row, 0);
+                        for (int x = 0; x < sizeX; x++) {
+                            row[x] = row[x] * scale + offset;
+                        }
+                        channelRaster.writeRow(y, 0, sizeX, row, 0);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Replaces the contents of the channels of this raster with the channels with the same ids in the source raster.
+     * The rasters may use different layouts, e.g. an interleaved raster can be copied to a planar one and the other way around.
+     * The copying is done in blocks of cells for all channels at a time, so that neither raster is traversed with a large stride.
+     *
+     * @param source raster to copy content from.  Must have the same size as this raster, and contain all the channels of this raster.
+     */
+    public void copyFrom(MultiRaster source) {
+        checkCopySource(source);
+
+        final List<Raster> sourceChannels = new ArrayList<Raster>();
+        final List<Raster> targetChannels = new ArrayList<Raster>();
+        for (Map.Entry<Symbol, Raster> entry : channels.entrySet()) {
+            sourceChannels.add(source.getChannel(entry.getKey()));
+            targetChannels.add(entry.getValue());
+        }
+
+        final int channelCount = targetChannels.size();
+        getExecutor().execute(sizeX, sizeY, new RowBandTask() {
+            @Override public void processRows(int startY, int endY) {
+                final float[] block = new float[Math.min(COPY_BLOCK_SIZE, sizeX)];
+                for (int y = startY; y < endY; y++) {
+                    for (int blockStart = 0; blockStart < sizeX; blockStart += COPY_BLOCK_SIZE) {
+                        final int blockSize = Math.min(COPY_BLOCK_SIZE, sizeX - blockStart);
+                        for (int channel = 0; channel < channelCount; channel++) {
+                            sourceChannels.get(channel).readRow(y, blockStart, blockSize, block, 0);
+                            targetChannels.get(channel).writeRow(y, blockStart, blockSize, block, 0);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks that the source raster has the same size as this raster, and contains all the channels of this raster.
+     */
+    protected final void checkCopySource(MultiRaster source) {
+        notNull(source, "source");
+        Check.equal(source.getSizeX(), "source sizeX", sizeX, "sizeX");
+        Check.equal(source.getSizeY(), "source sizeY", sizeY, "sizeY");
+        for (Symbol channelId : channels.keySet()) {
+            if (!source.hasChannel(channelId)) throw new IllegalArgumentException("The source raster has no channel with id '" + channelId + "'.");
+        }
+    }
+
+    /**
+     * Calculates the minimum, maximum, sum, mean and variance of each channel in a single pass over the raster,
+     * using the executor of this raster.  Use a RasterStatisticsCalculator to also calculate histograms.
+     *
+     * @return statistics for each channel, in the order of the channels.
+     */
+    public final Map<Symbol, RasterStatistics> calculateStatistics() {
+        return calculateStatistics(getExecutor());
+    }
+
+    /**
+     * Calculates the minimum, maximum, sum, mean and variance of each channel inside the specified area in a single pass over the raster,
+     * using the executor of this raster.  Use a RasterStatisticsCalculator to also calculate histograms.
+     *
+     * @param area area to include in the statistics.  Must be inside the raster.
+     * @return statistics for each channel, in the order of the channels.
+     */
+    public final Map<Symbol, RasterStatistics> calculateStatistics(IntRectangle area) {
+        return calculateStatistics(area, getExecutor());
+    }
+
+    /**
+     * Calculates the minimum, maximum, sum, mean and variance of each channel in a single pass over the raster.
+     * Use a RasterStatisticsCalculator to also calculate histograms.
+     *
+     * @param executor executor used to process bands of rows, possibly in parallel.
+     * @return statistics for each channel, in the order of the channels.
+     */
+    public final Map<Symbol, RasterStatistics> calculateStatistics(RowBandExecutor executor) {
+        return new RasterStatisticsCalculator(executor).calculate(this);
+    }
+
+    /**
+     * Calculates the minimum, maximum, sum, mean and variance of each channel inside the specified area in a single pass over the raster.
+     * Use a RasterStatisticsCalculator to also calculate histograms.
+     *
+     * @param area area to include in the statistics.  Must be inside the raster.
+     * @param executor executor used to process bands of rows, possibly in parallel.
+     * @return statistics for each channel, in the order of the channels.
+     */
+    public final Map<Symbol, RasterStatistics> calculateStatistics(IntRectangle area, RowBandExecutor executor) {
+        return new RasterStatisticsCalculator(executor).calculate(this, area);
+    }
 
     /**
      * Keeps track of a new channel, or replaces a previous channel with the same id.
@@ -134,6 +335,8 @@ public abstract class MultiRasterBase implements MultiRaster {
         Check.equal(channelRaster.getSizeX(), "x size of added channel", sizeX, "raster x size");
         Check.equal(channelRaster.getSizeY(), "y size of added channel", sizeY, "raster y size");
 
+        if (dirtyRegionTracker != null) channelRaster.setDirtyRegionTracker(dirtyRegionTracker);
+
         channels.put(channelId, channelRaster);
     }
 
@@ -0,0 +1,345 @@
+package org.flowutils.raster.raster.multi;
+
+import org.flowutils.Check;
+import org.flowutils.Symbol;
+import org.flowutils.raster.raster.single.Raster;
+import org.flowutils.rectangle.intrectangle.ImmutableIntRectangle;
+
+import java.util.List;
+
+/**
+ * Reads and writes the values of a selected set of channels of a MultiRaster one cell at a time, without allocating
+ * objects or looking up channels for each cell.  Useful in inner loops that process all the channels of each cell together.
+ *
+ * The channels are resolved to indexes when the cursor is created; the index of a channel is its position in the list
+ * of channels the cursor was created with.  The cursor starts at 0,0, and next() moves it row by row over the raster:
+ *
+ * <pre>
+ * final MultiRasterCursor cursor = raster.createCursor(RED, GREEN, BLUE);
+ * final float[] rgb = new float[3];
+ * do {
+ *     cursor.read(rgb, 0);
+ *     ...
+ *     cursor.write(rgb, 0);
+ * } while (cursor.next());
+ * cursor.close();
+ * </pre>
+ *
+ * Values written through the cursor directly to data arrays are reported to the dirty region tracker of the raster
+ * when the cursor is closed.
+ *
+ * Not thread safe, but several cursors can be used on different parts of the same raster from different threads.
+ */
+public abstract class MultiRasterCursor implements AutoCloseable {
+
+    private final int sizeX;
+    private final int sizeY;
+    private final Raster[] channels;
+
+    private int x;
+    private int y;
+
+    private int writtenMinX = Integer.MAX_VALUE;
+    private int writtenMinY = Integer.MAX_VALUE;
+    private int writtenMaxX = Integer.MIN_VALUE;
+    private int writtenMaxY = Integer.MIN_VALUE;
+
+    /**
+     * @return a cursor for the specified channels of the raster, using direct array access where possible.
+     */
+    static MultiRasterCursor create(MultiRaster raster, List<Symbol> channelIds) {
+        Check.notNull(channelIds, "channelIds");
+
+        final Raster[] channels = new Raster[channelIds.size()];
+        boolean arrayBacked = true;
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = raster.getChannel(channelIds.get(i));
+            arrayBacked &= channels[i].isArrayBacked();
+        }
+
+        if (arrayBacked) return new ArrayCursor(raster.getSizeX(), raster.getSizeY(), channels);
+        else return new RasterCursor(raster.getSizeX(), raster.getSizeY(), channels);
+    }
+
+    /**
+     * @param sizeX x size of the raster.
+     * @param sizeY y size of the raster.
+     * @param channels the rasters of the channels to access, in channel index order.
+     */
+    protected MultiRasterCursor(int sizeX, int sizeY, Raster[] channels) {
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.channels = channels;
+    }
+
+    /**
+     * @return number of channels accessed by this cursor.
+     */
+    public final int getChannelCount() {
+        return channels.length;
+    }
+
+    /**
+     * @return x size of the raster.
+     */
+    public final int getSizeX() {
+        return sizeX;
+    }
+
+    /**
+     * @return y size of the raster.
+     */
+    public final int getSizeY() {
+        return sizeY;
+    }
+
+    /**
+     * @return x coordinate of the current cell.
+     */
+    public final int getX() {
+        return x;
+    }
+
+    /**
+     * @return y coordinate of the current cell.
+     */
+    public final int getY() {
+        return y;
+    }
+
+    /**
+     * Moves the cursor to the specified cell.  Throws an exception if the cell is outside the raster.
+     */
+    public final void moveTo(int x, int y) {
+        Check.inRange(x, "x", 0, sizeX);
+        Check.inRange(y, "y", 0, sizeY);
+
+        this.x = x;
+        this.y = y;
+        onMove(x, y);
+    }
+
+    /**
+     * Moves the cursor to the next cell on the row, or to the start of the next row at the end of a row.
+     *
+     * @return true if the cursor moved to a new cell, false if it was at the last cell of the raster, in which case it stays there.
+     */
+    public final boolean next() {
+        if (x + 1 < sizeX) {
+            x++;
+            onNextInRow();
+            return true;
+        }
+        else if (y + 1 < sizeY) {
+            x = 0;
+            y++;
+            onMove(x, y);
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
+
+    /**
+     * @return value of the specified channel at the current cell.
+     */
+    public abstract float get(int channelIndex);
+
+    /**
+     * Sets the value of the specified channel at the current cell.
+     */
+    public final void set(int channelIndex, float value) {
+        markWritten();
+        doSet(channelIndex, value);
+    }
+
+    /**
+     * Reads the values of all the channels of the cursor at the current cell.
+     *
+     * @param valuesOut array to write the values to, in channel index order.
+     * @param offset index in the array to write the value of the first channel to.
+     */
+    public void read(float[] valuesOut, int offset) {
+        for (int i = 0; i < channels.length; i++) {
+            valuesOut[offset + i] = get(i);
+        }
+    }
+
+    /**
+     * Sets the values of all the channels of the cursor at the current cell.
+     *
+     * @param values array to read the values from, in channel index order.
+     * @param offset index in the array of the value of the first channel.
+     */
+    public void write(float[] values, int offset) {
+        markWritten();
+        for (int i = 0; i < channels.length; i++) {
+            doSet(i, values[offset + i]);
+        }
+    }
+
+    /**
+     * Reports the area written to through this cursor since it was created or last closed to the channels,
+     * so that it is marked as dirty in the dirty region tracker of the raster, if any.
+     * The cursor can still be used after it is closed.
+     */
+    @Override public final void close() {
+        if (writtenMinX <= writtenMaxX) {
+            final ImmutableIntRectangle writtenArea = new ImmutableIntRectangle(writtenMinX, writtenMinY, writtenMaxX, writtenMaxY);
+            for (Raster channel : channels) {
+                channel.markDirty(writtenArea);
+            }
+
+            writtenMinX = Integer.MAX_VALUE;
+            writtenMinY = Integer.MAX_VALUE;
+            writtenMaxX = Integer.MIN_VALUE;
+            writtenMaxY = Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * @return the rasters of the channels accessed by this cursor, in channel index order.
+     */
+    protected final Raster[] getChannels() {
+        return channels;
+    }
+
+    /**
+     * Called when the cursor has moved to the specified cell.
+     */
+    protected abstract void onMove(int x, int y);
+
+    /**
+     * Called when the cursor has moved one cell forward on the same row.
+     */
+    protected abstract void onNextInRow();
+
+    /**
+     * Sets the value of the specified channel at the current cell, without keeping track of the written area.
+     */
+    protected abstract void doSet(int channelIndex, float value);
+
+    private void markWritten() {
+        if (x < writtenMinX) writtenMinX = x;
+        if (x > writtenMaxX) writtenMaxX = x;
+        if (y < writtenMinY) writtenMinY = y;
+        if (y > writtenMaxY) writtenMaxY = y;
+    }
+
+    /**
+     * Cursor for an InterleavedMultiRaster, where the values of the channels of a cell are stored next to each other.
+     */
+    static final class InterleavedCursor extends MultiRasterCursor {
+        private final float[] data;
+        private final int cellStep;
+        private final int[] channelOffsets;
+        private int index;
+
+        InterleavedCursor(int sizeX, int sizeY, Raster[] channels, float[] data, int cellStep) {
+            super(sizeX, sizeY, channels);
+            this.data = data;
+            this.cellStep = cellStep;
+
+            channelOffsets = new int[channels.length];
+            for (int i = 0; i < channels.length; i++) {
+                channelOffsets[i] = channels[i].getDataOffset();
+            }
+        }
+
+        @Override public float get(int channelIndex) {
+            return data[index + channelOffsets[channelIndex]];
+        }
+
+        @Override public void read(float[] valuesOut, int offset) {
+            for (int i = 0; i < channelOffsets.length; i++) {
+                valuesOut[offset + i] = data[index + channelOffsets[i]];
+            }
+        }
+
+        @Override protected void onMove(int x, int y) {
+            index = (y * getSizeX() + x) * cellStep;
+        }
+
+        @Override protected void onNextInRow() {
+            index += cellStep;
+        }
+
+        @Override protected void doSet(int channelIndex, float value) {
+            data[index + channelOffsets[channelIndex]] = value;
+        }
+    }
+
+    /**
+     * Cursor for channels that each store their values in an array, with their own offsets and steps.
+     */
+    static final class ArrayCursor extends MultiRasterCursor {
+        private final float[][] data;
+        private final int[] offsets;
+        private final int[] xSteps;
+        private final int[] rowSteps;
+        private final int[] indexes;
+
+        ArrayCursor(int sizeX, int sizeY, Raster[] channels) {
+            super(sizeX, sizeY, channels);
+
+            final int channelCount = channels.length;
+            data = new float[channelCount][];
+            offsets = new int[channelCount];
+            xSteps = new int[channelCount];
+            rowSteps = new int[channelCount];
+            indexes = new int[channelCount];
+            for (int i = 0; i < channelCount; i++) {
+                data[i] = channels[i].getData();
+                offsets[i] = channels[i].getDataOffset();
+                xSteps[i] = channels[i].getDataXStep();
+                rowSteps[i] = channels[i].getDataRowStep();
+                indexes[i] = offsets[i];
+            }
+        }
+
+        @Override public float get(int channelIndex) {
+            return data[channelIndex][indexes[channelIndex]];
+        }
+
+        @Override protected void onMove(int x, int y) {
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = offsets[i] + y * rowSteps[i] + x * xSteps[i];
+            }
+        }
+
+        @Override protected void onNextInRow() {
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] += xSteps[i];
+            }
+        }
+
+        @Override protected void doSet(int channelIndex, float value) {
+            data[channelIndex][indexes[channelIndex]] = value;
+        }
+    }
+
+    /**
+     * Cursor for channels that are not backed by arrays, using the single value accessors of the channels.
+     */
+    static final class RasterCursor extends MultiRasterCursor {
+
+        RasterCursor(int sizeX, int sizeY, Raster[] channels) {
+            super(sizeX, sizeY, channels);
+        }
+
+        @Override public float get(int channelIndex) {
+            return getChannels()[channelIndex].getValue(getX(), getY());
+        }
+
+        @Override protected void onMove(int x, int y) {
+        }
+
+        @Override protected void onNextInRow() {
+        }
+
+        @Override protected void doSet(int channelIndex, float value) {
+            getChannels()[channelIndex].setValue(getX(), getY(), value);
+        }
+    }
+}
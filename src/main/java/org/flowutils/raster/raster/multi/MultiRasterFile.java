@@ -0,0 +1,321 @@
+package org.flowutils.raster.raster.multi;
+
+import org.flowutils.Check;
+import org.flowutils.Symbol;
+import org.flowutils.raster.raster.single.BufferRaster;
+import org.flowutils.raster.raster.single.Raster;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Binary file format for MultiRasters, that can be opened as a memory mapped BufferMultiRaster without reading the data into the heap.
+ * The operating system pages in the parts of the file that are accessed, so opening a file is fast regardless of its size,
+ * and the data of a channel can be accessed without touching the other channels.
+ *
+ * The file starts with a header, with all numbers in big endian byte order:
+ * <pre>
+ *   4 bytes   magic "FURF"
+ *   int       format version (1)
+ *   int       sizeX
+ *   int       sizeY
+ *   byte      layout: 0 = planar, each channel stored separately, row by row
+ *   byte      data type: 0 = 32 bit IEEE float
+ *   byte      byte order of the channel data: 0 = big endian, 1 = little endian
+ *   byte      reserved, 0
+ *   int       channel count
+ *   for each channel:
+ *     short   length of the channel name in bytes
+ *     bytes   channel name in UTF-8
+ *     long    position of the channel data in the file
+ * </pre>
+ * The data of each channel is sizeX * sizeY values, row by row, and starts at a position aligned to DATA_ALIGNMENT bytes.
+ *
+ * Files are created with the native byte order by default, so that mapped values can be accessed without swapping bytes.
+ */
+public final class MultiRasterFile {
+
+    /**
+     * Channel data starts at positions that are multiples of this, so that each channel starts on a page boundary.
+     */
+    public static final int DATA_ALIGNMENT = 4096;
+
+    private static final byte[] MAGIC = {'F', 'U', 'R', 'F'};
+    private static final int FORMAT_VERSION = 1;
+    private static final int LAYOUT_PLANAR = 0;
+    private static final int DATA_TYPE_FLOAT32 = 0;
+    private static final int BIG_ENDIAN = 0;
+    private static final int LITTLE_ENDIAN = 1;
+
+    /**
+     * Size in bytes of a channel entry in the header with an empty name: the name length and the data position.
+     */
+    private static final int MIN_CHANNEL_ENTRY_SIZE = 2 + 8;
+
+    /**
+     * Maximum length of a channel name in bytes, as it is stored as an unsigned short.
+     */
+    private static final int MAX_NAME_BYTES = 0xFFFF;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Creates a new file with the specified size and channels and zero values, and opens it as a READ_WRITE memory mapped raster.
+     *
+     * @param file file to create.  If it exists it is overwritten.
+     * @param sizeX x size of the raster.
+     * @param sizeY y size of the raster.
+     * @param channels ids of the channels to have in the raster.
+     * @return raster mapped to the file.  Call force on it to make sure changes are written to the storage device.
+     * @throws IOException if the file could not be created.
+     */
+    public static BufferMultiRaster create(File file, int sizeX, int sizeY, Collection<Symbol> channels) throws IOException {
+        Check.notNull(file, "file");
+        Check.positive(sizeX, "sizeX");
+        Check.positive(sizeY, "sizeY");
+        Check.notNull(channels, "channels");
+
+        final List<Symbol> channelIds = new ArrayList<Symbol>(channels);
+        final ByteOrder byteOrder = ByteOrder.nativeOrder();
+
+        // Calculate the header size with placeholder positions, to get the position of the first channel
+        final long firstDataPosition = align(createHeader(sizeX, sizeY, byteOrder, channelIds, new long[channelIds.size()]).length);
+        final long channelByteSize = align(BufferRaster.getByteSize(sizeX, sizeY));
+        final long[] dataPositions = new long[channelIds.size()];
+        for (int i = 0; i < dataPositions.length; i++) {
+            dataPositions[i] = firstDataPosition + i * channelByteSize;
+        }
+        final byte[] header = createHeader(sizeX, sizeY, byteOrder, channelIds, dataPositions);
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            // Setting the length fills the file with zeroes, without writing them on file systems that support sparse files
+            randomAccessFile.setLength(0);
+            randomAccessFile.setLength(firstDataPosition + channelIds.size() * channelByteSize);
+            randomAccessFile.write(header);
+        }
+
+        return open(file, FileChannel.MapMode.READ_WRITE);
+    }
+
+    /**
+     * Saves a raster to a new file.
+     *
+     * @param file file to create.  If it exists it is overwritten.
+     * @param raster raster to save.
+     * @throws IOException if the file could not be written.
+     */
+    public static void save(File file, MultiRaster raster) throws IOException {
+        Check.notNull(raster, "raster");
+
+        final BufferMultiRaster fileRaster = create(file, raster.getSizeX(), raster.getSizeY(), raster.getChannelIds());
+        for (Map.Entry<Symbol, Raster> entry : raster.getChannels().entrySet()) {
+            ((BufferRaster) fileRaster.getChannel(entry.getKey())).copyFrom(entry.getValue());
+        }
+        fileRaster.force();
+    }
+
+    /**
+     * Opens a file as a memory mapped raster.  No channel data is read until it is accessed.
+     *
+     * @param file file to open.
+     * @param mapMode READ_ONLY to open the file for reading, in which case writing values throws a ReadOnlyBufferException,
+     *                READ_WRITE to write changes back to the file, or PRIVATE for a copy-on-write raster that does not change the file.
+     * @return raster mapped to the file.
+     * @throws IOException if the file could not be read or is not a valid raster file.
+     */
+    public static BufferMultiRaster open(File file, FileChannel.MapMode mapMode) throws IOException {
+        Check.notNull(file, "file");
+        Check.notNull(mapMode, "mapMode");
+
+        final Header header = readHeader(file);
+
+        final Map<Symbol, Raster> channels = new LinkedHashMap<Symbol, Raster>();
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, getFileMode(mapMode))) {
+            final FileChannel fileChannel = randomAccessFile.getChannel();
+            checkFileLength(header, fileChannel.size());
+
+            for (int i = 0; i < header.channelIds.size(); i++) {
+                channels.put(header.channelIds.get(i),
+                             new BufferRaster(header.sizeX, header.sizeY, fileChannel, header.dataPositions[i], mapMode, header.byteOrder));
+            }
+        }
+
+        return new BufferMultiRaster(header.sizeX, header.sizeY, channels);
+    }
+
+    /**
+     * Opens one channel of a file as a memory mapped raster, without mapping the other channels.
+     *
+     * @param file file to open.
+     * @param channelId id of the channel to open.
+     * @param mapMode READ_ONLY, READ_WRITE or PRIVATE, see open.
+     * @return raster mapped to the data of the channel in the file.
+     * @throws IOException if the file could not be read, is not a valid raster file, or does not have the channel.
+     */
+    public static BufferRaster openChannel(File file, Symbol channelId, FileChannel.MapMode mapMode) throws IOException {
+        Check.notNull(file, "file");
+        Check.notNull(channelId, "channelId");
+        Check.notNull(mapMode, "mapMode");
+
+        final Header header = readHeader(file);
+        final int index = header.channelIds.indexOf(channelId);
+        if (index < 0) throw new IOException("The raster file " + file + " does not have the channel " + channelId);
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, getFileMode(mapMode))) {
+            final FileChannel fileChannel = randomAccessFile.getChannel();
+            checkFileLength(header, fileChannel.size());
+
+            return new BufferRaster(header.sizeX, header.sizeY, fileChannel, header.dataPositions[index], mapMode, header.byteOrder);
+        }
+    }
+
+    /**
+     * @return ids of the channels in the file, in the order they are stored.
+     * @throws IOException if the file could not be read or is not a valid raster file.
+     */
+    public static List<Symbol> readChannelIds(File file) throws IOException {
+        Check.notNull(file, "file");
+        return Collections.unmodifiableList(readHeader(file).channelIds);
+    }
+
+    private static byte[] createHeader(int sizeX, int sizeY, ByteOrder byteOrder, List<Symbol> channelIds, long[] dataPositions) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+
+        output.write(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        output.writeInt(sizeX);
+        output.writeInt(sizeY);
+        output.writeByte(LAYOUT_PLANAR);
+        output.writeByte(DATA_TYPE_FLOAT32);
+        output.writeByte(byteOrder == ByteOrder.BIG_ENDIAN ? BIG_ENDIAN : LITTLE_ENDIAN);
+        output.writeByte(0);
+        output.writeInt(channelIds.size());
+        for (int i = 0; i < channelIds.size(); i++) {
+            final byte[] name = channelIds.get(i).getString().getBytes(UTF_8);
+            if (name.length > MAX_NAME_BYTES) throw new IllegalArgumentException("The channel name " + channelIds.get(i) + " is too long");
+            output.writeShort(name.length);
+            output.write(name);
+            output.writeLong(dataPositions[i]);
+        }
+
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Header readHeader(File file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            final byte[] magic = new byte[MAGIC.length];
+            input.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException("The file " + file + " is not a raster file");
+
+            final int version = input.readInt();
+            if (version != FORMAT_VERSION) throw new IOException("Unsupported raster file format version " + version + " in " + file);
+
+            final int sizeX = input.readInt();
+            final int sizeY = input.readInt();
+            if (sizeX <= 0 || sizeY <= 0 || sizeX > BufferRaster.MAX_CELLS_PER_BUFFER) {
+                throw new IOException("Invalid raster size " + sizeX + " x " + sizeY + " in " + file);
+            }
+
+            final int layout = input.readUnsignedByte();
+            if (layout != LAYOUT_PLANAR) throw new IOException("Unsupported raster layout " + layout + " in " + file);
+            final int dataType = input.readUnsignedByte();
+            if (dataType != DATA_TYPE_FLOAT32) throw new IOException("Unsupported raster data type " + dataType + " in " + file);
+            final int byteOrder = input.readUnsignedByte();
+            if (byteOrder != BIG_ENDIAN && byteOrder != LITTLE_ENDIAN) throw new IOException("Invalid byte order " + byteOrder + " in " + file);
+            input.readUnsignedByte();
+
+            final int channelCount = input.readInt();
+            // Check the count against the file length before allocating for it, so that a corrupt header can not exhaust the memory
+            if (channelCount < 0 || channelCount > file.length() / MIN_CHANNEL_ENTRY_SIZE) {
+                throw new IOException("Invalid channel count " + channelCount + " in " + file);
+            }
+
+            final List<Symbol> channelIds = new ArrayList<Symbol>(channelCount);
+            final Set<Symbol> readChannelIds = new HashSet<Symbol>();
+            final long[] dataPositions = new long[channelCount];
+            for (int i = 0; i < channelCount; i++) {
+                final byte[] name = new byte[input.readUnsignedShort()];
+                input.readFully(name);
+                final Symbol channelId = readChannelId(new String(name, UTF_8), file);
+                if (!readChannelIds.add(channelId)) throw new IOException("Duplicate channel " + channelId + " in " + file);
+                channelIds.add(channelId);
+                dataPositions[i] = input.readLong();
+                if (dataPositions[i] < 0 || dataPositions[i] % DATA_ALIGNMENT != 0) {
+                    throw new IOException("Invalid data position " + dataPositions[i] + " for the channel " + channelIds.get(i) + " in " + file);
+                }
+            }
+
+            return new Header(sizeX, sizeY, byteOrder == BIG_ENDIAN ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN, channelIds, dataPositions);
+        } catch (EOFException e) {
+            throw new IOException("The raster file " + file + " ended before the end of the header", e);
+        }
+    }
+
+    private static Symbol readChannelId(String name, File file) throws IOException {
+        try {
+            return Symbol.get(name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid channel name '" + name + "' in " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void checkFileLength(Header header, long fileLength) throws IOException {
+        final long channelByteSize = BufferRaster.getByteSize(header.sizeX, header.sizeY);
+        for (int i = 0; i < header.dataPositions.length; i++) {
+            if (header.dataPositions[i] + channelByteSize > fileLength) {
+                throw new IOException("The raster file is too short for the data of the channel " + header.channelIds.get(i));
+            }
+        }
+    }
+
+    private static String getFileMode(FileChannel.MapMode mapMode) {
+        return mapMode == FileChannel.MapMode.READ_ONLY ? "r" : "rw";
+    }
+
+    private static long align(long position) {
+        return (position + DATA_ALIGNMENT - 1) / DATA_ALIGNMENT * DATA_ALIGNMENT;
+    }
+
+    /**
+     * Information read from the header of a raster file.
+     */
+    private static final class Header {
+        private final int sizeX;
+        private final int sizeY;
+        private final ByteOrder byteOrder;
+        private final List<Symbol> channelIds;
+        private final long[] dataPositions;
+
+        private Header(int sizeX, int sizeY, ByteOrder byteOrder, List<Symbol> channelIds, long[] dataPositions) {
+            this.sizeX = sizeX;
+            this.sizeY = sizeY;
+            this.byteOrder = byteOrder;
+            this.channelIds = channelIds;
+            this.dataPositions = dataPositions;
+        }
+    }
+
+    private MultiRasterFile() {
+    }
+}
@@ -0,0 +1,95 @@
+package org.flowutils.raster.raster.multi;
+
+import org.flowutils.Check;
+import org.flowutils.Symbol;
+import org.flowutils.raster.parallel.RowBandExecutor;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Creates MultiRasters with a memory layout suited for how they are accessed, and converts MultiRasters between
+ * the interleaved and planar layouts.
+ */
+public final class MultiRasterLayouts {
+
+    /**
+     * @param sizeX x size of the raster (must be positive)
+     * @param sizeY y size of the raster (must be positive)
+     * @param accessPattern the way the channels of the raster are mostly accessed.
+     * @param channels ids of the channels to have in the raster.
+     * @return an InterleavedMultiRaster for per pixel access, or a CompositeMultiRaster with one array per channel for per channel access.
+     */
+    public static MultiRasterBase create(int sizeX, int sizeY, ChannelAccessPattern accessPattern, Symbol... channels) {
+        return create(sizeX, sizeY, accessPattern, Arrays.asList(channels));
+    }
+
+    /**
+     * @param sizeX x size of the raster (must be positive)
+     * @param sizeY y size of the raster (must be positive)
+     * @param accessPattern the way the channels of the raster are mostly accessed.
+     * @param channels ids of the channels to have in the raster.
+     * @return an InterleavedMultiRaster for per pixel access, or a CompositeMultiRaster with one array per channel for per channel access.
+     */
+    public static MultiRasterBase create(int sizeX, int sizeY, ChannelAccessPattern accessPattern, Collection<Symbol> channels) {
+        Check.notNull(accessPattern, "accessPattern");
+        Check.notNull(channels, "channels");
+
+        switch (accessPattern) {
+            case PER_PIXEL: return new InterleavedMultiRaster(sizeX, sizeY, channels);
+            case PER_CHANNEL: return new CompositeMultiRaster(sizeX, sizeY, channels);
+            default: throw new IllegalArgumentException("Unknown access pattern " + accessPattern);
+        }
+    }
+
+    /**
+     * @return the access pattern that the layout of the raster is suited for.
+     *         Rasters with both interleaved and planar channels are considered to be per channel rasters.
+     */
+    public static ChannelAccessPattern getAccessPattern(MultiRaster raster) {
+        Check.notNull(raster, "raster");
+        return raster instanceof InterleavedMultiRaster ? ChannelAccessPattern.PER_PIXEL : ChannelAccessPattern.PER_CHANNEL;
+    }
+
+    /**
+     * Copies the raster to a new raster with an interleaved layout.
+     *
+     * @param source raster to copy.
+     * @param executor executor used to copy bands of rows, possibly in parallel.  Also used as the executor of the new raster.
+     */
+    public static InterleavedMultiRaster toInterleaved(MultiRaster source, RowBandExecutor executor) {
+        return (InterleavedMultiRaster) convert(source, ChannelAccessPattern.PER_PIXEL, executor);
+    }
+
+    /**
+     * Copies the raster to a new raster with a separate array for each channel.
+     *
+     * @param source raster to copy.
+     * @param executor executor used to copy bands of rows, possibly in parallel.  Also used as the executor of the new raster.
+     */
+    public static CompositeMultiRaster toPlanar(MultiRaster source, RowBandExecutor executor) {
+        return (CompositeMultiRaster) convert(source, ChannelAccessPattern.PER_CHANNEL, executor);
+    }
+
+    /**
+     * Copies the raster to a new raster with the layout suited for the specified access pattern.
+     * The cells are transposed in blocks for all channels at a time, so neither layout is traversed with a large stride.
+     *
+     * @param source raster to copy.
+     * @param accessPattern the way the channels of the new raster are mostly accessed.
+     * @param executor executor used to copy bands of rows, possibly in parallel.  Also used as the executor of the new raster.
+     * @return a new raster with the same channels and values as the source.
+     */
+    public static MultiRasterBase convert(MultiRaster source, ChannelAccessPattern accessPattern, RowBandExecutor executor) {
+        Check.notNull(source, "source");
+        Check.notNull(executor, "executor");
+
+        final MultiRasterBase target = create(source.getSizeX(), source.getSizeY(), accessPattern, source.getChannelIds());
+        target.setExecutor(executor);
+        target.copyFrom(source);
+        return target;
+    }
+
+    private MultiRasterLayouts() {
+    }
+}
@@ -0,0 +1,53 @@
+package org.flowutils.raster.raster.pool;
+
+/**
+ * A raster acquired from a RasterPool.
+ * Close it to return the backing array to the pool, after which the raster should not be used anymore.
+ *
+ * Can be used with try-with-resources:
+ * <pre>
+ *   try (PooledRaster&lt;RasterImpl&gt; temp = pool.acquireRaster(256, 256, true)) {
+ *       field.renderToRaster(temp.getRaster());
+ *       ...
+ *   }
+ * </pre>
+ *
+ * @param <T> type of the raster.
+ */
+public final class PooledRaster<T> implements AutoCloseable {
+
+    private final RasterPool pool;
+    private final T raster;
+    private float[] data;
+
+    PooledRaster(RasterPool pool, T raster, float[] data) {
+        this.pool = pool;
+        this.raster = raster;
+        this.data = data;
+    }
+
+    /**
+     * @return the pooled raster.  Should not be used after this PooledRaster has been closed.
+     */
+    public T getRaster() {
+        if (data == null) throw new IllegalStateException("The pooled raster has already been returned to the pool");
+        return raster;
+    }
+
+    /**
+     * @return true if this PooledRaster has been closed and the raster returned to the pool.
+     */
+    public boolean isClosed() {
+        return data == null;
+    }
+
+    /**
+     * Returns the backing array of the raster to the pool.  Does nothing if already closed.
+     */
+    @Override public void close() {
+        if (data != null) {
+            pool.releaseArray(data);
+            data = null;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package org.flowutils.raster.raster.pool;
+
+import org.flowutils.Check;
+import org.flowutils.Symbol;
+import org.flowutils.raster.raster.multi.InterleavedMultiRaster;
+import org.flowutils.raster.raster.single.RasterImpl;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of float arrays for temporary rasters, to avoid allocating new rasters of the same sizes over and over.
+ *
+ * Rasters are acquired from the pool wrapped in a PooledRaster, and the backing array is returned to the pool
+ * when the PooledRaster is closed, e.g. with a try-with-resources statement.  Arrays are pooled by length,
+ * so a raster and a multi raster with the same total number of values can reuse each others arrays.
+ *
+ * Each thread keeps a small cache of recently released arrays, so that acquiring and releasing rasters on the same thread
+ * mostly avoids the shared queues.  Arrays that do not fit in the thread cache are kept in a shared pool.
+ * The total size of the pooled arrays, including the arrays in the thread caches, is bounded to a maximum number of bytes.
+ * Arrays released when the pool is full are left to the garbage collector.
+ *
+ * Thread safe.
+ */
+public final class RasterPool {
+
+    /**
+     * Default maximum total size of the pooled arrays.
+     */
+    public static final long DEFAULT_MAX_POOLED_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Default number of arrays cached by each thread.
+     */
+    public static final int DEFAULT_THREAD_CACHE_SIZE = 4;
+
+    private static final int BYTES_PER_VALUE = 4;
+
+    private final long maxPooledBytes;
+    private final int threadCacheSize;
+
+    // Size of the arrays in the shared pool and in all thread caches
+    private final AtomicLong pooledBytes = new AtomicLong();
+    // Incremented by clear, so that the other threads drop their cached arrays when they next use the pool
+    private final AtomicInteger clearCount = new AtomicInteger();
+    private final ConcurrentMap<Integer, Queue<float[]>> pooledArrays = new ConcurrentHashMap<Integer, Queue<float[]>>();
+    private final ThreadLocal<ThreadCache> threadCaches = new ThreadLocal<ThreadCache>() {
+        @Override protected ThreadCache initialValue() {
+            return new ThreadCache(clearCount.get());
+        }
+    };
+
+    /**
+     * Creates a pool with the default maximum size and thread cache size.
+     */
+    public RasterPool() {
+        this(DEFAULT_MAX_POOLED_BYTES);
+    }
+
+    /**
+     * @param maxPooledBytes maximum total size of the pooled arrays, including the arrays in the thread caches.
+     */
+    public RasterPool(long maxPooledBytes) {
+        this(maxPooledBytes, DEFAULT_THREAD_CACHE_SIZE);
+    }
+
+    /**
+     * @param maxPooledBytes maximum total size of the pooled arrays, including the arrays in the thread caches.
+     * @param threadCacheSize number of arrays each thread can cache in addition to the shared pool.  Zero disables the thread caches.
+     */
+    public RasterPool(long maxPooledBytes, int threadCacheSize) {
+        Check.positiveOrZero(maxPooledBytes, "maxPooledBytes");
+        Check.positiveOrZero(threadCacheSize, "threadCacheSize");
+
+        this.maxPooledBytes = maxPooledBytes;
+        this.threadCacheSize = threadCacheSize;
+    }
+
+    /**
+     * @param sizeX x size of the raster.
+     * @param sizeY y size of the raster.
+     * @param zeroed if true, all values of the raster are zero, if false, the raster may contain values from earlier use.
+     * @return a raster backed by a pooled array.  Close it to return the array to the pool, after which the raster should no longer be used.
+     */
+    public PooledRaster<RasterImpl> acquireRaster(int sizeX, int sizeY, boolean zeroed) {
+        Check.positive(sizeX, "sizeX");
+        Check.positive(sizeY, "sizeY");
+
+        final float[] data = acquireArray(getArrayLength((long) sizeX * sizeY), zeroed);
+        return new PooledRaster<RasterImpl>(this, new RasterImpl(sizeX, sizeY, data), data);
+    }
+
+    /**
+     * @param sizeX x size of the raster.
+     * @param sizeY y size of the raster.
+     * @param zeroed if true, all values of the raster are zero, if false, the raster may contain values from earlier use.
+     * @param channels the ids of the channels to have in the raster, in the order they should be interleaved at each pixel.
+     * @return an interleaved raster backed by a pooled array.  Close it to return the array to the pool, after which the raster should no longer be used.
+     */
+    public PooledRaster<InterleavedMultiRaster> acquireMultiRaster(int sizeX, int sizeY, boolean zeroed, Symbol... channels) {
+        return acquireMultiRaster(sizeX, sizeY, zeroed, Arrays.asList(channels));
+    }
+
+    /**
+     * @param sizeX x size of the raster.
+     * @param sizeY y size of the raster.
+     * @param zeroed if true, all values of the raster are zero, if false, the raster may contain values from earlier use.
+     * @param channels the ids of the channels to have in the raster, in the order they should be interleaved at each pixel.
+     * @return an interleaved raster backed by a pooled array.  Close it to return the array to the pool, after which the raster should no longer be used.
+     */
+    public PooledRaster<InterleavedMultiRaster> acquireMultiRaster(int sizeX, int sizeY, boolean zeroed, Collection<Symbol> channels) {
+        Check.positive(sizeX, "sizeX");
+        Check.positive(sizeY, "sizeY");
+        Check.notNull(channels, "channels");
+
+        final float[] data = acquireArray(getArrayLength((long) sizeX * sizeY * channels.size()), zeroed);
+        return new PooledRaster<InterleavedMultiRaster>(this, new InterleavedMultiRaster(sizeX, sizeY, data, channels), data);
+    }
+
+    /**
+     * @param length length of the array.
+     * @param zeroed if true, all values of the array are zero, if false, the array may contain values from earlier use.
+     * @return a pooled array if one with the specified length is available, otherwise a new array.
+     *         Release it with releaseArray when it is no longer used.
+     */
+    public float[] acquireArray(int length, boolean zeroed) {
+        Check.positiveOrZero(length, "length");
+
+        float[] array = null;
+
+        // Check the cache of the current thread first
+        final Iterator<float[]> threadCache = getThreadCache().iterator();
+        while (threadCache.hasNext()) {
+            final float[] cachedArray = threadCache.next();
+            if (cachedArray.length == length) {
+                threadCache.remove();
+                array = cachedArray;
+                break;
+            }
+        }
+
+        // Then the shared pool
+        if (array == null) {
+            final Queue<float[]> arrays = pooledArrays.get(length);
+            if (arrays != null) array = arrays.poll();
+        }
+
+        if (array != null) pooledBytes.addAndGet(-getByteSize(array));
+
+        if (array == null) {
+            // Nothing pooled, new arrays are already zeroed
+            return new float[length];
+        }
+        else {
+            if (zeroed) Arrays.fill(array, 0);
+            return array;
+        }
+    }
+
+    /**
+     * Returns an array to the pool.  The array should not be used by the caller after this.
+     *
+     * @param array array to return.
+     */
+    public void releaseArray(float[] array) {
+        Check.notNull(array, "array");
+
+        final long byteSize = getByteSize(array);
+        if (pooledBytes.addAndGet(byteSize) > maxPooledBytes) {
+            // Pool is full, let the garbage collector have the array
+            pooledBytes.addAndGet(-byteSize);
+            return;
+        }
+
+        // Keep recently released arrays in the cache of the current thread, and move the oldest one to the shared pool
+        float[] arrayToPool = array;
+        if (threadCacheSize > 0) {
+            final ArrayDeque<float[]> threadCache = getThreadCache();
+            threadCache.addFirst(array);
+            arrayToPool = threadCache.size() > threadCacheSize ? threadCache.removeLast() : null;
+        }
+
+        if (arrayToPool != null) getPooledArrays(arrayToPool.length).offer(arrayToPool);
+    }
+
+    /**
+     * @return total size of the arrays currently pooled, including the arrays in the thread caches.
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * @return maximum total size of the pooled arrays, including the arrays in the thread caches.
+     */
+    public long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    /**
+     * Removes all arrays from the shared pool and the cache of the current thread.
+     * Other threads drop the arrays in their caches the next time they acquire or release an array.
+     */
+    public void clear() {
+        clearCount.incrementAndGet();
+        getThreadCache();
+
+        for (Queue<float[]> arrays : pooledArrays.values()) {
+            float[] array;
+            while ((array = arrays.poll()) != null) {
+                pooledBytes.addAndGet(-getByteSize(array));
+            }
+        }
+    }
+
+    private Queue<float[]> getPooledArrays(int length) {
+        Queue<float[]> arrays = pooledArrays.get(length);
+        if (arrays == null) {
+            final Queue<float[]> newArrays = new ConcurrentLinkedQueue<float[]>();
+            arrays = pooledArrays.putIfAbsent(length, newArrays);
+            if (arrays == null) arrays = newArrays;
+        }
+        return arrays;
+    }
+
+    /**
+     * @return the cache of the current thread, after dropping its arrays if the pool has been cleared since it was last used.
+     */
+    private ArrayDeque<float[]> getThreadCache() {
+        final ThreadCache threadCache = threadCaches.get();
+        final int currentClearCount = clearCount.get();
+        if (threadCache.clearCount != currentClearCount) {
+            for (float[] array : threadCache.arrays) {
+                pooledBytes.addAndGet(-getByteSize(array));
+            }
+            threadCache.arrays.clear();
+            threadCache.clearCount = currentClearCount;
+        }
+        return threadCache.arrays;
+    }
+
+    private static int getArrayLength(long valueCount) {
+        Check.lessOrEqual(valueCount, "number of values", Integer.MAX_VALUE, "the maximum array length");
+        return (int) valueCount;
+    }
+
+    private static long getByteSize(float[] array) {
+        return (long) array.length * BYTES_PER_VALUE;
+    }
+
+    /**
+     * Arrays cached by one thread.
+     */
+    private static final class ThreadCache {
+        private final ArrayDeque<float[]> arrays = new ArrayDeque<float[]>();
+        private int clearCount;
+
+        private ThreadCache(int clearCount) {
+            this.clearCount = clearCount;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.flowutils.raster.raster.single;
+
+import org.flowutils.Check;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A raster that stores its values outside the java heap, either in direct buffers or in a memory mapped file.
+ *
+ * The values are laid out row by row.  Large rasters are split into several buffers that each hold a number of whole rows,
+ * so the number of cells is not limited by the maximum size of a single buffer or array.
+ * Cells can also be addressed with long indexes using getValueAt and setValueAt.
+ *
+ * Not backed by a float array, so use readRow and writeRow for fast access to the values.
+ * Different cells can be read and written from several threads at the same time.
+ */
+public final class BufferRaster extends RasterBase {
+
+    /**
+     * Maximum number of cells stored in a single buffer.
+     */
+    public static final int MAX_CELLS_PER_BUFFER = 1 << 28;
+
+    private static final int BYTES_PER_CELL = 4;
+
+    private final ByteBuffer[] byteBuffers;
+    private final FloatBuffer[] buffers;
+    private final int rowsPerBuffer;
+
+    /**
+     * Creates a new raster with the values stored in direct buffers, initialized to zero.
+     *
+     * @param sizeX x size of the raster
+     * @param sizeY y size of the raster
+     */
+    public BufferRaster(int sizeX, int sizeY) {
+        super(sizeX, sizeY);
+        Check.lessOrEqual(sizeX, "sizeX", MAX_CELLS_PER_BUFFER, "MAX_CELLS_PER_BUFFER");
+
+        rowsPerBuffer = calculateRowsPerBuffer(sizeX);
+        final int bufferCount = (sizeY + rowsPerBuffer - 1) / rowsPerBuffer;
+        byteBuffers = new ByteBuffer[bufferCount];
+        buffers = new FloatBuffer[bufferCount];
+        for (int i = 0; i < bufferCount; i++) {
+            final int rows = Math.min(rowsPerBuffer, sizeY - i * rowsPerBuffer);
+            byteBuffers[i] = ByteBuffer.allocateDirect(rows * sizeX * BYTES_PER_CELL).order(ByteOrder.nativeOrder());
+            buffers[i] = byteBuffers[i].asFloatBuffer();
+        }
+    }
+
+    /**
+     * Creates a new raster with the values stored in a memory mapped region of a file.
+     * The region starts at the specified position and is getByteSize(sizeX, sizeY) bytes long.
+     * Changes are written back to the file if the map mode is READ_WRITE.
+     *
+     * @param sizeX x size of the raster
+     * @param sizeY y size of the raster
+     * @param fileChannel channel of the file to map.  May be closed after the raster has been created.
+     * @param position position in the file where the values of the raster start.
+     * @param mapMode READ_ONLY or READ_WRITE (PRIVATE can be used to create a copy-on-write raster).
+     * @param byteOrder byte order of the values in the file.
+     * @throws IOException if the file could not be mapped.
+     */
+    public BufferRaster(int sizeX,
+                        int sizeY,
+                        FileChannel fileChannel,
+                        long position,
+                        FileChannel.MapMode mapMode,
+                        ByteOrder byteOrder) throws IOException {
+        super(sizeX, sizeY);
+        Check.lessOrEqual(sizeX, "sizeX", MAX_CELLS_PER_BUFFER, "MAX_CELLS_PER_BUFFER");
+        Check.notNull(fileChannel, "fileChannel");
+        Check.positiveOrZero(position, "position");
+        Check.notNull(mapMode, "mapMode");
+        Check.notNull(byteOrder, "byteOrder");
+
+        rowsPerBuffer = calculateRowsPerBuffer(sizeX);
+        final int bufferCount = (sizeY + rowsPerBuffer - 1) / rowsPerBuffer;
+        byteBuffers = new ByteBuffer[bufferCount];
+        buffers = new FloatBuffer[bufferCount];
+        long bufferPosition = position;
+        for (int i = 0; i < bufferCount; i++) {
+            final int rows = Math.min(rowsPerBuffer, sizeY - i * rowsPerBuffer);
+            final long byteSize = (long) rows * sizeX * BYTES_PER_CELL;
+            byteBuffers[i] = fileChannel.map(mapMode, bufferPosition, byteSize).order(byteOrder);
+            buffers[i] = byteBuffers[i].asFloatBuffer();
+            bufferPosition += byteSize;
+        }
+    }
+
+    /**
+     * @return number of bytes needed to store a raster of the specified size.
+     */
+    public static long getByteSize(int sizeX, int sizeY) {
+        return (long) sizeX * sizeY * BYTES_PER_CELL;
+    }
+
+    /**
+     * @return total number of cells in this raster.
+     */
+    public long getCellCount() {
+        return (long) sizeX * sizeY;
+    }
+
+    /**
+     * @param index index of the cell, calculated as y * sizeX + x.
+     * @return the value of the cell.
+     */
+    public float getValueAt(long index) {
+        checkIndex(index);
+
+        final int y = (int) (index / sizeX);
+        final int x = (int) (index - (long) y * sizeX);
+        return getValueUnchecked(x, y);
+    }
+
+    /**
+     * @param index index of the cell, calculated as y * sizeX + x.
+     * @param value new value for the cell.
+     */
+    public void setValueAt(long index, float value) {
+        checkIndex(index);
+
+        final int y = (int) (index / sizeX);
+        final int x = (int) (index - (long) y * sizeX);
+        setValueUnchecked(x, y, value);
+        markDirty(x, y, x, y);
+    }
+
+    /**
+     * Writes any changes to a READ_WRITE memory mapped raster to the storage device.  Does nothing for direct buffers.
+     */
+    public void force() {
+        for (ByteBuffer byteBuffer : byteBuffers) {
+            if (byteBuffer instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) byteBuffer).force();
+            }
+        }
+    }
+
+    @Override public void readRow(int y, int startX, int count, float[] target, int targetOffset) {
+        checkRowSpan(y, startX, count);
+
+        final FloatBuffer buffer = buffers[y / rowsPerBuffer].duplicate();
+        buffer.position((y % rowsPerBuffer) * sizeX + startX);
+        buffer.get(target, targetOffset, count);
+    }
+
+    @Override protected void writeRowUnchecked(int y, int startX, int count, float[] source, int sourceOffset) {
+        final FloatBuffer buffer = buffers[y / rowsPerBuffer].duplicate();
+        buffer.position((y % rowsPerBuffer) * sizeX + startX);
+        buffer.put(source, sourceOffset, count);
+    }
+
+    @Override protected float getValueUnchecked(int x, int y) {
+        return buffers[y / rowsPerBuffer].get((y % rowsPerBuffer) * sizeX + x);
+    }
+
+    @Override protected void setValueUnchecked(int x, int y, float value) {
+        buffers[y / rowsPerBuffer].put((y % rowsPerBuffer) * sizeX + x, value);
+    }
+
+    private void checkIndex(long index) {
+        if (index < 0 || index >= getCellCount()) throw new IllegalArgumentException("The index " + index + " is outside the raster (which has " + getCellCount() + " cells).");
+    }
+
+    private static int calculateRowsPerBuffer(int sizeX) {
+        return Math.max(1, MAX_CELLS_PER_BUFFER / sizeX);
+    }
+
+}
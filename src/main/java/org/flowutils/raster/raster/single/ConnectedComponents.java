@@ -0,0 +1,141 @@
+package org.flowutils.raster.raster.single;
+
+import org.flowutils.Check;
+
+import java.util.Arrays;
+
+/**
+ * Connected component labelling for rasters, using the two pass algorithm with a union-find structure for the label equivalences.
+ *
+ * The first pass assigns provisional labels row by row, recording which labels touch each other,
+ * and the second pass replaces each provisional label with the final label of its component.
+ * Uses only primitive work arrays.
+ */
+public final class ConnectedComponents {
+
+    /**
+     * Labels the connected areas of foreground cells.
+     *
+     * Foreground cells get the label of their component, numbered from 1 upwards in the order the components are first encountered
+     * when scanning the raster row by row.  Background cells get the label 0.
+     * Labels are stored as floats, so they are exact up to 2^24 components.
+     *
+     * @param source raster with the foreground cells.
+     * @param threshold cells with values larger than this are foreground.
+     * @param target raster to write the labels to.  Must have the same size as the source.  May be the same raster as the source.
+     * @param eightConnected if true, diagonally adjacent cells are connected, if false only horizontally and vertically adjacent cells are.
+     * @return number of components found.
+     */
+    public static int label(Raster source, float threshold, Raster target, boolean eightConnected) {
+        Check.notNull(source, "source");
+        Check.notNull(target, "target");
+        Check.equal(target.getSizeX(), "target sizeX", source.getSizeX(), "source sizeX");
+        Check.equal(target.getSizeY(), "target sizeY", source.getSizeY(), "source sizeY");
+
+        final int sizeX = source.getSizeX();
+        final int sizeY = source.getSizeY();
+        final int[] labels = new int[sizeX * sizeY];
+        final float[] row = new float[sizeX];
+
+        // Parent of each provisional label, index 0 is the background
+        int[] parents = new int[64];
+        int labelCount = 0;
+
+        // First pass, assign provisional labels and record equivalences
+        for (int y = 0; y < sizeY; y++) {
+            source.readRow(y, 0, sizeX, row, 0);
+            final int rowStart = y * sizeX;
+            final int aboveStart = rowStart - sizeX;
+
+            for (int x = 0; x < sizeX; x++) {
+                if (!(row[x] > threshold)) continue;
+
+                int label = 0;
+                if (x > 0) label = join(parents, label, labels[rowStart + x - 1]);
+                if (y > 0) {
+                    label = join(parents, label, labels[aboveStart + x]);
+                    if (eightConnected) {
+                        if (x > 0) label = join(parents, label, labels[aboveStart + x - 1]);
+                        if (x < sizeX - 1) label = join(parents, label, labels[aboveStart + x + 1]);
+                    }
+                }
+
+                if (label == 0) {
+                    // New provisional label
+                    labelCount++;
+                    if (labelCount >= parents.length) parents = Arrays.copyOf(parents, parents.length * 2);
+                    parents[labelCount] = labelCount;
+                    label = labelCount;
+                }
+
+                labels[rowStart + x] = label;
+            }
+        }
+
+        // Number the components in the order of their first cells
+        final int[] finalLabels = new int[labelCount + 1];
+        int componentCount = 0;
+
+        // Second pass, write the final labels
+        for (int y = 0; y < sizeY; y++) {
+            final int rowStart = y * sizeX;
+            for (int x = 0; x < sizeX; x++) {
+                final int label = labels[rowStart + x];
+                if (label == 0) {
+                    row[x] = 0;
+                }
+                else {
+                    final int root = find(parents, label);
+                    if (finalLabels[root] == 0) finalLabels[root] = ++componentCount;
+                    row[x] = finalLabels[root];
+                }
+            }
+            target.writeRow(y, 0, sizeX, row, 0);
+        }
+
+        return componentCount;
+    }
+
+    /**
+     * Merges the sets of the two labels, if both are foreground labels.
+     *
+     * @return the root of the merged set, or the foreground one of the labels if the other is background.
+     */
+    private static int join(int[] parents, int label, int neighbourLabel) {
+        if (neighbourLabel == 0) return label;
+        if (label == 0) return find(parents, neighbourLabel);
+
+        final int root = find(parents, label);
+        final int neighbourRoot = find(parents, neighbourLabel);
+        if (root == neighbourRoot) return root;
+
+        // Keep the smaller label as the root, so roots are always the earliest label of the set
+        if (root < neighbourRoot) {
+            parents[neighbourRoot] = root;
+            return root;
+        }
+        else {
+            parents[root] = neighbourRoot;
+            return neighbourRoot;
+        }
+    }
+
+    /**
+     * @return the root label of the set the label belongs to, compressing the path on the way.
+     */
+    private static int find(int[] parents, int label) {
+        int root = label;
+        while (parents[root] != root) root = parents[root];
+
+        while (parents[label] != root) {
+            final int next = parents[label];
+            parents[label] = root;
+            label = next;
+        }
+
+        return root;
+    }
+
+    private ConnectedComponents() {
+    }
+}
@@ -0,0 +1,186 @@
+package org.flowutils.raster.raster.single;
+
+import org.flowutils.Check;
+import org.flowutils.rectangle.intrectangle.ImmutableIntRectangle;
+import org.flowutils.rectangle.intrectangle.IntRectangle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps track of changed areas of a raster as a small set of rectangles.
+ *
+ * Overlapping and adjacent rectangles are merged when they are added, and if there are more rectangles than the maximum,
+ * the two rectangles that can be merged with the least increase in area are merged.  So the dirty regions always cover all changed cells,
+ * but may also cover some unchanged cells.
+ *
+ * Marking a cell that is already inside the most recently marked region is fast, so that single value changes can be tracked cheaply.
+ *
+ * Thread safe.
+ */
+public final class DirtyRegionTracker {
+
+    /**
+     * Default maximum number of separate dirty regions.
+     */
+    public static final int DEFAULT_MAX_REGIONS = 16;
+
+    private final int maxRegions;
+
+    // Regions as {minX, minY, maxX, maxY}, inclusive.
+    private final List<int[]> regions = new ArrayList<int[]>();
+    private int[] lastRegion = null;
+
+    public DirtyRegionTracker() {
+        this(DEFAULT_MAX_REGIONS);
+    }
+
+    /**
+     * @param maxRegions maximum number of separate dirty regions to keep track of.
+     */
+    public DirtyRegionTracker(int maxRegions) {
+        Check.positive(maxRegions, "maxRegions");
+        this.maxRegions = maxRegions;
+    }
+
+    /**
+     * Marks the specified cell as dirty.
+     */
+    public void markDirty(int x, int y) {
+        markDirty(x, y, x, y);
+    }
+
+    /**
+     * Marks the specified area as dirty.  Does nothing if the area is empty.
+     */
+    public void markDirty(IntRectangle area) {
+        Check.notNull(area, "area");
+        if (!area.isEmpty()) markDirty(area.getMinX(), area.getMinY(), area.getMaxX(), area.getMaxY());
+    }
+
+    /**
+     * Marks the specified area as dirty.
+     *
+     * @param minX smallest x coordinate of the area, inclusive.
+     * @param minY smallest y coordinate of the area, inclusive.
+     * @param maxX largest x coordinate of the area, inclusive.
+     * @param maxY largest y coordinate of the area, inclusive.
+     */
+    public synchronized void markDirty(int minX, int minY, int maxX, int maxY) {
+        if (maxX < minX || maxY < minY) return;
+
+        // Fast check for repeated changes to the same area
+        if (lastRegion != null &&
+            lastRegion[0] <= minX && lastRegion[1] <= minY &&
+            lastRegion[2] >= maxX && lastRegion[3] >= maxY) return;
+
+        int[] region = new int[]{minX, minY, maxX, maxY};
+
+        // Merge with any existing regions that overlap or touch the new one, until there are none left
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < regions.size(); i++) {
+                final int[] existing = regions.get(i);
+                if (touches(existing, region)) {
+                    regions.remove(i);
+                    region = union(existing, region);
+                    merged = true;
+                    break;
+                }
+            }
+        }
+
+        regions.add(region);
+        lastRegion = region;
+
+        if (regions.size() > maxRegions) mergeClosestRegions();
+    }
+
+    /**
+     * @return true if some area has been marked dirty since the last clear.
+     */
+    public synchronized boolean isDirty() {
+        return !regions.isEmpty();
+    }
+
+    /**
+     * @return the dirty regions.  They do not overlap each other.
+     */
+    public synchronized List<IntRectangle> getDirtyRegions() {
+        final List<IntRectangle> result = new ArrayList<IntRectangle>(regions.size());
+        for (int[] region : regions) {
+            result.add(new ImmutableIntRectangle(region[0], region[1], region[2], region[3]));
+        }
+        return result;
+    }
+
+    /**
+     * @return rectangle covering all dirty regions, or an empty rectangle if nothing is dirty.
+     */
+    public synchronized IntRectangle getDirtyBounds() {
+        if (regions.isEmpty()) return new ImmutableIntRectangle();
+
+        int[] bounds = regions.get(0);
+        for (int[] region : regions) {
+            bounds = union(bounds, region);
+        }
+        return new ImmutableIntRectangle(bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+
+    /**
+     * @return the dirty regions, and clears them in the same operation, so that no changes are lost between the calls.
+     */
+    public synchronized List<IntRectangle> getAndClearDirtyRegions() {
+        final List<IntRectangle> result = getDirtyRegions();
+        clear();
+        return result;
+    }
+
+    /**
+     * Removes all dirty regions.
+     */
+    public synchronized void clear() {
+        regions.clear();
+        lastRegion = null;
+    }
+
+    private void mergeClosestRegions() {
+        int bestA = 0;
+        int bestB = 1;
+        long bestGrowth = Long.MAX_VALUE;
+        for (int a = 0; a < regions.size(); a++) {
+            for (int b = a + 1; b < regions.size(); b++) {
+                final int[] regionA = regions.get(a);
+                final int[] regionB = regions.get(b);
+                final long growth = area(union(regionA, regionB)) - area(regionA) - area(regionB);
+                if (growth < bestGrowth) {
+                    bestGrowth = growth;
+                    bestA = a;
+                    bestB = b;
+                }
+            }
+        }
+
+        final int[] merged = union(regions.get(bestA), regions.get(bestB));
+        regions.remove(bestB);
+        regions.remove(bestA);
+
+        // The merged region may now overlap others, so add it through the normal path
+        lastRegion = null;
+        markDirty(merged[0], merged[1], merged[2], merged[3]);
+    }
+
+    private static boolean touches(int[] a, int[] b) {
+        return a[0] <= b[2] + 1 && b[0] <= a[2] + 1 &&
+               a[1] <= b[3] + 1 && b[1] <= a[3] + 1;
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        return new int[]{Math.min(a[0], b[0]), Math.min(a[1], b[1]), Math.max(a[2], b[2]), Math.max(a[3], b[3])};
+    }
+
+    private static long area(int[] region) {
+        return (long) (region[2] - region[0] + 1) * (region[3] - region[1] + 1);
+    }
+}
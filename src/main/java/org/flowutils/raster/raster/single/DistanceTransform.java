@@ -0,0 +1,173 @@
+package org.flowutils.raster.raster.single;
+
+import org.flowutils.Check;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.parallel.RowBandTask;
+
+/**
+ * Exact Euclidean distance transform of rasters, using the linear time lower envelope algorithm
+ * of Felzenszwalb and Huttenlocher ("Distance Transforms of Sampled Functions").
+ *
+ * The squared distances are first calculated along each column, and then along each row using the column results,
+ * which gives the exact distances in O(n) time for n cells.
+ * Columns and rows are processed in parallel bands by the RowBandExecutor, using only primitive work arrays.
+ */
+public final class DistanceTransform {
+
+    /**
+     * Squared distance used for cells that are not features, larger than any squared distance inside a raster.
+     */
+    private static final double INFINITE = 1e20;
+
+    /**
+     * Calculates the distance from each cell to the closest feature cell, running on the calling thread.
+     *
+     * @see #calculate(Raster, float, Raster, RowBandExecutor)
+     */
+    public static void calculate(Raster source, float threshold, Raster target) {
+        calculate(source, threshold, target, RowBandExecutor.SERIAL);
+    }
+
+    /**
+     * Calculates the distance from each cell to the closest feature cell, in cells.
+     * Feature cells get the distance zero.  If there are no feature cells, all cells get positive infinity.
+     *
+     * @param source raster with the features.  Cells with values larger than the threshold are features.
+     * @param threshold values larger than this are features.
+     * @param target raster to write the distances to.  Must have the same size as the source.  May be the same raster as the source.
+     * @param executor executor used to process bands of columns and rows, possibly in parallel.
+     */
+    public static void calculate(final Raster source, final float threshold, final Raster target, RowBandExecutor executor) {
+        Check.notNull(source, "source");
+        Check.notNull(target, "target");
+        Check.notNull(executor, "executor");
+        Check.equal(target.getSizeX(), "target sizeX", source.getSizeX(), "source sizeX");
+        Check.equal(target.getSizeY(), "target sizeY", source.getSizeY(), "source sizeY");
+
+        final int sizeX = source.getSizeX();
+        final int sizeY = source.getSizeY();
+        if (sizeX == 0 || sizeY == 0) return;
+
+        // Squared distances along the columns, stored column by column.
+        // The distances are calculated in double precision, as squared coordinates of large rasters do not fit exactly in a float.
+        final double[] columnDistances = new double[sizeX * sizeY];
+
+        // Columns are processed in bands, reading the rows of the band a block of columns at a time
+        executor.execute(sizeY, sizeX, new RowBandTask() {
+            @Override public void processRows(int startX, int endX) {
+                final int bandWidth = endX - startX;
+                final float[] row = new float[bandWidth];
+                final double[] column = new double[sizeY];
+                final EnvelopeWorkArrays work = new EnvelopeWorkArrays(sizeY);
+
+                // Initialize the columns of the band from the source
+                for (int y = 0; y < sizeY; y++) {
+                    source.readRow(y, startX, bandWidth, row, 0);
+                    for (int i = 0; i < bandWidth; i++) {
+                        columnDistances[(startX + i) * sizeY + y] = row[i] > threshold ? 0 : INFINITE;
+                    }
+                }
+
+                for (int x = startX; x < endX; x++) {
+                    System.arraycopy(columnDistances, x * sizeY, column, 0, sizeY);
+                    squaredDistances(column, sizeY, work, columnDistances, x * sizeY);
+                }
+            }
+        });
+
+        // Rows
+        executor.execute(sizeX, sizeY, new RowBandTask() {
+            @Override public void processRows(int startY, int endY) {
+                final double[] row = new double[sizeX];
+                final double[] squaredResult = new double[sizeX];
+                final float[] result = new float[sizeX];
+                final EnvelopeWorkArrays work = new EnvelopeWorkArrays(sizeX);
+
+                for (int y = startY; y < endY; y++) {
+                    for (int x = 0; x < sizeX; x++) {
+                        row[x] = columnDistances[x * sizeY + y];
+                    }
+
+                    squaredDistances(row, sizeX, work, squaredResult, 0);
+
+                    for (int x = 0; x < sizeX; x++) {
+                        result[x] = squaredResult[x] >= INFINITE ? Float.POSITIVE_INFINITY : (float) Math.sqrt(squaredResult[x]);
+                    }
+                    target.writeRow(y, 0, sizeX, result, 0);
+                }
+            }
+        });
+    }
+
+    /**
+     * One dimensional squared distance transform of the sampled function f, calculated as the lower envelope of parabolas rooted at each sample.
+     */
+    private static void squaredDistances(double[] f, int size, EnvelopeWorkArrays work, double[] target, int targetOffset) {
+        final int[] v = work.parabolaPositions;
+        final double[] z = work.boundaries;
+
+        // Build the lower envelope
+        int k = 0;
+        v[0] = 0;
+        z[0] = Double.NEGATIVE_INFINITY;
+        z[1] = Double.POSITIVE_INFINITY;
+        for (int q = 1; q < size; q++) {
+            if (f[q] >= INFINITE) continue;
+
+            // Skip leading samples that are not features, they do not contribute any parabolas
+            if (f[v[0]] >= INFINITE) {
+                v[0] = q;
+                continue;
+            }
+
+            double s = intersection(f, q, v[k]);
+            while (s <= z[k]) {
+                k--;
+                s = intersection(f, q, v[k]);
+            }
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = Double.POSITIVE_INFINITY;
+        }
+
+        // No features at all
+        if (f[v[0]] >= INFINITE) {
+            for (int q = 0; q < size; q++) {
+                target[targetOffset + q] = INFINITE;
+            }
+            return;
+        }
+
+        // Read the distances from the envelope
+        k = 0;
+        for (int q = 0; q < size; q++) {
+            while (z[k + 1] < q) k++;
+            final double d = q - v[k];
+            target[targetOffset + q] = d * d + f[v[k]];
+        }
+    }
+
+    /**
+     * @return position where the parabolas rooted at q and p intersect.
+     */
+    private static double intersection(double[] f, int q, int p) {
+        return ((f[q] + (double) q * q) - (f[p] + (double) p * p)) / (2.0 * q - 2.0 * p);
+    }
+
+    /**
+     * Work arrays for the lower envelope, allocated once per band.
+     */
+    private static final class EnvelopeWorkArrays {
+        private final int[] parabolaPositions;
+        private final double[] boundaries;
+
+        private EnvelopeWorkArrays(int size) {
+            parabolaPositions = new int[size];
+            boundaries = new double[size + 1];
+        }
+    }
+
+    private DistanceTransform() {
+    }
+}
@@ -0,0 +1,194 @@
+package org.flowutils.raster.raster.single;
+
+import org.flowutils.Check;
+
+import java.util.Arrays;
+
+/**
+ * Scanline flood fill for rasters.
+ *
+ * Fills whole horizontal spans at a time, and only pushes the start of each matching run on the rows above and below to the stack,
+ * so the stack stays small.  Rows are read from the raster with readRow the first time they are needed, and the filled spans are
+ * written back with writeRow, so only the rows touched by the fill are accessed.
+ * Uses only primitive work arrays.
+ */
+public final class FloodFill {
+
+    /**
+     * Fills the 4-connected area of cells that have the same value as the start cell with the new value.
+     *
+     * @param raster raster to fill.
+     * @param startX x coordinate of the cell to start from.
+     * @param startY y coordinate of the cell to start from.
+     * @param newValue value to fill the area with.
+     * @return number of cells filled.
+     */
+    public static int fill(Raster raster, int startX, int startY, float newValue) {
+        Check.notNull(raster, "raster");
+        Check.inRange(startX, "startX", 0, raster.getSizeX());
+        Check.inRange(startY, "startY", 0, raster.getSizeY());
+
+        final float startValue = raster.getValue(startX, startY);
+        return fill(raster, startX, startY, startValue, startValue, newValue);
+    }
+
+    /**
+     * Fills the 4-connected area of cells with values in the range minValue..maxValue, starting from the specified cell, with the new value.
+     * If minValue and maxValue are both NaN, the area of NaN cells is filled.
+     *
+     * @param raster raster to fill.
+     * @param startX x coordinate of the cell to start from.
+     * @param startY y coordinate of the cell to start from.
+     * @param minValue smallest value to fill, inclusive.
+     * @param maxValue largest value to fill, inclusive.
+     * @param newValue value to fill the area with.
+     * @return number of cells filled.  Zero if the start cell is not in the range.
+     */
+    public static int fill(Raster raster, int startX, int startY, float minValue, float maxValue, float newValue) {
+        Check.notNull(raster, "raster");
+        Check.inRange(startX, "startX", 0, raster.getSizeX());
+        Check.inRange(startY, "startY", 0, raster.getSizeY());
+
+        return new Filler(raster, minValue, maxValue, newValue).fill(startX, startY);
+    }
+
+    /**
+     * State of one fill operation.
+     */
+    private static final class Filler {
+        private final Raster raster;
+        private final int sizeX;
+        private final int sizeY;
+        private final float minValue;
+        private final float maxValue;
+        private final boolean fillNaN;
+        private final float newValue;
+
+        /**
+         * Rows read from the raster, null until needed.  Filled spans are updated in them as well.
+         */
+        private final float[][] rows;
+
+        /**
+         * Bits for the filled cells on each row, null until needed.
+         */
+        private final long[][] filled;
+
+        private float[] newValues = new float[0];
+        private int[] stack = new int[64];
+        private int stackSize;
+
+        private Filler(Raster raster, float minValue, float maxValue, float newValue) {
+            this.raster = raster;
+            this.sizeX = raster.getSizeX();
+            this.sizeY = raster.getSizeY();
+            this.minValue = minValue;
+            this.maxValue = maxValue;
+            this.fillNaN = Float.isNaN(minValue) && Float.isNaN(maxValue);
+            this.newValue = newValue;
+            rows = new float[sizeY][];
+            filled = new long[sizeY][];
+        }
+
+        private int fill(int startX, int startY) {
+            int count = 0;
+            push(startX, startY);
+
+            while (stackSize > 0) {
+                stackSize -= 2;
+                final int x = stack[stackSize];
+                final int y = stack[stackSize + 1];
+
+                final float[] row = getRow(y);
+                final long[] rowFilled = getFilled(y);
+                if (!fillable(row, rowFilled, x)) continue;
+
+                // Extend the span to the left and right
+                int spanStart = x;
+                while (spanStart > 0 && fillable(row, rowFilled, spanStart - 1)) spanStart--;
+                int spanEnd = x;
+                while (spanEnd < sizeX - 1 && fillable(row, rowFilled, spanEnd + 1)) spanEnd++;
+
+                fillSpan(y, row, rowFilled, spanStart, spanEnd);
+                count += spanEnd - spanStart + 1;
+
+                // Find the runs to fill on the neighbouring rows
+                if (y > 0) pushRuns(y - 1, spanStart, spanEnd);
+                if (y < sizeY - 1) pushRuns(y + 1, spanStart, spanEnd);
+            }
+
+            return count;
+        }
+
+        private void pushRuns(int y, int spanStart, int spanEnd) {
+            final float[] row = getRow(y);
+            final long[] rowFilled = getFilled(y);
+
+            boolean inRun = false;
+            for (int x = spanStart; x <= spanEnd; x++) {
+                if (fillable(row, rowFilled, x)) {
+                    if (!inRun) {
+                        push(x, y);
+                        inRun = true;
+                    }
+                }
+                else {
+                    inRun = false;
+                }
+            }
+        }
+
+        private void fillSpan(int y, float[] row, long[] rowFilled, int spanStart, int spanEnd) {
+            final int count = spanEnd - spanStart + 1;
+            if (newValues.length < count) {
+                newValues = new float[Math.max(count, 2 * newValues.length)];
+                Arrays.fill(newValues, newValue);
+            }
+
+            for (int x = spanStart; x <= spanEnd; x++) {
+                row[x] = newValue;
+                rowFilled[x >> 6] |= 1L << x;
+            }
+
+            raster.writeRow(y, spanStart, count, newValues, 0);
+        }
+
+        private boolean fillable(float[] row, long[] rowFilled, int x) {
+            if ((rowFilled[x >> 6] & (1L << x)) != 0) return false;
+
+            final float value = row[x];
+            if (fillNaN) return value != value;
+            else return value >= minValue && value <= maxValue;
+        }
+
+        private float[] getRow(int y) {
+            float[] row = rows[y];
+            if (row == null) {
+                row = new float[sizeX];
+                raster.readRow(y, 0, sizeX, row, 0);
+                rows[y] = row;
+            }
+            return row;
+        }
+
+        private long[] getFilled(int y) {
+            long[] rowFilled = filled[y];
+            if (rowFilled == null) {
+                rowFilled = new long[(sizeX + 63) >> 6];
+                filled[y] = rowFilled;
+            }
+            return rowFilled;
+        }
+
+        private void push(int x, int y) {
+            if (stackSize + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[stackSize++] = x;
+            stack[stackSize++] = y;
+        }
+    }
+
+    private FloodFill() {
+    }
+}
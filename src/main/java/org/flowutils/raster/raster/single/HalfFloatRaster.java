@@ -0,0 +1,67 @@
+package org.flowutils.raster.raster.single;
+
+import org.flowutils.Check;
+
+import static org.flowutils.HalfFloatUtils.toFloat;
+import static org.flowutils.HalfFloatUtils.toFloats;
+import static org.flowutils.HalfFloatUtils.toHalfFloat;
+import static org.flowutils.HalfFloatUtils.toHalfFloats;
+
+/**
+ * A raster that stores its values as IEEE 754 half precision floats, using half the memory of a float raster.
+ *
+ * Values have about three significant decimal digits and a range of about +-65504, see HalfFloatUtils.
+ * Written values are rounded to the nearest half float.
+ *
+ * Not backed by a float array, use readRow and writeRow for fast access to the values.
+ */
+public final class HalfFloatRaster extends RasterBase {
+
+    private final short[] data;
+
+    /**
+     * @param sizeX x size of the raster
+     * @param sizeY y size of the raster
+     */
+    public HalfFloatRaster(int sizeX, int sizeY) {
+        this(sizeX, sizeY, new short[sizeX * sizeY]);
+    }
+
+    /**
+     * @param sizeX x size of the raster
+     * @param sizeY y size of the raster
+     * @param data array with the half float values of the raster, row by row.
+     */
+    public HalfFloatRaster(int sizeX, int sizeY, short[] data) {
+        super(sizeX, sizeY);
+        Check.notNull(data, "data");
+        Check.greaterOrEqual(data.length, "data length", sizeX * sizeY, "number of cells");
+
+        this.data = data;
+    }
+
+    /**
+     * @return the half float values of this raster, row by row.
+     */
+    public short[] getHalfFloatData() {
+        return data;
+    }
+
+    @Override public void readRow(int y, int startX, int count, float[] target, int targetOffset) {
+        checkRowSpan(y, startX, count);
+
+        toFloats(data, y * sizeX + startX, target, targetOffset, count);
+    }
+
+    @Override protected void writeRowUnchecked(int y, int startX, int count, float[] source, int sourceOffset) {
+        toHalfFloats(source, sourceOffset, data, y * sizeX + startX, count);
+    }
+
+    @Override protected float getValueUnchecked(int x, int y) {
+        return toFloat(data[y * sizeX + x]);
+    }
+
+    @Override protected void setValueUnchecked(int x, int y, float value) {
+        data[y * sizeX + x] = toHalfFloat(value);
+    }
+}
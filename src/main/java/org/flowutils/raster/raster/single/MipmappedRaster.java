@@ -0,0 +1,241 @@
+package org.flowutils.raster.raster.single;
+
+import org.flowutils.Check;
+import org.flowutils.rectangle.intrectangle.IntRectangle;
+
+import static org.flowutils.MathUtils.mix;
+
+/**
+ * Wraps a raster and maintains a pyramid of successively halved, box filtered versions of it (mipmaps),
+ * so that sampleValue can take the sample size into account.
+ *
+ * When the sample size is larger than one cell, the two pyramid levels closest to the sample size are sampled and blended,
+ * which avoids aliasing when a large raster is viewed zoomed out, and reads far fewer values than sampling the full resolution raster.
+ *
+ * Values written through this raster mark the changed area as dirty, and the affected parts of the pyramid are rebuilt
+ * the next time it is sampled with a sample size larger than one.  If the wrapped raster is modified directly,
+ * call invalidate to let the pyramid know about it.
+ *
+ * The pyramid levels are allocated the first time they are needed, and use about a third of the memory of the wrapped raster.
+ */
+public final class MipmappedRaster extends RasterBase {
+
+    private static final double LOG_2 = Math.log(2);
+
+    private final Raster base;
+
+    private volatile Raster[] levels = null;
+    private volatile boolean dirty = true;
+
+    // Dirty area in the wrapped raster, inclusive.  Guarded by this.
+    private int dirtyMinX;
+    private int dirtyMinY;
+    private int dirtyMaxX;
+    private int dirtyMaxY;
+
+    /**
+     * @param base raster to build the pyramid for.  Changes to it should be done through this raster, or be followed by a call to invalidate.
+     */
+    public MipmappedRaster(Raster base) {
+        super(base.getSizeX(), base.getSizeY());
+        this.base = base;
+
+        dirtyMinX = 0;
+        dirtyMinY = 0;
+        dirtyMaxX = sizeX - 1;
+        dirtyMaxY = sizeY - 1;
+    }
+
+    /**
+     * @return the wrapped raster with the full resolution values.
+     */
+    public Raster getBase() {
+        return base;
+    }
+
+    /**
+     * @return number of levels in the pyramid, including the full resolution level.
+     */
+    public int getLevelCount() {
+        return getUpToDateLevels().length;
+    }
+
+    /**
+     * @return the specified level of the pyramid.  Level zero is the wrapped raster, and each following level has half the size of the previous one.
+     *         The returned raster should not be modified.
+     */
+    public Raster getLevel(int level) {
+        final Raster[] levels = getUpToDateLevels();
+        Check.inRange(level, "level", 0, levels.length);
+        return levels[level];
+    }
+
+    /**
+     * Marks the whole pyramid as needing to be rebuilt.
+     * Call this after changing the wrapped raster directly.
+     */
+    public void invalidate() {
+        invalidateLevels(0, 0, sizeX - 1, sizeY - 1);
+    }
+
+    /**
+     * Marks the specified area of the pyramid as needing to be rebuilt.
+     * Call this after changing the wrapped raster directly.
+     *
+     * @param area changed area of the wrapped raster, in its cell coordinates.
+     */
+    public void invalidate(IntRectangle area) {
+        Check.notNull(area, "area");
+        if (area.isEmpty()) return;
+
+        invalidateLevels(Math.max(0, area.getMinX()),
+                  Math.max(0, area.getMinY()),
+                  Math.min(sizeX - 1, area.getMaxX()),
+                  Math.min(sizeY - 1, area.getMaxY()));
+    }
+
+    @Override public float sampleValue(double x, double y, double sampleSize) {
+        // Use the full resolution when the samples are at most one cell apart
+        if (sampleSize <= 1) return base.sampleValue(x, y);
+
+        if (x < 0 || x > sizeX - 1 ||
+            y < 0 || y > sizeY - 1) throw new IllegalArgumentException("The coordinate ("+x+","+y+") is outside the raster (which has a size of "+sizeX+","+sizeY+").");
+
+        final Raster[] levels = getUpToDateLevels();
+        final int maxLevel = levels.length - 1;
+
+        // Blend between the two levels closest to the sample size
+        final double lod = Math.log(sampleSize) / LOG_2;
+        if (lod >= maxLevel) return sampleLevel(levels[maxLevel], maxLevel, x, y);
+
+        final int level = (int) lod;
+        final float t = (float) (lod - level);
+        return mix(t,
+                   sampleLevel(levels[level], level, x, y),
+                   sampleLevel(levels[level + 1], level + 1, x, y));
+    }
+
+    @Override public void readRow(int y, int startX, int count, float[] target, int targetOffset) {
+        base.readRow(y, startX, count, target, targetOffset);
+    }
+
+    @Override protected void writeRowUnchecked(int y, int startX, int count, float[] source, int sourceOffset) {
+        base.writeRow(y, startX, count, source, sourceOffset);
+        invalidateLevels(startX, y, startX + count - 1, y);
+    }
+
+    @Override protected float getValueUnchecked(int x, int y) {
+        return base.getValue(x, y);
+    }
+
+    @Override protected void setValueUnchecked(int x, int y, float value) {
+        base.setValue(x, y, value);
+        invalidateLevels(x, y, x, y);
+    }
+
+    private synchronized void invalidateLevels(int minX, int minY, int maxX, int maxY) {
+        if (dirty) {
+            dirtyMinX = Math.min(dirtyMinX, minX);
+            dirtyMinY = Math.min(dirtyMinY, minY);
+            dirtyMaxX = Math.max(dirtyMaxX, maxX);
+            dirtyMaxY = Math.max(dirtyMaxY, maxY);
+        }
+        else {
+            dirtyMinX = minX;
+            dirtyMinY = minY;
+            dirtyMaxX = maxX;
+            dirtyMaxY = maxY;
+            dirty = true;
+        }
+    }
+
+    /**
+     * @return the pyramid levels, after rebuilding any dirty parts.
+     */
+    private Raster[] getUpToDateLevels() {
+        if (dirty) {
+            synchronized (this) {
+                if (dirty) {
+                    if (levels == null) levels = createLevels();
+
+                    // Rebuild the dirty area one level at a time, each level from the previous one
+                    int minX = dirtyMinX;
+                    int minY = dirtyMinY;
+                    int maxX = dirtyMaxX;
+                    int maxY = dirtyMaxY;
+                    for (int level = 1; level < levels.length; level++) {
+                        minX >>= 1;
+                        minY >>= 1;
+                        maxX >>= 1;
+                        maxY >>= 1;
+                        downsample(levels[level - 1], (RasterImpl) levels[level], minX, minY, maxX, maxY);
+                    }
+
+                    dirty = false;
+                }
+            }
+        }
+
+        return levels;
+    }
+
+    private Raster[] createLevels() {
+        int levelCount = 1;
+        int levelSizeX = sizeX;
+        int levelSizeY = sizeY;
+        while (levelSizeX > 1 || levelSizeY > 1) {
+            levelSizeX = (levelSizeX + 1) / 2;
+            levelSizeY = (levelSizeY + 1) / 2;
+            levelCount++;
+        }
+
+        final Raster[] levels = new Raster[levelCount];
+        levels[0] = base;
+        for (int level = 1; level < levelCount; level++) {
+            levels[level] = new RasterImpl((levels[level - 1].getSizeX() + 1) / 2,
+                                           (levels[level - 1].getSizeY() + 1) / 2);
+        }
+
+        return levels;
+    }
+
+    /**
+     * Calculates the cells in the specified area of the target as the average of the corresponding 2x2 cells of the source.
+     * At odd sized edges the last source row or column is used twice.
+     */
+    private static void downsample(Raster source, RasterImpl target, int minX, int minY, int maxX, int maxY) {
+        final int sourceSizeX = source.getSizeX();
+        final int sourceSizeY = source.getSizeY();
+        final int targetSizeX = target.getSizeX();
+        final float[] targetData = target.getData();
+
+        final int sourceStartX = minX * 2;
+        final int sourceEndX = Math.min(maxX * 2 + 1, sourceSizeX - 1);
+        final int count = sourceEndX - sourceStartX + 1;
+        final float[] row0 = new float[count];
+        final float[] row1 = new float[count];
+
+        for (int y = minY; y <= maxY; y++) {
+            source.readRow(y * 2, sourceStartX, count, row0, 0);
+            source.readRow(Math.min(y * 2 + 1, sourceSizeY - 1), sourceStartX, count, row1, 0);
+
+            int targetIndex = y * targetSizeX + minX;
+            for (int x = minX; x <= maxX; x++) {
+                final int i0 = x * 2 - sourceStartX;
+                final int i1 = Math.min(x * 2 + 1, sourceEndX) - sourceStartX;
+                targetData[targetIndex++] = 0.25f * (row0[i0] + row0[i1] + row1[i0] + row1[i1]);
+            }
+        }
+    }
+
+    /**
+     * @return value sampled from the specified level, at a coordinate given in the full resolution raster.
+     */
+    private static float sampleLevel(Raster levelRaster, int level, double x, double y) {
+        // The center of a cell at the level is in the middle of the full resolution cells it covers
+        final double scale = 1 << level;
+        final double levelX = Math.max(0, Math.min(levelRaster.getSizeX() - 1, (x + 0.5) / scale - 0.5));
+        final double levelY = Math.max(0, Math.min(levelRaster.getSizeY() - 1, (y + 0.5) / scale - 0.5));
+        return levelRaster.sampleValue(levelX, levelY);
+    }
+}
@@ -0,0 +1,65 @@
+package org.flowutils.raster.raster.single;
+
+import org.flowutils.Check;
+
+/**
+ * Common functionality for rasters that store their values as unsigned fixed point integers,
+ * where the float value is calculated as: value = storedValue * scale + offset.
+ *
+ * Written values are rounded to the closest representable value, and clamped to the range of the raster.
+ */
+public abstract class QuantizedRasterBase extends RasterBase {
+
+    protected final float scale;
+    protected final float offset;
+    protected final float inverseScale;
+    protected final int maxStoredValue;
+
+    /**
+     * @param sizeX x size of the raster
+     * @param sizeY y size of the raster
+     * @param minValue value represented by the smallest stored value.
+     * @param maxValue value represented by the largest stored value.  Must be larger than minValue.
+     * @param maxStoredValue largest value that can be stored.
+     */
+    protected QuantizedRasterBase(int sizeX, int sizeY, float minValue, float maxValue, int maxStoredValue) {
+        super(sizeX, sizeY);
+        Check.greater(maxValue, "maxValue", minValue, "minValue");
+
+        this.maxStoredValue = maxStoredValue;
+        offset = minValue;
+        scale = (maxValue - minValue) / maxStoredValue;
+        inverseScale = 1f / scale;
+    }
+
+    /**
+     * @return smallest value that can be stored in the raster.
+     */
+    public final float getMinValue() {
+        return offset;
+    }
+
+    /**
+     * @return largest value that can be stored in the raster.
+     */
+    public final float getMaxValue() {
+        return maxStoredValue * scale + offset;
+    }
+
+    /**
+     * @return difference between two consecutive representable values.
+     */
+    public final float getScale() {
+        return scale;
+    }
+
+    /**
+     * @return the stored value closest to the specified value.
+     */
+    protected final int quantize(float value) {
+        final int storedValue = Math.round((value - offset) * inverseScale);
+        if (storedValue < 0) return 0;
+        else if (storedValue > maxStoredValue) return maxStoredValue;
+        else return storedValue;
+    }
+}
@@ -0,0 +1,82 @@
+package org.flowutils.raster.raster.single;
+
+import org.flowutils.Check;
+
+/**
+ * A raster that stores its values as unsigned 16 bit integers, with 65536 evenly spaced values between a minimum and maximum value.
+ * Uses half the memory of a float raster.
+ *
+ * Not backed by a float array, use readRow and writeRow for fast access to the values.
+ */
+public final class QuantizedShortRaster extends QuantizedRasterBase {
+
+    private static final int MAX_STORED_VALUE = 0xffff;
+
+    private final short[] data;
+
+    /**
+     * Creates a raster for values in the 0..1 range.
+     *
+     * @param sizeX x size of the raster
+     * @param sizeY y size of the raster
+     */
+    public QuantizedShortRaster(int sizeX, int sizeY) {
+        this(sizeX, sizeY, 0, 1);
+    }
+
+    /**
+     * @param sizeX x size of the raster
+     * @param sizeY y size of the raster
+     * @param minValue smallest value that can be stored.
+     * @param maxValue largest value that can be stored.
+     */
+    public QuantizedShortRaster(int sizeX, int sizeY, float minValue, float maxValue) {
+        this(sizeX, sizeY, minValue, maxValue, new short[sizeX * sizeY]);
+    }
+
+    /**
+     * @param sizeX x size of the raster
+     * @param sizeY y size of the raster
+     * @param minValue smallest value that can be stored.
+     * @param maxValue largest value that can be stored.
+     * @param data array with the stored values of the raster, row by row.
+     */
+    public QuantizedShortRaster(int sizeX, int sizeY, float minValue, float maxValue, short[] data) {
+        super(sizeX, sizeY, minValue, maxValue, MAX_STORED_VALUE);
+        Check.notNull(data, "data");
+        Check.greaterOrEqual(data.length, "data length", sizeX * sizeY, "number of cells");
+
+        this.data = data;
+    }
+
+    /**
+     * @return the stored values of this raster, row by row.
+     */
+    public short[] getQuantizedData() {
+        return data;
+    }
+
+    @Override public void readRow(int y, int startX, int count, float[] target, int targetOffset) {
+        checkRowSpan(y, startX, count);
+
+        final int start = y * sizeX + startX;
+        for (int i = 0; i < count; i++) {
+            target[targetOffset + i] = (data[start + i] & 0xffff) * scale + offset;
+        }
+    }
+
+    @Override protected void writeRowUnchecked(int y, int startX, int count, float[] source, int sourceOffset) {
+        final int start = y * sizeX + startX;
+        for (int i = 0; i < count; i++) {
+            data[start + i] = (short) quantize(source[sourceOffset + i]);
+        }
+    }
+
+    @Override protected float getValueUnchecked(int x, int y) {
+        return (data[y * sizeX + x] & 0xffff) * scale + offset;
+    }
+
+    @Override protected void setValueUnchecked(int x, int y, float value) {
+        data[y * sizeX + x] = (short) quantize(value);
+    }
+}
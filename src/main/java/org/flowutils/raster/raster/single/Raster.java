@@ -27,9 +27,17 @@ public interface Raster {
     /**
      * @return read & write array with the values in the channel, laid out row by row, using the
      * dataOffset, dataXSkip and dataYSkip specified in this Raster.
+     * @throws UnsupportedOperationException if the raster is not backed by a float array (see isArrayBacked).
      */
     float[] getData();
 
+    /**
+     * @return true if the values of this raster are stored in the float array returned by getData,
+     *         false if they are stored in some other way (e.g. outside the java heap), in which case getData is not supported,
+     *         and the values should be accessed with readRow and writeRow or the single value accessors instead.
+     */
+    boolean isArrayBacked();
+
     /**
      * @return offset in the array to where the data from this raster begins.
      */
@@ -75,4 +83,59 @@ public interface Raster {
      * @return number of elements to step over to get to the next row.
      */
     int getDataRowStep();
+
+    /**
+     * Copies values from a row of this raster to an array.  Throws exception if the span is outside the raster.
+     *
+     * @param y row to read from.
+     * @param startX x coordinate of the first value to read.
+     * @param count number of values to read.
+     * @param target array to write the values to.
+     * @param targetOffset index in the target array to write the first value to.
+     */
+    void readRow(int y, int startX, int count, float[] target, int targetOffset);
+
+    /**
+     * Copies values from an array to a row of this raster.  Throws exception if the span is outside the raster.
+     *
+     * @param y row to write to.
+     * @param startX x coordinate of the first value to write.
+     * @param count number of values to write.
+     * @param source array to read the values from.
+     * @param sourceOffset index in the source array of the first value to write.
+     */
+    void writeRow(int y, int startX, int count, float[] source, int sourceOffset);
+
+    /**
+     * Creates a view to a rectangular area of this raster.
+     * The view shares the values with this raster, so changes made through the view are visible in this raster and the other way around.
+     * No values are copied, so views are cheap to create, and can be used to e.g. process a large raster a tile at a time.
+     *
+     * @param area area of this raster to create a view for, must be inside the extent of this raster.
+     *             The cell at the minimum corner of the area will be at 0,0 in the view.
+     * @return a raster with the size of the area, that accesses the values in this raster.
+     */
+    Raster view(IntRectangle area);
+
+    /**
+     * @return the tracker that changes to this raster are recorded in, or null if changes are not tracked.
+     */
+    DirtyRegionTracker getDirtyRegionTracker();
+
+    /**
+     * Starts or stops tracking changes to this raster.
+     * When a tracker is set, setValue, writeRow, the bulk operations, and rendering fields to the raster mark the changed cells as dirty in it.
+     * Changes made directly to the data array are not tracked, report them with markDirty.
+     *
+     * @param dirtyRegionTracker tracker to record changes in, or null to not track changes.  The same tracker can be shared by several rasters.
+     */
+    void setDirtyRegionTracker(DirtyRegionTracker dirtyRegionTracker);
+
+    /**
+     * Marks the specified area of this raster as changed in the dirty region tracker, if there is one.
+     * Used to report changes made directly to the data array.
+     *
+     * @param area changed area, in the coordinates of this raster.
+     */
+    void markDirty(IntRectangle area);
 }
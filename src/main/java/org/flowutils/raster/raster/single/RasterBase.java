@@ -0,0 +1,448 @@
+package org.flowutils.raster.raster.single;
+
+import org.flowutils.Check;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.parallel.RowBandTask;
+import org.flowutils.raster.statistics.RasterStatistics;
+import org.flowutils.raster.statistics.RasterStatisticsCalculator;
+import org.flowutils.rectangle.intrectangle.ImmutableIntRectangle;
+import org.flowutils.rectangle.intrectangle.IntRectangle;
+
+import static org.flowutils.MathUtils.fastFloor;
+import static org.flowutils.MathUtils.mix;
+
+/**
+ * Common functionality for rasters.
+ *
+ * Provides bounds checked value access, sampling, and row based implementations of the bulk operations,
+ * so that a subclass only needs to implement unchecked access to single values.
+ * Subclasses that are not backed by a float array should override readRow and writeRowUnchecked if they have a faster way to access rows.
+ */
+public abstract class RasterBase implements Raster {
+
+    protected final int sizeX;
+    protected final int sizeY;
+    private transient IntRectangle extent = null;
+    // Runtime setting, not part of the serialized state
+    private transient RowBandExecutor executor = RowBandExecutor.SERIAL;
+    // Runtime listener, not part of the serialized state
+    private transient volatile DirtyRegionTracker dirtyRegionTracker = null;
+    private int dirtyOffsetX = 0;
+    private int dirtyOffsetY = 0;
+
+    /**
+     * @param sizeX x size of the raster, must be positive.
+     * @param sizeY y size of the raster, must be positive.
+     */
+    protected RasterBase(int sizeX, int sizeY) {
+        Check.positive(sizeX, "sizeX");
+        Check.positive(sizeY, "sizeY");
+
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+    }
+
+    @Override public final int getSizeX() {
+        return sizeX;
+    }
+
+    @Override public final int getSizeY() {
+        return sizeY;
+    }
+
+    @Override public final IntRectangle getExtent() {
+        if (extent == null) extent = new ImmutableIntRectangle(sizeX, sizeY);
+
+        return extent;
+    }
+
+    @Override public float[] getData() {
+        throw new UnsupportedOperationException("The raster " + getClass().getSimpleName() + " is not backed by a float array, " +
+                                                "use readRow and writeRow to access its values.");
+    }
+
+    @Override public boolean isArrayBacked() {
+        return false;
+    }
+
+    @Override public int getDataOffset() {
+        return 0;
+    }
+
+    @Override public int getDataXStep() {
+        return 1;
+    }
+
+    @Override public int getDataYSkip() {
+        return 0;
+    }
+
+    @Override public int getDataRowStep() {
+        return sizeX;
+    }
+
+    @Override public boolean isDataInterleaved() {
+        return false;
+    }
+
+    @Override public float getValue(int x, int y) {
+        checkCoordinate(x, y);
+
+        return getValueUnchecked(x, y);
+    }
+
+    @Override public void setValue(int x, int y, float value) {
+        checkCoordinate(x, y);
+
+        setValueUnchecked(x, y, value);
+        markDirty(x, y, x, y);
+    }
+
+    @Override public final float sampleValue(double x, double y) {
+        return sampleValue(x, y, 0);
+    }
+
+    @Override public float sampleValue(double x, double y, double sampleSize) {
+        if (x < 0 || x > sizeX - 1 ||
+            y < 0 || y > sizeY - 1) throw new IllegalArgumentException("The coordinate ("+x+","+y+") is outside the raster (which has a size of "+sizeX+","+sizeY+").");
+
+        int x0 = fastFloor(x);
+        int y0 = fastFloor(y);
+        int x1 = x0 < sizeX - 1 ? x0 + 1 : x0;
+        int y1 = y0 < sizeY - 1 ? y0 + 1 : y0;
+        float cx = (float) (x - x0);
+        float cy = (float) (y - y0);
+        final float yr0 = mix(cx, getValueUnchecked(x0, y0), getValueUnchecked(x1, y0));
+        final float yr1 = mix(cx, getValueUnchecked(x0, y1), getValueUnchecked(x1, y1));
+        return mix(cy, yr0, yr1);
+    }
+
+    @Override public void readRow(int y, int startX, int count, float[] target, int targetOffset) {
+        checkRowSpan(y, startX, count);
+
+        for (int i = 0; i < count; i++) {
+            target[targetOffset + i] = getValueUnchecked(startX + i, y);
+        }
+    }
+
+    @Override public void writeRow(int y, int startX, int count, float[] source, int sourceOffset) {
+        checkRowSpan(y, startX, count);
+
+        writeRowUnchecked(y, startX, count, source, sourceOffset);
+        markDirty(startX, y, startX + count - 1, y);
+    }
+
+    @Override public Raster view(IntRectangle area) {
+        checkAreaInside(area);
+
+        final RasterView view = new RasterView(this, area.getMinX(), area.getMinY(), area.getSizeX(), area.getSizeY());
+        view.setExecutor(getExecutor());
+        return view;
+    }
+
+    @Override public final DirtyRegionTracker getDirtyRegionTracker() {
+        return dirtyRegionTracker;
+    }
+
+    @Override public final void setDirtyRegionTracker(DirtyRegionTracker dirtyRegionTracker) {
+        setDirtyRegionTracker(dirtyRegionTracker, 0, 0);
+    }
+
+    @Override public final void markDirty(IntRectangle area) {
+        Check.notNull(area, "area");
+        if (!area.isEmpty()) markDirty(area.getMinX(), area.getMinY(), area.getMaxX(), area.getMaxY());
+    }
+
+    /**
+     * Makes a view that accesses the values of this raster directly record its changes in the dirty region tracker of this raster, if any.
+     *
+     * @param view view to this raster.
+     * @param viewX x coordinate of the first column of the view in this raster.
+     * @param viewY y coordinate of the first row of the view in this raster.
+     */
+    final void shareDirtyRegionTracker(RasterBase view, int viewX, int viewY) {
+        final DirtyRegionTracker tracker = dirtyRegionTracker;
+        if (tracker != null) view.setDirtyRegionTracker(tracker, dirtyOffsetX + viewX, dirtyOffsetY + viewY);
+    }
+
+    private void setDirtyRegionTracker(DirtyRegionTracker dirtyRegionTracker, int offsetX, int offsetY) {
+        this.dirtyOffsetX = offsetX;
+        this.dirtyOffsetY = offsetY;
+        this.dirtyRegionTracker = dirtyRegionTracker;
+    }
+
+    /**
+     * @return executor used to run the bulk operations of this raster.
+     *         RowBandExecutor.SERIAL for deserialized rasters, as the executor is not serialized.
+     */
+    public final RowBandExecutor getExecutor() {
+        return executor != null ? executor : RowBandExecutor.SERIAL;
+    }
+
+    /**
+     * @param executor executor used to run the bulk operations of this raster.
+     *                 Use RowBandExecutor.SERIAL to run them on the calling thread (the default),
+     *                 or a parallel RowBandExecutor to split large operations into row bands that are processed in parallel.
+     *                 The results are identical in both cases.
+     */
+    public final void setExecutor(RowBandExecutor executor) {
+        Check.notNull(executor, "executor");
+        this.executor = executor;
+    }
+
+    /**
+     * Replaces the contents of this raster with the other raster.
+     * The rasters must have the same size, if not, an exception is thrown.
+     *
+     * @param source raster to copy content from.
+     */
+    public void copyFrom(final Raster source) {
+        checkSizeMatches(source);
+
+        markAllDirty();
+        getExecutor().execute(sizeX, sizeY, new RowBandTask() {
+            @Override public void processRows(int startY, int endY) {
+                final float[] row = new float[sizeX];
+                for (int y = startY; y < endY; y++) {
+                    source.readRow(y, 0, sizeX, row, 0);
+                    writeRowUnchecked(y, 0, sizeX, row, 0);
+                }
+            }
+        });
+    }
+
+    /**
+     * Multiplies all the values of this raster with the specified scale.
+     */
+    public final void multiply(float scale) {
+        multiplyAdd(scale, 0);
+    }
+
+    /**
+     * Adds the specified value to all cells of this raster.
+     */
+    public final void add(float offset) {
+        multiplyAdd(1, offset);
+    }
+
+    /**
+     * Multiplies all the values of this raster with the specified scale, and adds the offset.
+     */
+    public void multiplyAdd(final float scale, final float offset) {
+        markAllDirty();
+        getExecutor().execute(sizeX, sizeY, new RowBandTask() {
+            @Override public void processRows(int startY, int endY) {
+                final float[] row = new float[sizeX];
+                for (int y = startY; y < endY; y++) {
+                    readRow(y, 0, sizeX, row, 0);
+                    for (int x = 0; x < sizeX; x++) {
+                        row[x] = row[x] * scale + offset;
+                    }
+                    writeRowUnchecked(y, 0, sizeX, row, 0);
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds the source raster to this raster.
+     * The rasters must be of the same size, or an exception is thrown.
+     *
+     * @param source raster to add to this raster.
+     */
+    public final void add(Raster source) {
+        add(source, 1, 1, 0);
+    }
+
+    /**
+     * Adds the source raster to this raster.
+     * The rasters must be of the same size, or an exception is thrown.
+     *
+     * @param source raster to add to this raster.
+     * @param sourceScale value to scale the source raster with.
+     * @param offset value to add to the result at each cell.
+     */
+    public final void add(Raster source, float sourceScale, float offset) {
+        add(source, 1, sourceScale, offset);
+    }
+
+    /**
+     * Adds the source raster to this raster.
+     * The rasters must be of the same size, or an exception is thrown.
+     *
+     * @param source raster to add to this raster.
+     * @param originalScale value to scale this raster with.
+     * @param sourceScale value to scale the source raster with.
+     * @param offset value to add to the result at each cell.
+     */
+    public void add(final Raster source, final float originalScale, final float sourceScale, final float offset) {
+        checkSizeMatches(source);
+
+        markAllDirty();
+        getExecutor().execute(sizeX, sizeY, new RowBandTask() {
+            @Override public void processRows(int startY, int endY) {
+                final float[] row = new float[sizeX];
+                final float[] sourceRow = new float[sizeX];
+                for (int y = startY; y < endY; y++) {
+                    readRow(y, 0, sizeX, row, 0);
+                    source.readRow(y, 0, sizeX, sourceRow, 0);
+                    for (int x = 0; x < sizeX; x++) {
+                        row[x] = row[x] * originalScale + sourceRow[x] * sourceScale + offset;
+                    }
+                    writeRowUnchecked(y, 0, sizeX, row, 0);
+                }
+            }
+        });
+    }
+
+    /**
+     * Multiplies this raster with the specified source raster.
+     *
+     * The rasters must be of the same size, or an exception is thrown.
+     *
+     * @param source raster to multiply with this raster.
+     */
+    public final void multiply(Raster source) {
+        multiply(source, 1, 1, 0);
+    }
+
+    /**
+     * Multiplies this raster with the specified source raster.
+     *
+     * The rasters must be of the same size, or an exception is thrown.
+     *
+     * @param source raster to multiply with this raster.
+     * @param originalScale value to scale this raster with before multiplying.
+     * @param sourceScale value to scale the source raster with before multiplying.
+     * @param offset value to add to the result after multiplying
+     */
+    public final void multiply(Raster source, float originalScale, float sourceScale, float offset) {
+        multiply(source, originalScale, sourceScale, 0, 0, offset);
+    }
+
+    /**
+     * Multiplies this raster with the specified source raster.
+     *
+     * Each cell value is calculated as:  cellValue = (cellValue * originalScale + originalOffset) + (sourceCellValue * sourceScale + sourceOffset) + offset.
+     *
+     * The rasters must be of the same size, or an exception is thrown.
+     *
+     * @param source raster to multiply with this raster.
+     * @param originalScale value to scale this raster with before multiplying.
+     * @param sourceScale value to scale the source raster with before multiplying.
+     * @param originalOffset value to add to this raster after scaling and before multiplying.
+     * @param sourceOffset value to add to the source raster after scaling and before multiplying.
+     * @param offset value to add to the result after multiplying
+     */
+    public void multiply(final Raster source,
+                         final float originalScale,
+                         final float sourceScale,
+                         final float originalOffset,
+                         final float sourceOffset,
+                         final float offset) {
+        checkSizeMatches(source);
+
+        markAllDirty();
+        getExecutor().execute(sizeX, sizeY, new RowBandTask() {
+            @Override public void processRows(int startY, int endY) {
+                final float[] row = new float[sizeX];
+                final float[] sourceRow = new float[sizeX];
+                for (int y = startY; y < endY; y++) {
+                    readRow(y, 0, sizeX, row, 0);
+                    source.readRow(y, 0, sizeX, sourceRow, 0);
+                    for (int x = 0; x < sizeX; x++) {
+                        row[x] = (row[x] * originalScale + originalOffset) * (sourceRow[x] * sourceScale + sourceOffset) + offset;
+                    }
+                    writeRowUnchecked(y, 0, sizeX, row, 0);
+                }
+            }
+        });
+    }
+
+    /**
+     * Calculates the minimum, maximum, sum, mean and variance of the values of this raster in a single pass,
+     * using the executor of this raster.  Use a RasterStatisticsCalculator to also calculate a histogram.
+     */
+    public final RasterStatistics calculateStatistics() {
+        return new RasterStatisticsCalculator(getExecutor()).calculate(this);
+    }
+
+    /**
+     * Calculates the minimum, maximum, sum, mean and variance of the values of this raster inside the specified area in a single pass,
+     * using the executor of this raster.  Use a RasterStatisticsCalculator to also calculate a histogram.
+     *
+     * @param area area to include in the statistics.  Must be inside the raster.
+     */
+    public final RasterStatistics calculateStatistics(IntRectangle area) {
+        return new RasterStatisticsCalculator(getExecutor()).calculate(this, area);
+    }
+
+    /**
+     * Marks the specified area as changed, if changes to this raster are tracked.
+     * Coordinates are inclusive.
+     */
+    protected final void markDirty(int minX, int minY, int maxX, int maxY) {
+        final DirtyRegionTracker tracker = dirtyRegionTracker;
+        if (tracker != null) tracker.markDirty(minX + dirtyOffsetX, minY + dirtyOffsetY, maxX + dirtyOffsetX, maxY + dirtyOffsetY);
+    }
+
+    /**
+     * Marks the whole raster as changed, if changes to this raster are tracked.
+     */
+    protected final void markAllDirty() {
+        markDirty(0, 0, sizeX - 1, sizeY - 1);
+    }
+
+    /**
+     * @return the value at the specified coordinate, which the caller has already checked to be inside the raster.
+     */
+    protected abstract float getValueUnchecked(int x, int y);
+
+    /**
+     * Sets the value at the specified coordinate, which the caller has already checked to be inside the raster.
+     */
+    protected abstract void setValueUnchecked(int x, int y, float value);
+
+    /**
+     * Writes a span of a row, which the caller has already checked to be inside the raster, without marking it dirty.
+     * Subclasses should override this if they have a faster way to write rows.
+     */
+    protected void writeRowUnchecked(int y, int startX, int count, float[] source, int sourceOffset) {
+        for (int i = 0; i < count; i++) {
+            setValueUnchecked(startX + i, y, source[sourceOffset + i]);
+        }
+    }
+
+    /**
+     * Throws an IllegalArgumentException if the coordinate is outside the raster.
+     */
+    protected final void checkCoordinate(int x, int y) {
+        if (x < 0 || x >= sizeX ||
+            y < 0 || y >= sizeY) throw new IllegalArgumentException("The coordinate ("+x+","+y+") is outside the raster (which has a size of "+sizeX+","+sizeY+").");
+    }
+
+    /**
+     * Throws an IllegalArgumentException if the specified span of a row is not inside the raster.
+     */
+    protected final void checkRowSpan(int y, int startX, int count) {
+        if (y < 0 || y >= sizeY ||
+            startX < 0 || count < 0 || startX + count > sizeX) throw new IllegalArgumentException("The row span ("+startX+".."+(startX + count)+", "+y+") is outside the raster (which has a size of "+sizeX+","+sizeY+").");
+    }
+
+    /**
+     * Throws an IllegalArgumentException if the area is not inside the extent of this raster.
+     */
+    protected final void checkAreaInside(IntRectangle area) {
+        Check.notNull(area, "area");
+        if (area.isEmpty() || !getExtent().contains(area)) throw new IllegalArgumentException("The area ("+area+") is empty or outside the raster (which has the extent "+getExtent()+").");
+    }
+
+    /**
+     * Make sure this raster has the same size as the source raster, if not, throw an IllegalArgumentException.
+     */
+    protected final void checkSizeMatches(Raster source) {
+        Check.equal(source.getSizeX(), "source sizeX", sizeX, "target sizeX");
+        Check.equal(source.getSizeY(), "source sizeY", sizeY, "target sizeY");
+    }
+
+}
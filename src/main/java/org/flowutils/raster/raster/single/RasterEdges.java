@@ -0,0 +1,80 @@
+package org.flowutils.raster.raster.single;
+
+import java.util.Arrays;
+
+/**
+ * Edge handling shared by the raster filters and stencils, for reading values outside a raster.
+ *
+ * Coordinates outside the raster are either wrapped around to the other side, clamped to the border of the raster,
+ * or replaced with a default value, in that order of precedence.
+ */
+public final class RasterEdges {
+
+    /**
+     * @param coordinate a row or column coordinate, possibly outside the raster.
+     * @param size size of the raster along the axis of the coordinate.
+     * @param wrap if true, coordinates outside the raster wrap around to the other side.
+     * @param extendBorder if true and not wrapping, coordinates outside the raster are clamped to the border.
+     * @return the coordinate inside the raster to use for the specified coordinate, or -1 if the default value should be used.
+     */
+    public static int getSourceCoordinate(int coordinate, int size, boolean wrap, boolean extendBorder) {
+        if (coordinate >= 0 && coordinate < size) return coordinate;
+        else if (wrap) return wrap(coordinate, size);
+        else if (extendBorder) return coordinate < 0 ? 0 : size - 1;
+        else return -1;
+    }
+
+    /**
+     * Reads a row of the source into the buffer, starting at index padding, and fills in padding values past each end of the row
+     * according to the edge handling.  Rows outside the source are handled the same way.
+     *
+     * @param buffer buffer to read to, with room for the row and the padding on both sides.
+     */
+    public static void readPaddedRow(Raster source,
+                                     int y,
+                                     int padding,
+                                     float[] buffer,
+                                     boolean wrapX,
+                                     boolean wrapY,
+                                     boolean extendBorder,
+                                     float defaultValue) {
+        final int sizeX = source.getSizeX();
+
+        final int sourceY = getSourceCoordinate(y, source.getSizeY(), wrapY, extendBorder);
+        if (sourceY < 0) {
+            Arrays.fill(buffer, 0, sizeX + 2 * padding, defaultValue);
+            return;
+        }
+
+        source.readRow(sourceY, 0, sizeX, buffer, padding);
+
+        for (int i = 1; i <= padding; i++) {
+            final int left = padding - i;
+            final int right = padding + sizeX - 1 + i;
+            if (wrapX) {
+                buffer[left] = buffer[padding + wrap(-i, sizeX)];
+                buffer[right] = buffer[padding + wrap(sizeX - 1 + i, sizeX)];
+            }
+            else if (extendBorder) {
+                buffer[left] = buffer[padding];
+                buffer[right] = buffer[padding + sizeX - 1];
+            }
+            else {
+                buffer[left] = defaultValue;
+                buffer[right] = defaultValue;
+            }
+        }
+    }
+
+    /**
+     * @return the value wrapped to the range 0 (inclusive) to size (exclusive).
+     */
+    public static int wrap(int value, int size) {
+        value %= size;
+        if (value < 0) value += size;
+        return value;
+    }
+
+    private RasterEdges() {
+    }
+}
@@ -1,7 +1,7 @@
 package org.flowutils.raster.raster.single;
 
 import org.flowutils.Check;
-import org.flowutils.rectangle.intrectangle.ImmutableIntRectangle;
+import org.flowutils.raster.parallel.RowBandTask;
 import org.flowutils.rectangle.intrectangle.IntRectangle;
 
 import static org.flowutils.MathUtils.fastFloor;
@@ -10,16 +10,13 @@ import static org.flowutils.MathUtils.mix;
 /**
  * A channel with raster values.
  */
-public final class RasterImpl implements Raster {
+public final class RasterImpl extends RasterBase {
 
-    private final int sizeX;
-    private final int sizeY;
     private final int dataOffset;
     private final int dataXStep;
     private final int dataYSkip;
     private final int dataRowSize;
     private final float[] data;
-    private transient IntRectangle extent = null;
 
     /**
      * Creates a new RasterChannel with the specified size.
@@ -54,15 +51,12 @@ public final class RasterImpl implements Raster {
      * @param dataYSkip extra elements to skip between each row in the data array.
      */
     public RasterImpl(int sizeX, int sizeY, float[] data, int dataOffset, int dataXStep, int dataYSkip) {
-        Check.positive(sizeX, "sizeX");
-        Check.positive(sizeY, "sizeY");
+        super(sizeX, sizeY);
         Check.notNull(data, "data");
         Check.positiveOrZero(dataOffset, "dataOffset");
         Check.notZero(dataXStep, "dataXStep");
         Check.positiveOrZero(dataYSkip, "dataYSkip");
 
-        this.sizeX = sizeX;
-        this.sizeY = sizeY;
         this.dataOffset = dataOffset;
         this.dataXStep = dataXStep;
         this.dataYSkip = dataYSkip;
@@ -75,24 +69,14 @@ public final class RasterImpl implements Raster {
         return data.length != (sizeX * sizeY) || dataOffset != 0 || dataXStep != 1 || dataYSkip != 0;
     }
 
-    @Override public int getSizeX() {
-        return sizeX;
-    }
-
-    @Override public int getSizeY() {
-        return sizeY;
-    }
-
-    @Override public IntRectangle getExtent() {
-        if (extent == null) extent = new ImmutableIntRectangle(sizeX, sizeY);
-
-        return extent;
-    }
-
     @Override public float[] getData() {
         return data;
     }
 
+    @Override public boolean isArrayBacked() {
+        return true;
+    }
+
     @Override public int getDataOffset() {
         return dataOffset;
     }
@@ -110,33 +94,28 @@ public final class RasterImpl implements Raster {
     }
 
     @Override public float getValue(int x, int y) {
-        if (x < 0 || x >= sizeX ||
-            y < 0 || y >= sizeY) throw new IllegalArgumentException("The coordinate ("+x+","+y+") is outside the raster (which has a size of "+sizeX+","+sizeY+").");
+        checkCoordinate(x, y);
 
         return data[getIndex(x, y)];
     }
 
     @Override public void setValue(int x, int y, float value) {
-        if (x < 0 || x >= sizeX ||
-            y < 0 || y >= sizeY) throw new IllegalArgumentException("The coordinate ("+x+","+y+") is outside the raster (which has a size of "+sizeX+","+sizeY+").");
+        checkCoordinate(x, y);
 
         data[getIndex(x, y)] = value;
-    }
-
-    @Override public float sampleValue(double x, double y) {
-        return sampleValue(x, y, 0);
+        markDirty(x, y, x, y);
     }
 
     @Override public float sampleValue(double x, double y, double sampleSize) {
-        // NOTE: If we implement some kind of cached mipmapped versions of the raster, we could support sampleSize as well.  That could be done in a subclass maybe.
+        // NOTE: The sample size is ignored, wrap the raster in a MipmappedRaster to take it into account.
 
         if (x < 0 || x > sizeX - 1 ||
             y < 0 || y > sizeY - 1) throw new IllegalArgumentException("The coordinate ("+x+","+y+") is outside the raster (which has a size of "+sizeX+","+sizeY+").");
 
         int x0 = fastFloor(x);
         int y0 = fastFloor(y);
-        int x1 = x0 + 1;
-        int y1 = y0 + 1;
+        int x1 = x0 < sizeX - 1 ? x0 + 1 : x0;
+        int y1 = y0 < sizeY - 1 ? y0 + 1 : y0;
         float cx = (float) (x - x0);
         float cy = (float) (y - y0);
         final float yr0 = mix(cx, data[getIndex(x0, y0)], data[getIndex(x1, y0)]);
@@ -144,6 +123,61 @@ public final class RasterImpl implements Raster {
         return mix(cy, yr0, yr1);
     }
 
+    @Override public void readRow(int y, int startX, int count, float[] target, int targetOffset) {
+        checkRowSpan(y, startX, count);
+
+        int index = getIndex(startX, y);
+        if (dataXStep == 1) {
+            System.arraycopy(data, index, target, targetOffset, count);
+        }
+        else {
+            for (int i = 0; i < count; i++) {
+                target[targetOffset + i] = data[index];
+                index += dataXStep;
+            }
+        }
+    }
+
+    @Override protected void writeRowUnchecked(int y, int startX, int count, float[] source, int sourceOffset) {
+        int index = getIndex(startX, y);
+        if (dataXStep == 1) {
+            System.arraycopy(source, sourceOffset, data, index, count);
+        }
+        else {
+            for (int i = 0; i < count; i++) {
+                data[index] = source[sourceOffset + i];
+                index += dataXStep;
+            }
+        }
+    }
+
+    /**
+     * @return a RasterImpl that shares the data array of this raster, using an offset and row skip to only cover the specified area.
+     *         Uses the same executor as this raster, and records changes in the same dirty region tracker, if any.
+     */
+    @Override public RasterImpl view(IntRectangle area) {
+        checkAreaInside(area);
+
+        final int viewSizeX = area.getSizeX();
+        final RasterImpl view = new RasterImpl(viewSizeX,
+                                               area.getSizeY(),
+                                               data,
+                                               getIndex(area.getMinX(), area.getMinY()),
+                                               dataXStep,
+                                               dataRowSize - viewSizeX * dataXStep);
+        view.setExecutor(getExecutor());
+        shareDirtyRegionTracker(view, area.getMinX(), area.getMinY());
+        return view;
+    }
+
+    @Override protected float getValueUnchecked(int x, int y) {
+        return data[getIndex(x, y)];
+    }
+
+    @Override protected void setValueUnchecked(int x, int y, float value) {
+        data[getIndex(x, y)] = value;
+    }
+
     /**
      * @return index of the specified coordinate in the data array.  Does not check boundaries.
      */
@@ -157,96 +191,89 @@ public final class RasterImpl implements Raster {
      *
      * @param source raster to copy content from.
      */
-    public void copyFrom(Raster source) {
+    @Override public void copyFrom(Raster source) {
+        if (!source.isArrayBacked()) {
+            super.copyFrom(source);
+            return;
+        }
+
         checkSizeMatches(source);
 
+        final float[] sourceData = source.getData();
+
         if (nonInterleavedOperationPossible(source)) {
             // Non-interleaved data, we can do a system copy
-            System.arraycopy(source.getData(), 0, data, 0, data.length);
+            markAllDirty();
+            getExecutor().execute(sizeX, sizeY, new RowBandTask() {
+                @Override public void processRows(int startY, int endY) {
+                    final int start = startY * sizeX;
+                    System.arraycopy(sourceData, start, data, start, (endY - startY) * sizeX);
+                }
+            });
         }
         else {
             // Copy interleaved data
             final int sourceXStep = source.getDataXStep();
             final int sourceYSkip = source.getDataYSkip();
-            final float[] sourceData = source.getData();
-
-            int targetIndex = dataOffset;
-            int sourceIndex = source.getDataOffset();
-
-            for (int y = 0; y < sizeY; y++) {
-                for (int x = 0; x < sizeX; x++) {
-                    data[targetIndex] = sourceData[sourceIndex];
-
-                    targetIndex += dataXStep;
-                    sourceIndex += sourceXStep;
+            final int sourceOffset = source.getDataOffset();
+            final int sourceRowStep = source.getDataRowStep();
+
+            markAllDirty();
+            getExecutor().execute(sizeX, sizeY, new RowBandTask() {
+                @Override public void processRows(int startY, int endY) {
+                    int targetIndex = getIndex(0, startY);
+                    int sourceIndex = sourceOffset + startY * sourceRowStep;
+
+                    for (int y = startY; y < endY; y++) {
+                        for (int x = 0; x < sizeX; x++) {
+                            data[targetIndex] = sourceData[sourceIndex];
+
+                            targetIndex += dataXStep;
+                            sourceIndex += sourceXStep;
+                        }
+                        targetIndex += dataYSkip;
+                        sourceIndex += sourceYSkip;
+                    }
                 }
-                targetIndex += dataYSkip;
-                sourceIndex += sourceYSkip;
-            }
+            });
         }
     }
 
-    /**
-     * Multiplies all the values of this raster with the specified scale.
-     */
-    public void multiply(float scale) {
-        multiplyAdd(scale, 0);
-    }
-
-    /**
-     * Adds the specified value to all cells of this raster.
-     */
-    public void add(float offset) {
-        multiplyAdd(1, offset);
-    }
-
     /**
      * Multiplies all the values of this raster with the specified scale, and adds the offset.
      */
-    public void multiplyAdd(float scale, float offset) {
+    @Override public void multiplyAdd(final float scale, final float offset) {
         if (!isDataInterleaved()) {
             // Non-interleaved data, we can do a simple loop
-            final int size = data.length;
-            for (int i = 0; i < size; i++) {
-                data[i] = data[i] * scale + offset;
-            }
+            markAllDirty();
+            getExecutor().execute(sizeX, sizeY, new RowBandTask() {
+                @Override public void processRows(int startY, int endY) {
+                    final int end = endY * sizeX;
+                    for (int i = startY * sizeX; i < end; i++) {
+                        data[i] = data[i] * scale + offset;
+                    }
+                }
+            });
         }
         else {
             // Loop interleaved data
-            int index = dataOffset;
-            for (int y = 0; y < sizeY; y++) {
-                for (int x = 0; x < sizeX; x++) {
-                    data[index] = data[index] * scale + offset;
-
-                    index += dataXStep;
+            markAllDirty();
+            getExecutor().execute(sizeX, sizeY, new RowBandTask() {
+                @Override public void processRows(int startY, int endY) {
+                    int index = getIndex(0, startY);
+                    for (int y = startY; y < endY; y++) {
+                        for (int x = 0; x < sizeX; x++) {
+                            data[index] = data[index] * scale + offset;
+
+                            index += dataXStep;
+                        }
+                        index += dataYSkip;
+                    }
                 }
-                index += dataYSkip;
-            }
+            });
         }
     }
 
-    /**
-     * Adds the source raster to this raster.
-     * The rasters must be of the same size, or an exception is thrown.
-     *
-     * @param source raster to add to this raster.
-     */
-    public void add(Raster source) {
-        add(source, 1, 1, 0);
-    }
-
-    /**
-     * Adds the source raster to this raster.
-     * The rasters must be of the same size, or an exception is thrown.
-     *
-     * @param source raster to add to this raster.
-     * @param sourceScale value to scale the source raster with.
-     * @param offset value to add to the result at each cell.
-     */
-    public void add(Raster source, float sourceScale, float offset) {
-        add(source, 1, sourceScale, offset);
-    }
-
     /**
      * Adds the source raster to this raster.
      * The rasters must be of the same size, or an exception is thrown.
@@ -256,66 +283,56 @@ public final class RasterImpl implements Raster {
      * @param sourceScale value to scale the source raster with.
      * @param offset value to add to the result at each cell.
      */
-    public void add(Raster source, float originalScale, float sourceScale, float offset) {
+    @Override public void add(Raster source, final float originalScale, final float sourceScale, final float offset) {
+        if (!source.isArrayBacked()) {
+            super.add(source, originalScale, sourceScale, offset);
+            return;
+        }
+
         checkSizeMatches(source);
 
         final float[] sourceData = source.getData();
 
         if (nonInterleavedOperationPossible(source)) {
             // Non-interleaved data, we can do a simple loop
-            final int size = data.length;
-
-            for (int i = 0; i < size; i++) {
-                data[i] = data[i] * originalScale + sourceData[i] * sourceScale + offset;
-            }
-
+            markAllDirty();
+            getExecutor().execute(sizeX, sizeY, new RowBandTask() {
+                @Override public void processRows(int startY, int endY) {
+                    final int end = endY * sizeX;
+                    for (int i = startY * sizeX; i < end; i++) {
+                        data[i] = data[i] * originalScale + sourceData[i] * sourceScale + offset;
+                    }
+                }
+            });
         }
         else {
             // Add interleaved rasters
             final int sourceXStep = source.getDataXStep();
             final int sourceYSkip = source.getDataYSkip();
-
-            int targetIndex = dataOffset;
-            int sourceIndex = source.getDataOffset();
-
-            for (int y = 0; y < sizeY; y++) {
-                for (int x = 0; x < sizeX; x++) {
-                    data[targetIndex] = data[targetIndex] * originalScale + sourceData[sourceIndex] * sourceScale + offset;
-
-                    targetIndex += dataXStep;
-                    sourceIndex += sourceXStep;
+            final int sourceOffset = source.getDataOffset();
+            final int sourceRowStep = source.getDataRowStep();
+
+            markAllDirty();
+            getExecutor().execute(sizeX, sizeY, new RowBandTask() {
+                @Override public void processRows(int startY, int endY) {
+                    int targetIndex = getIndex(0, startY);
+                    int sourceIndex = sourceOffset + startY * sourceRowStep;
+
+                    for (int y = startY; y < endY; y++) {
+                        for (int x = 0; x < sizeX; x++) {
+                            data[targetIndex] = data[targetIndex] * originalScale + sourceData[sourceIndex] * sourceScale + offset;
+
+                            targetIndex += dataXStep;
+                            sourceIndex += sourceXStep;
+                        }
+                        targetIndex += dataYSkip;
+                        sourceIndex += sourceYSkip;
+                    }
                 }
-                targetIndex += dataYSkip;
-                sourceIndex += sourceYSkip;
-            }
+            });
         }
     }
 
-    /**
-     * Multiplies this raster with the specified source raster.
-     *
-     * The rasters must be of the same size, or an exception is thrown.
-     *
-     * @param source raster to multiply with this raster.
-     */
-    public void multiply(Raster source) {
-        multiply(source, 1, 1, 0);
-    }
-
-    /**
-     * Multiplies this raster with the specified source raster.
-     *
-     * The rasters must be of the same size, or an exception is thrown.
-     *
-     * @param source raster to multiply with this raster.
-     * @param originalScale value to scale this raster with before multiplying.
-     * @param sourceScale value to scale the source raster with before multiplying.
-     * @param offset value to add to the result after multiplying
-     */
-    public void multiply(Raster source, float originalScale, float sourceScale, float offset) {
-        multiply(source, originalScale, sourceScale, 0, 0, offset);
-    }
-
     /**
      * Multiplies this raster with the specified source raster.
      *
@@ -330,50 +347,64 @@ public final class RasterImpl implements Raster {
      * @param sourceOffset value to add to the source raster after scaling and before multiplying.
      * @param offset value to add to the result after multiplying
      */
-    public void multiply(Raster source, float originalScale, float sourceScale, float originalOffset, float sourceOffset, float offset) {
+    @Override public void multiply(Raster source,
+                                   final float originalScale,
+                                   final float sourceScale,
+                                   final float originalOffset,
+                                   final float sourceOffset,
+                                   final float offset) {
+        if (!source.isArrayBacked()) {
+            super.multiply(source, originalScale, sourceScale, originalOffset, sourceOffset, offset);
+            return;
+        }
+
         checkSizeMatches(source);
 
         final float[] sourceData = source.getData();
 
         if (nonInterleavedOperationPossible(source)) {
             // Non-interleaved data, we can do a simple loop
-            final int size = data.length;
-            for (int i = 0; i < size; i++) {
-                data[i] = (data[i] * originalScale + originalOffset) * (sourceData[i] * sourceScale + sourceOffset) + offset;
-            }
+            markAllDirty();
+            getExecutor().execute(sizeX, sizeY, new RowBandTask() {
+                @Override public void processRows(int startY, int endY) {
+                    final int end = endY * sizeX;
+                    for (int i = startY * sizeX; i < end; i++) {
+                        data[i] = (data[i] * originalScale + originalOffset) * (sourceData[i] * sourceScale + sourceOffset) + offset;
+                    }
+                }
+            });
         }
         else {
             // Multiply interleaved rasters
             final int sourceXStep = source.getDataXStep();
             final int sourceYSkip = source.getDataYSkip();
-
-            int targetIndex = dataOffset;
-            int sourceIndex = source.getDataOffset();
-
-            for (int y = 0; y < sizeY; y++) {
-                for (int x = 0; x < sizeX; x++) {
-                    data[targetIndex] = (data[targetIndex] * originalScale + originalOffset) * (sourceData[sourceIndex] * sourceScale + sourceOffset) + offset;
-
-                    targetIndex += dataXStep;
-                    sourceIndex += sourceXStep;
+            final int sourceDataOffset = source.getDataOffset();
+            final int sourceRowStep = source.getDataRowStep();
+
+            markAllDirty();
+            getExecutor().execute(sizeX, sizeY, new RowBandTask() {
+                @Override public void processRows(int startY, int endY) {
+                    int targetIndex = getIndex(0, startY);
+                    int sourceIndex = sourceDataOffset + startY * sourceRowStep;
+
+                    for (int y = startY; y < endY; y++) {
+                        for (int x = 0; x < sizeX; x++) {
+                            data[targetIndex] = (data[targetIndex] * originalScale + originalOffset) * (sourceData[sourceIndex] * sourceScale + sourceOffset) + offset;
+
+                            targetIndex += dataXStep;
+                            sourceIndex += sourceXStep;
+                        }
+                        targetIndex += dataYSkip;
+                        sourceIndex += sourceYSkip;
+                    }
                 }
-                targetIndex += dataYSkip;
-                sourceIndex += sourceYSkip;
-            }
+            });
         }
 
     }
 
 
 
-    /**
-     * Make sure this raster has the same size as the source raster, if not, throw an IllegalArgumentException.
-     */
-    private void checkSizeMatches(Raster source) {
-        Check.equal(source.getSizeX(), "source sizeX", sizeX, "target sizeX");
-        Check.equal(source.getSizeY(), "source sizeY", sizeY, "target sizeY");
-    }
-
     private boolean nonInterleavedOperationPossible(Raster source) {
         return !isDataInterleaved() &&
                !source.isDataInterleaved();
@@ -0,0 +1,64 @@
+package org.flowutils.raster.raster.single;
+
+import org.flowutils.rectangle.intrectangle.ImmutableIntRectangle;
+import org.flowutils.rectangle.intrectangle.IntRectangle;
+
+/**
+ * A view to a rectangular area of another raster, for rasters that are not backed by a float array.
+ * Forwards all accesses to the viewed raster, offset by the position of the area.
+ */
+final class RasterView extends RasterBase {
+
+    private final Raster raster;
+    private final int offsetX;
+    private final int offsetY;
+
+    /**
+     * @param raster viewed raster.
+     * @param offsetX x coordinate in the viewed raster of the first column of the view.
+     * @param offsetY y coordinate in the viewed raster of the first row of the view.
+     * @param sizeX x size of the view.
+     * @param sizeY y size of the view.
+     */
+    RasterView(Raster raster, int offsetX, int offsetY, int sizeX, int sizeY) {
+        super(sizeX, sizeY);
+        this.raster = raster;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+    }
+
+    @Override public float sampleValue(double x, double y, double sampleSize) {
+        if (x < 0 || x > sizeX - 1 ||
+            y < 0 || y > sizeY - 1) throw new IllegalArgumentException("The coordinate ("+x+","+y+") is outside the raster (which has a size of "+sizeX+","+sizeY+").");
+
+        return raster.sampleValue(x + offsetX, y + offsetY, sampleSize);
+    }
+
+    @Override public void readRow(int y, int startX, int count, float[] target, int targetOffset) {
+        checkRowSpan(y, startX, count);
+
+        raster.readRow(y + offsetY, startX + offsetX, count, target, targetOffset);
+    }
+
+    @Override protected void writeRowUnchecked(int y, int startX, int count, float[] source, int sourceOffset) {
+        raster.writeRow(y + offsetY, startX + offsetX, count, source, sourceOffset);
+    }
+
+    @Override public Raster view(IntRectangle area) {
+        checkAreaInside(area);
+
+        // View the original raster directly instead of stacking views
+        return raster.view(new ImmutableIntRectangle(area.getMinX() + offsetX,
+                                                     area.getMinY() + offsetY,
+                                                     area.getMaxX() + offsetX,
+                                                     area.getMaxY() + offsetY));
+    }
+
+    @Override protected float getValueUnchecked(int x, int y) {
+        return raster.getValue(x + offsetX, y + offsetY);
+    }
+
+    @Override protected void setValueUnchecked(int x, int y, float value) {
+        raster.setValue(x + offsetX, y + offsetY, value);
+    }
+}
@@ -0,0 +1,592 @@
+package org.flowutils.raster.raster.single;
+
+import org.flowutils.Check;
+import org.flowutils.serializer.KryoSerializer;
+import org.flowutils.serializer.Serializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.flowutils.MathUtils.fastFloor;
+import static org.flowutils.MathUtils.mix;
+
+/**
+ * A sparse raster that stores its values in fixed size square tiles, which are only allocated when a value in them is first written.
+ * Values in tiles that have never been written have the default value.
+ *
+ * The raster can be very large (up to Integer.MAX_VALUE cells along each axis), as memory use depends on the area that has been
+ * written to, not on the size of the raster.
+ *
+ * If a page directory is specified, the number of tiles kept in memory is limited by a memory budget.  When the budget is exceeded,
+ * the least recently used tiles are paged out to files in the page directory using a Serializer, and paged back in when accessed again.
+ * Each raster pages its tiles to its own subdirectory of the page directory, so several rasters can share a page directory.
+ * The raster must be closed when it is no longer needed, to delete its paged out tiles and its subdirectory.
+ * It can be used with try-with-resources:
+ * <pre>
+ *   try (TiledRaster raster = new TiledRaster(100000, 100000, 64, 0, 256 * 1024 * 1024, pageDirectory)) {
+ *       ...
+ *   }
+ * </pre>
+ *
+ * The bulk operations only process the allocated tiles, and apply the operation to the default value for the rest of the cells,
+ * so their cost and memory use also depend on the written area.  Operations with a source raster that is a TiledRaster with the
+ * same tile size are done tile by tile, with other source rasters only cells where the result differs from the default value
+ * are stored.
+ *
+ * Not backed by a float array, use readRow and writeRow for fast access to the values.
+ * Thread safe, accesses to the tiles are synchronized.
+ */
+public final class TiledRaster extends RasterBase implements AutoCloseable {
+
+    /**
+     * Default size of the tiles along each axis.
+     */
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    private static final int BYTES_PER_CELL = 4;
+
+    private final int tileShift;
+    private final int tileMask;
+    private final int tileSize;
+    private float defaultValue;
+    private final int maxLoadedTiles;
+    private final File pageDirectory;
+    private final Serializer serializer;
+    private boolean closed = false;
+
+    private final Set<Long> pagedOutTiles = new HashSet<Long>();
+    private final LinkedHashMap<Long, Tile> loadedTiles = new LinkedHashMap<Long, Tile>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Long, Tile> eldest) {
+            if (pageDirectory != null && size() > maxLoadedTiles) {
+                pageOut(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+    };
+
+    /**
+     * Creates a new tiled raster that keeps all its tiles in memory, with the default tile size and zero as the default value.
+     *
+     * @param sizeX x size of the raster
+     * @param sizeY y size of the raster
+     */
+    public TiledRaster(int sizeX, int sizeY) {
+        this(sizeX, sizeY, DEFAULT_TILE_SIZE, 0);
+    }
+
+    /**
+     * Creates a new tiled raster that keeps all its tiles in memory.
+     *
+     * @param sizeX x size of the raster
+     * @param sizeY y size of the raster
+     * @param tileSize size of the tiles along each axis.  Must be a power of two.
+     * @param defaultValue value of cells that have not been written to.
+     */
+    public TiledRaster(int sizeX, int sizeY, int tileSize, float defaultValue) {
+        this(sizeX, sizeY, tileSize, defaultValue, Long.MAX_VALUE, null, null);
+    }
+
+    /**
+     * Creates a new tiled raster that pages out tiles to the page directory when the memory budget is exceeded,
+     * using a KryoSerializer.
+     *
+     * @param sizeX x size of the raster
+     * @param sizeY y size of the raster
+     * @param tileSize size of the tiles along each axis.  Must be a power of two.
+     * @param defaultValue value of cells that have not been written to.
+     * @param memoryBudgetBytes maximum number of bytes to use for tiles kept in memory.  At least one tile is always kept in memory.
+     * @param pageDirectory directory to store paged out tiles in.  Each tile is stored in a separate file,
+     *                      in a subdirectory created for this raster, which is deleted when the raster is closed.
+     */
+    public TiledRaster(int sizeX, int sizeY, int tileSize, float defaultValue, long memoryBudgetBytes, File pageDirectory) {
+        this(sizeX, sizeY, tileSize, defaultValue, memoryBudgetBytes, pageDirectory, createTileSerializer(tileSize));
+    }
+
+    /**
+     * @param sizeX x size of the raster
+     * @param sizeY y size of the raster
+     * @param tileSize size of the tiles along each axis.  Must be a power of two.
+     * @param defaultValue value of cells that have not been written to.
+     * @param memoryBudgetBytes maximum number of bytes to use for tiles kept in memory.  At least one tile is always kept in memory.
+     * @param pageDirectory directory to store paged out tiles in, or null to keep all tiles in memory.
+     *                      The tiles are stored in a subdirectory created for this raster, which is deleted when the raster is closed.
+     * @param serializer serializer used to write and read tiles (float arrays) to and from the page directory.
+     *                   Must allow float[] and have a large enough buffer for a tile.  Only used from one thread at a time.
+     */
+    public TiledRaster(int sizeX,
+                       int sizeY,
+                       int tileSize,
+                       float defaultValue,
+                       long memoryBudgetBytes,
+                       File pageDirectory,
+                       Serializer serializer) {
+        super(sizeX, sizeY);
+        Check.positive(tileSize, "tileSize");
+        if (Integer.bitCount(tileSize) != 1) throw new IllegalArgumentException("The tile size should be a power of two, but was " + tileSize);
+        Check.positive(memoryBudgetBytes, "memoryBudgetBytes");
+        if (pageDirectory != null) {
+            Check.notNull(serializer, "serializer");
+            if (!pageDirectory.isDirectory() && !pageDirectory.mkdirs()) throw new IllegalArgumentException("Could not create the page directory " + pageDirectory);
+
+            // Use a directory of our own, so that tiles of other rasters paged to the same directory do not overwrite ours
+            try {
+                pageDirectory = Files.createTempDirectory(pageDirectory.toPath(), "tiles").toFile();
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not create a tile directory in the page directory " + pageDirectory + ": " + e.getMessage(), e);
+            }
+        }
+
+        this.tileSize = tileSize;
+        this.tileShift = Integer.numberOfTrailingZeros(tileSize);
+        this.tileMask = tileSize - 1;
+        this.defaultValue = defaultValue;
+        this.pageDirectory = pageDirectory;
+        this.serializer = serializer;
+
+        final long tileBytes = (long) tileSize * tileSize * BYTES_PER_CELL;
+        maxLoadedTiles = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudgetBytes / tileBytes));
+    }
+
+    /**
+     * @return size of the tiles along each axis.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @return value of cells that have not been written to.  Changed by the bulk operations along with the written cells.
+     */
+    public synchronized float getDefaultValue() {
+        return defaultValue;
+    }
+
+    /**
+     * @return directory that the tiles of this raster are paged out to, a subdirectory of the page directory
+     *         given to the constructor, or null if no page directory is used.
+     */
+    public File getPageDirectory() {
+        return pageDirectory;
+    }
+
+    /**
+     * @return maximum number of tiles kept in memory, if a page directory is used.
+     */
+    public int getMaxLoadedTiles() {
+        return maxLoadedTiles;
+    }
+
+    /**
+     * @return number of tiles currently in memory.
+     */
+    public synchronized int getLoadedTileCount() {
+        return loadedTiles.size();
+    }
+
+    /**
+     * @return number of tiles that have been allocated, either in memory or paged out.
+     */
+    public synchronized int getAllocatedTileCount() {
+        int count = pagedOutTiles.size();
+        for (Long key : loadedTiles.keySet()) {
+            if (!pagedOutTiles.contains(key)) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Writes all modified tiles in memory to the page directory, without removing them from memory.
+     * Does nothing if no page directory is used.
+     */
+    public synchronized void flush() {
+        if (pageDirectory != null) {
+            for (Map.Entry<Long, Tile> entry : loadedTiles.entrySet()) {
+                pageOut(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return true if this raster has been closed, after which it can not be used anymore.
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Releases all tiles, and deletes the paged out tiles and the subdirectory of this raster from the page directory.
+     * The raster can not be used after it has been closed.  Does nothing if already closed.
+     *
+     * @throws IllegalStateException if some paged out tile or the subdirectory could not be deleted.
+     */
+    @Override public synchronized void close() {
+        if (closed) return;
+        closed = true;
+
+        loadedTiles.clear();
+        if (pageDirectory != null) {
+            boolean deleted = true;
+            for (Long key : pagedOutTiles) {
+                deleted &= getTileFile(key).delete();
+            }
+            pagedOutTiles.clear();
+            deleted &= pageDirectory.delete();
+
+            if (!deleted) throw new IllegalStateException("Could not delete all paged out tiles in " + pageDirectory);
+        }
+    }
+
+    @Override public synchronized float sampleValue(double x, double y, double sampleSize) {
+        if (x < 0 || x > sizeX - 1 ||
+            y < 0 || y > sizeY - 1) throw new IllegalArgumentException("The coordinate ("+x+","+y+") is outside the raster (which has a size of "+sizeX+","+sizeY+").");
+
+        final int x0 = fastFloor(x);
+        final int y0 = fastFloor(y);
+        final int x1 = x0 < sizeX - 1 ? x0 + 1 : x0;
+        final int y1 = y0 < sizeY - 1 ? y0 + 1 : y0;
+
+        if ((x0 >> tileShift) == (x1 >> tileShift) &&
+            (y0 >> tileShift) == (y1 >> tileShift)) {
+            // All four cells are in the same tile, so we only need to look it up once
+            final Tile tile = getTile(x0 >> tileShift, y0 >> tileShift, false);
+            if (tile == null) return defaultValue;
+
+            final float[] values = tile.values;
+            final int row0 = (y0 & tileMask) << tileShift;
+            final int row1 = (y1 & tileMask) << tileShift;
+            final int col0 = x0 & tileMask;
+            final int col1 = x1 & tileMask;
+            final float cx = (float) (x - x0);
+            final float cy = (float) (y - y0);
+            final float yr0 = mix(cx, values[row0 + col0], values[row0 + col1]);
+            final float yr1 = mix(cx, values[row1 + col0], values[row1 + col1]);
+            return mix(cy, yr0, yr1);
+        }
+        else {
+            return super.sampleValue(x, y, sampleSize);
+        }
+    }
+
+    @Override public synchronized void readRow(int y, int startX, int count, float[] target, int targetOffset) {
+        checkRowSpan(y, startX, count);
+
+        final int tileY = y >> tileShift;
+        final int rowStart = (y & tileMask) << tileShift;
+        int x = startX;
+        final int endX = startX + count;
+        while (x < endX) {
+            // Copy the part of the span that is inside the current tile
+            final int localX = x & tileMask;
+            final int length = Math.min(tileSize - localX, endX - x);
+            final Tile tile = getTile(x >> tileShift, tileY, false);
+            final int targetIndex = targetOffset + x - startX;
+            if (tile == null) {
+                Arrays.fill(target, targetIndex, targetIndex + length, defaultValue);
+            }
+            else {
+                System.arraycopy(tile.values, rowStart + localX, target, targetIndex, length);
+            }
+
+            x += length;
+        }
+    }
+
+    @Override protected synchronized void writeRowUnchecked(int y, int startX, int count, float[] source, int sourceOffset) {
+        final int tileY = y >> tileShift;
+        final int rowStart = (y & tileMask) << tileShift;
+        int x = startX;
+        final int endX = startX + count;
+        while (x < endX) {
+            // Copy the part of the span that is inside the current tile
+            final int localX = x & tileMask;
+            final int length = Math.min(tileSize - localX, endX - x);
+            final Tile tile = getTile(x >> tileShift, tileY, true);
+            System.arraycopy(source, sourceOffset + x - startX, tile.values, rowStart + localX, length);
+            tile.modified = true;
+
+            x += length;
+        }
+    }
+
+    @Override public synchronized void multiplyAdd(float scale, float offset) {
+        markAllDirty();
+
+        // Only allocated tiles have their own values, the rest of the cells have the default value
+        for (Long key : getAllocatedTileKeys()) {
+            final Tile tile = getTile(key, false);
+            final float[] values = tile.values;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = values[i] * scale + offset;
+            }
+            tile.modified = true;
+        }
+
+        defaultValue = defaultValue * scale + offset;
+    }
+
+    @Override public void copyFrom(Raster source) {
+        combine(source, new CellOperation() {
+            @Override public float apply(float original, float source) {
+                return source;
+            }
+        });
+    }
+
+    @Override public void add(Raster source, final float originalScale, final float sourceScale, final float offset) {
+        combine(source, new CellOperation() {
+            @Override public float apply(float original, float source) {
+                return original * originalScale + source * sourceScale + offset;
+            }
+        });
+    }
+
+    @Override public void multiply(Raster source,
+                                   final float originalScale,
+                                   final float sourceScale,
+                                   final float originalOffset,
+                                   final float sourceOffset,
+                                   final float offset) {
+        combine(source, new CellOperation() {
+            @Override public float apply(float original, float source) {
+                return (original * originalScale + originalOffset) * (source * sourceScale + sourceOffset) + offset;
+            }
+        });
+    }
+
+    @Override protected synchronized float getValueUnchecked(int x, int y) {
+        final Tile tile = getTile(x >> tileShift, y >> tileShift, false);
+        if (tile == null) return defaultValue;
+        else return tile.values[((y & tileMask) << tileShift) + (x & tileMask)];
+    }
+
+    @Override protected synchronized void setValueUnchecked(int x, int y, float value) {
+        final Tile tile = getTile(x >> tileShift, y >> tileShift, true);
+        tile.values[((y & tileMask) << tileShift) + (x & tileMask)] = value;
+        tile.modified = true;
+    }
+
+    /**
+     * Combines the values of the source raster with the values of this raster.
+     * The source is read without holding the lock on this raster, one tile or row at a time.
+     */
+    private void combine(Raster source, CellOperation operation) {
+        checkSizeMatches(source);
+
+        markAllDirty();
+        if (source instanceof TiledRaster && ((TiledRaster) source).tileSize == tileSize) {
+            combineTiles((TiledRaster) source, operation);
+        }
+        else {
+            combineRows(source, operation);
+        }
+    }
+
+    /**
+     * Combines the allocated tiles of both rasters, and the default values for the tiles that neither has allocated.
+     */
+    private void combineTiles(TiledRaster source, CellOperation operation) {
+        final float newDefaultValue;
+        synchronized (this) {
+            newDefaultValue = operation.apply(defaultValue, source.getDefaultValue());
+        }
+
+        final Set<Long> keys = source.getAllocatedTileKeys();
+        keys.addAll(getAllocatedTileKeys());
+
+        final float[] sourceValues = new float[tileSize * tileSize];
+        final List<Long> uniformTiles = new ArrayList<Long>();
+        for (Long key : keys) {
+            source.readTile(key, sourceValues);
+
+            synchronized (this) {
+                final Tile tile = getTile(key, true);
+                final float[] values = tile.values;
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = operation.apply(values[i], sourceValues[i]);
+                }
+                tile.modified = true;
+
+                if (isUniform(values, 0, values.length, newDefaultValue)) uniformTiles.add(key);
+            }
+        }
+
+        synchronized (this) {
+            defaultValue = newDefaultValue;
+
+            // Release tiles that only contain the default value, unless they have been changed meanwhile
+            for (Long key : uniformTiles) {
+                final Tile tile = getTile(key, false);
+                if (tile != null && isUniform(tile.values, 0, tile.values.length, newDefaultValue)) removeTile(key);
+            }
+        }
+    }
+
+    /**
+     * Combines the rows of the source with the rows of this raster, and stores the cells where the result differs from the default value.
+     */
+    private void combineRows(Raster source, CellOperation operation) {
+        final float[] row = new float[sizeX];
+        final float[] sourceRow = new float[sizeX];
+        for (int y = 0; y < sizeY; y++) {
+            source.readRow(y, 0, sizeX, sourceRow, 0);
+
+            synchronized (this) {
+                readRow(y, 0, sizeX, row, 0);
+                for (int x = 0; x < sizeX; x++) {
+                    row[x] = operation.apply(row[x], sourceRow[x]);
+                }
+                writeChangedSpans(y, row);
+            }
+        }
+    }
+
+    /**
+     * Writes a whole row, without allocating tiles for the parts of the row that only contain the default value.
+     * Does not mark the row dirty.  Should be called while holding the lock on this raster.
+     */
+    private void writeChangedSpans(int y, float[] row) {
+        final int tileY = y >> tileShift;
+        final int rowStart = (y & tileMask) << tileShift;
+        for (int x = 0; x < sizeX; x += tileSize) {
+            final int length = Math.min(tileSize, sizeX - x);
+            Tile tile = getTile(x >> tileShift, tileY, false);
+            if (tile == null) {
+                if (isUniform(row, x, length, defaultValue)) continue;
+                tile = getTile(x >> tileShift, tileY, true);
+            }
+
+            System.arraycopy(row, x, tile.values, rowStart, length);
+            tile.modified = true;
+        }
+    }
+
+    /**
+     * @return keys of the tiles that have been allocated, either in memory or paged out.
+     */
+    private synchronized Set<Long> getAllocatedTileKeys() {
+        checkNotClosed();
+
+        final Set<Long> keys = new HashSet<Long>(pagedOutTiles);
+        keys.addAll(loadedTiles.keySet());
+        return keys;
+    }
+
+    /**
+     * Copies the values of the specified tile to the target, or fills the target with the default value if the tile has not been allocated.
+     */
+    private synchronized void readTile(long key, float[] target) {
+        final Tile tile = getTile(key, false);
+        if (tile == null) Arrays.fill(target, defaultValue);
+        else System.arraycopy(tile.values, 0, target, 0, target.length);
+    }
+
+    /**
+     * Should be called while holding the lock on this raster.
+     */
+    private void removeTile(long key) {
+        loadedTiles.remove(key);
+        if (pagedOutTiles.remove(key)) {
+            final File tileFile = getTileFile(key);
+            if (!tileFile.delete()) throw new IllegalStateException("Could not delete the tile " + tileFile);
+        }
+    }
+
+    /**
+     * Should be called while holding the lock on this raster.
+     *
+     * @param create if true, a tile is allocated if it does not yet exist.
+     * @return the tile at the specified tile coordinates, or null if it has not been allocated and create is false.
+     */
+    private Tile getTile(int tileX, int tileY, boolean create) {
+        return getTile(((long) tileY << 32) | (tileX & 0xFFFFFFFFL), create);
+    }
+
+    private Tile getTile(long key, boolean create) {
+        checkNotClosed();
+
+        Tile tile = loadedTiles.get(key);
+        if (tile == null) {
+            if (pagedOutTiles.contains(key)) {
+                tile = pageIn(key);
+                loadedTiles.put(key, tile);
+            }
+            else if (create) {
+                final float[] values = new float[tileSize * tileSize];
+                if (defaultValue != 0) Arrays.fill(values, defaultValue);
+                tile = new Tile(values);
+                loadedTiles.put(key, tile);
+            }
+        }
+
+        return tile;
+    }
+
+    private void checkNotClosed() {
+        if (closed) throw new IllegalStateException("The tiled raster has been closed");
+    }
+
+    private void pageOut(long key, Tile tile) {
+        if (tile.modified || !pagedOutTiles.contains(key)) {
+            try {
+                serializer.serialize(tile.values, getTileFile(key), true);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not page out the tile " + getTileFile(key) + ": " + e.getMessage(), e);
+            }
+
+            tile.modified = false;
+            pagedOutTiles.add(key);
+        }
+    }
+
+    private Tile pageIn(long key) {
+        try {
+            return new Tile(serializer.deserialize(float[].class, getTileFile(key)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not page in the tile " + getTileFile(key) + ": " + e.getMessage(), e);
+        }
+    }
+
+    private File getTileFile(long key) {
+        return new File(pageDirectory, "tile_" + (int) key + "_" + (int) (key >> 32) + ".bin");
+    }
+
+    private static boolean isUniform(float[] values, int start, int count, float value) {
+        final int valueBits = Float.floatToIntBits(value);
+        for (int i = start; i < start + count; i++) {
+            if (Float.floatToIntBits(values[i]) != valueBits) return false;
+        }
+        return true;
+    }
+
+    private static Serializer createTileSerializer(int tileSize) {
+        final int tileBytes = tileSize * tileSize * BYTES_PER_CELL;
+        return new KryoSerializer(tileBytes + 1024, tileBytes * 2 + 1024, true, float[].class);
+    }
+
+    /**
+     * Calculates the value of a cell from the values of this raster and the source raster.
+     */
+    private interface CellOperation {
+        float apply(float original, float source);
+    }
+
+    private static final class Tile {
+        private final float[] values;
+        private boolean modified;
+
+        private Tile(float[] values) {
+            this.values = values;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package org.flowutils.raster.raster.volume;
+
+import org.flowutils.Check;
+
+import java.util.Arrays;
+
+import static org.flowutils.MathUtils.fastFloor;
+import static org.flowutils.MathUtils.mix;
+
+/**
+ * A Raster3D that stores its values in cubic chunks, where chunks with the same value in every cell only store that value.
+ * A chunk is allocated when a cell in it is set to a value different from the other cells, and can be collapsed back
+ * to a uniform chunk with compact().
+ *
+ * Different chunks can be written from different threads at the same time, but writes to the same chunk must not overlap.
+ */
+public final class ChunkedRaster3D implements Raster3D {
+
+    /**
+     * Default number of cells along each side of a chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 16;
+
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+    private final int chunkSize;
+    private final int chunkShift;
+    private final int chunkMask;
+    private final int chunkCellCount;
+    private final int chunkCountX;
+    private final int chunkCountY;
+    private final int chunkCountZ;
+
+    /**
+     * Values of allocated chunks, or null for uniform chunks.
+     */
+    private final float[][] chunkData;
+
+    /**
+     * Values of uniform chunks.
+     */
+    private final float[] uniformValues;
+
+    /**
+     * Creates a raster with the default chunk size, filled with zeroes.
+     *
+     * @param sizeX number of cells along the x axis (must be positive).
+     * @param sizeY number of cells along the y axis (must be positive).
+     * @param sizeZ number of cells along the z axis (must be positive).
+     */
+    public ChunkedRaster3D(int sizeX, int sizeY, int sizeZ) {
+        this(sizeX, sizeY, sizeZ, DEFAULT_CHUNK_SIZE, 0);
+    }
+
+    /**
+     * @param sizeX number of cells along the x axis (must be positive).
+     * @param sizeY number of cells along the y axis (must be positive).
+     * @param sizeZ number of cells along the z axis (must be positive).
+     * @param chunkSize number of cells along each side of a chunk.  Must be a power of two.
+     * @param initialValue value of all cells initially.
+     */
+    public ChunkedRaster3D(int sizeX, int sizeY, int sizeZ, int chunkSize, float initialValue) {
+        Check.positive(sizeX, "sizeX");
+        Check.positive(sizeY, "sizeY");
+        Check.positive(sizeZ, "sizeZ");
+        Check.positive(chunkSize, "chunkSize");
+        if (Integer.bitCount(chunkSize) != 1) throw new IllegalArgumentException("The chunk size should be a power of two, but it was " + chunkSize);
+
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.chunkSize = chunkSize;
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        this.chunkMask = chunkSize - 1;
+        this.chunkCellCount = chunkSize * chunkSize * chunkSize;
+        this.chunkCountX = (sizeX + chunkMask) >> chunkShift;
+        this.chunkCountY = (sizeY + chunkMask) >> chunkShift;
+        this.chunkCountZ = (sizeZ + chunkMask) >> chunkShift;
+
+        final int chunkCount = chunkCountX * chunkCountY * chunkCountZ;
+        chunkData = new float[chunkCount][];
+        uniformValues = new float[chunkCount];
+        Arrays.fill(uniformValues, initialValue);
+    }
+
+    @Override public int getSizeX() {
+        return sizeX;
+    }
+
+    @Override public int getSizeY() {
+        return sizeY;
+    }
+
+    @Override public int getSizeZ() {
+        return sizeZ;
+    }
+
+    @Override public int getChunkSize() {
+        return chunkSize;
+    }
+
+    @Override public int getChunkCountX() {
+        return chunkCountX;
+    }
+
+    @Override public int getChunkCountY() {
+        return chunkCountY;
+    }
+
+    @Override public int getChunkCountZ() {
+        return chunkCountZ;
+    }
+
+    /**
+     * @return number of chunks that store each of their cells separately.
+     */
+    public int getAllocatedChunkCount() {
+        int count = 0;
+        for (float[] data : chunkData) {
+            if (data != null) count++;
+        }
+        return count;
+    }
+
+    @Override public float getValue(int x, int y, int z) {
+        checkCoordinate(x, y, z);
+        return getValueUnchecked(x, y, z);
+    }
+
+    @Override public void setValue(int x, int y, int z, float value) {
+        checkCoordinate(x, y, z);
+
+        final int chunk = chunkIndex(x >> chunkShift, y >> chunkShift, z >> chunkShift);
+        float[] data = chunkData[chunk];
+        if (data == null) {
+            // Setting a uniform chunk to its own value does not need to allocate it
+            if (Float.floatToIntBits(uniformValues[chunk]) == Float.floatToIntBits(value)) return;
+
+            data = new float[chunkCellCount];
+            Arrays.fill(data, uniformValues[chunk]);
+            chunkData[chunk] = data;
+        }
+
+        data[cellIndex(x & chunkMask, y & chunkMask, z & chunkMask)] = value;
+    }
+
+    @Override public float sampleValue(double x, double y, double z) {
+        if (x < 0 || x > sizeX - 1 ||
+            y < 0 || y > sizeY - 1 ||
+            z < 0 || z > sizeZ - 1) throw new IllegalArgumentException("The coordinate ("+x+","+y+","+z+") is outside the raster (which has a size of "+sizeX+","+sizeY+","+sizeZ+").");
+
+        final int x0 = fastFloor(x);
+        final int y0 = fastFloor(y);
+        final int z0 = fastFloor(z);
+        final int x1 = x0 < sizeX - 1 ? x0 + 1 : x0;
+        final int y1 = y0 < sizeY - 1 ? y0 + 1 : y0;
+        final int z1 = z0 < sizeZ - 1 ? z0 + 1 : z0;
+        final float cx = (float) (x - x0);
+        final float cy = (float) (y - y0);
+        final float cz = (float) (z - z0);
+
+        final float z0y0 = mix(cx, getValueUnchecked(x0, y0, z0), getValueUnchecked(x1, y0, z0));
+        final float z0y1 = mix(cx, getValueUnchecked(x0, y1, z0), getValueUnchecked(x1, y1, z0));
+        final float z1y0 = mix(cx, getValueUnchecked(x0, y0, z1), getValueUnchecked(x1, y0, z1));
+        final float z1y1 = mix(cx, getValueUnchecked(x0, y1, z1), getValueUnchecked(x1, y1, z1));
+        return mix(cz, mix(cy, z0y0, z0y1), mix(cy, z1y0, z1y1));
+    }
+
+    @Override public void fill(float value) {
+        Arrays.fill(chunkData, null);
+        Arrays.fill(uniformValues, value);
+    }
+
+    @Override public boolean isChunkUniform(int chunkX, int chunkY, int chunkZ) {
+        return chunkData[checkedChunkIndex(chunkX, chunkY, chunkZ)] == null;
+    }
+
+    @Override public void readChunk(int chunkX, int chunkY, int chunkZ, float[] target) {
+        final int chunk = checkedChunkIndex(chunkX, chunkY, chunkZ);
+        checkChunkArray(target, "target");
+
+        final float[] data = chunkData[chunk];
+        if (data == null) Arrays.fill(target, 0, chunkCellCount, uniformValues[chunk]);
+        else System.arraycopy(data, 0, target, 0, chunkCellCount);
+    }
+
+    @Override public void writeChunk(int chunkX, int chunkY, int chunkZ, float[] source) {
+        final int chunk = checkedChunkIndex(chunkX, chunkY, chunkZ);
+        checkChunkArray(source, "source");
+
+        if (isUniform(chunkX, chunkY, chunkZ, source)) {
+            chunkData[chunk] = null;
+            uniformValues[chunk] = source[0];
+        }
+        else {
+            float[] data = chunkData[chunk];
+            if (data == null) {
+                data = new float[chunkCellCount];
+                chunkData[chunk] = data;
+            }
+            System.arraycopy(source, 0, data, 0, chunkCellCount);
+        }
+    }
+
+    /**
+     * Releases the storage of allocated chunks where all cells inside the raster have the same value.
+     */
+    public void compact() {
+        for (int chunkZ = 0; chunkZ < chunkCountZ; chunkZ++) {
+            for (int chunkY = 0; chunkY < chunkCountY; chunkY++) {
+                for (int chunkX = 0; chunkX < chunkCountX; chunkX++) {
+                    final int chunk = chunkIndex(chunkX, chunkY, chunkZ);
+                    final float[] data = chunkData[chunk];
+                    if (data != null && isUniform(chunkX, chunkY, chunkZ, data)) {
+                        chunkData[chunk] = null;
+                        uniformValues[chunk] = data[0];
+                    }
+                }
+            }
+        }
+    }
+
+    private float getValueUnchecked(int x, int y, int z) {
+        final int chunk = chunkIndex(x >> chunkShift, y >> chunkShift, z >> chunkShift);
+        final float[] data = chunkData[chunk];
+        if (data == null) return uniformValues[chunk];
+        else return data[cellIndex(x & chunkMask, y & chunkMask, z & chunkMask)];
+    }
+
+    /**
+     * @return true if all the values of the chunk that are inside the raster are the same.
+     */
+    private boolean isUniform(int chunkX, int chunkY, int chunkZ, float[] values) {
+        final int countX = Math.min(chunkSize, sizeX - (chunkX << chunkShift));
+        final int countY = Math.min(chunkSize, sizeY - (chunkY << chunkShift));
+        final int countZ = Math.min(chunkSize, sizeZ - (chunkZ << chunkShift));
+
+        // The first cell of a chunk is always inside the raster
+        final int first = Float.floatToIntBits(values[0]);
+        for (int z = 0; z < countZ; z++) {
+            for (int y = 0; y < countY; y++) {
+                final int rowStart = cellIndex(0, y, z);
+                for (int x = 0; x < countX; x++) {
+                    if (Float.floatToIntBits(values[rowStart + x]) != first) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private int chunkIndex(int chunkX, int chunkY, int chunkZ) {
+        return (chunkZ * chunkCountY + chunkY) * chunkCountX + chunkX;
+    }
+
+    private int checkedChunkIndex(int chunkX, int chunkY, int chunkZ) {
+        Check.inRange(chunkX, "chunkX", 0, chunkCountX);
+        Check.inRange(chunkY, "chunkY", 0, chunkCountY);
+        Check.inRange(chunkZ, "chunkZ", 0, chunkCountZ);
+        return chunkIndex(chunkX, chunkY, chunkZ);
+    }
+
+    private int cellIndex(int localX, int localY, int localZ) {
+        return (((localZ << chunkShift) + localY) << chunkShift) + localX;
+    }
+
+    private void checkChunkArray(float[] array, String name) {
+        Check.notNull(array, name);
+        Check.greaterOrEqual(array.length, name + " length", chunkCellCount, "number of cells in a chunk");
+    }
+
+    private void checkCoordinate(int x, int y, int z) {
+        if (x < 0 || x >= sizeX ||
+            y < 0 || y >= sizeY ||
+            z < 0 || z >= sizeZ) throw new IllegalArgumentException("The coordinate ("+x+","+y+","+z+") is outside the raster (which has a size of "+sizeX+","+sizeY+","+sizeZ+").");
+    }
+}
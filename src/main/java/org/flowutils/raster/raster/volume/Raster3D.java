@@ -0,0 +1,86 @@
+package org.flowutils.raster.raster.volume;
+
+/**
+ * A three dimensional grid of float values, stored in cubic chunks.
+ *
+ * Chunks where all cells have the same value do not need to store each cell separately,
+ * so large volumes that are mostly empty or uniform take little memory.
+ */
+public interface Raster3D {
+
+    /**
+     * @return number of cells along the x axis.
+     */
+    int getSizeX();
+
+    /**
+     * @return number of cells along the y axis.
+     */
+    int getSizeY();
+
+    /**
+     * @return number of cells along the z axis.
+     */
+    int getSizeZ();
+
+    /**
+     * @return the value in the specified grid cell.  Throws exception if the coordinate is outside the raster.
+     */
+    float getValue(int x, int y, int z);
+
+    /**
+     * Sets the specified value to the specified grid cell.  Throws exception if the coordinate is outside the raster.
+     */
+    void setValue(int x, int y, int z, float value);
+
+    /**
+     * @return the trilinearly interpolated value at the specified coordinate.  Throws exception if the coordinate is outside the raster.
+     */
+    float sampleValue(double x, double y, double z);
+
+    /**
+     * Sets all cells of the raster to the specified value.
+     */
+    void fill(float value);
+
+    /**
+     * @return number of cells along each side of a chunk.
+     */
+    int getChunkSize();
+
+    /**
+     * @return number of chunks along the x axis.  The last chunk may extend past the edge of the raster.
+     */
+    int getChunkCountX();
+
+    /**
+     * @return number of chunks along the y axis.  The last chunk may extend past the edge of the raster.
+     */
+    int getChunkCountY();
+
+    /**
+     * @return number of chunks along the z axis.  The last chunk may extend past the edge of the raster.
+     */
+    int getChunkCountZ();
+
+    /**
+     * @return true if all cells of the specified chunk have the same value, and the chunk does not store each cell separately.
+     */
+    boolean isChunkUniform(int chunkX, int chunkY, int chunkZ);
+
+    /**
+     * Copies the values of a chunk to an array.
+     *
+     * @param target array with room for chunkSize³ values.  The values are stored x first, then y, then z.
+     *               Values of cells outside the raster are undefined.
+     */
+    void readChunk(int chunkX, int chunkY, int chunkZ, float[] target);
+
+    /**
+     * Replaces the values of a chunk.  If all values inside the raster are the same, the chunk is stored as a uniform chunk.
+     *
+     * @param source array with chunkSize³ values, stored x first, then y, then z.
+     *               Values of cells outside the raster are ignored.
+     */
+    void writeChunk(int chunkX, int chunkY, int chunkZ, float[] source);
+}
@@ -0,0 +1,176 @@
+package org.flowutils.raster.resample;
+
+import org.flowutils.Check;
+import org.flowutils.Symbol;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.parallel.RowBandTask;
+import org.flowutils.raster.raster.multi.MultiRaster;
+import org.flowutils.raster.raster.single.Raster;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Resamples rasters to rasters of a different size, e.g. for creating thumbnails or lower resolution copies.
+ *
+ * The resampling is separated into a horizontal pass, that resamples each source row to the target width,
+ * and a vertical pass, that combines the horizontally resampled rows into the target rows.
+ * The source indexes and weights of both passes are calculated once per axis, instead of for each cell.
+ * Bands of rows are processed in parallel by the RowBandExecutor.
+ *
+ * Array backed sources are read directly from their data arrays, with their offset and step, so interleaved channels are read in place.
+ * Other sources are read a row at a time with readRow, and targets are written with writeRow.
+ * The border values of the source are extended past its edges.
+ *
+ * Immutable and thread safe.
+ */
+public final class RasterResampler {
+
+    private final ResampleMethod method;
+    private final RowBandExecutor executor;
+
+    /**
+     * Creates a resampler that runs on the calling thread.
+     *
+     * @param method method used to calculate the target values.
+     */
+    public RasterResampler(ResampleMethod method) {
+        this(method, RowBandExecutor.SERIAL);
+    }
+
+    /**
+     * @param method method used to calculate the target values.
+     * @param executor executor used to process bands of rows, possibly in parallel.
+     */
+    public RasterResampler(ResampleMethod method, RowBandExecutor executor) {
+        Check.notNull(method, "method");
+        Check.notNull(executor, "executor");
+
+        this.method = method;
+        this.executor = executor;
+    }
+
+    public ResampleMethod getMethod() {
+        return method;
+    }
+
+    public RowBandExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Resamples the source raster to the size of the target raster, and writes the result to the target.
+     *
+     * @param source raster to read values from.
+     * @param target raster to write the result to.  May have any size, but should be a different raster than the source.
+     */
+    public void resample(final Raster source, final Raster target) {
+        Check.notNull(source, "source");
+        Check.notNull(target, "target");
+        if (source == target) throw new IllegalArgumentException("The source and target rasters should be different rasters");
+
+        final int sourceSizeX = source.getSizeX();
+        final int sourceSizeY = source.getSizeY();
+        final int targetSizeX = target.getSizeX();
+        final int targetSizeY = target.getSizeY();
+        if (targetSizeX == 0 || targetSizeY == 0) return;
+        if (sourceSizeX == 0 || sourceSizeY == 0) throw new IllegalArgumentException("Can not resample an empty source raster to a non-empty target raster");
+
+        final ResampleWeights weightsX = ResampleWeights.create(method, sourceSizeX, targetSizeX);
+        final ResampleWeights weightsY = ResampleWeights.create(method, sourceSizeY, targetSizeY);
+
+        // Only the source rows used by some target row need to be resampled horizontally
+        final boolean[] rowUsed = new boolean[sourceSizeY];
+        for (int i = 0; i < weightsY.indexes.length; i++) {
+            if (weightsY.weights[i] != 0) rowUsed[weightsY.indexes[i]] = true;
+        }
+
+        // Horizontal pass, resampling each used source row to the target width
+        final float[] intermediate = new float[targetSizeX * sourceSizeY];
+        executor.execute(Math.max(sourceSizeX, targetSizeX), sourceSizeY, new RowBandTask() {
+            @Override public void processRows(int startY, int endY) {
+                final boolean arrayBacked = source.isArrayBacked();
+                final float[] data;
+                final int step;
+                if (arrayBacked) {
+                    data = source.getData();
+                    step = source.getDataXStep();
+                }
+                else {
+                    data = new float[sourceSizeX];
+                    step = 1;
+                }
+
+                final int taps = weightsX.taps;
+                final int[] indexes = weightsX.indexes;
+                final float[] weights = weightsX.weights;
+
+                for (int y = startY; y < endY; y++) {
+                    if (!rowUsed[y]) continue;
+
+                    final int rowStart;
+                    if (arrayBacked) {
+                        rowStart = source.getDataOffset() + y * source.getDataRowStep();
+                    }
+                    else {
+                        source.readRow(y, 0, sourceSizeX, data, 0);
+                        rowStart = 0;
+                    }
+
+                    int weightIndex = 0;
+                    int targetIndex = y * targetSizeX;
+                    for (int x = 0; x < targetSizeX; x++) {
+                        float value = 0;
+                        for (int i = 0; i < taps; i++) {
+                            value += weights[weightIndex] * data[rowStart + indexes[weightIndex] * step];
+                            weightIndex++;
+                        }
+                        intermediate[targetIndex++] = value;
+                    }
+                }
+            }
+        });
+
+        // Vertical pass, combining the horizontally resampled rows
+        executor.execute(targetSizeX, targetSizeY, new RowBandTask() {
+            @Override public void processRows(int startY, int endY) {
+                final float[] row = new float[targetSizeX];
+                final int taps = weightsY.taps;
+
+                for (int y = startY; y < endY; y++) {
+                    Arrays.fill(row, 0f);
+
+                    for (int i = 0; i < taps; i++) {
+                        final float weight = weightsY.weights[y * taps + i];
+                        if (weight != 0) {
+                            final int rowStart = weightsY.indexes[y * taps + i] * targetSizeX;
+                            for (int x = 0; x < targetSizeX; x++) {
+                                row[x] += weight * intermediate[rowStart + x];
+                            }
+                        }
+                    }
+
+                    target.writeRow(y, 0, targetSizeX, row, 0);
+                }
+            }
+        });
+    }
+
+    /**
+     * Resamples each channel of the target raster from the channel with the same id in the source raster.
+     * Target channels that are not present in the source are left unchanged.
+     *
+     * @param source raster to read values from.
+     * @param target raster to write the result to.  May have any size, but should be a different raster than the source.
+     */
+    public void resample(MultiRaster source, MultiRaster target) {
+        Check.notNull(source, "source");
+        Check.notNull(target, "target");
+
+        for (Map.Entry<Symbol, Raster> entry : target.getChannels().entrySet()) {
+            if (source.hasChannel(entry.getKey())) {
+                resample(source.getChannel(entry.getKey()), entry.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.flowutils.raster.resample;
+
+/**
+ * How the values of a raster are calculated from a raster of a different size.
+ */
+public enum ResampleMethod {
+
+    /**
+     * Each target cell is the average of the source area it covers, with partially covered source cells weighted by the covered fraction.
+     * Exact and free of aliasing when downscaling.  When upscaling it gives blocky results.
+     */
+    AREA_AVERAGE,
+
+    /**
+     * Linear interpolation between the two closest source cells in each direction.
+     * Suitable for upscaling, aliases when downscaling by more than a factor of two.
+     */
+    BILINEAR,
+
+    /**
+     * Catmull-Rom cubic interpolation between the four closest source cells in each direction.
+     * Sharper than bilinear when upscaling, may overshoot slightly at sharp edges.  Aliases when downscaling.
+     */
+    BICUBIC
+
+}
@@ -0,0 +1,108 @@
+package org.flowutils.raster.resample;
+
+import static org.flowutils.MathUtils.fastFloor;
+
+/**
+ * Precalculated source indexes and weights for resampling along one axis.
+ * Target cell t is the sum of weights[t * taps + i] * source[indexes[t * taps + i]] for i in 0 until taps.
+ * Source indexes outside the source are clamped to the border.
+ */
+final class ResampleWeights {
+
+    final int taps;
+    final int[] indexes;
+    final float[] weights;
+
+    private ResampleWeights(int taps, int targetSize) {
+        this.taps = taps;
+        indexes = new int[taps * targetSize];
+        weights = new float[taps * targetSize];
+    }
+
+    /**
+     * Calculates the weights for resampling sourceSize cells to targetSize cells with the specified method.
+     */
+    static ResampleWeights create(ResampleMethod method, int sourceSize, int targetSize) {
+        switch (method) {
+            case AREA_AVERAGE: return createAreaAverage(sourceSize, targetSize);
+            case BILINEAR: return createBilinear(sourceSize, targetSize);
+            case BICUBIC: return createBicubic(sourceSize, targetSize);
+            default: throw new IllegalArgumentException("Unknown resample method " + method);
+        }
+    }
+
+    private static ResampleWeights createAreaAverage(int sourceSize, int targetSize) {
+        final double scale = (double) sourceSize / targetSize;
+        final ResampleWeights result = new ResampleWeights((int) Math.ceil(scale) + 1, targetSize);
+
+        for (int t = 0; t < targetSize; t++) {
+            final double start = t * scale;
+            final double end = (t + 1) * scale;
+            final int first = fastFloor(start);
+            final int base = t * result.taps;
+
+            for (int i = 0; i < result.taps; i++) {
+                final int s = first + i;
+                final double overlap = Math.min(end, s + 1) - Math.max(start, s);
+                result.indexes[base + i] = clamp(s, sourceSize);
+                result.weights[base + i] = overlap > 0 ? (float) (overlap / scale) : 0f;
+            }
+        }
+
+        return result;
+    }
+
+    private static ResampleWeights createBilinear(int sourceSize, int targetSize) {
+        final double scale = (double) sourceSize / targetSize;
+        final ResampleWeights result = new ResampleWeights(2, targetSize);
+
+        for (int t = 0; t < targetSize; t++) {
+            final double s = (t + 0.5) * scale - 0.5;
+            final int s0 = fastFloor(s);
+            final float f = (float) (s - s0);
+            final int base = t * 2;
+
+            result.indexes[base] = clamp(s0, sourceSize);
+            result.indexes[base + 1] = clamp(s0 + 1, sourceSize);
+            result.weights[base] = 1f - f;
+            result.weights[base + 1] = f;
+        }
+
+        return result;
+    }
+
+    private static ResampleWeights createBicubic(int sourceSize, int targetSize) {
+        final double scale = (double) sourceSize / targetSize;
+        final ResampleWeights result = new ResampleWeights(4, targetSize);
+
+        for (int t = 0; t < targetSize; t++) {
+            final double s = (t + 0.5) * scale - 0.5;
+            final int s0 = fastFloor(s);
+            final double f = s - s0;
+            final int base = t * 4;
+
+            for (int i = 0; i < 4; i++) {
+                result.indexes[base + i] = clamp(s0 - 1 + i, sourceSize);
+                result.weights[base + i] = (float) catmullRom(f - (i - 1));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return weight of a source cell at the specified distance from the sampled position, for Catmull-Rom interpolation.
+     */
+    private static double catmullRom(double distance) {
+        final double d = Math.abs(distance);
+        if (d < 1) return 1.5 * d * d * d - 2.5 * d * d + 1;
+        else if (d < 2) return -0.5 * d * d * d + 2.5 * d * d - 4 * d + 2;
+        else return 0;
+    }
+
+    private static int clamp(int index, int size) {
+        if (index < 0) return 0;
+        if (index >= size) return size - 1;
+        return index;
+    }
+}
@@ -0,0 +1,91 @@
+package org.flowutils.raster.statistics;
+
+/**
+ * Counts of values in equally sized bins over a fixed range, along with counts of the values below and above the range.
+ *
+ * Immutable.
+ */
+public final class Histogram {
+
+    private final float min;
+    private final float max;
+    private final long[] counts;
+    private final long underflowCount;
+    private final long overflowCount;
+
+    /**
+     * @param min lower edge of the first bin.
+     * @param max upper edge of the last bin.
+     * @param counts number of values in each bin.  Copied.
+     * @param underflowCount number of values below min.
+     * @param overflowCount number of values above max.
+     */
+    public Histogram(float min, float max, long[] counts, long underflowCount, long overflowCount) {
+        this.min = min;
+        this.max = max;
+        this.counts = counts.clone();
+        this.underflowCount = underflowCount;
+        this.overflowCount = overflowCount;
+    }
+
+    /**
+     * @return lower edge of the first bin.
+     */
+    public float getMin() {
+        return min;
+    }
+
+    /**
+     * @return upper edge of the last bin.
+     */
+    public float getMax() {
+        return max;
+    }
+
+    /**
+     * @return number of bins.
+     */
+    public int getBinCount() {
+        return counts.length;
+    }
+
+    /**
+     * @return number of values in the specified bin.
+     */
+    public long getCount(int bin) {
+        return counts[bin];
+    }
+
+    /**
+     * @return lower edge of the specified bin.
+     */
+    public float getBinStart(int bin) {
+        return min + (max - min) * bin / counts.length;
+    }
+
+    /**
+     * @return number of values below the lower edge of the first bin.
+     */
+    public long getUnderflowCount() {
+        return underflowCount;
+    }
+
+    /**
+     * @return number of values above the upper edge of the last bin.
+     */
+    public long getOverflowCount() {
+        return overflowCount;
+    }
+
+    /**
+     * @return total number of values, including the ones below and above the bins.
+     */
+    public long getTotalCount() {
+        long total = underflowCount + overflowCount;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+}
@@ -0,0 +1,172 @@
+package org.flowutils.raster.statistics;
+
+/**
+ * Statistics about the values of a raster: count, minimum, maximum, sum, mean, variance,
+ * and optionally a histogram that can be used to estimate quantiles.
+ * NaN values are not included in the statistics, but they are counted separately.
+ *
+ * Immutable.
+ */
+public final class RasterStatistics {
+
+    private final long count;
+    private final long nanCount;
+    private final float min;
+    private final float max;
+    private final double sum;
+    private final double mean;
+    private final double variance;
+    private final Histogram histogram;
+
+    /**
+     * @param count number of values, not counting NaN values.
+     * @param nanCount number of NaN values.
+     * @param min smallest value, or NaN if there were no values.
+     * @param max largest value, or NaN if there were no values.
+     * @param sum sum of the values.
+     * @param mean average of the values, or NaN if there were no values.
+     * @param variance population variance of the values, or NaN if there were no values.
+     * @param histogram histogram of the values, or null if none was calculated.
+     */
+    public RasterStatistics(long count, long nanCount, float min, float max, double sum, double mean, double variance, Histogram histogram) {
+        this.count = count;
+        this.nanCount = nanCount;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+        this.mean = mean;
+        this.variance = variance;
+        this.histogram = histogram;
+    }
+
+    /**
+     * @return number of values, not counting NaN values.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return number of NaN values.
+     */
+    public long getNaNCount() {
+        return nanCount;
+    }
+
+    /**
+     * @return smallest value, or NaN if there were no values.
+     */
+    public float getMin() {
+        return min;
+    }
+
+    /**
+     * @return largest value, or NaN if there were no values.
+     */
+    public float getMax() {
+        return max;
+    }
+
+    /**
+     * @return sum of the values.
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * @return average of the values, or NaN if there were no values.
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return population variance of the values, or NaN if there were no values.
+     */
+    public double getVariance() {
+        return variance;
+    }
+
+    /**
+     * @return population standard deviation of the values, or NaN if there were no values.
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(variance);
+    }
+
+    /**
+     * @return histogram of the values, or null if none was calculated.
+     */
+    public Histogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Estimates a quantile from the histogram, by interpolating linearly within the bin that contains it.
+     * Values below or above the histogram range are assumed to be evenly spread between the range and the minimum or maximum value.
+     *
+     * @param quantile quantile to estimate, in the range 0..1, e.g. 0.5 for the median.
+     * @return estimated value of the quantile, or NaN if there were no values.
+     * @throws IllegalStateException if no histogram was calculated.
+     */
+    public float getQuantile(double quantile) {
+        if (quantile < 0 || quantile > 1) throw new IllegalArgumentException("The quantile should be in the range 0..1, but it was " + quantile);
+        if (histogram == null) throw new IllegalStateException("No histogram was calculated, so quantiles can not be estimated");
+
+        if (count == 0) return Float.NaN;
+        if (quantile <= 0) return min;
+        if (quantile >= 1) return max;
+
+        final double targetCount = quantile * count;
+        double countBefore = 0;
+
+        // Values below the histogram
+        final long underflow = histogram.getUnderflowCount();
+        if (underflow > 0 && countBefore + underflow >= targetCount) {
+            return clamp(interpolate(min, histogram.getMin(), (targetCount - countBefore) / underflow));
+        }
+        countBefore += underflow;
+
+        // Values in the bins
+        final int binCount = histogram.getBinCount();
+        for (int bin = 0; bin < binCount; bin++) {
+            final long binValues = histogram.getCount(bin);
+            if (binValues > 0 && countBefore + binValues >= targetCount) {
+                final float binStart = histogram.getBinStart(bin);
+                final float binEnd = bin + 1 < binCount ? histogram.getBinStart(bin + 1) : histogram.getMax();
+                return clamp(interpolate(binStart, binEnd, (targetCount - countBefore) / binValues));
+            }
+            countBefore += binValues;
+        }
+
+        // Values above the histogram
+        final long overflow = histogram.getOverflowCount();
+        if (overflow > 0) {
+            return clamp(interpolate(histogram.getMax(), max, (targetCount - countBefore) / overflow));
+        }
+
+        return max;
+    }
+
+    private float clamp(double value) {
+        if (value < min) return min;
+        if (value > max) return max;
+        return (float) value;
+    }
+
+    private static double interpolate(double start, double end, double t) {
+        return start + (end - start) * t;
+    }
+
+    @Override public String toString() {
+        return "RasterStatistics{" +
+               "count=" + count +
+               ", nanCount=" + nanCount +
+               ", min=" + min +
+               ", max=" + max +
+               ", mean=" + mean +
+               ", variance=" + variance +
+               '}';
+    }
+}
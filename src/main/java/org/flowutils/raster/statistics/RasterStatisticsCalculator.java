@@ -0,0 +1,203 @@
+package org.flowutils.raster.statistics;
+
+import org.flowutils.Check;
+import org.flowutils.Symbol;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.parallel.RowBandReduction;
+import org.flowutils.raster.raster.multi.MultiRaster;
+import org.flowutils.raster.raster.single.Raster;
+import org.flowutils.rectangle.intrectangle.IntRectangle;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calculates statistics of rasters (minimum, maximum, sum, mean, variance, and optionally a histogram for estimating quantiles)
+ * in a single pass over the values.
+ *
+ * Bands of rows are processed in parallel by the RowBandExecutor, and their partial results are merged.
+ * Array backed rasters are read directly from their data arrays, other rasters a row at a time with readRow.
+ *
+ * Immutable and thread safe.
+ */
+public final class RasterStatisticsCalculator {
+
+    private final RowBandExecutor executor;
+    private final int histogramBinCount;
+    private final float histogramMin;
+    private final float histogramMax;
+
+    /**
+     * Creates a calculator that does not calculate histograms, and runs on the calling thread.
+     */
+    public RasterStatisticsCalculator() {
+        this(RowBandExecutor.SERIAL);
+    }
+
+    /**
+     * Creates a calculator that does not calculate histograms.
+     *
+     * @param executor executor used to process bands of rows, possibly in parallel.
+     */
+    public RasterStatisticsCalculator(RowBandExecutor executor) {
+        this(executor, 0, 0, 1);
+    }
+
+    /**
+     * @param executor executor used to process bands of rows, possibly in parallel.
+     * @param histogramBinCount number of histogram bins, or 0 to not calculate a histogram.
+     * @param histogramMin lower edge of the first histogram bin.
+     * @param histogramMax upper edge of the last histogram bin.  Must be larger than histogramMin.
+     */
+    public RasterStatisticsCalculator(RowBandExecutor executor, int histogramBinCount, float histogramMin, float histogramMax) {
+        Check.notNull(executor, "executor");
+        Check.positiveOrZero(histogramBinCount, "histogramBinCount");
+        if (!(histogramMax > histogramMin)) throw new IllegalArgumentException("The histogram max (" + histogramMax + ") should be larger than the histogram min (" + histogramMin + ")");
+
+        this.executor = executor;
+        this.histogramBinCount = histogramBinCount;
+        this.histogramMin = histogramMin;
+        this.histogramMax = histogramMax;
+    }
+
+    public RowBandExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return number of histogram bins, or 0 if no histogram is calculated.
+     */
+    public int getHistogramBinCount() {
+        return histogramBinCount;
+    }
+
+    public float getHistogramMin() {
+        return histogramMin;
+    }
+
+    public float getHistogramMax() {
+        return histogramMax;
+    }
+
+    /**
+     * @return statistics for all the values of the raster.
+     */
+    public RasterStatistics calculate(Raster raster) {
+        Check.notNull(raster, "raster");
+        return calculate(raster, raster.getExtent());
+    }
+
+    /**
+     * @param raster raster to calculate statistics for.
+     * @param area area of the raster to include.  Must be inside the raster.
+     * @return statistics for the values of the raster inside the area.
+     */
+    public RasterStatistics calculate(Raster raster, IntRectangle area) {
+        Check.notNull(raster, "raster");
+        final List<Raster> rasters = new ArrayList<Raster>(1);
+        rasters.add(raster);
+        return calculate(rasters, raster.getSizeX(), raster.getSizeY(), area).get(0);
+    }
+
+    /**
+     * @return statistics for all the values of each channel of the raster.
+     */
+    public Map<Symbol, RasterStatistics> calculate(MultiRaster raster) {
+        Check.notNull(raster, "raster");
+        return calculate(raster, raster.getExtent());
+    }
+
+    /**
+     * Calculates statistics for all channels in the same pass, so that the values of interleaved channels are only read once.
+     *
+     * @param raster raster to calculate statistics for.
+     * @param area area of the raster to include.  Must be inside the raster.
+     * @return statistics for the values of each channel inside the area, in the order of the channels.
+     */
+    public Map<Symbol, RasterStatistics> calculate(MultiRaster raster, IntRectangle area) {
+        Check.notNull(raster, "raster");
+
+        final List<Symbol> channelIds = new ArrayList<Symbol>(raster.getChannelIds());
+        final List<Raster> rasters = new ArrayList<Raster>(channelIds.size());
+        for (Symbol channelId : channelIds) {
+            rasters.add(raster.getChannel(channelId));
+        }
+
+        final List<RasterStatistics> statistics = calculate(rasters, raster.getSizeX(), raster.getSizeY(), area);
+
+        final Map<Symbol, RasterStatistics> result = new LinkedHashMap<Symbol, RasterStatistics>();
+        for (int i = 0; i < channelIds.size(); i++) {
+            result.put(channelIds.get(i), statistics.get(i));
+        }
+        return result;
+    }
+
+    private List<RasterStatistics> calculate(final List<Raster> rasters, int sizeX, int sizeY, IntRectangle area) {
+        Check.notNull(area, "area");
+        if (!area.isEmpty() && (area.getMinX() < 0 || area.getMinY() < 0 || area.getMaxX() >= sizeX || area.getMaxY() >= sizeY)) {
+            throw new IllegalArgumentException("The area " + area + " should be inside the raster, which has the size " + sizeX + " x " + sizeY);
+        }
+
+        final int rasterCount = rasters.size();
+
+        final StatisticsAccumulator[] accumulators;
+        if (area.isEmpty()) {
+            accumulators = createAccumulators(rasterCount);
+        }
+        else {
+            final int minX = area.getMinX();
+            final int minY = area.getMinY();
+            final int areaSizeX = area.getSizeX();
+            final int areaSizeY = area.getSizeY();
+
+            accumulators = executor.reduce(areaSizeX, areaSizeY, new RowBandReduction<StatisticsAccumulator[]>() {
+                @Override public StatisticsAccumulator[] processRows(int startY, int endY) {
+                    final StatisticsAccumulator[] bandAccumulators = createAccumulators(rasterCount);
+                    float[] row = null;
+
+                    // Read the rows of all the rasters after each other, so that interleaved data is in the cache
+                    for (int y = minY + startY; y < minY + endY; y++) {
+                        for (int i = 0; i < rasterCount; i++) {
+                            final Raster raster = rasters.get(i);
+                            if (raster.isArrayBacked()) {
+                                final int xStep = raster.getDataXStep();
+                                final int offset = raster.getDataOffset() + y * raster.getDataRowStep() + minX * xStep;
+                                bandAccumulators[i].addValues(raster.getData(), offset, xStep, areaSizeX);
+                            }
+                            else {
+                                if (row == null) row = new float[areaSizeX];
+                                raster.readRow(y, minX, areaSizeX, row, 0);
+                                bandAccumulators[i].addValues(row, 0, 1, areaSizeX);
+                            }
+                        }
+                    }
+
+                    return bandAccumulators;
+                }
+
+                @Override public StatisticsAccumulator[] combine(StatisticsAccumulator[] first, StatisticsAccumulator[] second) {
+                    for (int i = 0; i < rasterCount; i++) {
+                        first[i].merge(second[i]);
+                    }
+                    return first;
+                }
+            });
+        }
+
+        final List<RasterStatistics> result = new ArrayList<RasterStatistics>(rasterCount);
+        for (StatisticsAccumulator accumulator : accumulators) {
+            result.add(accumulator.toStatistics());
+        }
+        return result;
+    }
+
+    private StatisticsAccumulator[] createAccumulators(int count) {
+        final StatisticsAccumulator[] accumulators = new StatisticsAccumulator[count];
+        for (int i = 0; i < count; i++) {
+            accumulators[i] = new StatisticsAccumulator(histogramBinCount, histogramMin, histogramMax);
+        }
+        return accumulators;
+    }
+}
@@ -0,0 +1,147 @@
+package org.flowutils.raster.statistics;
+
+/**
+ * Accumulates statistics for rows of values.
+ * Each row is summarized in two passes while it is in the cache, and then merged into the running totals,
+ * using the pairwise update of Chan et al. for the variance, which keeps it accurate for large rasters.
+ * Accumulators for different bands of rows can be merged in the same way.
+ *
+ * Not thread safe.
+ */
+final class StatisticsAccumulator {
+
+    private final float histogramMin;
+    private final float histogramMax;
+    private final double binScale;
+    private final long[] bins;
+
+    private long count;
+    private long nanCount;
+    private float min = Float.POSITIVE_INFINITY;
+    private float max = Float.NEGATIVE_INFINITY;
+    private double sum;
+    private double mean;
+    private double squaredDeviationSum;
+    private long underflowCount;
+    private long overflowCount;
+
+    /**
+     * @param histogramBinCount number of histogram bins, or 0 to not calculate a histogram.
+     * @param histogramMin lower edge of the first histogram bin.
+     * @param histogramMax upper edge of the last histogram bin.
+     */
+    StatisticsAccumulator(int histogramBinCount, float histogramMin, float histogramMax) {
+        this.histogramMin = histogramMin;
+        this.histogramMax = histogramMax;
+        bins = histogramBinCount > 0 ? new long[histogramBinCount] : null;
+        binScale = histogramBinCount / ((double) histogramMax - histogramMin);
+    }
+
+    /**
+     * Adds count values from the data array, starting at offset and stepping step elements between values.
+     */
+    void addValues(float[] data, int offset, int step, int count) {
+        long rowCount = 0;
+        double rowSum = 0;
+        float rowMin = Float.POSITIVE_INFINITY;
+        float rowMax = Float.NEGATIVE_INFINITY;
+
+        // Count, sum, range and histogram
+        int index = offset;
+        for (int i = 0; i < count; i++) {
+            final float value = data[index];
+            index += step;
+
+            if (value != value) {
+                nanCount++;
+            }
+            else {
+                rowCount++;
+                rowSum += value;
+                if (value < rowMin) rowMin = value;
+                if (value > rowMax) rowMax = value;
+
+                if (bins != null) addToHistogram(value);
+            }
+        }
+
+        if (rowCount == 0) return;
+
+        // Squared deviations from the mean of the row
+        final double rowMean = rowSum / rowCount;
+        double rowSquaredDeviationSum = 0;
+        index = offset;
+        for (int i = 0; i < count; i++) {
+            final float value = data[index];
+            index += step;
+
+            if (value == value) {
+                final double deviation = value - rowMean;
+                rowSquaredDeviationSum += deviation * deviation;
+            }
+        }
+
+        merge(rowCount, rowMin, rowMax, rowSum, rowMean, rowSquaredDeviationSum);
+    }
+
+    /**
+     * Adds the values accumulated by the other accumulator to this one.
+     * The accumulators must have the same histogram settings.
+     */
+    void merge(StatisticsAccumulator other) {
+        nanCount += other.nanCount;
+
+        if (bins != null) {
+            for (int i = 0; i < bins.length; i++) {
+                bins[i] += other.bins[i];
+            }
+            underflowCount += other.underflowCount;
+            overflowCount += other.overflowCount;
+        }
+
+        if (other.count > 0) {
+            merge(other.count, other.min, other.max, other.sum, other.mean, other.squaredDeviationSum);
+        }
+    }
+
+    /**
+     * @return the statistics accumulated so far.
+     */
+    RasterStatistics toStatistics() {
+        final Histogram histogram = bins != null ? new Histogram(histogramMin, histogramMax, bins, underflowCount, overflowCount) : null;
+
+        if (count == 0) {
+            return new RasterStatistics(0, nanCount, Float.NaN, Float.NaN, 0, Double.NaN, Double.NaN, histogram);
+        }
+        else {
+            return new RasterStatistics(count, nanCount, min, max, sum, mean, squaredDeviationSum / count, histogram);
+        }
+    }
+
+    private void addToHistogram(float value) {
+        if (value < histogramMin) {
+            underflowCount++;
+        }
+        else if (value > histogramMax) {
+            overflowCount++;
+        }
+        else {
+            // Values at the upper edge go in the last bin
+            final int bin = (int) ((value - histogramMin) * binScale);
+            bins[bin < bins.length ? bin : bins.length - 1]++;
+        }
+    }
+
+    private void merge(long otherCount, float otherMin, float otherMax, double otherSum, double otherMean, double otherSquaredDeviationSum) {
+        final long totalCount = count + otherCount;
+        final double delta = otherMean - mean;
+
+        mean += delta * otherCount / totalCount;
+        squaredDeviationSum += otherSquaredDeviationSum + delta * delta * ((double) count * otherCount / totalCount);
+        sum += otherSum;
+        count = totalCount;
+
+        if (otherMin < min) min = otherMin;
+        if (otherMax > max) max = otherMax;
+    }
+}
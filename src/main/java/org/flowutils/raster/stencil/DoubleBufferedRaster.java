@@ -0,0 +1,65 @@
+package org.flowutils.raster.stencil;
+
+import org.flowutils.Check;
+import org.flowutils.raster.raster.single.Raster;
+import org.flowutils.raster.raster.single.RasterImpl;
+
+/**
+ * A pair of rasters of the same size, for iterated calculations that read the current state from the front raster
+ * and write the next state to the back raster, after which the rasters are swapped.
+ *
+ * Not thread safe.
+ */
+public final class DoubleBufferedRaster {
+
+    private Raster front;
+    private Raster back;
+
+    /**
+     * Creates a double buffered raster with two new RasterImpl buffers.
+     *
+     * @param sizeX x size of the rasters.
+     * @param sizeY y size of the rasters.
+     */
+    public DoubleBufferedRaster(int sizeX, int sizeY) {
+        this(new RasterImpl(sizeX, sizeY), new RasterImpl(sizeX, sizeY));
+    }
+
+    /**
+     * @param front raster with the current state.
+     * @param back raster to write the next state to.  Must be the same size as the front raster, and a different raster.
+     */
+    public DoubleBufferedRaster(Raster front, Raster back) {
+        Check.notNull(front, "front");
+        Check.notNull(back, "back");
+        Check.equal(back.getSizeX(), "back sizeX", front.getSizeX(), "front sizeX");
+        Check.equal(back.getSizeY(), "back sizeY", front.getSizeY(), "front sizeY");
+        if (front == back) throw new IllegalArgumentException("The front and back rasters should be different rasters");
+
+        this.front = front;
+        this.back = back;
+    }
+
+    /**
+     * @return the raster with the current state.
+     */
+    public Raster getFront() {
+        return front;
+    }
+
+    /**
+     * @return the raster to write the next state to.
+     */
+    public Raster getBack() {
+        return back;
+    }
+
+    /**
+     * Swaps the front and back rasters, making the newly written state the current one.
+     */
+    public void swap() {
+        final Raster previousFront = front;
+        front = back;
+        back = previousFront;
+    }
+}
@@ -0,0 +1,164 @@
+package org.flowutils.raster.stencil;
+
+import org.flowutils.Check;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.parallel.RowBandTask;
+import org.flowutils.raster.raster.single.Raster;
+import org.flowutils.raster.raster.single.RasterEdges;
+
+/**
+ * Applies stencil kernels to rasters, calculating each target cell from a neighbourhood of source cells.
+ *
+ * Source rows are read into row buffers that extend past the raster edges, with the edges handled in the same way as in a RasterField:
+ * wrapped, extended from the border values, or filled with a default value.  The kernel then calculates a row at a time from the buffers,
+ * so it does not need bounds checks or edge handling.
+ *
+ * Bands of rows are processed in parallel by the RowBandExecutor.  The row buffers are kept per thread and reused,
+ * so repeated applications do not allocate memory for the row data.
+ *
+ * Thread safe.
+ */
+public final class StencilEngine {
+
+    private final boolean wrapX;
+    private final boolean wrapY;
+    private final boolean extendBorder;
+    private final float defaultValue;
+    private final RowBandExecutor executor;
+
+    private final ThreadLocal<RowBuffers> rowBuffers = new ThreadLocal<RowBuffers>() {
+        @Override protected RowBuffers initialValue() {
+            return new RowBuffers();
+        }
+    };
+
+    /**
+     * Creates an engine that wraps the edges in the x and y directions, and runs on the calling thread.
+     */
+    public StencilEngine() {
+        this(true, true, false, 0, RowBandExecutor.SERIAL);
+    }
+
+    /**
+     * @param wrapX if true, the values are wrapped in the x direction.
+     * @param wrapY if true, the values are wrapped in the y direction.
+     * @param extendBorder if true, values are clamped to the border value for non-wrapped directions.
+     * @param defaultValue the default value to use outside the raster for directions that are not wrapped if the border value is not extended.
+     * @param executor executor used to process bands of rows, possibly in parallel.
+     */
+    public StencilEngine(boolean wrapX, boolean wrapY, boolean extendBorder, float defaultValue, RowBandExecutor executor) {
+        Check.notNull(executor, "executor");
+
+        this.wrapX = wrapX;
+        this.wrapY = wrapY;
+        this.extendBorder = extendBorder;
+        this.defaultValue = defaultValue;
+        this.executor = executor;
+    }
+
+    public boolean isWrapX() {
+        return wrapX;
+    }
+
+    public boolean isWrapY() {
+        return wrapY;
+    }
+
+    public boolean isExtendBorder() {
+        return extendBorder;
+    }
+
+    public float getDefaultValue() {
+        return defaultValue;
+    }
+
+    public RowBandExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Applies the kernel to the front raster of the buffers, writing the result to the back raster, and swaps the rasters,
+     * repeating the specified number of times.  The final result is in the front raster.
+     *
+     * @param buffers double buffered raster with the initial state in the front raster.
+     * @param kernel kernel to apply.
+     * @param iterations number of times to apply the kernel.
+     */
+    public void iterate(DoubleBufferedRaster buffers, StencilKernel kernel, int iterations) {
+        Check.notNull(buffers, "buffers");
+        Check.positiveOrZero(iterations, "iterations");
+
+        for (int i = 0; i < iterations; i++) {
+            apply(buffers.getFront(), buffers.getBack(), kernel);
+            buffers.swap();
+        }
+    }
+
+    /**
+     * Calculates each cell of the target raster by applying the kernel to the neighbourhood of the cell in the source raster.
+     *
+     * @param source raster to read the values from.
+     * @param target raster to write the results to.  Must have the same size as the source, and be a different raster.
+     * @param kernel kernel to apply.
+     */
+    public void apply(final Raster source, final Raster target, final StencilKernel kernel) {
+        Check.notNull(source, "source");
+        Check.notNull(target, "target");
+        Check.notNull(kernel, "kernel");
+        Check.equal(target.getSizeX(), "target sizeX", source.getSizeX(), "source sizeX");
+        Check.equal(target.getSizeY(), "target sizeY", source.getSizeY(), "source sizeY");
+        if (source == target) throw new IllegalArgumentException("The source and target rasters should be different rasters, use a DoubleBufferedRaster for iterated calculations");
+
+        final int radius = kernel.getRadius();
+        Check.positiveOrZero(radius, "kernel radius");
+        final int sizeX = source.getSizeX();
+        final int sizeY = source.getSizeY();
+
+        executor.execute(sizeX, sizeY, new RowBandTask() {
+            @Override public void processRows(int startY, int endY) {
+                final RowBuffers buffers = rowBuffers.get();
+                buffers.ensureCapacity(radius, sizeX);
+                final float[][] rows = buffers.rows;
+                final float[] result = buffers.result;
+                final int rowCount = 2 * radius + 1;
+
+                // Fill the window for the first row
+                for (int i = 0; i < rowCount; i++) {
+                    RasterEdges.readPaddedRow(source, startY - radius + i, radius, rows[i], wrapX, wrapY, extendBorder, defaultValue);
+                }
+
+                for (int y = startY; y < endY; y++) {
+                    if (y > startY) {
+                        // Move the window down one row, reusing the buffer of the row that dropped out
+                        final float[] reused = rows[0];
+                        System.arraycopy(rows, 1, rows, 0, rowCount - 1);
+                        rows[rowCount - 1] = reused;
+                        RasterEdges.readPaddedRow(source, y + radius, radius, reused, wrapX, wrapY, extendBorder, defaultValue);
+                    }
+
+                    kernel.apply(y, sizeX, rows, result);
+                    target.writeRow(y, 0, sizeX, result, 0);
+                }
+            }
+        });
+    }
+
+    /**
+     * Row buffers used by one thread, grown when needed.
+     */
+    private static final class RowBuffers {
+        private float[][] rows = new float[0][];
+        private float[] result = new float[0];
+
+        private void ensureCapacity(int radius, int sizeX) {
+            final int rowCount = 2 * radius + 1;
+            final int rowLength = sizeX + 2 * radius;
+            if (rows.length != rowCount || rows[0].length < rowLength) {
+                rows = new float[rowCount][rowLength];
+            }
+            if (result.length < sizeX) {
+                result = new float[sizeX];
+            }
+        }
+    }
+}
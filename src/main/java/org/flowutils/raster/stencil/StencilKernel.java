@@ -0,0 +1,29 @@
+package org.flowutils.raster.stencil;
+
+/**
+ * Calculates new values for a row of raster cells from the values in a square neighbourhood around each cell.
+ * Used with a StencilEngine.
+ *
+ * Implementations should not allocate memory or keep state between calls, as rows can be processed in parallel on several threads.
+ */
+public interface StencilKernel {
+
+    /**
+     * @return radius of the neighbourhood the kernel reads, e.g. 1 for a 3x3 neighbourhood, or 2 for a 5x5 neighbourhood.
+     */
+    int getRadius();
+
+    /**
+     * Calculates the new values for one row.
+     *
+     * The source value at the cell (x + dx, y + dy) is found in rows[radius + dy][radius + x + dx],
+     * for dx and dy in the range -radius..radius.  The rows extend radius cells past both ends of the raster,
+     * with values outside the raster filled in according to the edge handling of the StencilEngine.
+     *
+     * @param y the row being calculated.
+     * @param sizeX number of cells in the row.
+     * @param rows source rows around the row being calculated.  Should not be modified.
+     * @param result array to write the new values of the row to, at indexes 0 to sizeX - 1.
+     */
+    void apply(int y, int sizeX, float[][] rows, float[] result);
+}
@@ -0,0 +1,85 @@
+package org.flowutils.raster.stencil;
+
+import org.flowutils.Check;
+
+/**
+ * Stencil kernel that calculates a weighted sum of the neighbourhood of each cell, plus an optional offset.
+ * Can be used for e.g. diffusion, blurring, or Laplacian calculations.
+ */
+public final class WeightedStencilKernel implements StencilKernel {
+
+    private final int radius;
+    private final int diameter;
+    private final float[] weights;
+    private final float offset;
+
+    /**
+     * @return kernel that diffuses values to the eight surrounding cells, each step moving the specified fraction of a
+     *         cells value to its neighbours.  Conserves the total sum of the values if the edges wrap.
+     */
+    public static WeightedStencilKernel diffusion(float rate) {
+        final float side = rate * 0.15f;
+        final float corner = rate * 0.1f;
+        return new WeightedStencilKernel(1, new float[]{corner, side,         corner,
+                                                        side,   1f - rate,    side,
+                                                        corner, side,         corner});
+    }
+
+    /**
+     * @return kernel that calculates the discrete Laplacian, using the four direct neighbours.
+     */
+    public static WeightedStencilKernel laplacian() {
+        return new WeightedStencilKernel(1, new float[]{0,  1, 0,
+                                                        1, -4, 1,
+                                                        0,  1, 0});
+    }
+
+    /**
+     * @param radius radius of the neighbourhood, e.g. 1 for 3x3, or 2 for 5x5.
+     * @param weights weights of the neighbourhood cells, row by row.  Must contain (2 * radius + 1)^2 values.
+     */
+    public WeightedStencilKernel(int radius, float[] weights) {
+        this(radius, weights, 0);
+    }
+
+    /**
+     * @param radius radius of the neighbourhood, e.g. 1 for 3x3, or 2 for 5x5.
+     * @param weights weights of the neighbourhood cells, row by row.  Must contain (2 * radius + 1)^2 values.
+     * @param offset value added to each result.
+     */
+    public WeightedStencilKernel(int radius, float[] weights, float offset) {
+        Check.positive(radius, "radius");
+        Check.notNull(weights, "weights");
+        diameter = 2 * radius + 1;
+        Check.equal(weights.length, "number of weights", diameter * diameter, "number of cells in the neighbourhood");
+
+        this.radius = radius;
+        this.weights = weights.clone();
+        this.offset = offset;
+    }
+
+    @Override public int getRadius() {
+        return radius;
+    }
+
+    @Override public void apply(int y, int sizeX, float[][] rows, float[] result) {
+        // Start with the offset, and add one weighted neighbour at a time over the whole row,
+        // so that the inner loop is a simple multiply add over consecutive values
+        for (int x = 0; x < sizeX; x++) {
+            result[x] = offset;
+        }
+
+        int weightIndex = 0;
+        for (int dy = 0; dy < diameter; dy++) {
+            final float[] row = rows[dy];
+            for (int dx = 0; dx < diameter; dx++) {
+                final float weight = weights[weightIndex++];
+                if (weight != 0) {
+                    for (int x = 0; x < sizeX; x++) {
+                        result[x] += row[x + dx] * weight;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.flowutils.rawimage;
+
+import org.flowutils.Check;
+import org.flowutils.raster.field.PartialRenderListener;
+import org.flowutils.raster.field.ProgressiveRenderListener;
+import org.flowutils.raster.field.RenderListener;
+import org.flowutils.rectangle.intrectangle.IntRectangle;
+
+import java.util.Arrays;
+
+/**
+ * Renders an image progressively, first sampling every initialStep:th pixel along each axis and filling the blocks
+ * between them with the sampled colors, and then halving the step in each following pass until all pixels are sampled.
+ *
+ * Each pass only samples the pixels that the earlier passes did not, so every pixel is sampled exactly once,
+ * and the total work is the same as for rendering the image in one pass.
+ *
+ * The target is flushed after each pass, and ProgressiveRenderListeners are notified with onPassRendered.
+ */
+public final class ProgressiveRendering {
+
+    /**
+     * Default distance in pixels between the pixels sampled in the first pass.
+     */
+    public static final int DEFAULT_INITIAL_STEP = 8;
+
+    /**
+     * Renders a regular grid of pixels.
+     */
+    public interface LatticeRenderer {
+
+        /**
+         * Renders the pixels at (startX + i * step, startY + j * step) for 0 &lt;= i &lt; countX and 0 &lt;= j &lt; countY.
+         *
+         * @param listener listener to report the progress of the grid to, from 0 to 1.  Rendering should stop when it returns false.
+         */
+        void renderLattice(int startX, int startY, int step, int countX, int countY, RenderListener listener);
+    }
+
+    /**
+     * Renders the target area progressively.
+     *
+     * @param target image to render to.
+     * @param targetArea area of the image to render.
+     * @param initialStep distance in pixels between the pixels sampled in the first pass.  Must be a power of two.
+     * @param listener listener to notify about the progress, or null if none.
+     *                 If it is a ProgressiveRenderListener it is also notified after each pass.
+     * @param renderer renderer used to sample the pixels.
+     * @return true if the rendering was completed, false if the listener cancelled it.
+     */
+    public static boolean render(RawImage target,
+                                 IntRectangle targetArea,
+                                 int initialStep,
+                                 RenderListener listener,
+                                 LatticeRenderer renderer) {
+        Check.notNull(target, "target");
+        Check.notNull(targetArea, "targetArea");
+        Check.positive(initialStep, "initialStep");
+        Check.notNull(renderer, "renderer");
+        if (Integer.bitCount(initialStep) != 1) throw new IllegalArgumentException("The initial step should be a power of two, but it was " + initialStep);
+        if (!target.getExtent().contains(targetArea)) throw new IllegalArgumentException("Target area ("+targetArea+") should be within the target image ("+target.getExtent()+")");
+
+        final int minX = targetArea.getMinX();
+        final int minY = targetArea.getMinY();
+        final int sizeX = targetArea.getSizeX();
+        final int sizeY = targetArea.getSizeY();
+        if (sizeX <= 0 || sizeY <= 0) return true;
+
+        final double totalPixels = (double) sizeX * sizeY;
+        final LatticeListener latticeListener = new LatticeListener(listener);
+        long renderedPixels = 0;
+
+        for (int step = initialStep; step >= 1; step /= 2) {
+            if (step == initialStep) {
+                // The first pass samples a grid with the initial step
+                renderedPixels = renderLattice(renderer, latticeListener, minX, minY, sizeX, sizeY, 0, 0, step, renderedPixels, totalPixels);
+            }
+            else {
+                // Later passes sample the points between the already sampled points, as three grids with twice the pass step
+                final int latticeStep = step * 2;
+                renderedPixels = renderLattice(renderer, latticeListener, minX, minY, sizeX, sizeY, step, 0, latticeStep, renderedPixels, totalPixels);
+                renderedPixels = renderLattice(renderer, latticeListener, minX, minY, sizeX, sizeY, 0, step, latticeStep, renderedPixels, totalPixels);
+                renderedPixels = renderLattice(renderer, latticeListener, minX, minY, sizeX, sizeY, step, step, latticeStep, renderedPixels, totalPixels);
+            }
+
+            if (latticeListener.isCancelled()) return false;
+
+            // Show the sampled pixels as blocks until the next pass has refined them
+            if (step > 1) fillBlocks(target, targetArea, step);
+            target.flush();
+
+            if (listener instanceof ProgressiveRenderListener) {
+                if (!((ProgressiveRenderListener) listener).onPassRendered(step)) return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static long renderLattice(LatticeRenderer renderer,
+                                      LatticeListener latticeListener,
+                                      int minX,
+                                      int minY,
+                                      int sizeX,
+                                      int sizeY,
+                                      int offsetX,
+                                      int offsetY,
+                                      int step,
+                                      long renderedPixels,
+                                      double totalPixels) {
+        if (latticeListener.isCancelled()) return renderedPixels;
+
+        final int countX = offsetX < sizeX ? (sizeX - offsetX + step - 1) / step : 0;
+        final int countY = offsetY < sizeY ? (sizeY - offsetY + step - 1) / step : 0;
+        if (countX == 0 || countY == 0) return renderedPixels;
+
+        final long latticePixels = (long) countX * countY;
+        latticeListener.setRange(renderedPixels / totalPixels, (renderedPixels + latticePixels) / totalPixels);
+        renderer.renderLattice(minX + offsetX, minY + offsetY, step, countX, countY, latticeListener);
+
+        return renderedPixels + latticePixels;
+    }
+
+    /**
+     * Copies the color of each pixel on the grid with the specified step to the pixels of the block to the right of and below it.
+     */
+    private static void fillBlocks(RawImage target, IntRectangle targetArea, int step) {
+        final int[] buffer = target.getBuffer();
+        final int width = target.getWidth();
+        final int minX = targetArea.getMinX();
+        final int endX = minX + targetArea.getSizeX();
+        final int minY = targetArea.getMinY();
+        final int endY = minY + targetArea.getSizeY();
+
+        for (int blockY = minY; blockY < endY; blockY += step) {
+            // Fill the row with the sampled pixels
+            final int rowStart = blockY * width;
+            for (int x = minX; x < endX; x += step) {
+                Arrays.fill(buffer, rowStart + x + 1, rowStart + Math.min(x + step, endX), buffer[rowStart + x]);
+            }
+
+            // Copy the row to the rest of the rows of the block
+            final int blockEndY = Math.min(blockY + step, endY);
+            for (int y = blockY + 1; y < blockEndY; y++) {
+                System.arraycopy(buffer, rowStart + minX, buffer, y * width + minX, endX - minX);
+            }
+        }
+    }
+
+    /**
+     * Maps the progress of each grid to the progress of the whole rendering.
+     */
+    private static final class LatticeListener implements RenderListener {
+        private final PartialRenderListener partialListener;
+
+        private LatticeListener(RenderListener listener) {
+            partialListener = new PartialRenderListener(listener);
+        }
+
+        void setRange(double startProgress, double endProgress) {
+            partialListener.setRange(startProgress, endProgress);
+        }
+
+        boolean isCancelled() {
+            return partialListener.isCancelled();
+        }
+
+        @Override public boolean onRenderProgress(double progress) {
+            // Grids with a single row may report NaN progress when they are done
+            return partialListener.onRenderProgress(progress >= 0 ? progress : 1.0);
+        }
+    }
+
+    private ProgressiveRendering() {
+    }
+}
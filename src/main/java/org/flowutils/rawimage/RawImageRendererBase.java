@@ -7,9 +7,28 @@ import org.flowutils.rectangle.intrectangle.IntRectangle;
 
 /**
  * Abstract base class that loops through the pixels and renders each.
+ * Can optionally render progressively, see ProgressiveRendering.
  */
 public abstract class RawImageRendererBase implements RawImageRenderer {
 
+    private boolean progressive = false;
+
+    /**
+     * @return true if the image is rendered progressively, from a coarse first pass to the full resolution.
+     */
+    public final boolean isProgressive() {
+        return progressive;
+    }
+
+    /**
+     * @param progressive if true, the image is rendered progressively, from a coarse first pass to the full resolution,
+     *                    and the target is flushed after each pass.  If the listener is a ProgressiveRenderListener,
+     *                    it is notified after each pass.  Defaults to false.
+     */
+    public final void setProgressive(boolean progressive) {
+        this.progressive = progressive;
+    }
+
     @Override
     public void renderImage(final RawImage target, IntRectangle targetArea, final Rectangle sourceArea, final RenderListener listener) {
         Check.notNull(target, "target");
@@ -23,6 +42,11 @@ public abstract class RawImageRendererBase implements RawImageRenderer {
 
         prepareRendering(target, w, h);
 
+        if (progressive) {
+            renderProgressively(target, targetArea, listener);
+            return;
+        }
+
         // Render pixels
         int index = 0;
         boolean continueRendering = true;
@@ -42,6 +66,35 @@ public abstract class RawImageRendererBase implements RawImageRenderer {
         target.flush();
     }
 
+    private void renderProgressively(final RawImage target, IntRectangle targetArea, RenderListener listener) {
+        final int w = target.getWidth();
+        final int h = target.getHeight();
+        final int[] buffer = target.getBuffer();
+
+        ProgressiveRendering.render(target, targetArea, ProgressiveRendering.DEFAULT_INITIAL_STEP, listener, new ProgressiveRendering.LatticeRenderer() {
+            @Override
+            public void renderLattice(int startX, int startY, int step, int countX, int countY, RenderListener latticeListener) {
+                boolean continueRendering = true;
+                for (int j = 0; j < countY && continueRendering; j++) {
+                    final int y = startY + j * step;
+                    int index = y * w + startX;
+                    for (int i = 0; i < countX; i++) {
+                        buffer[index] = getPixelColor(startX + i * step, y, w, h);
+                        index += step;
+                    }
+
+                    if (j % 10 == 0 || j == countY - 1) {
+                        continueRendering = latticeListener.onRenderProgress((j + 1.0) / countY);
+                    }
+                }
+            }
+        });
+
+        finishRendering(target, w, h);
+
+        target.flush();
+    }
+
     /**
      * Called before pixels are rendered.
      * @param target target that will be rendered to.
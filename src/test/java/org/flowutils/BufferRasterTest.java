@@ -0,0 +1,84 @@
+package org.flowutils;
+
+import org.flowutils.raster.field.single.FieldBase;
+import org.flowutils.raster.field.single.RasterField;
+import org.flowutils.raster.raster.multi.BufferMultiRaster;
+import org.flowutils.raster.raster.single.BufferRaster;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.flowutils.rectangle.ImmutableRectangle;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.assertEquals;
+
+public class BufferRasterTest {
+
+    private static final Symbol HEIGHT = Symbol.get("height");
+
+    @Test
+    public void testRenderAndBulkOperations() throws Exception {
+        final BufferRaster bufferRaster = new BufferRaster(5, 4);
+        final RasterImpl arrayRaster = new RasterImpl(5, 4);
+
+        final FieldBase field = new FieldBase() {
+            @Override public float getValue(double x, double y, double sampleSize) {
+                return (float) (x + y * 100);
+            }
+        };
+        field.renderToRaster(bufferRaster, new ImmutableRectangle(0, 0, 4, 3));
+        field.renderToRaster(arrayRaster, new ImmutableRectangle(0, 0, 4, 3));
+
+        assertEquals(0f, bufferRaster.getValue(0, 0), 0.001f);
+        assertEquals(4f, bufferRaster.getValue(4, 0), 0.001f);
+        assertEquals(302f, bufferRaster.getValue(2, 3), 0.001f);
+        assertEquals(302f, bufferRaster.getValueAt(17), 0.001f);
+
+        // Operations between off-heap and array backed rasters work in both directions
+        bufferRaster.multiplyAdd(2, 1);
+        arrayRaster.add(bufferRaster, 1, -1, 1);
+        bufferRaster.multiply(arrayRaster);
+
+        assertEquals(-302f, arrayRaster.getValue(2, 3), 0.001f);
+        assertEquals(605f * -302f, bufferRaster.getValue(2, 3), 0.1f);
+
+        // Sampling through a field
+        final RasterField rasterField = new RasterField(arrayRaster, 0);
+        assertEquals(-1.5f, rasterField.getValue(1.5, 0), 0.001f);
+    }
+
+    @Test
+    public void testMultiRaster() throws Exception {
+        final BufferMultiRaster raster = new BufferMultiRaster(3, 3, HEIGHT);
+        raster.setValue(1, 2, HEIGHT, 4f);
+
+        assertEquals(4f, raster.getValue(1, 2, HEIGHT), 0.001f);
+        assertEquals(0f, raster.getValue(2, 1, HEIGHT), 0.001f);
+    }
+
+    @Test
+    public void testMappedFile() throws Exception {
+        final File file = File.createTempFile("bufferRasterTest", ".raster");
+        file.deleteOnExit();
+
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            final BufferRaster written = new BufferRaster(7, 3, channel, 16, FileChannel.MapMode.READ_WRITE, ByteOrder.LITTLE_ENDIAN);
+            written.setValue(6, 2, 42f);
+            written.writeRow(1, 2, 3, new float[]{1, 2, 3}, 0);
+            written.force();
+
+            final BufferRaster read = new BufferRaster(7, 3, channel, 16, FileChannel.MapMode.READ_ONLY, ByteOrder.LITTLE_ENDIAN);
+            assertEquals(42f, read.getValue(6, 2), 0.001f);
+            assertEquals(3f, read.getValue(4, 1), 0.001f);
+            assertEquals(16 + 7 * 3 * 4, file.length());
+        }
+        finally {
+            randomAccessFile.close();
+        }
+    }
+}
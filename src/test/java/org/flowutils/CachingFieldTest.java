@@ -0,0 +1,194 @@
+package org.flowutils;
+
+import org.flowutils.raster.field.FieldTileCache;
+import org.flowutils.raster.field.multi.CachingMultiField;
+import org.flowutils.raster.field.multi.CompositeMultiField;
+import org.flowutils.raster.field.single.CachingField;
+import org.flowutils.raster.field.single.FieldBase;
+import org.flowutils.raster.field.single.NoiseField;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.raster.multi.InterleavedMultiRaster;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.flowutils.rectangle.ImmutableRectangle;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CachingFieldTest {
+
+    private static final Symbol A = Symbol.get("a");
+    private static final Symbol B = Symbol.get("b");
+
+    @Test
+    public void testInterpolation() throws Exception {
+        final CountingField source = new CountingField(2, -3);
+        final CachingField field = new CachingField(source, new FieldTileCache(0.5, 8, 16));
+
+        // Grid points are sampled exactly, and the bilinear interpolation of a linear field is exact
+        assertEquals(source.getValue(1.5, 2, 0), field.getValue(1.5, 2, 0), 0.0001);
+        assertEquals(source.getValue(1.3, -2.9, 0), field.getValue(1.3, -2.9, 0), 0.0001);
+        assertEquals(source.getValue(7.77, 3.21, 0.1), field.getValue(7.77, 3.21, 0.1), 0.0001);
+
+        final float[] values = new float[10];
+        field.getValues(-1.1, 0.7, 0.37, 5, 0, values, 1, 2);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(source.getValue(-1.1 + i * 0.37, 0.7, 0), values[1 + i * 2], 0.0001);
+        }
+    }
+
+    @Test
+    public void testRepeatedRenderUsesCache() throws Exception {
+        final CountingField source = new CountingField(1, 1);
+        final CachingField field = new CachingField(source, new FieldTileCache(0.1, 16, 64));
+
+        final RasterImpl first = new RasterImpl(40, 30);
+        field.renderToRaster(first, new ImmutableRectangle(0, 0, 2, 1.5));
+        final int evaluations = source.getEvaluations();
+        assertTrue(evaluations > 0);
+
+        final RasterImpl second = new RasterImpl(40, 30);
+        field.renderToRaster(second, new ImmutableRectangle(0, 0, 2, 1.5));
+        assertEquals("The second render should only use cached tiles", evaluations, source.getEvaluations());
+        assertArrayEquals(first.getData(), second.getData(), 0);
+
+        field.clearCache();
+        assertEquals(0, field.getCache().getTileCount());
+        field.renderToRaster(second, new ImmutableRectangle(0, 0, 2, 1.5));
+        assertEquals(2 * evaluations, source.getEvaluations());
+    }
+
+    @Test
+    public void testSampleSizeLevels() throws Exception {
+        final CountingField source = new CountingField(1, 0);
+        final CachingField field = new CachingField(source, new FieldTileCache(1, 4, 16));
+
+        // Sample sizes up to the cell size use the base level, larger ones use coarser levels
+        field.getValue(0.5, 0.5, 0);
+        field.getValue(0.5, 0.5, 1);
+        assertEquals(1, field.getCache().getTileCount());
+
+        field.getValue(0.5, 0.5, 2.5);
+        assertEquals(2, field.getCache().getTileCount());
+        field.getValue(0.5, 0.5, 3.9);
+        assertEquals(2, field.getCache().getTileCount());
+
+        field.getValue(0.5, 0.5, 4);
+        assertEquals(3, field.getCache().getTileCount());
+
+        // A coarse level tile covers a larger area
+        assertEquals(30.5f, field.getValue(30.5, 0.5, 4), 0.0001);
+        assertEquals(4, field.getCache().getTileCount());
+    }
+
+    @Test
+    public void testRenderAccuracy() throws Exception {
+        final NoiseField noise = new NoiseField();
+        final RasterImpl expected = new RasterImpl(200, 200);
+        noise.renderToRaster(expected, new ImmutableRectangle(0, 0, 199, 199));
+
+        // At 1:1 the samples fall on the grid points of the most detailed level
+        final CachingField field = new CachingField(noise, 1.0);
+        final RasterImpl cached = new RasterImpl(200, 200);
+        field.renderToRaster(cached, new ImmutableRectangle(0, 0, 199, 199));
+        assertArrayEquals(expected.getData(), cached.getData(), 0.0001f);
+
+        // Rendering at a quarter of the size uses a coarser level with about one grid point per sample
+        final CachingField smallField = new CachingField(noise, new FieldTileCache(1.0, 64, 100));
+        final RasterImpl small = new RasterImpl(50, 50);
+        smallField.renderToRaster(small, new ImmutableRectangle(0, 0, 199, 199));
+        assertEquals(1, smallField.getCache().getTileCount());
+        assertEquals(noise.getValue(0, 0, 0), small.getValue(0, 0), 0.0001f);
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        final CountingField source = new CountingField(1, 2);
+        final CachingField field = new CachingField(source, new FieldTileCache(1, 4, 3));
+
+        for (int tile = 0; tile < 10; tile++) {
+            assertEquals(source.getValue(tile * 4 + 1, 1, 0), field.getValue(tile * 4 + 1, 1, 0), 0.0001);
+            assertTrue(field.getCache().getTileCount() <= 3);
+        }
+        final int evaluations = source.getEvaluations();
+
+        // The most recently used tile is still cached, but the first one was evicted
+        field.getValue(37, 1, 0);
+        assertEquals(evaluations, source.getEvaluations());
+        field.getValue(1, 1, 0);
+        assertTrue(source.getEvaluations() > evaluations);
+    }
+
+    @Test
+    public void testParallelRender() throws Exception {
+        final NoiseField noise = new NoiseField(3, 3);
+
+        final CachingField serialField = new CachingField(noise, new FieldTileCache(0.01, 16, 1000));
+        final RasterImpl serial = new RasterImpl(70, 90);
+        serialField.renderToRaster(serial);
+
+        final CachingField parallelField = new CachingField(noise, new FieldTileCache(0.01, 16, 1000));
+        parallelField.setExecutor(new RowBandExecutor(new ForkJoinPool(4), 1));
+        final RasterImpl parallel = new RasterImpl(70, 90);
+        parallelField.renderToRaster(parallel);
+        assertArrayEquals(serial.getData(), parallel.getData(), 0);
+
+        // Rendering again from the cache gives the same result
+        parallelField.renderToRaster(parallel);
+        assertArrayEquals(serial.getData(), parallel.getData(), 0);
+    }
+
+    @Test
+    public void testCachingMultiField() throws Exception {
+        final CountingField a = new CountingField(1, 0);
+        final CountingField b = new CountingField(0, 1);
+        final CompositeMultiField source = new CompositeMultiField();
+        source.addChannel(A, a);
+        source.addChannel(B, b);
+
+        final CachingMultiField field = new CachingMultiField(source, new FieldTileCache(0.25, 8, 100));
+        assertTrue(field.hasChannel(A));
+        assertEquals(3.3f, field.getValue(3.3, 1.7, A, 0), 0.0001);
+        assertEquals(1.7f, field.getChannel(B).getValue(3.3, 1.7, 0), 0.0001);
+
+        final InterleavedMultiRaster first = new InterleavedMultiRaster(20, 10, A, B);
+        field.renderToRaster(first, new ImmutableRectangle(0, 0, 4, 2));
+        final int evaluations = a.getEvaluations() + b.getEvaluations();
+
+        final InterleavedMultiRaster second = new InterleavedMultiRaster(20, 10, A, B);
+        field.renderToRaster(second, new ImmutableRectangle(0, 0, 4, 2));
+        assertEquals(evaluations, a.getEvaluations() + b.getEvaluations());
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 20; x++) {
+                assertEquals(first.getValue(x, y, A), second.getValue(x, y, A), 0);
+                assertEquals(4.0 * x / 19, second.getValue(x, y, A), 0.0001);
+                assertEquals(2.0 * y / 9, second.getValue(x, y, B), 0.0001);
+            }
+        }
+    }
+
+    /**
+     * Linear field that counts how many values have been sampled from it.
+     */
+    private static final class CountingField extends FieldBase {
+        private final double scaleX;
+        private final double scaleY;
+        private final AtomicInteger evaluations = new AtomicInteger();
+
+        private CountingField(double scaleX, double scaleY) {
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+        }
+
+        int getEvaluations() {
+            return evaluations.get();
+        }
+
+        @Override public float getValue(double x, double y, double sampleSize) {
+            evaluations.incrementAndGet();
+            return (float) (x * scaleX + y * scaleY);
+        }
+    }
+}
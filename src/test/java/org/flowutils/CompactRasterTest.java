@@ -0,0 +1,89 @@
+package org.flowutils;
+
+import org.flowutils.raster.field.single.FieldBase;
+import org.flowutils.raster.raster.single.HalfFloatRaster;
+import org.flowutils.raster.raster.single.QuantizedByteRaster;
+import org.flowutils.raster.raster.single.QuantizedShortRaster;
+import org.flowutils.raster.raster.single.Raster;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.flowutils.rectangle.ImmutableRectangle;
+import org.junit.Test;
+
+import static org.flowutils.HalfFloatUtils.toFloat;
+import static org.flowutils.HalfFloatUtils.toHalfFloat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompactRasterTest {
+
+    @Test
+    public void testHalfFloatConversion() throws Exception {
+        assertEquals(0x3c00, toHalfFloat(1f));
+        assertEquals((short) 0xc000, toHalfFloat(-2f));
+        assertEquals(0x7bff, toHalfFloat(65504f));
+        assertEquals(0x7c00, toHalfFloat(70000f));
+        assertEquals(0x0001, toHalfFloat(5.9604645E-8f));
+        assertEquals(0, toHalfFloat(1E-9f));
+
+        assertEquals(1f, toFloat((short) 0x3c00), 0f);
+        assertEquals(65504f, toFloat((short) 0x7bff), 0f);
+        assertEquals(Float.NEGATIVE_INFINITY, toFloat((short) 0xfc00), 0f);
+        assertTrue(Float.isNaN(toFloat(toHalfFloat(Float.NaN))));
+
+        // Every half float converts back to itself
+        for (int half = 0; half < 0x10000; half++) {
+            final float value = toFloat((short) half);
+            if (!Float.isNaN(value)) {
+                assertEquals(half, toHalfFloat(value) & 0xffff);
+            }
+        }
+
+        // Ties round to even
+        assertEquals(0x3c00, toHalfFloat(1f + 1f / 2048));
+        assertEquals(0x3c02, toHalfFloat(1f + 3f / 2048));
+    }
+
+    @Test
+    public void testHalfFloatRaster() throws Exception {
+        final HalfFloatRaster raster = new HalfFloatRaster(6, 4);
+        renderTestValues(raster);
+
+        assertEquals(0.3f, raster.getValue(3, 0), 0.001f);
+        assertEquals(2.1f, raster.getValue(1, 2), 0.002f);
+
+        raster.multiplyAdd(2, 1);
+        assertEquals(5.2f, raster.getValue(1, 2), 0.004f);
+        assertEquals(1.5f, raster.sampleValue(2.5, 0), 0.002f);
+    }
+
+    @Test
+    public void testQuantizedRasters() throws Exception {
+        final QuantizedByteRaster byteRaster = new QuantizedByteRaster(6, 4, -1, 3);
+        final QuantizedShortRaster shortRaster = new QuantizedShortRaster(6, 4, -1, 3);
+        renderTestValues(byteRaster);
+        renderTestValues(shortRaster);
+
+        assertEquals(2.1f, byteRaster.getValue(1, 2), byteRaster.getScale() / 2);
+        assertEquals(2.1f, shortRaster.getValue(1, 2), shortRaster.getScale() / 2);
+
+        // Values are clamped to the range of the raster
+        byteRaster.setValue(0, 0, 10);
+        shortRaster.setValue(0, 0, -10);
+        assertEquals(3f, byteRaster.getValue(0, 0), 0.0001f);
+        assertEquals(-1f, shortRaster.getValue(0, 0), 0.0001f);
+
+        // Bulk operations with other raster types
+        final RasterImpl sum = new RasterImpl(6, 4);
+        sum.copyFrom(byteRaster);
+        sum.add(shortRaster);
+        assertEquals(4.2f, sum.getValue(1, 2), 0.01f);
+    }
+
+    private void renderTestValues(Raster raster) {
+        new FieldBase() {
+            @Override public float getValue(double x, double y, double sampleSize) {
+                return (float) (x * 0.1 + y);
+            }
+        }.renderToRaster(raster, new ImmutableRectangle(0, 0, 5, 3));
+    }
+}
@@ -0,0 +1,126 @@
+package org.flowutils;
+
+import org.flowutils.raster.field.multi.CompiledMultiField;
+import org.flowutils.raster.field.multi.CompositeMultiField;
+import org.flowutils.raster.field.multi.MultiFieldBase;
+import org.flowutils.raster.field.multi.MultiRasterField;
+import org.flowutils.raster.field.single.ConstantField;
+import org.flowutils.raster.field.single.FieldDelegate;
+import org.flowutils.raster.field.single.NoiseField;
+import org.flowutils.raster.field.single.RasterField;
+import org.flowutils.raster.raster.multi.CompositeMultiRaster;
+import org.flowutils.raster.raster.multi.InterleavedMultiRaster;
+import org.flowutils.rectangle.ImmutableRectangle;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CompiledFieldTest {
+
+    private static final Symbol A = Symbol.get("a");
+    private static final Symbol B = Symbol.get("b");
+    private static final Symbol C = Symbol.get("c");
+    private static final Symbol D = Symbol.get("d");
+    private static final Symbol E = Symbol.get("e");
+
+    @Test
+    public void testCompile() throws Exception {
+        final NoiseField noise = new NoiseField(0.3, 0.4);
+        final ConstantField constant = new ConstantField(4);
+
+        final InterleavedMultiRaster raster = new InterleavedMultiRaster(6, 5, C, E);
+        for (int y = 0; y < 5; y++) {
+            for (int x = 0; x < 6; x++) {
+                raster.setValue(x, y, C, x * y);
+            }
+        }
+        final MultiRasterField rasterField = new MultiRasterField(raster, true, false);
+
+        final CompositeMultiField inner = new CompositeMultiField();
+        inner.addChannel(E, constant);
+
+        final CompositeMultiField field = new CompositeMultiField();
+        field.addChannel(A, noise);
+        field.addChannel(B, new FieldDelegate(rasterField, C));
+        field.addChannel(D, new FieldDelegate(inner, E));
+
+        final CompiledMultiField compiled = field.compile(Arrays.asList(D, A, B));
+        assertEquals(3, compiled.getSlotCount());
+        assertEquals(0, compiled.getSlot(D));
+        assertEquals(-1, compiled.getSlot(C));
+        assertEquals(A, compiled.getSlotChannel(1));
+
+        // Delegates are resolved to the fields that produce the values
+        assertSame(constant, compiled.getSlotField(0));
+        assertSame(noise, compiled.getSlotField(1));
+        assertTrue(compiled.getSlotField(2) instanceof RasterField);
+
+        final float[] values = new float[4];
+        compiled.getValues(2.5, 1.25, 0, values, 1);
+        assertEquals(4, values[1], 0);
+        assertEquals(noise.getValue(2.5, 1.25), values[2], 0);
+        assertEquals(field.getValue(2.5, 1.25, B), values[3], 0);
+        assertEquals(field.getValue(-1.5, 7, B), compiled.getValue(-1.5, 7, 2, 0), 0);
+    }
+
+    @Test
+    public void testRenderCompiled() throws Exception {
+        final CompositeMultiField inner = new CompositeMultiField();
+        inner.addChannel(E, new NoiseField(2, 3));
+
+        final CompositeMultiField field = new CompositeMultiField();
+        field.addChannel(A, new NoiseField(0.5, 0.5));
+        field.addChannel(B, new FieldDelegate(inner, E));
+
+        final ImmutableRectangle area = new ImmutableRectangle(-2, 3, 5, 9);
+        final CompositeMultiRaster expected = new CompositeMultiRaster(40, 30, A, B);
+        for (int y = 0; y < 30; y++) {
+            for (int x = 0; x < 40; x++) {
+                final double sourceX = area.getMinX() + x * (area.getSizeX() / 39);
+                final double sourceY = area.getMinY() + y * (area.getSizeY() / 29);
+                expected.setValue(x, y, A, field.getValue(sourceX, sourceY, A));
+                expected.setValue(x, y, B, field.getValue(sourceX, sourceY, B));
+            }
+        }
+
+        final InterleavedMultiRaster direct = new InterleavedMultiRaster(40, 30, A, B);
+        field.renderToRaster(direct, area);
+
+        final InterleavedMultiRaster compiled = new InterleavedMultiRaster(40, 30, A, B);
+        field.compile().renderToRaster(compiled, area);
+
+        for (Symbol channel : Arrays.asList(A, B)) {
+            for (int y = 0; y < 30; y++) {
+                for (int x = 0; x < 40; x++) {
+                    assertEquals(expected.getValue(x, y, channel), direct.getValue(x, y, channel), 0.0001f);
+                    assertEquals(Float.floatToRawIntBits(direct.getValue(x, y, channel)),
+                                 Float.floatToRawIntBits(compiled.getValue(x, y, channel)));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingChannel() throws Exception {
+        new CompositeMultiField().compile(Arrays.asList(A));
+    }
+
+    @Test
+    public void testRenderFieldWithoutListedChannels() throws Exception {
+        // A field that only implements getValue, without listing its channels
+        final MultiFieldBase field = new MultiFieldBase() {
+            @Override public float getValue(double x, double y, Symbol channelId, double sampleSize) {
+                return channelId == A ? 2 : 3;
+            }
+        };
+
+        final InterleavedMultiRaster raster = new InterleavedMultiRaster(8, 8, A, B);
+        field.renderToRaster(raster, new ImmutableRectangle(0, 0, 1, 1));
+        assertEquals(2f, raster.getValue(7, 7, A), 0.0001f);
+        assertEquals(3f, raster.getValue(0, 0, B), 0.0001f);
+
+        assertEquals(2f, field.compile(Arrays.asList(A)).getValue(0.5, 0.5, 0, 0), 0.0001f);
+    }
+}
@@ -0,0 +1,124 @@
+package org.flowutils;
+
+import org.flowutils.raster.field.single.FieldBase;
+import org.flowutils.raster.raster.multi.InterleavedMultiRaster;
+import org.flowutils.raster.raster.single.DirtyRegionTracker;
+import org.flowutils.raster.raster.single.HalfFloatRaster;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.flowutils.rectangle.ImmutableRectangle;
+import org.flowutils.rectangle.intrectangle.ImmutableIntRectangle;
+import org.flowutils.rectangle.intrectangle.IntRectangle;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DirtyRegionTrackerTest {
+
+    private static final Symbol RED = Symbol.get("red");
+    private static final Symbol GREEN = Symbol.get("green");
+
+    @Test
+    public void testCoalescing() throws Exception {
+        final DirtyRegionTracker tracker = new DirtyRegionTracker(3);
+        assertFalse(tracker.isDirty());
+        assertTrue(tracker.getDirtyBounds().isEmpty());
+
+        // Adjacent cells merge
+        tracker.markDirty(1, 1);
+        tracker.markDirty(2, 1);
+        tracker.markDirty(2, 2);
+        tracker.markDirty(2, 2);
+        assertRegions(tracker, new ImmutableIntRectangle(1, 1, 2, 2));
+
+        // Separate areas stay separate
+        tracker.markDirty(10, 10, 12, 11);
+        tracker.markDirty(20, 0);
+        assertEquals(3, tracker.getDirtyRegions().size());
+
+        // Area bridging two regions merges them
+        tracker.markDirty(3, 3, 9, 9);
+        assertRegions(tracker, new ImmutableIntRectangle(1, 1, 12, 11), new ImmutableIntRectangle(20, 0, 20, 0));
+
+        // Too many regions merges the closest ones
+        tracker.markDirty(30, 30);
+        tracker.markDirty(30, 40);
+        assertEquals(3, tracker.getDirtyRegions().size());
+        assertEquals(new ImmutableIntRectangle(1, 0, 30, 40), tracker.getDirtyBounds());
+
+        final List<IntRectangle> regions = tracker.getAndClearDirtyRegions();
+        assertEquals(3, regions.size());
+        assertFalse(tracker.isDirty());
+    }
+
+    @Test
+    public void testRasterChanges() throws Exception {
+        final RasterImpl raster = new RasterImpl(20, 10);
+        final DirtyRegionTracker tracker = new DirtyRegionTracker();
+        raster.setDirtyRegionTracker(tracker);
+
+        raster.setValue(3, 4, 1f);
+        assertRegions(tracker, new ImmutableIntRectangle(3, 4, 3, 4));
+        tracker.clear();
+
+        // Changes through views are recorded in the coordinates of the viewed raster
+        raster.view(new ImmutableIntRectangle(5, 5, 9, 9)).writeRow(1, 1, 3, new float[]{1, 2, 3}, 0);
+        assertRegions(tracker, new ImmutableIntRectangle(6, 6, 8, 6));
+        tracker.clear();
+
+        // Rendering marks the rendered area
+        new FieldBase() {
+            @Override public float getValue(double x, double y, double sampleSize) {
+                return 1;
+            }
+        }.renderToRaster(raster, new ImmutableRectangle(0, 0, 1, 1), new ImmutableIntRectangle(2, 3, 4, 5));
+        assertRegions(tracker, new ImmutableIntRectangle(2, 3, 4, 5));
+        tracker.clear();
+
+        // Bulk operations mark everything
+        raster.multiply(2);
+        assertRegions(tracker, new ImmutableIntRectangle(0, 0, 19, 9));
+        tracker.clear();
+
+        // Rasters using the row based bulk operations mark everything once, and rows written directly are still marked
+        final HalfFloatRaster halfFloatRaster = new HalfFloatRaster(20, 10);
+        halfFloatRaster.setDirtyRegionTracker(tracker);
+        halfFloatRaster.add(raster);
+        assertRegions(tracker, new ImmutableIntRectangle(0, 0, 19, 9));
+        assertEquals(raster.getValue(3, 4), halfFloatRaster.getValue(3, 4), 0.001f);
+        tracker.clear();
+        halfFloatRaster.writeRow(2, 4, 2, new float[]{1, 2}, 0);
+        assertRegions(tracker, new ImmutableIntRectangle(4, 2, 5, 2));
+        tracker.clear();
+
+        // Stopping tracking
+        raster.setDirtyRegionTracker(null);
+        raster.setValue(1, 1, 3f);
+        assertFalse(tracker.isDirty());
+    }
+
+    @Test
+    public void testMultiRasterChanges() throws Exception {
+        final InterleavedMultiRaster raster = new InterleavedMultiRaster(8, 8, RED, GREEN);
+        final DirtyRegionTracker tracker = new DirtyRegionTracker();
+        raster.setDirtyRegionTracker(tracker);
+
+        raster.setValue(1, 2, RED, 1f);
+        raster.setValue(2, 2, GREEN, 1f);
+        assertRegions(tracker, new ImmutableIntRectangle(1, 2, 2, 2));
+
+        final HalfFloatRaster halfFloatRaster = new HalfFloatRaster(8, 8);
+        halfFloatRaster.setDirtyRegionTracker(tracker);
+        halfFloatRaster.copyFrom(raster.getChannel(RED));
+        assertRegions(tracker, new ImmutableIntRectangle(0, 0, 7, 7));
+    }
+
+    private void assertRegions(DirtyRegionTracker tracker, IntRectangle... expectedRegions) {
+        final List<IntRectangle> regions = tracker.getDirtyRegions();
+        assertEquals(expectedRegions.length, regions.size());
+        for (IntRectangle expectedRegion : expectedRegions) {
+            assertTrue("Expected region " + expectedRegion + " in " + regions, regions.contains(expectedRegion));
+        }
+    }
+}
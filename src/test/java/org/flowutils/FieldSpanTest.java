@@ -0,0 +1,84 @@
+package org.flowutils;
+
+import org.flowutils.raster.field.multi.CompositeMultiField;
+import org.flowutils.raster.field.single.ConstantField;
+import org.flowutils.raster.field.single.Field;
+import org.flowutils.raster.field.single.FieldBase;
+import org.flowutils.raster.field.single.NoiseField;
+import org.flowutils.raster.field.single.RasterField;
+import org.flowutils.raster.raster.multi.InterleavedMultiRaster;
+import org.flowutils.raster.raster.single.HalfFloatRaster;
+import org.flowutils.raster.raster.single.Raster;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FieldSpanTest {
+
+    private static final Symbol A = Symbol.get("a");
+    private static final Symbol B = Symbol.get("b");
+
+    @Test
+    public void testSpansMatchSingleValues() throws Exception {
+        checkSpans(new ConstantField(3.5f));
+        checkSpans(new NoiseField(0.3, 0.7, 5, -2));
+
+        final Raster raster = createRaster(new RasterImpl(7, 5));
+        checkSpans(new RasterField(raster));
+        checkSpans(new RasterField(raster, -1));
+        checkSpans(new RasterField(raster, true, false));
+        checkSpans(new RasterField(raster, false, true, 2));
+
+        // Interleaved channel, with a data step larger than one
+        final InterleavedMultiRaster multiRaster = new InterleavedMultiRaster(7, 5, A, B);
+        checkSpans(new RasterField(createRaster(multiRaster.getChannel(B)), false, false));
+
+        // Raster without a data array
+        checkSpans(new RasterField(createRaster(new HalfFloatRaster(7, 5)), true, true));
+
+        final CompositeMultiField multiField = new CompositeMultiField();
+        multiField.addChannel(A, new NoiseField(2, 2));
+        checkSpans(multiField.getChannel(A));
+    }
+
+    @Test
+    public void testDefaultImplementation() throws Exception {
+        checkSpans(new FieldBase() {
+            @Override public float getValue(double x, double y, double sampleSize) {
+                return (float) (x * 10 + y + sampleSize);
+            }
+        });
+    }
+
+    private void checkSpans(Field field) {
+        checkSpan(field, -3.1, 1.5, 0.37, 40, 0);
+        checkSpan(field, 2.0, 0, 1, 7, 0);
+        checkSpan(field, 6.5, 4, -0.5, 20, 0.25);
+        checkSpan(field, 0.1, 4.7, 0.33, 25, 0);
+        checkSpan(field, 0.1, -0.3, 0.33, 25, 0);
+    }
+
+    private void checkSpan(Field field, double startX, double y, double stepX, int count, double sampleSize) {
+        // Every other element, after a few untouched elements
+        final float[] target = new float[3 + 2 * count];
+        field.getValues(startX, y, stepX, count, sampleSize, target, 3, 2);
+
+        double x = startX;
+        for (int i = 0; i < count; i++) {
+            assertEquals(Float.floatToRawIntBits(field.getValue(x, y, sampleSize)), Float.floatToRawIntBits(target[3 + 2 * i]));
+            if (i < count - 1) assertEquals(0, target[4 + 2 * i], 0);
+            x += stepX;
+        }
+        assertEquals(0, target[2], 0);
+    }
+
+    private Raster createRaster(Raster raster) {
+        for (int y = 0; y < raster.getSizeY(); y++) {
+            for (int x = 0; x < raster.getSizeX(); x++) {
+                raster.setValue(x, y, (x * 3 + y * 5) % 7 - 2.5f);
+            }
+        }
+        return raster;
+    }
+}
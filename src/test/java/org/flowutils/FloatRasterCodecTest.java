@@ -0,0 +1,127 @@
+package org.flowutils;
+
+import org.flowutils.raster.codec.FloatRasterCodec;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.raster.multi.InterleavedMultiRaster;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class FloatRasterCodecTest {
+
+    private static final Symbol A = Symbol.get("a");
+    private static final Symbol B = Symbol.get("b");
+
+    @Test
+    public void testLosslessSmoothField() throws Exception {
+        final RasterImpl raster = createSmoothRaster(150, 90);
+        raster.setValue(3, 4, Float.NaN);
+        raster.setValue(4, 4, Float.intBitsToFloat(0x7fc01234));
+        raster.setValue(149, 89, Float.NEGATIVE_INFINITY);
+        raster.setValue(70, 10, -0f);
+        raster.setValue(71, 10, Float.MIN_VALUE);
+
+        final FloatRasterCodec codec = new FloatRasterCodec();
+        final byte[] data = codec.encode(raster);
+
+        final RasterImpl decoded = new RasterImpl(150, 90);
+        codec.decode(data, decoded);
+        for (int y = 0; y < 90; y++) {
+            for (int x = 0; x < 150; x++) {
+                assertEquals(Float.floatToRawIntBits(raster.getValue(x, y)), Float.floatToRawIntBits(decoded.getValue(x, y)));
+            }
+        }
+
+        // Parallel encoding gives the same data
+        final FloatRasterCodec parallelCodec = new FloatRasterCodec(0, 32, new RowBandExecutor(new ForkJoinPool(4), 1));
+        final FloatRasterCodec serialCodec = new FloatRasterCodec(0, 32, RowBandExecutor.SERIAL);
+        final byte[] parallelData = parallelCodec.encode(raster);
+        assertArrayEquals(serialCodec.encode(raster), parallelData);
+        final RasterImpl parallelDecoded = parallelCodec.decode(new ByteArrayInputStream(parallelData));
+        assertEquals(Float.floatToRawIntBits(raster.getValue(4, 4)), Float.floatToRawIntBits(parallelDecoded.getValue(4, 4)));
+        assertEquals(raster.getValue(100, 50), parallelDecoded.getValue(100, 50), 0f);
+    }
+
+    @Test
+    public void testLossy() throws Exception {
+        final RasterImpl raster = createSmoothRaster(128, 128);
+        final Random random = new Random(5);
+        for (int y = 0; y < 128; y++) {
+            for (int x = 0; x < 128; x++) {
+                raster.setValue(x, y, raster.getValue(x, y) * (float) Math.pow(10, random.nextInt(7) - 3));
+            }
+        }
+
+        final byte[] lossless = new FloatRasterCodec().encode(raster);
+        final float maxError = 0.001f;
+        final FloatRasterCodec lossyCodec = new FloatRasterCodec(maxError, 64, RowBandExecutor.SERIAL);
+        final byte[] lossy = lossyCodec.encode(raster);
+        assertTrue(lossy.length < lossless.length);
+
+        final RasterImpl decoded = new RasterImpl(128, 128);
+        lossyCodec.decode(lossy, decoded);
+        for (int y = 0; y < 128; y++) {
+            for (int x = 0; x < 128; x++) {
+                assertEquals(raster.getValue(x, y), decoded.getValue(x, y), maxError);
+            }
+        }
+    }
+
+    @Test
+    public void testCompressesSmoothData() throws Exception {
+        final RasterImpl raster = new RasterImpl(256, 256);
+        for (int y = 0; y < 256; y++) {
+            for (int x = 0; x < 256; x++) {
+                raster.setValue(x, y, x * 0.5f + y * 2f);
+            }
+        }
+
+        assertTrue(new FloatRasterCodec().encode(raster).length < 256 * 256 * 4 / 4);
+    }
+
+    @Test
+    public void testMultiRasterStream() throws Exception {
+        final InterleavedMultiRaster raster = new InterleavedMultiRaster(40, 30, A, B);
+        for (int y = 0; y < 30; y++) {
+            for (int x = 0; x < 40; x++) {
+                raster.setValue(x, y, A, (float) Math.sin(x * 0.1));
+                raster.setValue(x, y, B, y * 3);
+            }
+        }
+
+        final FloatRasterCodec codec = new FloatRasterCodec(0, 16, RowBandExecutor.SERIAL);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        codec.encode(raster, output);
+
+        final InterleavedMultiRaster decoded = new InterleavedMultiRaster(40, 30, B, A);
+        codec.decode(new ByteArrayInputStream(output.toByteArray()), decoded);
+        for (int y = 0; y < 30; y++) {
+            for (int x = 0; x < 40; x++) {
+                assertEquals(raster.getValue(x, y, A), decoded.getValue(x, y, A), 0f);
+                assertEquals(raster.getValue(x, y, B), decoded.getValue(x, y, B), 0f);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSizeMismatch() throws Exception {
+        final FloatRasterCodec codec = new FloatRasterCodec();
+        codec.decode(codec.encode(new RasterImpl(3, 3)), new RasterImpl(3, 4));
+    }
+
+    private RasterImpl createSmoothRaster(int sizeX, int sizeY) {
+        final RasterImpl raster = new RasterImpl(sizeX, sizeY);
+        for (int y = 0; y < sizeY; y++) {
+            for (int x = 0; x < sizeX; x++) {
+                raster.setValue(x, y, (float) (Math.sin(x * 0.05) * Math.cos(y * 0.07) * 100 + 500));
+            }
+        }
+        return raster;
+    }
+}
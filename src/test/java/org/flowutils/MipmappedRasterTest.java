@@ -0,0 +1,96 @@
+package org.flowutils;
+
+import org.flowutils.raster.field.single.RasterField;
+import org.flowutils.raster.raster.single.MipmappedRaster;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.flowutils.rectangle.ImmutableRectangle;
+import org.flowutils.rectangle.intrectangle.ImmutableIntRectangle;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MipmappedRasterTest {
+
+    @Test
+    public void testPyramid() throws Exception {
+        // Checkerboard pattern, which averages to 0.5 at all lower levels
+        final RasterImpl base = new RasterImpl(8, 5);
+        for (int y = 0; y < 5; y++) {
+            for (int x = 0; x < 8; x++) {
+                base.setValue(x, y, (x + y) % 2);
+            }
+        }
+
+        final MipmappedRaster raster = new MipmappedRaster(base);
+        assertEquals(4, raster.getLevelCount());
+        assertEquals(4, raster.getLevel(1).getSizeX());
+        assertEquals(3, raster.getLevel(1).getSizeY());
+        assertEquals(1, raster.getLevel(3).getSizeX());
+
+        // Full resolution for small sample sizes
+        assertEquals(1f, raster.sampleValue(1, 0, 1), 0.0001f);
+        assertEquals(0f, raster.sampleValue(2, 0, 0.5), 0.0001f);
+
+        // Averaged values for larger sample sizes
+        assertEquals(0.5f, raster.sampleValue(1, 0, 2), 0.0001f);
+        assertEquals(0.5f, raster.sampleValue(3.3, 2.7, 5), 0.0001f);
+        assertEquals(0.5f, raster.sampleValue(7, 4, 1000), 0.0001f);
+
+        // Blending between full resolution and the first level
+        assertEquals(0.75f, raster.sampleValue(1, 0, Math.sqrt(2)), 0.0001f);
+    }
+
+    @Test
+    public void testIncrementalUpdate() throws Exception {
+        final RasterImpl base = new RasterImpl(16, 16);
+        final MipmappedRaster raster = new MipmappedRaster(base);
+        assertEquals(0f, raster.getLevel(2).getValue(3, 3), 0.0001f);
+
+        // Changes through the mipmapped raster update the pyramid
+        raster.writeRow(15, 12, 4, new float[]{4, 4, 4, 4}, 0);
+        assertEquals(1f, raster.getLevel(2).getValue(3, 3), 0.0001f);
+        assertEquals(0.25f, raster.getLevel(3).getValue(1, 1), 0.0001f);
+        assertEquals(0f, raster.getLevel(2).getValue(2, 3), 0.0001f);
+
+        // Direct changes to the base raster need an invalidate
+        base.setValue(0, 0, 16);
+        assertEquals(0f, raster.getLevel(2).getValue(0, 0), 0.0001f);
+        raster.invalidate(new ImmutableIntRectangle(0, 0, 1, 1));
+        assertEquals(1f, raster.getLevel(2).getValue(0, 0), 0.0001f);
+
+        // Fields pass the sample size on to the raster
+        final RasterField field = new RasterField(raster, 0);
+        assertEquals(16f, field.getValue(0, 0, 1), 0.0001f);
+        assertEquals(1f, field.getValue(1.5, 1.5, 4), 0.0001f);
+        assertEquals(0.125f, field.getValue(1.5, 1.5, 16), 0.0001f);
+    }
+
+    @Test
+    public void testRenderUsesCellSampleSize() throws Exception {
+        // Left half 0, right half 1
+        final RasterImpl base = new RasterImpl(256, 256);
+        for (int y = 0; y < 256; y++) {
+            for (int x = 128; x < 256; x++) {
+                base.setValue(x, y, 1);
+            }
+        }
+        final RasterField field = new RasterField(new MipmappedRaster(base), 0);
+
+        // Rendering at 1:1 uses the full resolution
+        final RasterImpl target = new RasterImpl(256, 256);
+        field.renderToRaster(target, new ImmutableRectangle(0, 0, 255, 255));
+        assertEquals(0f, target.getValue(127, 100), 0.0001f);
+        assertEquals(1f, target.getValue(128, 100), 0.0001f);
+        assertEquals(0f, target.getValue(0, 0), 0.0001f);
+        assertEquals(1f, target.getValue(255, 255), 0.0001f);
+
+        // Rendering at a quarter of the size uses the lower resolution levels, which only blur near the edge
+        final RasterImpl small = new RasterImpl(64, 64);
+        field.renderToRaster(small, new ImmutableRectangle(0, 0, 255, 255));
+        assertEquals(0f, small.getValue(10, 10), 0.0001f);
+        assertEquals(1f, small.getValue(53, 10), 0.0001f);
+        final float edge = small.getValue(32, 10);
+        assertTrue(edge > 0 && edge < 1);
+    }
+}
@@ -0,0 +1,111 @@
+package org.flowutils;
+
+import org.flowutils.raster.raster.multi.CompositeMultiRaster;
+import org.flowutils.raster.raster.multi.InterleavedMultiRaster;
+import org.flowutils.raster.raster.multi.MultiRaster;
+import org.flowutils.raster.raster.multi.MultiRasterCursor;
+import org.flowutils.raster.raster.single.DirtyRegionTracker;
+import org.flowutils.raster.raster.single.HalfFloatRaster;
+import org.flowutils.raster.raster.single.Raster;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.flowutils.rectangle.intrectangle.ImmutableIntRectangle;
+import org.flowutils.rectangle.intrectangle.IntRectangle;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MultiRasterCursorTest {
+
+    private static final Symbol A = Symbol.get("a");
+    private static final Symbol B = Symbol.get("b");
+    private static final Symbol C = Symbol.get("c");
+
+    @Test
+    public void testInterleaved() throws Exception {
+        checkCursor(new InterleavedMultiRaster(5, 4, A, B, C));
+    }
+
+    @Test
+    public void testComposite() throws Exception {
+        checkCursor(new CompositeMultiRaster(5, 4, A, B, C));
+    }
+
+    @Test
+    public void testView() throws Exception {
+        final InterleavedMultiRaster raster = new InterleavedMultiRaster(9, 8, A, B, C);
+        checkCursor(raster.view(new ImmutableIntRectangle(2, 3, 6, 6)));
+    }
+
+    @Test
+    public void testNonArrayBackedChannel() throws Exception {
+        final Map<Symbol, Raster> channels = new LinkedHashMap<Symbol, Raster>();
+        channels.put(A, new RasterImpl(5, 4));
+        channels.put(B, new RasterImpl(5, 4));
+        channels.put(C, new HalfFloatRaster(5, 4));
+        checkCursor(new CompositeMultiRaster(5, 4, channels));
+    }
+
+    @Test
+    public void testDirtyRegion() throws Exception {
+        final InterleavedMultiRaster raster = new InterleavedMultiRaster(10, 10, A, B);
+        final DirtyRegionTracker tracker = new DirtyRegionTracker();
+        raster.setDirtyRegionTracker(tracker);
+
+        final MultiRasterCursor cursor = raster.createCursor(B);
+        cursor.moveTo(2, 3);
+        cursor.set(0, 1);
+        cursor.moveTo(5, 4);
+        cursor.set(0, 1);
+        assertFalse(tracker.isDirty());
+
+        cursor.close();
+        final IntRectangle bounds = tracker.getDirtyBounds();
+        assertEquals(2, bounds.getMinX());
+        assertEquals(3, bounds.getMinY());
+        assertEquals(5, bounds.getMaxX());
+        assertEquals(4, bounds.getMaxY());
+    }
+
+    private void checkCursor(MultiRaster raster) {
+        final int sizeX = raster.getSizeX();
+        final int sizeY = raster.getSizeY();
+
+        // Channel indexes follow the order given to the cursor, not the order of the raster
+        final MultiRasterCursor cursor = raster.createCursor(C, A);
+        assertEquals(2, cursor.getChannelCount());
+
+        final float[] values = new float[3];
+        int count = 0;
+        do {
+            assertEquals(count % sizeX, cursor.getX());
+            assertEquals(count / sizeX, cursor.getY());
+            values[1] = cursor.getX();
+            values[2] = cursor.getY();
+            cursor.write(values, 1);
+            count++;
+        } while (cursor.next());
+        cursor.close();
+        assertEquals(sizeX * sizeY, count);
+        assertEquals(sizeX - 1, cursor.getX());
+        assertEquals(sizeY - 1, cursor.getY());
+
+        for (int y = 0; y < sizeY; y++) {
+            for (int x = 0; x < sizeX; x++) {
+                assertEquals(x, raster.getValue(x, y, C), 0);
+                assertEquals(y, raster.getValue(x, y, A), 0);
+                assertEquals(0, raster.getValue(x, y, B), 0);
+            }
+        }
+
+        cursor.moveTo(3, 2);
+        cursor.read(values, 0);
+        assertEquals(3, values[0], 0);
+        assertEquals(2, values[1], 0);
+        cursor.set(1, 7);
+        assertEquals(7, cursor.get(1), 0);
+        assertEquals(7, raster.getValue(3, 2, A), 0);
+    }
+}
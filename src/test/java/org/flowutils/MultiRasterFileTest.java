@@ -0,0 +1,170 @@
+package org.flowutils;
+
+import org.flowutils.raster.raster.multi.BufferMultiRaster;
+import org.flowutils.raster.raster.multi.InterleavedMultiRaster;
+import org.flowutils.raster.raster.multi.MultiRasterFile;
+import org.flowutils.raster.raster.single.BufferRaster;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class MultiRasterFileTest {
+
+    private static final Symbol A = Symbol.get("a");
+    private static final Symbol B = Symbol.get("b");
+    private static final Symbol C = Symbol.get("c");
+
+    @Test
+    public void testSaveAndOpen() throws Exception {
+        final File file = File.createTempFile("multiRasterFileTest", ".raster");
+        try {
+            final InterleavedMultiRaster raster = new InterleavedMultiRaster(30, 20, A, B, C);
+            for (int y = 0; y < 20; y++) {
+                for (int x = 0; x < 30; x++) {
+                    raster.setValue(x, y, A, x);
+                    raster.setValue(x, y, B, y);
+                    raster.setValue(x, y, C, x * y);
+                }
+            }
+            MultiRasterFile.save(file, raster);
+
+            assertEquals(Arrays.asList(A, B, C), MultiRasterFile.readChannelIds(file));
+            assertEquals(0, file.length() % MultiRasterFile.DATA_ALIGNMENT);
+
+            // Read only
+            final BufferMultiRaster readOnly = MultiRasterFile.open(file, FileChannel.MapMode.READ_ONLY);
+            assertEquals(30, readOnly.getSizeX());
+            assertEquals(20, readOnly.getSizeY());
+            assertEquals(Arrays.asList(A, B, C), Arrays.asList(readOnly.getChannelIds().toArray()));
+            for (int y = 0; y < 20; y++) {
+                for (int x = 0; x < 30; x++) {
+                    assertEquals(x, readOnly.getValue(x, y, A), 0f);
+                    assertEquals(y, readOnly.getValue(x, y, B), 0f);
+                    assertEquals(x * y, readOnly.getValue(x, y, C), 0f);
+                }
+            }
+            try {
+                readOnly.setValue(0, 0, A, 1);
+                fail("Writing to a read only mapping should fail");
+            } catch (ReadOnlyBufferException e) {
+                // Expected
+            }
+
+            // Read write, changes end up in the file
+            final BufferMultiRaster readWrite = MultiRasterFile.open(file, FileChannel.MapMode.READ_WRITE);
+            readWrite.setValue(5, 6, B, -42);
+            readWrite.force();
+
+            // A single channel can be opened without the others
+            final BufferRaster channel = MultiRasterFile.openChannel(file, B, FileChannel.MapMode.READ_ONLY);
+            assertEquals(-42, channel.getValue(5, 6), 0f);
+            assertEquals(7, channel.getValue(5, 7), 0f);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCreate() throws Exception {
+        final File file = File.createTempFile("multiRasterFileTest", ".raster");
+        try {
+            final BufferMultiRaster raster = MultiRasterFile.create(file, 10, 5, Arrays.asList(C, A));
+            assertEquals(0, raster.getValue(9, 4, C), 0f);
+            raster.setValue(9, 4, C, 3.5f);
+            raster.force();
+
+            final BufferMultiRaster reopened = MultiRasterFile.open(file, FileChannel.MapMode.PRIVATE);
+            assertEquals(3.5f, reopened.getValue(9, 4, C), 0f);
+            assertEquals(0, reopened.getValue(9, 4, A), 0f);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidFile() throws Exception {
+        final File file = File.createTempFile("multiRasterFileTest", ".raster");
+        try {
+            try (FileOutputStream output = new FileOutputStream(file)) {
+                output.write(new byte[]{'F', 'U', 'R', 'X', 0, 0, 0, 1});
+            }
+            MultiRasterFile.open(file, FileChannel.MapMode.READ_ONLY);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCorruptChannelCount() throws Exception {
+        final File file = File.createTempFile("multiRasterFileTest", ".raster");
+        try {
+            MultiRasterFile.create(file, 4, 3, Arrays.asList(A, B));
+
+            // Overwrite the channel count, which follows the magic, version, size and format bytes
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.seek(20);
+                randomAccessFile.writeInt(Integer.MAX_VALUE);
+            }
+
+            try {
+                MultiRasterFile.open(file, FileChannel.MapMode.READ_ONLY);
+                fail("A channel count larger than the file should be rejected");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("channel count"));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCorruptChannelNames() throws Exception {
+        final File file = File.createTempFile("multiRasterFileTest", ".raster");
+        try {
+            MultiRasterFile.create(file, 4, 3, Arrays.asList(A, B));
+
+            // The name of the first channel follows the channel count and the name length
+            assertCorruptName(file, '-');
+            assertCorruptName(file, 'b');
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLongChannelName() throws Exception {
+        final char[] name = new char[40000];
+        Arrays.fill(name, 'x');
+        final Symbol longName = Symbol.get(new String(name));
+
+        final File file = File.createTempFile("multiRasterFileTest", ".raster");
+        try {
+            MultiRasterFile.create(file, 2, 2, Arrays.asList(A, longName));
+            assertEquals(Arrays.asList(A, longName), MultiRasterFile.readChannelIds(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void assertCorruptName(File file, char firstCharacter) throws Exception {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(26);
+            randomAccessFile.writeByte(firstCharacter);
+        }
+
+        try {
+            MultiRasterFile.open(file, FileChannel.MapMode.READ_ONLY);
+            fail("The channel name " + firstCharacter + " should be rejected");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.flowutils;
+
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.raster.multi.ChannelAccessPattern;
+import org.flowutils.raster.raster.multi.CompositeMultiRaster;
+import org.flowutils.raster.raster.multi.InterleavedMultiRaster;
+import org.flowutils.raster.raster.multi.MultiRaster;
+import org.flowutils.raster.raster.multi.MultiRasterBase;
+import org.flowutils.raster.raster.multi.MultiRasterLayouts;
+import org.flowutils.raster.raster.single.DirtyRegionTracker;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class MultiRasterLayoutTest {
+
+    private static final Symbol A = Symbol.get("a");
+    private static final Symbol B = Symbol.get("b");
+    private static final Symbol C = Symbol.get("c");
+
+    private static final RowBandExecutor PARALLEL = new RowBandExecutor(new ForkJoinPool(4), 1);
+
+    @Test
+    public void testCreate() throws Exception {
+        final MultiRasterBase perPixel = MultiRasterLayouts.create(4, 3, ChannelAccessPattern.PER_PIXEL, A, B);
+        assertTrue(perPixel instanceof InterleavedMultiRaster);
+        assertEquals(ChannelAccessPattern.PER_PIXEL, MultiRasterLayouts.getAccessPattern(perPixel));
+
+        final MultiRasterBase perChannel = MultiRasterLayouts.create(4, 3, ChannelAccessPattern.PER_CHANNEL, A, B);
+        assertTrue(perChannel instanceof CompositeMultiRaster);
+        assertEquals(ChannelAccessPattern.PER_CHANNEL, MultiRasterLayouts.getAccessPattern(perChannel));
+        assertFalse(perChannel.getChannel(A).isDataInterleaved());
+    }
+
+    @Test
+    public void testConversion() throws Exception {
+        // Wider than a copy block
+        final int sizeX = 600;
+        final int sizeY = 7;
+        final CompositeMultiRaster planar = new CompositeMultiRaster(sizeX, sizeY, A, B, C);
+        fillTestValues(planar);
+
+        final InterleavedMultiRaster interleaved = MultiRasterLayouts.toInterleaved(planar, PARALLEL);
+        assertSameValues(planar, interleaved);
+        assertEquals(PARALLEL, interleaved.getExecutor());
+
+        final CompositeMultiRaster roundTrip = MultiRasterLayouts.toPlanar(interleaved, RowBandExecutor.SERIAL);
+        assertSameValues(planar, roundTrip);
+
+        // Interleaved with a different channel order
+        final InterleavedMultiRaster reordered = new InterleavedMultiRaster(sizeX, sizeY, C, A, B);
+        reordered.copyFrom(interleaved);
+        assertSameValues(planar, reordered);
+
+        // Interleaved with the same channel order
+        final InterleavedMultiRaster copy = new InterleavedMultiRaster(sizeX, sizeY, A, B, C);
+        copy.setExecutor(PARALLEL);
+        copy.copyFrom(interleaved);
+        assertSameValues(planar, copy);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCopyWithMissingChannel() throws Exception {
+        new InterleavedMultiRaster(3, 3, A, B).copyFrom(new CompositeMultiRaster(3, 3, A));
+    }
+
+    @Test
+    public void testBulkOperations() throws Exception {
+        for (ChannelAccessPattern accessPattern : ChannelAccessPattern.values()) {
+            for (RowBandExecutor executor : new RowBandExecutor[]{RowBandExecutor.SERIAL, PARALLEL}) {
+                final MultiRasterBase raster = MultiRasterLayouts.create(30, 20, accessPattern, A, B);
+                raster.setExecutor(executor);
+                final DirtyRegionTracker tracker = new DirtyRegionTracker();
+                raster.setDirtyRegionTracker(tracker);
+
+                raster.fill(2);
+                assertTrue(tracker.isDirty());
+                raster.setValue(3, 4, B, 5);
+                raster.multiplyAdd(3, 1);
+
+                for (int y = 0; y < 20; y++) {
+                    for (int x = 0; x < 30; x++) {
+                        assertEquals(7, raster.getValue(x, y, A), 0);
+                        assertEquals(x == 3 && y == 4 ? 16 : 7, raster.getValue(x, y, B), 0);
+                    }
+                }
+            }
+        }
+    }
+
+    private void fillTestValues(MultiRaster raster) {
+        for (int y = 0; y < raster.getSizeY(); y++) {
+            for (int x = 0; x < raster.getSizeX(); x++) {
+                raster.setValue(x, y, A, x + y * 1000);
+                raster.setValue(x, y, B, -x);
+                raster.setValue(x, y, C, y * 0.5f);
+            }
+        }
+    }
+
+    private void assertSameValues(MultiRaster expected, MultiRaster actual) {
+        for (Symbol channel : expected.getChannelIds()) {
+            for (int y = 0; y < expected.getSizeY(); y++) {
+                for (int x = 0; x < expected.getSizeX(); x++) {
+                    assertEquals(expected.getValue(x, y, channel), actual.getValue(x, y, channel), 0);
+                }
+            }
+        }
+    }
+}
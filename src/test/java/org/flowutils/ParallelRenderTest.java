@@ -0,0 +1,110 @@
+package org.flowutils;
+
+import org.flowutils.raster.field.RenderListener;
+import org.flowutils.raster.field.multi.CompositeMultiField;
+import org.flowutils.raster.field.single.NoiseField;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.raster.multi.CompositeMultiRaster;
+import org.flowutils.raster.raster.multi.InterleavedMultiRaster;
+import org.flowutils.raster.raster.single.HalfFloatRaster;
+import org.flowutils.raster.raster.single.Raster;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.flowutils.rectangle.ImmutableRectangle;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ParallelRenderTest {
+
+    private static final Symbol A = Symbol.get("a");
+    private static final Symbol B = Symbol.get("b");
+
+    private static final RowBandExecutor PARALLEL = new RowBandExecutor(new ForkJoinPool(4), 1);
+    private static final ImmutableRectangle AREA = new ImmutableRectangle(-3.3, 1.7, 11.1, 23.9);
+
+    @Test
+    public void testFieldRenderingIsIdentical() throws Exception {
+        final NoiseField field = new NoiseField(0.7, 1.3);
+        checkFieldRendering(field, new RasterImpl(123, 77), new RasterImpl(123, 77));
+        checkFieldRendering(field, new HalfFloatRaster(50, 40), new HalfFloatRaster(50, 40));
+        checkFieldRendering(field, new RasterImpl(3, 2), new RasterImpl(3, 2));
+    }
+
+    private void checkFieldRendering(NoiseField field, Raster serial, Raster parallel) {
+        field.setExecutor(RowBandExecutor.SERIAL);
+        field.renderToRaster(serial, AREA);
+
+        final ProgressListener listener = new ProgressListener();
+        field.setExecutor(PARALLEL);
+        field.renderToRaster(parallel, AREA, null, listener);
+        assertEquals(1.0, listener.lastProgress, 0);
+
+        for (int y = 0; y < serial.getSizeY(); y++) {
+            for (int x = 0; x < serial.getSizeX(); x++) {
+                assertEquals(Float.floatToRawIntBits(serial.getValue(x, y)), Float.floatToRawIntBits(parallel.getValue(x, y)));
+            }
+        }
+    }
+
+    @Test
+    public void testMultiFieldRenderingIsIdentical() throws Exception {
+        final CompositeMultiField field = new CompositeMultiField();
+        field.addChannel(A, new NoiseField(0.5, 0.5));
+        field.addChannel(B, new NoiseField(2, 3, 10, 20));
+
+        final CompositeMultiRaster serial = new CompositeMultiRaster(97, 61, A, B);
+        field.renderToRaster(serial, AREA);
+
+        final InterleavedMultiRaster parallel = new InterleavedMultiRaster(97, 61, A, B);
+        field.setExecutor(PARALLEL);
+        final ProgressListener listener = new ProgressListener();
+        field.renderToRaster(parallel, AREA, null, listener);
+        assertEquals(1.0, listener.lastProgress, 0);
+
+        for (Symbol channel : serial.getChannelIds()) {
+            for (int y = 0; y < 61; y++) {
+                for (int x = 0; x < 97; x++) {
+                    assertEquals(Float.floatToRawIntBits(serial.getValue(x, y, channel)),
+                                 Float.floatToRawIntBits(parallel.getValue(x, y, channel)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParallelCancel() throws Exception {
+        final NoiseField field = new NoiseField();
+        field.setExecutor(PARALLEL);
+
+        final RasterImpl raster = new RasterImpl(100, 1000);
+        final ProgressListener listener = new ProgressListener();
+        listener.cancelAfter = 1;
+        field.renderToRaster(raster, AREA, null, listener);
+
+        assertEquals(1, listener.calls);
+        assertTrue(listener.lastProgress < 1);
+
+        // The bands that had not yet started are skipped
+        int renderedRows = 0;
+        for (int y = 0; y < 1000; y++) {
+            if (raster.getValue(99, y) != 0) renderedRows++;
+        }
+        assertTrue(renderedRows < 500);
+    }
+
+    private static final class ProgressListener implements RenderListener {
+        private double lastProgress = -1;
+        private int calls = 0;
+        private int cancelAfter = Integer.MAX_VALUE;
+
+        @Override public boolean onRenderProgress(double progress) {
+            // The listener is called from one thread at a time, with increasing progress
+            assertTrue(progress >= lastProgress);
+            lastProgress = progress;
+            calls++;
+            return calls < cancelAfter;
+        }
+    }
+}
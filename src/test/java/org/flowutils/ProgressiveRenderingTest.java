@@ -0,0 +1,171 @@
+package org.flowutils;
+
+import org.flowutils.raster.field.MultiFieldToRawImageRenderer;
+import org.flowutils.raster.field.ProgressiveRenderListener;
+import org.flowutils.raster.field.multi.CompositeMultiField;
+import org.flowutils.raster.field.single.FieldBase;
+import org.flowutils.rawimage.RawImage;
+import org.flowutils.rawimage.RawImageRendererBase;
+import org.flowutils.rectangle.ImmutableRectangle;
+import org.flowutils.rectangle.intrectangle.ImmutableIntRectangle;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProgressiveRenderingTest {
+
+    private static final Symbol R = Symbol.get("r");
+    private static final Symbol G = Symbol.get("g");
+
+    @Test
+    public void testProgressiveRendererBase() throws Exception {
+        final CountingRenderer renderer = new CountingRenderer();
+        final RawImage expected = new RawImage(37, 21);
+        renderer.renderImage(expected, null, null, null);
+
+        final RawImage image = new RawImage(37, 21);
+        final PassListener listener = new PassListener(image);
+        renderer.setProgressive(true);
+        renderer.resetCounts();
+        renderer.renderImage(image, null, null, listener);
+
+        // Each pixel is sampled exactly once, and the result matches the normal rendering
+        for (int y = 0; y < 21; y++) {
+            for (int x = 0; x < 37; x++) {
+                assertEquals(1, renderer.counts[y][x]);
+                assertEquals(expected.getPixel(x, y), image.getPixel(x, y));
+            }
+        }
+
+        // The passes are reported from coarse to fine
+        assertEquals(4, listener.steps.size());
+        assertEquals(8, (int) listener.steps.get(0));
+        assertEquals(1, (int) listener.steps.get(3));
+        assertEquals(1.0, listener.lastProgress, 0.0001);
+
+        // The first pass fills the blocks between the sampled pixels
+        final int[] firstPass = listener.images.get(0);
+        assertEquals(renderer.getPixelColor(0, 0), firstPass[5 * 37 + 3]);
+        assertEquals(renderer.getPixelColor(32, 16), firstPass[20 * 37 + 36]);
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final CountingRenderer renderer = new CountingRenderer();
+        renderer.setProgressive(true);
+
+        final RawImage image = new RawImage(32, 32);
+        renderer.renderImage(image, null, null, new ProgressiveRenderListener() {
+            @Override public boolean onPassRendered(int pixelStep) {
+                return false;
+            }
+
+            @Override public boolean onRenderProgress(double progress) {
+                return true;
+            }
+        });
+
+        // Only the first pass was rendered
+        int sampled = 0;
+        for (int[] row : renderer.counts) {
+            for (int count : row) {
+                sampled += count;
+            }
+        }
+        assertEquals(16, sampled);
+    }
+
+    @Test
+    public void testProgressiveMultiFieldRenderer() throws Exception {
+        final CompositeMultiField field = new CompositeMultiField();
+        field.addChannel(R, new LinearField(1, 0));
+        field.addChannel(G, new LinearField(0, 1));
+
+        final MultiFieldToRawImageRenderer renderer = new MultiFieldToRawImageRenderer(field, R, G, null);
+        final ImmutableRectangle sourceArea = new ImmutableRectangle(0, 0, 1, 1);
+
+        final RawImage expected = new RawImage(30, 40);
+        renderer.renderImage(expected, expected.getExtent(), sourceArea, null);
+
+        final RawImage image = new RawImage(30, 40);
+        renderer.setProgressive(true);
+        final PassListener listener = new PassListener(image);
+        renderer.renderImage(image, image.getExtent(), sourceArea, listener);
+        assertEquals(4, listener.steps.size());
+
+        for (int y = 0; y < 40; y++) {
+            for (int x = 0; x < 30; x++) {
+                for (int component = 0; component < 4; component++) {
+                    final int shift = component * 8;
+                    assertEquals((expected.getPixel(x, y) >>> shift) & 0xFF, (image.getPixel(x, y) >>> shift) & 0xFF, 1);
+                }
+            }
+        }
+
+        // Rendering a part of the image only changes that part
+        final RawImage partial = new RawImage(30, 40);
+        final int background = partial.getPixel(0, 0);
+        renderer.renderImage(partial, new ImmutableIntRectangle(5, 7, 20, 30), sourceArea, null);
+        assertEquals(background, partial.getPixel(4, 10));
+        assertEquals(background, partial.getPixel(10, 31));
+        assertEquals(background, partial.getPixel(21, 10));
+        assertEquals(expected.getPixel(29, 39), partial.getPixel(20, 30));
+    }
+
+    private static final class CountingRenderer extends RawImageRendererBase {
+        private int[][] counts = new int[64][64];
+
+        void resetCounts() {
+            counts = new int[64][64];
+        }
+
+        int getPixelColor(int x, int y) {
+            return 0xFF000000 | (x * 5) << 16 | (y * 7) << 8 | ((x * y) & 0xFF);
+        }
+
+        @Override protected int getPixelColor(int x, int y, int totalWidth, int totalHeight) {
+            counts[y][x]++;
+            return getPixelColor(x, y);
+        }
+    }
+
+    private static final class PassListener implements ProgressiveRenderListener {
+        private final RawImage image;
+        private final List<Integer> steps = new ArrayList<Integer>();
+        private final List<int[]> images = new ArrayList<int[]>();
+        private double lastProgress = 0;
+
+        private PassListener(RawImage image) {
+            this.image = image;
+        }
+
+        @Override public boolean onPassRendered(int pixelStep) {
+            steps.add(pixelStep);
+            images.add(image.getBuffer().clone());
+            return true;
+        }
+
+        @Override public boolean onRenderProgress(double progress) {
+            assertTrue(progress >= lastProgress);
+            lastProgress = progress;
+            return true;
+        }
+    }
+
+    private static final class LinearField extends FieldBase {
+        private final double scaleX;
+        private final double scaleY;
+
+        private LinearField(double scaleX, double scaleY) {
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+        }
+
+        @Override public float getValue(double x, double y, double sampleSize) {
+            return (float) (x * scaleX + y * scaleY);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.flowutils;
+
+import org.flowutils.raster.field.RenderListener;
+import org.flowutils.raster.field.volume.Field3DBase;
+import org.flowutils.raster.field.volume.NoiseField3D;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.raster.volume.ChunkedRaster3D;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class Raster3DTest {
+
+    @Test
+    public void testChunkAllocation() throws Exception {
+        final ChunkedRaster3D raster = new ChunkedRaster3D(20, 10, 5, 8, 2);
+        assertEquals(3, raster.getChunkCountX());
+        assertEquals(2, raster.getChunkCountY());
+        assertEquals(1, raster.getChunkCountZ());
+        assertEquals(0, raster.getAllocatedChunkCount());
+        assertEquals(2, raster.getValue(19, 9, 4), 0);
+
+        // Setting a cell to the value of a uniform chunk does not allocate it
+        raster.setValue(3, 3, 3, 2);
+        assertEquals(0, raster.getAllocatedChunkCount());
+
+        raster.setValue(17, 9, 4, 5);
+        assertEquals(1, raster.getAllocatedChunkCount());
+        assertFalse(raster.isChunkUniform(2, 1, 0));
+        assertEquals(5, raster.getValue(17, 9, 4), 0);
+        assertEquals(2, raster.getValue(16, 9, 4), 0);
+
+        raster.setValue(17, 9, 4, 2);
+        raster.compact();
+        assertEquals(0, raster.getAllocatedChunkCount());
+        assertEquals(2, raster.getValue(17, 9, 4), 0);
+
+        // Cells outside the raster do not prevent an edge chunk from being uniform
+        final float[] chunk = new float[8 * 8 * 8];
+        raster.readChunk(2, 1, 0, chunk);
+        chunk[7] = 9;
+        raster.writeChunk(2, 1, 0, chunk);
+        assertTrue(raster.isChunkUniform(2, 1, 0));
+        chunk[0] = 9;
+        raster.writeChunk(2, 1, 0, chunk);
+        assertFalse(raster.isChunkUniform(2, 1, 0));
+        assertEquals(9, raster.getValue(16, 8, 0), 0);
+
+        raster.fill(1);
+        assertEquals(0, raster.getAllocatedChunkCount());
+        assertEquals(1, raster.getValue(16, 8, 0), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutside() throws Exception {
+        new ChunkedRaster3D(4, 4, 4).getValue(0, 4, 0);
+    }
+
+    @Test
+    public void testTrilinearSampling() throws Exception {
+        final ChunkedRaster3D raster = new ChunkedRaster3D(6, 5, 7, 4, 0);
+        for (int z = 0; z < 7; z++) {
+            for (int y = 0; y < 5; y++) {
+                for (int x = 0; x < 6; x++) {
+                    raster.setValue(x, y, z, x + 2 * y + 3 * z);
+                }
+            }
+        }
+
+        // Linear functions are reproduced exactly, also across chunk borders and at the far edges
+        assertEquals(1.5f + 2 * 2.25f + 3 * 3.5f, raster.sampleValue(1.5, 2.25, 3.5), 0.0001f);
+        assertEquals(5 + 2 * 4 + 3 * 6, raster.sampleValue(5, 4, 6), 0.0001f);
+        assertEquals(3.7f, raster.sampleValue(3.7, 0, 0), 0.0001f);
+    }
+
+    @Test
+    public void testRenderSparseField() throws Exception {
+        // A ball in a large empty volume
+        final Field3DBase ball = new Field3DBase() {
+            @Override public float getValue(double x, double y, double z, double sampleSize) {
+                final double dx = x - 20;
+                final double dy = y - 30;
+                final double dz = z - 40;
+                return dx * dx + dy * dy + dz * dz < 100 ? 1 : 0;
+            }
+        };
+
+        final ChunkedRaster3D serial = new ChunkedRaster3D(128, 128, 128);
+        ball.renderToRaster3D(serial, 0, 0, 0, 127, 127, 127);
+        assertTrue(serial.getAllocatedChunkCount() > 0);
+        assertTrue(serial.getAllocatedChunkCount() <= 2 * 2 * 3);
+        assertEquals(1, serial.getValue(20, 30, 40), 0);
+        assertEquals(0, serial.getValue(20, 30, 51), 0);
+
+        final ChunkedRaster3D parallel = new ChunkedRaster3D(128, 128, 128);
+        final double[] lastProgress = {0};
+        ball.renderToRaster3D(parallel, 0, 0, 0, 127, 127, 127, new RowBandExecutor(new ForkJoinPool(4), 1), new RenderListener() {
+            @Override public boolean onRenderProgress(double progress) {
+                assertTrue(progress >= lastProgress[0]);
+                lastProgress[0] = progress;
+                return true;
+            }
+        });
+        assertEquals(1.0, lastProgress[0], 0);
+        assertEquals(serial.getAllocatedChunkCount(), parallel.getAllocatedChunkCount());
+        for (int z = 25; z < 55; z++) {
+            for (int y = 15; y < 45; y++) {
+                for (int x = 5; x < 35; x++) {
+                    assertEquals(serial.getValue(x, y, z), parallel.getValue(x, y, z), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRenderNoise() throws Exception {
+        final NoiseField3D noise = new NoiseField3D(0.1, 0.2, 0.3);
+        final ChunkedRaster3D raster = new ChunkedRaster3D(20, 9, 11, 8, 0);
+        noise.renderToRaster3D(raster, 0, 0, 0, 19, 8, 10);
+
+        for (int z = 0; z < 11; z++) {
+            for (int y = 0; y < 9; y++) {
+                for (int x = 0; x < 20; x++) {
+                    assertEquals(noise.getValue(x, y, z), raster.getValue(x, y, z), 0.00001f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCancelRendering() throws Exception {
+        final ChunkedRaster3D raster = new ChunkedRaster3D(64, 64, 64, 16, 0);
+        final int[] calls = {0};
+        new NoiseField3D().renderToRaster3D(raster, 0, 0, 0, 10, 10, 10, RowBandExecutor.SERIAL, new RenderListener() {
+            @Override public boolean onRenderProgress(double progress) {
+                calls[0]++;
+                return calls[0] < 3;
+            }
+        });
+        assertEquals(3, calls[0]);
+        assertEquals(3, raster.getAllocatedChunkCount());
+    }
+}
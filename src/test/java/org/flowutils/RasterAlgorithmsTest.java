@@ -0,0 +1,150 @@
+package org.flowutils;
+
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.raster.single.ConnectedComponents;
+import org.flowutils.raster.raster.single.DistanceTransform;
+import org.flowutils.raster.raster.single.FloodFill;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class RasterAlgorithmsTest {
+
+    @Test
+    public void testDistanceTransform() throws Exception {
+        final int sizeX = 40;
+        final int sizeY = 30;
+        final RasterImpl mask = new RasterImpl(sizeX, sizeY);
+        final Random random = new Random(3);
+        for (int i = 0; i < 12; i++) {
+            mask.setValue(random.nextInt(sizeX), random.nextInt(sizeY), 1);
+        }
+
+        final RasterImpl serial = new RasterImpl(sizeX, sizeY);
+        DistanceTransform.calculate(mask, 0.5f, serial);
+        final RasterImpl parallel = new RasterImpl(sizeX, sizeY);
+        DistanceTransform.calculate(mask, 0.5f, parallel, new RowBandExecutor(new ForkJoinPool(4), 1));
+
+        for (int y = 0; y < sizeY; y++) {
+            for (int x = 0; x < sizeX; x++) {
+                // Brute force distance to the closest feature
+                double closest = Double.POSITIVE_INFINITY;
+                for (int fy = 0; fy < sizeY; fy++) {
+                    for (int fx = 0; fx < sizeX; fx++) {
+                        if (mask.getValue(fx, fy) > 0.5f) {
+                            closest = Math.min(closest, Math.sqrt((fx - x) * (fx - x) + (fy - y) * (fy - y)));
+                        }
+                    }
+                }
+
+                assertEquals(closest, serial.getValue(x, y), 0.0001);
+                assertEquals(serial.getValue(x, y), parallel.getValue(x, y), 0f);
+            }
+        }
+
+        // Without features everything is infinitely far away
+        final RasterImpl empty = new RasterImpl(5, 4);
+        DistanceTransform.calculate(empty, 0.5f, empty);
+        assertEquals(Float.POSITIVE_INFINITY, empty.getValue(2, 2), 0f);
+    }
+
+    @Test
+    public void testLargeDistanceTransform() throws Exception {
+        // Squared coordinates along a long row are too large to calculate exactly in float precision
+        final int sizeX = 12000;
+        final int sizeY = 3;
+        final int[] featureX = {5, 4099, 4100, 9001, 11998};
+        final int[] featureY = {0, 2, 0, 1, 2};
+        final RasterImpl mask = new RasterImpl(sizeX, sizeY);
+        for (int i = 0; i < featureX.length; i++) {
+            mask.setValue(featureX[i], featureY[i], 1);
+        }
+
+        final RasterImpl distances = new RasterImpl(sizeX, sizeY);
+        DistanceTransform.calculate(mask, 0.5f, distances);
+
+        for (int y = 0; y < sizeY; y++) {
+            for (int x = 0; x < sizeX; x++) {
+                double closest = Double.POSITIVE_INFINITY;
+                for (int i = 0; i < featureX.length; i++) {
+                    final long dx = featureX[i] - x;
+                    final long dy = featureY[i] - y;
+                    closest = Math.min(closest, Math.sqrt(dx * dx + dy * dy));
+                }
+
+                assertEquals((float) closest, distances.getValue(x, y), Math.ulp((float) closest));
+            }
+        }
+    }
+
+    @Test
+    public void testFloodFill() throws Exception {
+        final RasterImpl raster = createRaster(
+                "#.....#",
+                "#.###.#",
+                "#.#.#.#",
+                "#.###..",
+                "###....");
+
+        // The enclosed cell is not reached
+        assertEquals(16, FloodFill.fill(raster, 1, 0, 5));
+        assertEquals(5f, raster.getValue(6, 4), 0f);
+        assertEquals(5f, raster.getValue(1, 3), 0f);
+        assertEquals(0f, raster.getValue(3, 2), 0f);
+        assertEquals(1f, raster.getValue(2, 2), 0f);
+
+        // Filling with a value inside the filled range terminates
+        assertEquals(1, FloodFill.fill(raster, 3, 2, -1, 0.5f, 0.25f));
+        assertEquals(0.25f, raster.getValue(3, 2), 0f);
+
+        // Start cell outside the range
+        assertEquals(0, FloodFill.fill(raster, 0, 0, 2, 3, 7));
+    }
+
+    @Test
+    public void testConnectedComponents() throws Exception {
+        final RasterImpl raster = createRaster(
+                "##..#",
+                "#...#",
+                "..#..",
+                ".#.##",
+                ".#..#");
+
+        final RasterImpl labels = new RasterImpl(5, 5);
+        assertEquals(5, ConnectedComponents.label(raster, 0.5f, labels, false));
+        assertEquals(1f, labels.getValue(0, 1), 0f);
+        assertEquals(2f, labels.getValue(4, 1), 0f);
+        assertEquals(3f, labels.getValue(2, 2), 0f);
+        assertEquals(5f, labels.getValue(4, 4), 0f);
+        assertEquals(4f, labels.getValue(1, 4), 0f);
+        assertEquals(0f, labels.getValue(2, 0), 0f);
+
+        // Diagonals join the middle cell with the cells below it
+        assertEquals(3, ConnectedComponents.label(raster, 0.5f, labels, true));
+        assertEquals(3f, labels.getValue(4, 4), 0f);
+        assertEquals(3f, labels.getValue(1, 4), 0f);
+
+        // A U shape is first seen as two components that merge on the last row
+        final RasterImpl u = createRaster(
+                "#.#.#",
+                "#.#.#",
+                "#####");
+        assertEquals(1, ConnectedComponents.label(u, 0.5f, u, false));
+        assertEquals(1f, u.getValue(4, 0), 0f);
+        assertEquals(0f, u.getValue(1, 0), 0f);
+    }
+
+    private RasterImpl createRaster(String... rows) {
+        final RasterImpl raster = new RasterImpl(rows[0].length(), rows.length);
+        for (int y = 0; y < rows.length; y++) {
+            for (int x = 0; x < rows[y].length(); x++) {
+                raster.setValue(x, y, rows[y].charAt(x) == '#' ? 1 : 0);
+            }
+        }
+        return raster;
+    }
+}
@@ -0,0 +1,127 @@
+package org.flowutils;
+
+import org.flowutils.raster.codec.RasterDeltaCodec;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.raster.multi.InterleavedMultiRaster;
+import org.flowutils.raster.raster.single.Raster;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.flowutils.raster.raster.single.TiledRaster;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class RasterDeltaCodecTest {
+
+    private static final Symbol A = Symbol.get("a");
+    private static final Symbol B = Symbol.get("b");
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final RasterImpl previous = createRandomRaster(100, 70, 1);
+        final RasterImpl current = copy(previous);
+
+        // A few scattered changes, including special values
+        current.setValue(0, 0, 5.5f);
+        current.setValue(99, 69, Float.NaN);
+        current.setValue(50, 33, -0f);
+        current.setValue(51, 33, Float.NEGATIVE_INFINITY);
+        current.setValue(10, 60, current.getValue(10, 60) + 0.001f);
+
+        final RasterDeltaCodec codec = new RasterDeltaCodec(16, RowBandExecutor.SERIAL);
+        final byte[] delta = codec.encode(previous, current);
+
+        // Much smaller than the full raster
+        assertTrue(delta.length < 200);
+
+        final RasterImpl target = copy(previous);
+        codec.apply(delta, target);
+        assertBitsEqual(current, target);
+
+        // The patch is the same when encoded in parallel
+        final RasterDeltaCodec parallelCodec = new RasterDeltaCodec(16, new RowBandExecutor(new ForkJoinPool(4), 1));
+        assertArrayEquals(delta, parallelCodec.encode(previous, current));
+    }
+
+    @Test
+    public void testUnchangedAndFullyChanged() throws Exception {
+        final RasterImpl previous = createRandomRaster(33, 17, 2);
+        final RasterImpl current = createRandomRaster(33, 17, 3);
+        final RasterDeltaCodec codec = new RasterDeltaCodec();
+
+        final byte[] noChanges = codec.encode(previous, copy(previous));
+        assertTrue(noChanges.length < 10);
+        final RasterImpl target = copy(previous);
+        codec.apply(noChanges, target);
+        assertBitsEqual(previous, target);
+
+        // Works with rasters that are not array backed too
+        final TiledRaster tiledTarget = new TiledRaster(33, 17, 8, 0);
+        tiledTarget.copyFrom(previous);
+        codec.apply(codec.encode(previous, current), tiledTarget);
+        assertBitsEqual(current, tiledTarget);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSizeMismatch() throws Exception {
+        final RasterDeltaCodec codec = new RasterDeltaCodec();
+        final byte[] delta = codec.encode(new RasterImpl(4, 4), new RasterImpl(4, 4));
+        codec.apply(delta, new RasterImpl(4, 5));
+    }
+
+    @Test
+    public void testMultiRasterAndStreams() throws Exception {
+        final InterleavedMultiRaster previous = new InterleavedMultiRaster(20, 10, A, B);
+        final InterleavedMultiRaster current = new InterleavedMultiRaster(20, 10, A, B);
+        final InterleavedMultiRaster target = new InterleavedMultiRaster(20, 10, A, B);
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 20; x++) {
+                previous.setValue(x, y, A, x);
+                previous.setValue(x, y, B, y);
+                target.setValue(x, y, A, x);
+                target.setValue(x, y, B, y);
+                current.setValue(x, y, A, x);
+                current.setValue(x, y, B, x == y ? -1 : y);
+            }
+        }
+
+        final RasterDeltaCodec codec = new RasterDeltaCodec();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        codec.writeDelta(output, previous, current);
+        codec.readAndApplyDelta(new ByteArrayInputStream(output.toByteArray()), target, 1024);
+
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 20; x++) {
+                assertEquals(current.getValue(x, y, A), target.getValue(x, y, A), 0f);
+                assertEquals(current.getValue(x, y, B), target.getValue(x, y, B), 0f);
+            }
+        }
+    }
+
+    private void assertBitsEqual(Raster expected, Raster actual) {
+        for (int y = 0; y < expected.getSizeY(); y++) {
+            for (int x = 0; x < expected.getSizeX(); x++) {
+                assertEquals(Float.floatToRawIntBits(expected.getValue(x, y)), Float.floatToRawIntBits(actual.getValue(x, y)));
+            }
+        }
+    }
+
+    private RasterImpl copy(RasterImpl raster) {
+        return new RasterImpl(raster.getSizeX(), raster.getSizeY(), raster.getData().clone());
+    }
+
+    private RasterImpl createRandomRaster(int sizeX, int sizeY, long seed) {
+        final Random random = new Random(seed);
+        final RasterImpl raster = new RasterImpl(sizeX, sizeY);
+        for (int y = 0; y < sizeY; y++) {
+            for (int x = 0; x < sizeX; x++) {
+                raster.setValue(x, y, random.nextFloat() * 100);
+            }
+        }
+        return raster;
+    }
+}
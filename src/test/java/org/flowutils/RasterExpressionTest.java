@@ -0,0 +1,87 @@
+package org.flowutils;
+
+import org.flowutils.raster.expression.RasterExpression;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.raster.multi.InterleavedMultiRaster;
+import org.flowutils.raster.raster.single.Raster;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class RasterExpressionTest {
+
+    private static final Symbol A = Symbol.get("a");
+    private static final Symbol B = Symbol.get("b");
+    private static final Symbol C = Symbol.get("c");
+
+    @Test
+    public void testEvaluate() throws Exception {
+        final RasterImpl a = createRaster(2000, 3, 1);
+        final RasterImpl b = createRaster(2000, 3, 2);
+        final RasterImpl target = new RasterImpl(2000, 3);
+
+        RasterExpression.of(a).multiply(2).add(RasterExpression.of(b), 0.5f, 1).evaluateTo(target);
+
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 2000; x++) {
+                assertEquals(a.getValue(x, y) * 2 + b.getValue(x, y) * 0.5f + 1, target.getValue(x, y), 0.0001f);
+            }
+        }
+    }
+
+    @Test
+    public void testSharedNodesAndInPlace() throws Exception {
+        final RasterImpl a = createRaster(13, 7, 1);
+        final RasterImpl original = createRaster(13, 7, 1);
+
+        // a = (a + 1) * (a + 1), evaluated in place
+        final RasterExpression plusOne = RasterExpression.of(a).add(1);
+        plusOne.multiply(plusOne).clamp(0, 50).evaluateTo(a);
+
+        for (int y = 0; y < 7; y++) {
+            for (int x = 0; x < 13; x++) {
+                final float v = original.getValue(x, y) + 1;
+                assertEquals(Math.min(50, v * v), a.getValue(x, y), 0.0001f);
+            }
+        }
+    }
+
+    @Test
+    public void testInterleavedParallel() throws Exception {
+        final InterleavedMultiRaster multiRaster = new InterleavedMultiRaster(301, 211, A, B, C);
+        final Raster a = multiRaster.getChannel(A);
+        final Raster b = multiRaster.getChannel(B);
+        final Raster c = multiRaster.getChannel(C);
+        for (int y = 0; y < 211; y++) {
+            for (int x = 0; x < 301; x++) {
+                a.setValue(x, y, x * 0.1f);
+                b.setValue(x, y, y * 0.3f);
+            }
+        }
+
+        final RasterImpl serialResult = new RasterImpl(301, 211);
+        final RasterExpression expression = RasterExpression.of(a).multiply(RasterExpression.of(b)).max(RasterExpression.constant(3));
+        expression.evaluateTo(serialResult);
+        expression.evaluateTo(c, new RowBandExecutor(new ForkJoinPool(3), 1));
+
+        for (int y = 0; y < 211; y++) {
+            for (int x = 0; x < 301; x++) {
+                assertEquals(Math.max(3, a.getValue(x, y) * b.getValue(x, y)), c.getValue(x, y), 0.0001f);
+                assertEquals(serialResult.getValue(x, y), c.getValue(x, y), 0f);
+            }
+        }
+    }
+
+    private RasterImpl createRaster(int sizeX, int sizeY, int seed) {
+        final RasterImpl raster = new RasterImpl(sizeX, sizeY);
+        for (int y = 0; y < sizeY; y++) {
+            for (int x = 0; x < sizeX; x++) {
+                raster.setValue(x, y, (float) Math.sin(x * 0.37 + y * 1.7 + seed) * 10);
+            }
+        }
+        return raster;
+    }
+}
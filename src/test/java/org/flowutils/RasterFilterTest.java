@@ -0,0 +1,136 @@
+package org.flowutils;
+
+import org.flowutils.raster.field.single.RasterField;
+import org.flowutils.raster.filter.BoxBlur;
+import org.flowutils.raster.filter.RasterFilter;
+import org.flowutils.raster.filter.SeparableConvolution;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.raster.multi.InterleavedMultiRaster;
+import org.flowutils.raster.raster.single.Raster;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class RasterFilterTest {
+
+    private static final Symbol A = Symbol.get("a");
+    private static final Symbol B = Symbol.get("b");
+
+    @Test
+    public void testConvolutionEdgeHandling() throws Exception {
+        final RasterImpl source = createTestRaster(9, 6);
+        final float[] weights = {1, 2, 4, 3, 0.5f};
+
+        checkConvolution(source, weights, true, true, false, 0);
+        checkConvolution(source, weights, false, true, true, 0);
+        checkConvolution(source, weights, true, false, false, -3);
+        checkConvolution(source, weights, false, false, false, 2);
+        checkConvolution(source, weights, false, false, true, 0);
+    }
+
+    @Test
+    public void testBoxBlurEdgeHandling() throws Exception {
+        final RasterImpl source = createTestRaster(9, 6);
+
+        for (int radius = 0; radius <= 3; radius++) {
+            final float[] weights = new float[2 * radius + 1];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = 1f / weights.length;
+            }
+
+            checkFilter(source, new BoxBlur(radius, true, true, false, 0, RowBandExecutor.SERIAL), weights, true, true, false, 0);
+            checkFilter(source, new BoxBlur(radius, false, false, true, 0, RowBandExecutor.SERIAL), weights, false, false, true, 0);
+            checkFilter(source, new BoxBlur(radius, false, true, false, 5, RowBandExecutor.SERIAL), weights, false, true, false, 5);
+        }
+    }
+
+    @Test
+    public void testGaussian() throws Exception {
+        final float[] weights = SeparableConvolution.gaussianKernel(1.5);
+        assertEquals(11, weights.length);
+        assertEquals(weights[4], weights[6], 0f);
+
+        float sum = 0;
+        for (float weight : weights) {
+            sum += weight;
+        }
+        assertEquals(1f, sum, 0.0001f);
+
+        // A blurred constant raster stays constant
+        final RasterImpl raster = new RasterImpl(20, 10);
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 20; x++) {
+                raster.setValue(x, y, 3f);
+            }
+        }
+        SeparableConvolution.gaussian(1.5).apply(raster);
+        assertEquals(3f, raster.getValue(0, 0), 0.0001f);
+        assertEquals(3f, raster.getValue(10, 5), 0.0001f);
+    }
+
+    @Test
+    public void testParallelAndInterleavedChannels() throws Exception {
+        // Wider than a column block, so several blocks are processed
+        final int sizeX = 700;
+        final int sizeY = 40;
+        final RasterImpl source = createTestRaster(sizeX, sizeY);
+
+        final RasterImpl serialResult = new RasterImpl(sizeX, sizeY);
+        new BoxBlur(4).apply(source, serialResult);
+
+        final InterleavedMultiRaster multiRaster = new InterleavedMultiRaster(sizeX, sizeY, A, B);
+        for (int y = 0; y < sizeY; y++) {
+            for (int x = 0; x < sizeX; x++) {
+                multiRaster.setValue(x, y, A, source.getValue(x, y));
+            }
+        }
+        final RowBandExecutor executor = new RowBandExecutor(new ForkJoinPool(4), 1);
+        new BoxBlur(4, false, false, true, 0, executor).apply(multiRaster.getChannel(A));
+
+        for (int y = 0; y < sizeY; y++) {
+            for (int x = 0; x < sizeX; x++) {
+                assertEquals(Float.floatToRawIntBits(serialResult.getValue(x, y)),
+                             Float.floatToRawIntBits(multiRaster.getValue(x, y, A)));
+                assertEquals(0f, multiRaster.getValue(x, y, B), 0f);
+            }
+        }
+    }
+
+    private void checkConvolution(Raster source, float[] weights, boolean wrapX, boolean wrapY, boolean extendBorder, float defaultValue) {
+        final SeparableConvolution convolution = new SeparableConvolution(weights, wrapX, wrapY, extendBorder, defaultValue, RowBandExecutor.SERIAL);
+        checkFilter(source, convolution, weights, wrapX, wrapY, extendBorder, defaultValue);
+    }
+
+    private void checkFilter(Raster source, RasterFilter filter, float[] weights, boolean wrapX, boolean wrapY, boolean extendBorder, float defaultValue) {
+        final RasterImpl target = new RasterImpl(source.getSizeX(), source.getSizeY());
+        filter.apply(source, target);
+
+        // Compare with the equivalent two dimensional kernel
+        final int radius = weights.length / 2;
+        final RasterField field = new RasterField(source, wrapX, wrapY, extendBorder, defaultValue);
+        for (int y = 0; y < source.getSizeY(); y++) {
+            for (int x = 0; x < source.getSizeX(); x++) {
+                float expected = 0;
+                for (int dy = -radius; dy <= radius; dy++) {
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        expected += field.getValue(x + dx, y + dy) * weights[dx + radius] * weights[dy + radius];
+                    }
+                }
+                assertEquals(expected, target.getValue(x, y), 0.01f);
+            }
+        }
+    }
+
+    private RasterImpl createTestRaster(int sizeX, int sizeY) {
+        final RasterImpl raster = new RasterImpl(sizeX, sizeY);
+        for (int y = 0; y < sizeY; y++) {
+            for (int x = 0; x < sizeX; x++) {
+                raster.setValue(x, y, (x * 7 + y * 13) % 17);
+            }
+        }
+        return raster;
+    }
+}
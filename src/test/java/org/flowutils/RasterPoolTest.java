@@ -0,0 +1,109 @@
+package org.flowutils;
+
+import org.flowutils.raster.raster.multi.InterleavedMultiRaster;
+import org.flowutils.raster.raster.pool.PooledRaster;
+import org.flowutils.raster.raster.pool.RasterPool;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RasterPoolTest {
+
+    private static final Symbol RED = Symbol.get("red");
+    private static final Symbol GREEN = Symbol.get("green");
+
+    @Test
+    public void testReuse() throws Exception {
+        final RasterPool pool = new RasterPool();
+
+        final float[] data;
+        try (PooledRaster<RasterImpl> pooled = pool.acquireRaster(8, 4, true)) {
+            data = pooled.getRaster().getData();
+            pooled.getRaster().setValue(1, 1, 3f);
+        }
+
+        // Uninitialized rasters keep the old values
+        try (PooledRaster<RasterImpl> pooled = pool.acquireRaster(4, 8, false)) {
+            assertSame(data, pooled.getRaster().getData());
+            assertEquals(3f, pooled.getRaster().getValue(1, 2), 0.001f);
+        }
+
+        // Zeroed rasters are cleared, and multi rasters with the same number of values share the arrays
+        try (PooledRaster<InterleavedMultiRaster> pooled = pool.acquireMultiRaster(4, 4, true, RED, GREEN)) {
+            assertSame(data, pooled.getRaster().getData());
+            assertEquals(0f, pooled.getRaster().getValue(0, 1, GREEN), 0.001f);
+            pooled.getRaster().setValue(3, 3, RED, 2f);
+            assertEquals(2f, data[30], 0.001f);
+        }
+
+        // Different sizes get different arrays
+        try (PooledRaster<RasterImpl> pooled = pool.acquireRaster(5, 5, false)) {
+            assertNotSame(data, pooled.getRaster().getData());
+        }
+    }
+
+    @Test
+    public void testBoundedPool() throws Exception {
+        // Room for two 10x10 rasters in the shared pool, no thread cache
+        final RasterPool pool = new RasterPool(800, 0);
+
+        final PooledRaster<RasterImpl> a = pool.acquireRaster(10, 10, true);
+        final PooledRaster<RasterImpl> b = pool.acquireRaster(10, 10, true);
+        final PooledRaster<RasterImpl> c = pool.acquireRaster(10, 10, true);
+        a.close();
+        b.close();
+        c.close();
+        c.close();
+
+        assertTrue(c.isClosed());
+        assertEquals(800, pool.getPooledBytes());
+
+        pool.acquireRaster(10, 10, false);
+        assertEquals(400, pool.getPooledBytes());
+
+        pool.clear();
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testThreadCachesCountTowardsBound() throws Exception {
+        // Room for two 10x10 rasters, both fit in the thread cache
+        final RasterPool pool = new RasterPool(800, 4);
+
+        final PooledRaster<RasterImpl> a = pool.acquireRaster(10, 10, true);
+        final PooledRaster<RasterImpl> b = pool.acquireRaster(10, 10, true);
+        final PooledRaster<RasterImpl> c = pool.acquireRaster(10, 10, true);
+        a.close();
+        b.close();
+        c.close();
+        assertEquals(800, pool.getPooledBytes());
+
+        // Clearing on another thread drops the arrays cached by this thread when it next uses the pool
+        final Thread clearingThread = new Thread(new Runnable() {
+            @Override public void run() {
+                pool.clear();
+            }
+        });
+        clearingThread.start();
+        clearingThread.join();
+        assertEquals(800, pool.getPooledBytes());
+
+        try (PooledRaster<RasterImpl> pooled = pool.acquireRaster(10, 10, false)) {
+            assertEquals(0, pool.getPooledBytes());
+        }
+        assertEquals(400, pool.getPooledBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLargeRaster() throws Exception {
+        new RasterPool().acquireMultiRaster(50000, 50000, true, RED, GREEN);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUseAfterClose() throws Exception {
+        final PooledRaster<RasterImpl> pooled = new RasterPool().acquireRaster(2, 2, true);
+        pooled.close();
+        pooled.getRaster();
+    }
+}
@@ -0,0 +1,136 @@
+package org.flowutils;
+
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.raster.multi.InterleavedMultiRaster;
+import org.flowutils.raster.raster.single.Raster;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.flowutils.raster.raster.single.TiledRaster;
+import org.flowutils.raster.resample.RasterResampler;
+import org.flowutils.raster.resample.ResampleMethod;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class RasterResamplerTest {
+
+    private static final Symbol A = Symbol.get("a");
+    private static final Symbol B = Symbol.get("b");
+
+    @Test
+    public void testSameSize() throws Exception {
+        final RasterImpl source = createGradient(7, 5);
+        for (ResampleMethod method : ResampleMethod.values()) {
+            final RasterImpl target = new RasterImpl(7, 5);
+            new RasterResampler(method).resample(source, target);
+            assertRastersEqual(source, target, 0.0001f);
+        }
+    }
+
+    @Test
+    public void testAreaAverage() throws Exception {
+        final RasterImpl source = createGradient(8, 6);
+
+        // Exact halving averages 2x2 blocks: x^2 / 4 averages to (4x^2 + 2x + 1/2) / 4 over cells 2x and 2x + 1, and 3y to 3 (2y + 1/2)
+        final RasterImpl half = new RasterImpl(4, 3);
+        new RasterResampler(ResampleMethod.AREA_AVERAGE).resample(source, half);
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 4; x++) {
+                assertEquals(x * x + 0.5f * x + 0.125f + 6 * y + 1.5f, half.getValue(x, y), 0.0001f);
+            }
+        }
+
+        // Non integer ratio, the first target cell covers source cells 0, 1 and two thirds of 2 in x, and 0 and 1 in y
+        final RasterImpl third = new RasterImpl(3, 3);
+        new RasterResampler(ResampleMethod.AREA_AVERAGE).resample(source, third);
+        final float expectedX = (0f + 0.25f + 2f / 3 * 1f) / (8f / 3);
+        final float expectedY = 1.5f;
+        assertEquals(expectedX + expectedY, third.getValue(0, 0), 0.0001f);
+
+        // The total is conserved
+        assertEquals(sum(source) / 16, sum(half) / 4, 0.001f);
+        assertEquals(sum(source) / 48, sum(third) / 9, 0.001f);
+    }
+
+    @Test
+    public void testUpscale() throws Exception {
+        // A linear gradient stays linear away from the clamped borders
+        final RasterImpl source = new RasterImpl(4, 4);
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                source.setValue(x, y, x * 2 + y);
+            }
+        }
+
+        for (ResampleMethod method : new ResampleMethod[]{ResampleMethod.BILINEAR, ResampleMethod.BICUBIC}) {
+            final RasterImpl target = new RasterImpl(16, 16);
+            new RasterResampler(method).resample(source, target);
+            for (int y = 6; y < 10; y++) {
+                for (int x = 6; x < 10; x++) {
+                    final double sourceX = (x + 0.5) / 4 - 0.5;
+                    final double sourceY = (y + 0.5) / 4 - 0.5;
+                    assertEquals(sourceX * 2 + sourceY, target.getValue(x, y), 0.0001f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParallelAndStridedLayouts() throws Exception {
+        final RasterImpl source = createGradient(300, 200);
+        final RasterImpl expected = new RasterImpl(130, 70);
+        new RasterResampler(ResampleMethod.BICUBIC).resample(source, expected);
+
+        // Interleaved source and target, tiled source, parallel executor
+        final InterleavedMultiRaster interleavedSource = new InterleavedMultiRaster(300, 200, A, B);
+        final TiledRaster tiledSource = new TiledRaster(300, 200, 32, 0);
+        for (int y = 0; y < 200; y++) {
+            for (int x = 0; x < 300; x++) {
+                interleavedSource.setValue(x, y, B, source.getValue(x, y));
+                tiledSource.setValue(x, y, source.getValue(x, y));
+            }
+        }
+
+        final RasterResampler parallelResampler = new RasterResampler(ResampleMethod.BICUBIC, new RowBandExecutor(new ForkJoinPool(4), 1));
+        final InterleavedMultiRaster interleavedTarget = new InterleavedMultiRaster(130, 70, A, B);
+        parallelResampler.resample(interleavedSource, interleavedTarget);
+        final RasterImpl tiledTarget = new RasterImpl(130, 70);
+        parallelResampler.resample(tiledSource, tiledTarget);
+
+        assertRastersEqual(expected, interleavedTarget.getChannel(B), 0f);
+        assertRastersEqual(expected, tiledTarget, 0f);
+        assertEquals(0f, interleavedTarget.getValue(5, 5, A), 0f);
+    }
+
+    private void assertRastersEqual(Raster expected, Raster actual, float delta) {
+        for (int y = 0; y < expected.getSizeY(); y++) {
+            for (int x = 0; x < expected.getSizeX(); x++) {
+                assertEquals(expected.getValue(x, y), actual.getValue(x, y), delta);
+            }
+        }
+    }
+
+    private float sum(RasterImpl raster) {
+        float sum = 0;
+        for (int y = 0; y < raster.getSizeY(); y++) {
+            for (int x = 0; x < raster.getSizeX(); x++) {
+                sum += raster.getValue(x, y);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @return a smooth raster with the value x^2 / 4 + 3y at each cell, so that averages over cells can be calculated analytically.
+     */
+    private RasterImpl createGradient(int sizeX, int sizeY) {
+        final RasterImpl raster = new RasterImpl(sizeX, sizeY);
+        for (int y = 0; y < sizeY; y++) {
+            for (int x = 0; x < sizeX; x++) {
+                raster.setValue(x, y, 0.25f * x * x + 3 * y);
+            }
+        }
+        return raster;
+    }
+}
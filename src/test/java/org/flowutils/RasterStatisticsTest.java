@@ -0,0 +1,172 @@
+package org.flowutils;
+
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.raster.multi.InterleavedMultiRaster;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.flowutils.raster.raster.single.TiledRaster;
+import org.flowutils.raster.statistics.Histogram;
+import org.flowutils.raster.statistics.RasterStatistics;
+import org.flowutils.raster.statistics.RasterStatisticsCalculator;
+import org.flowutils.rectangle.intrectangle.ImmutableIntRectangle;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class RasterStatisticsTest {
+
+    private static final Symbol A = Symbol.get("a");
+    private static final Symbol B = Symbol.get("b");
+
+    @Test
+    public void testBasicStatistics() throws Exception {
+        final RasterImpl raster = new RasterImpl(4, 3);
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 4; x++) {
+                raster.setValue(x, y, x + y * 4);
+            }
+        }
+        raster.setValue(1, 1, Float.NaN);
+
+        final RasterStatistics statistics = raster.calculateStatistics();
+        assertEquals(11, statistics.getCount());
+        assertEquals(1, statistics.getNaNCount());
+        assertEquals(0f, statistics.getMin(), 0f);
+        assertEquals(11f, statistics.getMax(), 0f);
+        assertEquals(61.0, statistics.getSum(), 0.00001);
+        assertEquals(61.0 / 11, statistics.getMean(), 0.00001);
+        assertEquals(naiveVariance(raster, 0, 0, 3, 2), statistics.getVariance(), 0.00001);
+        assertNull(statistics.getHistogram());
+
+        // Region of interest
+        final RasterStatistics areaStatistics = raster.calculateStatistics(new ImmutableIntRectangle(2, 1, 3, 2));
+        assertEquals(4, areaStatistics.getCount());
+        assertEquals(6f, areaStatistics.getMin(), 0f);
+        assertEquals(11f, areaStatistics.getMax(), 0f);
+        assertEquals(8.5, areaStatistics.getMean(), 0.00001);
+        assertEquals(naiveVariance(raster, 2, 1, 3, 2), areaStatistics.getVariance(), 0.00001);
+
+        // Empty area
+        final RasterStatistics emptyStatistics = raster.calculateStatistics(new ImmutableIntRectangle());
+        assertEquals(0, emptyStatistics.getCount());
+        assertTrue(Float.isNaN(emptyStatistics.getMin()));
+    }
+
+    @Test
+    public void testHistogramAndQuantiles() throws Exception {
+        final RasterImpl raster = new RasterImpl(100, 10);
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 100; x++) {
+                raster.setValue(x, y, y * 100 + x);
+            }
+        }
+
+        final RasterStatistics statistics = new RasterStatisticsCalculator(RowBandExecutor.SERIAL, 10, 100, 900).calculate(raster);
+        final Histogram histogram = statistics.getHistogram();
+        assertEquals(10, histogram.getBinCount());
+        assertEquals(100, histogram.getUnderflowCount());
+        assertEquals(99, histogram.getOverflowCount());
+        assertEquals(80, histogram.getCount(0));
+        assertEquals(81, histogram.getCount(9));
+        assertEquals(1000, histogram.getTotalCount());
+
+        assertEquals(0f, statistics.getQuantile(0), 0f);
+        assertEquals(999f, statistics.getQuantile(1), 0f);
+        assertEquals(500f, statistics.getQuantile(0.5), 2f);
+        assertEquals(50f, statistics.getQuantile(0.05), 2f);
+        assertEquals(950f, statistics.getQuantile(0.95), 2f);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testQuantileNeedsHistogram() throws Exception {
+        new RasterImpl(2, 2).calculateStatistics().getQuantile(0.5);
+    }
+
+    @Test
+    public void testParallelAndNonArrayRasters() throws Exception {
+        final int sizeX = 300;
+        final int sizeY = 200;
+        final RasterImpl raster = new RasterImpl(sizeX, sizeY);
+        final TiledRaster tiledRaster = new TiledRaster(sizeX, sizeY, 32, 0);
+        final Random random = new Random(42);
+        for (int y = 0; y < sizeY; y++) {
+            for (int x = 0; x < sizeX; x++) {
+                final float value = 1000f + random.nextFloat();
+                raster.setValue(x, y, value);
+                tiledRaster.setValue(x, y, value);
+            }
+        }
+
+        final RasterStatistics serial = new RasterStatisticsCalculator().calculate(raster);
+        final RasterStatistics parallel = new RasterStatisticsCalculator(new RowBandExecutor(new ForkJoinPool(4), 1)).calculate(raster);
+        final RasterStatistics tiled = new RasterStatisticsCalculator().calculate(tiledRaster);
+
+        assertEquals(naiveVariance(raster, 0, 0, sizeX - 1, sizeY - 1), serial.getVariance(), 1e-6);
+        for (RasterStatistics other : new RasterStatistics[]{parallel, tiled}) {
+            assertEquals(serial.getCount(), other.getCount());
+            assertEquals(serial.getMin(), other.getMin(), 0f);
+            assertEquals(serial.getMax(), other.getMax(), 0f);
+            assertEquals(serial.getMean(), other.getMean(), 1e-9);
+            assertEquals(serial.getVariance(), other.getVariance(), 1e-9);
+        }
+    }
+
+    @Test
+    public void testMultiRaster() throws Exception {
+        final InterleavedMultiRaster raster = new InterleavedMultiRaster(5, 4, A, B);
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 5; x++) {
+                raster.setValue(x, y, A, x);
+                raster.setValue(x, y, B, -y);
+            }
+        }
+
+        final Map<Symbol, RasterStatistics> statistics = raster.calculateStatistics(RowBandExecutor.SERIAL);
+        assertEquals(2, statistics.size());
+        assertEquals(2.0, statistics.get(A).getMean(), 0.00001);
+        assertEquals(2.0, statistics.get(A).getVariance(), 0.00001);
+        assertEquals(-3f, statistics.get(B).getMin(), 0f);
+        assertEquals(-1.5, statistics.get(B).getMean(), 0.00001);
+
+        final Map<Symbol, RasterStatistics> areaStatistics = raster.calculateStatistics(new ImmutableIntRectangle(1, 2, 2, 3), RowBandExecutor.SERIAL);
+        assertEquals(4, areaStatistics.get(A).getCount());
+        assertEquals(1.5, areaStatistics.get(A).getMean(), 0.00001);
+        assertEquals(-2.5, areaStatistics.get(B).getMean(), 0.00001);
+
+        // The executor of the raster is used by default
+        raster.setExecutor(new RowBandExecutor(new ForkJoinPool(2), 1));
+        final Map<Symbol, RasterStatistics> ownExecutorStatistics = raster.calculateStatistics();
+        assertEquals(2.0, ownExecutorStatistics.get(A).getVariance(), 0.00001);
+        assertEquals(-1.5, ownExecutorStatistics.get(B).getMean(), 0.00001);
+        assertEquals(-2.5, raster.calculateStatistics(new ImmutableIntRectangle(1, 2, 2, 3)).get(B).getMean(), 0.00001);
+    }
+
+    private double naiveVariance(RasterImpl raster, int minX, int minY, int maxX, int maxY) {
+        double sum = 0;
+        int count = 0;
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                final float value = raster.getValue(x, y);
+                if (!Float.isNaN(value)) {
+                    sum += value;
+                    count++;
+                }
+            }
+        }
+        final double mean = sum / count;
+
+        double squaredDeviations = 0;
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                final float value = raster.getValue(x, y);
+                if (!Float.isNaN(value)) {
+                    squaredDeviations += (value - mean) * (value - mean);
+                }
+            }
+        }
+        return squaredDeviations / count;
+    }
+}
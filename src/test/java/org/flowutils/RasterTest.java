@@ -7,15 +7,20 @@ import org.flowutils.raster.field.multi.MultiFieldBase;
 import org.flowutils.raster.field.multi.MultiRasterField;
 import org.flowutils.raster.field.single.Field;
 import org.flowutils.raster.field.single.FieldBase;
+import org.flowutils.raster.parallel.RowBandExecutor;
 import org.flowutils.raster.raster.multi.CompositeMultiRaster;
 import org.flowutils.raster.raster.multi.InterleavedMultiRaster;
 import org.flowutils.raster.raster.multi.MultiRaster;
+import org.flowutils.raster.raster.single.MipmappedRaster;
 import org.flowutils.raster.raster.single.Raster;
 import org.flowutils.raster.raster.single.RasterImpl;
 import org.flowutils.rectangle.ImmutableRectangle;
 import org.flowutils.rectangle.intrectangle.ImmutableIntRectangle;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
 import static org.junit.Assert.*;
 import static org.junit.Assert.assertEquals;
 
@@ -241,6 +246,74 @@ public class RasterTest {
         assertEquals(42f, multiRasterField2.getValue(5, 10, TestField.RISING), 0.001f);
     }
 
+    @Test
+    public void testParallelBulkOperations() throws Exception {
+        final RowBandExecutor parallelExecutor = new RowBandExecutor(new ForkJoinPool(4), 1);
+
+        // Plain rasters
+        checkParallelBulkOperations(new RasterImpl(37, 53), new RasterImpl(37, 53), new RasterImpl(37, 53), parallelExecutor);
+
+        // Interleaved channels
+        final InterleavedMultiRaster serialRaster = new InterleavedMultiRaster(37, 53, TestField.ONE, TestField.RISING);
+        final InterleavedMultiRaster parallelRaster = new InterleavedMultiRaster(37, 53, TestField.ONE, TestField.RISING);
+        checkParallelBulkOperations((RasterImpl) serialRaster.getChannel(TestField.RISING),
+                                    (RasterImpl) parallelRaster.getChannel(TestField.RISING),
+                                    (RasterImpl) parallelRaster.getChannel(TestField.ONE),
+                                    parallelExecutor);
+    }
+
+    @Test
+    public void testViews() throws Exception {
+        final InterleavedMultiRaster raster = new InterleavedMultiRaster(10, 8, TestField.RISING, TestField.ONE);
+        final MultiRaster view = raster.view(new ImmutableIntRectangle(2, 3, 6, 5));
+        assertEquals(5, view.getSizeX());
+        assertEquals(3, view.getSizeY());
+
+        // Rendering to a view only touches the viewed area
+        new TestField().renderToRaster(view, new ImmutableRectangle(0, 0, 4, 2));
+        assertEquals(0f, raster.getValue(2, 3, TestField.RISING), 0.001f);
+        assertEquals(204f, raster.getValue(6, 5, TestField.RISING), 0.001f);
+        assertEquals(1f, raster.getValue(4, 4, TestField.ONE), 0.001f);
+        assertEquals(0f, raster.getValue(1, 3, TestField.ONE), 0.001f);
+        assertEquals(0f, raster.getValue(7, 5, TestField.ONE), 0.001f);
+        assertEquals(0f, raster.getValue(2, 6, TestField.ONE), 0.001f);
+
+        // Bulk operations between views
+        final Raster rising = view.getChannel(TestField.RISING);
+        final RasterImpl subView = (RasterImpl) rising.view(new ImmutableIntRectangle(1, 1, 2, 2));
+        subView.add(view.getChannel(TestField.ONE).view(new ImmutableIntRectangle(0, 0, 1, 1)), 2, 0);
+        assertEquals(103f, raster.getValue(3, 4, TestField.RISING), 0.001f);
+        assertEquals(204f, raster.getValue(4, 5, TestField.RISING), 0.001f);
+        assertEquals(204f, raster.getValue(6, 5, TestField.RISING), 0.001f);
+
+        // Views of rasters that are not array backed
+        final MipmappedRaster mipmapped = new MipmappedRaster(new RasterImpl(4, 4));
+        final Raster mipmappedView = mipmapped.view(new ImmutableIntRectangle(1, 1, 3, 3)).view(new ImmutableIntRectangle(1, 0, 2, 2));
+        mipmappedView.setValue(1, 2, 5f);
+        assertEquals(5f, mipmapped.getValue(3, 3), 0.001f);
+        assertEquals(5f, mipmappedView.sampleValue(1, 2), 0.001f);
+        assertEquals(5f / 16f, mipmappedView.sampleValue(1, 2, 4), 0.001f);
+    }
+
+    private void checkParallelBulkOperations(RasterImpl serial, RasterImpl parallel, Raster source, RowBandExecutor parallelExecutor) {
+        parallel.setExecutor(parallelExecutor);
+
+        new TestField().getChannel(TestField.RISING).renderToRaster(source, new ImmutableRectangle(0, 0, 3, 3));
+
+        for (RasterImpl raster : Arrays.asList(serial, parallel)) {
+            raster.copyFrom(source);
+            raster.multiplyAdd(0.37f, 1.3f);
+            raster.add(source, 0.3f, 2f, 0.1f);
+            raster.multiply(source, 1.1f, 0.7f, 0.2f, 0.3f, 0.4f);
+        }
+
+        for (int y = 0; y < serial.getSizeY(); y++) {
+            for (int x = 0; x < serial.getSizeX(); x++) {
+                assertEquals(Float.floatToRawIntBits(serial.getValue(x, y)), Float.floatToRawIntBits(parallel.getValue(x, y)));
+            }
+        }
+    }
+
     private static class TestField extends MultiFieldBase {
         private static final Symbol RISING = Symbol.get("rising");
         private static final Symbol ONE = Symbol.get("one");
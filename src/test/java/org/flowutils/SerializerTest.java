@@ -1,5 +1,8 @@
 package org.flowutils;
 
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.raster.single.DirtyRegionTracker;
+import org.flowutils.raster.raster.single.RasterImpl;
 import org.flowutils.serializer.ConcurrentSerializerWrapper;
 import org.flowutils.serializer.KryoSerializer;
 import org.flowutils.serializer.Serializer;
@@ -7,9 +10,9 @@ import org.flowutils.serializer.SerializerFactory;
 import org.junit.Test;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.fail;
+import static org.junit.Assert.*;
 
 
 public class SerializerTest {
@@ -33,6 +36,30 @@ public class SerializerTest {
         }));
     }
 
+    @Test
+    public void testRasterSerialization() throws Exception {
+        final RasterImpl raster = new RasterImpl(6, 5);
+        for (int y = 0; y < 5; y++) {
+            for (int x = 0; x < 6; x++) {
+                raster.setValue(x, y, x * 10 + y);
+            }
+        }
+
+        // Runtime settings are not serialized
+        raster.setExecutor(new RowBandExecutor(new ForkJoinPool(2), 1));
+        raster.setDirtyRegionTracker(new DirtyRegionTracker());
+
+        final KryoSerializer serializer = new KryoSerializer(RasterImpl.class, float[].class);
+        final RasterImpl copy = (RasterImpl) serializer.deserialize(serializer.serialize(raster));
+        assertArrayEquals(raster.getData(), copy.getData(), 0);
+        assertSame(RowBandExecutor.SERIAL, copy.getExecutor());
+        assertNull(copy.getDirtyRegionTracker());
+
+        // Operations use the serial executor after deserialization
+        copy.multiply(2);
+        assertEquals(2 * 53f, copy.getValue(5, 3), 0.0001f);
+    }
+
     private KryoSerializer createKryoSerializerWithRegisteredClasses() {
         final KryoSerializer serializer = new KryoSerializer();
         registerAllowedClasses(serializer);
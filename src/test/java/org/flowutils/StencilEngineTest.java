@@ -0,0 +1,89 @@
+package org.flowutils;
+
+import org.flowutils.raster.field.single.RasterField;
+import org.flowutils.raster.parallel.RowBandExecutor;
+import org.flowutils.raster.raster.single.Raster;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.flowutils.raster.stencil.DoubleBufferedRaster;
+import org.flowutils.raster.stencil.StencilEngine;
+import org.flowutils.raster.stencil.StencilKernel;
+import org.flowutils.raster.stencil.WeightedStencilKernel;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class StencilEngineTest {
+
+    @Test
+    public void testEdgeHandling() throws Exception {
+        final RasterImpl source = createTestRaster(7, 5);
+
+        // 5x5 kernel with distinct weights, so every neighbour is checked
+        final float[] weights = new float[25];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = i + 1;
+        }
+        final WeightedStencilKernel kernel = new WeightedStencilKernel(2, weights);
+
+        checkAgainstRasterField(source, kernel, weights, true, true, false, 0);
+        checkAgainstRasterField(source, kernel, weights, false, true, true, 0);
+        checkAgainstRasterField(source, kernel, weights, true, false, false, -3);
+        checkAgainstRasterField(source, kernel, weights, false, false, false, 2);
+    }
+
+    @Test
+    public void testIterationAndParallelism() throws Exception {
+        final DoubleBufferedRaster serialBuffers = new DoubleBufferedRaster(31, 17);
+        final DoubleBufferedRaster parallelBuffers = new DoubleBufferedRaster(31, 17);
+        serialBuffers.getFront().setValue(3, 4, 100f);
+        parallelBuffers.getFront().setValue(3, 4, 100f);
+
+        final StencilKernel diffusion = WeightedStencilKernel.diffusion(0.5f);
+        new StencilEngine().iterate(serialBuffers, diffusion, 10);
+        new StencilEngine(true, true, false, 0, new RowBandExecutor(new ForkJoinPool(4), 1)).iterate(parallelBuffers, diffusion, 10);
+
+        double sum = 0;
+        for (int y = 0; y < 17; y++) {
+            for (int x = 0; x < 31; x++) {
+                final float value = serialBuffers.getFront().getValue(x, y);
+                assertEquals(Float.floatToRawIntBits(value), Float.floatToRawIntBits(parallelBuffers.getFront().getValue(x, y)));
+                sum += value;
+            }
+        }
+
+        // Diffusion with wrapping edges conserves the total
+        assertEquals(100.0, sum, 0.001);
+        assertEquals(0f, serialBuffers.getFront().getValue(20, 4), 0.0001f);
+    }
+
+    private void checkAgainstRasterField(Raster source, StencilKernel kernel, float[] weights, boolean wrapX, boolean wrapY, boolean extendBorder, float defaultValue) {
+        final RasterImpl target = new RasterImpl(source.getSizeX(), source.getSizeY());
+        new StencilEngine(wrapX, wrapY, extendBorder, defaultValue, RowBandExecutor.SERIAL).apply(source, target, kernel);
+
+        final RasterField field = new RasterField(source, wrapX, wrapY, extendBorder, defaultValue);
+        for (int y = 0; y < source.getSizeY(); y++) {
+            for (int x = 0; x < source.getSizeX(); x++) {
+                float expected = 0;
+                int i = 0;
+                for (int dy = -2; dy <= 2; dy++) {
+                    for (int dx = -2; dx <= 2; dx++) {
+                        expected += field.getValue(x + dx, y + dy) * weights[i++];
+                    }
+                }
+                assertEquals(expected, target.getValue(x, y), 0.01f);
+            }
+        }
+    }
+
+    private RasterImpl createTestRaster(int sizeX, int sizeY) {
+        final RasterImpl raster = new RasterImpl(sizeX, sizeY);
+        for (int y = 0; y < sizeY; y++) {
+            for (int x = 0; x < sizeX; x++) {
+                raster.setValue(x, y, x + y * 10);
+            }
+        }
+        return raster;
+    }
+}
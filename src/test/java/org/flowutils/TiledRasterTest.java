@@ -0,0 +1,179 @@
+package org.flowutils;
+
+import org.flowutils.raster.field.single.RasterField;
+import org.flowutils.raster.raster.single.RasterImpl;
+import org.flowutils.raster.raster.single.TiledRaster;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class TiledRasterTest {
+
+    @Test
+    public void testSparseTiles() throws Exception {
+        final TiledRaster raster = new TiledRaster(1000000, 1000000, 16, -1f);
+
+        assertEquals(-1f, raster.getValue(500000, 300000), 0.001f);
+        assertEquals(0, raster.getAllocatedTileCount());
+
+        raster.setValue(500000, 300000, 3f);
+        raster.writeRow(20, 10, 30, new float[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30}, 0);
+
+        assertEquals(3f, raster.getValue(500000, 300000), 0.001f);
+        assertEquals(4, raster.getAllocatedTileCount());
+
+        final float[] row = new float[40];
+        raster.readRow(20, 0, 40, row, 0);
+        assertEquals(-1f, row[9], 0.001f);
+        assertEquals(1f, row[10], 0.001f);
+        assertEquals(30f, row[39], 0.001f);
+
+        // Sampling inside a tile and across tile edges
+        assertEquals(1.5f, raster.sampleValue(10.5, 20), 0.001f);
+        assertEquals(6.5f, raster.sampleValue(15.5, 20), 0.001f);
+        assertEquals(0f, raster.sampleValue(10, 20.5), 0.001f);
+    }
+
+    @Test
+    public void testPaging() throws Exception {
+        final File pageDirectory = Files.createTempDirectory("tiledRasterTest").toFile();
+
+        // Budget for two tiles only
+        final TiledRaster raster = new TiledRaster(256, 256, 32, 0f, 2 * 32 * 32 * 4, pageDirectory);
+        final RasterImpl expected = new RasterImpl(256, 256);
+        for (int y = 0; y < 256; y += 7) {
+            for (int x = 0; x < 256; x += 5) {
+                raster.setValue(x, y, x * 1000 + y);
+                expected.setValue(x, y, x * 1000 + y);
+            }
+        }
+
+        assertEquals(2, raster.getLoadedTileCount());
+        assertEquals(64, raster.getAllocatedTileCount());
+
+        for (int y = 0; y < 256; y++) {
+            for (int x = 0; x < 256; x++) {
+                assertEquals(expected.getValue(x, y), raster.getValue(x, y), 0.001f);
+            }
+        }
+
+        // Sampling through a field gives the same results as for an array backed raster
+        final RasterField tiledField = new RasterField(raster, 0);
+        final RasterField expectedField = new RasterField(expected, 0);
+        for (double y = -3.3; y < 260; y += 3.7) {
+            for (double x = -2.1; x < 260; x += 4.9) {
+                assertEquals(expectedField.getValue(x, y), tiledField.getValue(x, y), 0.01f);
+            }
+        }
+
+        // Every tile has been paged out at some point, to the own directory of the raster
+        final File[] tileFiles = raster.getPageDirectory().listFiles();
+        assertEquals(pageDirectory, raster.getPageDirectory().getParentFile());
+        assertEquals(64, tileFiles.length);
+
+        // Closing deletes the paged out tiles and the directory of the raster
+        raster.close();
+        assertTrue(raster.isClosed());
+        assertFalse(raster.getPageDirectory().exists());
+        assertTrue(pageDirectory.delete());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUseAfterClose() throws Exception {
+        final TiledRaster raster = new TiledRaster(100, 100);
+        raster.setValue(1, 2, 3f);
+        raster.close();
+        raster.getValue(1, 2);
+    }
+
+    @Test
+    public void testSharedPageDirectory() throws Exception {
+        final File pageDirectory = Files.createTempDirectory("tiledRasterTest").toFile();
+
+        // Two rasters paging the same tile coordinates to the same directory
+        final TiledRaster first = new TiledRaster(64, 64, 16, 0f, 16 * 16 * 4, pageDirectory);
+        final TiledRaster second = new TiledRaster(64, 64, 16, 0f, 16 * 16 * 4, pageDirectory);
+        for (int y = 0; y < 64; y += 3) {
+            for (int x = 0; x < 64; x += 3) {
+                first.setValue(x, y, 1);
+                second.setValue(x, y, 2);
+            }
+        }
+
+        for (int y = 0; y < 64; y += 3) {
+            for (int x = 0; x < 64; x += 3) {
+                assertEquals(1f, first.getValue(x, y), 0f);
+                assertEquals(2f, second.getValue(x, y), 0f);
+            }
+        }
+
+        first.close();
+        second.close();
+        assertTrue(pageDirectory.delete());
+    }
+
+    @Test
+    public void testBulkOperationsOnlyUseWrittenTiles() throws Exception {
+        final TiledRaster raster = new TiledRaster(1000000, 1000000, 16, -1f);
+        raster.setValue(500000, 300000, 3f);
+        raster.setValue(10, 20, 5f);
+        assertEquals(2, raster.getAllocatedTileCount());
+
+        // Scaling applies to the default value as well as the written cells
+        raster.multiplyAdd(2, 1);
+        assertEquals(2, raster.getAllocatedTileCount());
+        assertEquals(-1f, raster.getDefaultValue(), 0f);
+        assertEquals(7f, raster.getValue(500000, 300000), 0f);
+        assertEquals(11f, raster.getValue(10, 20), 0f);
+        assertEquals(-1f, raster.getValue(10, 21), 0f);
+        raster.add(2);
+        assertEquals(1f, raster.getValue(999999, 999999), 0f);
+        assertEquals(13f, raster.getValue(10, 20), 0f);
+
+        // Tiled sources are combined tile by tile
+        final TiledRaster other = new TiledRaster(1000000, 1000000, 16, 10f);
+        other.setValue(700000, 700000, 20f);
+        other.setValue(11, 20, 30f);
+        raster.add(other, 1, 2, 0);
+        assertEquals(3, raster.getAllocatedTileCount());
+        assertEquals(21f, raster.getDefaultValue(), 0f);
+        assertEquals(33f, raster.getValue(10, 20), 0f);
+        assertEquals(61f, raster.getValue(11, 20), 0f);
+        assertEquals(41f, raster.getValue(700000, 700000), 0f);
+        assertEquals(21f, raster.getValue(0, 999999), 0f);
+
+        raster.multiply(other);
+        assertEquals(210f, raster.getValue(5, 5), 0f);
+        assertEquals(1830f, raster.getValue(11, 20), 0f);
+
+        // Copying releases the tiles that only contain the default value of the source
+        raster.copyFrom(other);
+        assertEquals(2, raster.getAllocatedTileCount());
+        assertEquals(10f, raster.getValue(500000, 300000), 0f);
+        assertEquals(30f, raster.getValue(11, 20), 0f);
+    }
+
+    @Test
+    public void testBulkOperationsWithOtherRasters() throws Exception {
+        final TiledRaster raster = new TiledRaster(100, 80, 16, 0f);
+        raster.setValue(50, 50, 4f);
+
+        // Only tiles where the result differs from the default value are allocated
+        final RasterImpl source = new RasterImpl(100, 80);
+        source.setValue(3, 3, 2f);
+        raster.add(source);
+        assertEquals(2, raster.getAllocatedTileCount());
+        assertEquals(2f, raster.getValue(3, 3), 0f);
+        assertEquals(4f, raster.getValue(50, 50), 0f);
+        assertEquals(0f, raster.getValue(90, 70), 0f);
+
+        source.multiplyAdd(0, 1);
+        raster.copyFrom(source);
+        assertEquals(35, raster.getAllocatedTileCount());
+        assertEquals(1f, raster.getValue(50, 50), 0f);
+        assertEquals(1f, raster.getValue(99, 79), 0f);
+    }
+}